@@ -1,12 +1,9 @@
 package example;
 
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
+import com.posadskiy.restsecurity.jwt.JwtConfig;
+import com.posadskiy.restsecurity.jwt.JwtIssuer;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.util.Date;
+import java.time.Duration;
 import java.util.List;
 
 /**
@@ -14,22 +11,13 @@ import java.util.List;
  */
 public class JwtService {
 
-    private final SecretKey secretKey;
-    private static final String ROLES_CLAIM = "roles";
-    private static final String USER_ID_CLAIM = "sub";
+    private final JwtIssuer issuer;
 
     public JwtService(String secret) {
-        this.secretKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.issuer = new JwtIssuer(JwtConfig.withSecret(secret));
     }
 
     public String createToken(String userId, List<String> roles, long validitySeconds) {
-        Instant now = Instant.now();
-        return Jwts.builder()
-                .subject(userId)
-                .claim(ROLES_CLAIM, roles)
-                .issuedAt(Date.from(now))
-                .expiration(Date.from(now.plusSeconds(validitySeconds)))
-                .signWith(secretKey)
-                .compact();
+        return issuer.issue(userId, roles, Duration.ofSeconds(validitySeconds));
     }
 }
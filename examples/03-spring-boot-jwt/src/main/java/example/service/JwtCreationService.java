@@ -1,24 +1,21 @@
 package example.service;
 
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
+import com.posadskiy.restsecurity.jwt.JwtConfig;
+import com.posadskiy.restsecurity.jwt.JwtIssuer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
-import java.util.Date;
+import java.time.Duration;
 import java.util.List;
 
 @Service
 public class JwtCreationService {
 
-    private final SecretKey secretKey;
-    private static final String ROLES_CLAIM = "roles";
-    private static final long VALIDITY_SECONDS = 3600;
+    private final JwtIssuer issuer;
+    private static final Duration VALIDITY = Duration.ofHours(1);
 
     public JwtCreationService(@Value("${app.jwt.secret:spring-boot-jwt-example-secret-at-least-256-bits-for-hs256}") String secret) {
-        this.secretKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.issuer = new JwtIssuer(JwtConfig.withSecret(secret));
     }
 
     public String createTokenForUser(String username) {
@@ -31,13 +28,6 @@ public class JwtCreationService {
         if (roles == null) {
             return null;
         }
-        long now = System.currentTimeMillis();
-        return Jwts.builder()
-                .subject(username)
-                .claim(ROLES_CLAIM, roles)
-                .issuedAt(new Date(now))
-                .expiration(new Date(now + VALIDITY_SECONDS * 1000))
-                .signWith(secretKey)
-                .compact();
+        return issuer.issue(username, roles, VALIDITY);
     }
 }
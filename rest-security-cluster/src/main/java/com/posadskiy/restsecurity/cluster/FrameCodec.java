@@ -0,0 +1,230 @@
+package com.posadskiy.restsecurity.cluster;
+
+import com.posadskiy.restsecurity.cache.InvalidationEvent;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Binary frames of {@link UdpInvalidationTransport}, big-endian:
+ * <pre>
+ * magic     2 bytes  "RS"
+ * version   1 byte   2
+ * type      1 byte   0 events, 1 heartbeat
+ * node      8 bytes  sender, random per start
+ * sent      8 bytes  sender's clock, epoch milliseconds; receivers drop frames too far from their own
+ * sequence  8 bytes  events: number of this frame (1, 2, ...); heartbeat: last events frame sent
+ * count     2 bytes  events in the frame
+ * events    kind (1 byte) then fields; strings are a 2-byte length and UTF-8
+ *           1 roles changed: user, version (8), role count (2, 0xFFFF for dropped), roles
+ *           2 user removed:  user, version (8)
+ *           3 session revoked: session
+ *           4 all invalidated
+ * mac       16 bytes HMAC-SHA256 of everything before, truncated
+ * </pre>
+ * Not thread-safe: each thread of the transport owns one.
+ */
+final class FrameCodec {
+
+    static final byte EVENTS = 0;
+    static final byte HEARTBEAT = 1;
+    static final int HEADER_LENGTH = 30;
+    static final int MAC_LENGTH = FrameMac.LENGTH;
+
+    private static final short MAGIC = 0x5253;
+    private static final byte VERSION = 2;
+    private static final byte ROLES_CHANGED = 1;
+    private static final byte USER_REMOVED = 2;
+    private static final byte SESSION_REVOKED = 3;
+    private static final byte ALL_INVALIDATED = 4;
+    private static final int DROPPED = 0xFFFF;
+
+    private final FrameMac mac;
+    private final int maxFrameBytes;
+    private final ByteBuffer scratch;
+    private final LongSupplier clock;
+
+    /** A decoded frame; {@code events} is empty for heartbeats. */
+    record Frame(byte type, long node, long sentMillis, long sequence, List<InvalidationEvent> events) {}
+
+    FrameCodec(byte[] secret, int maxFrameBytes) {
+        this(secret, maxFrameBytes, System::currentTimeMillis);
+    }
+
+    /** @param clock epoch milliseconds stamped into frames as they are encoded */
+    FrameCodec(byte[] secret, int maxFrameBytes, LongSupplier clock) {
+        this.mac = new FrameMac(secret);
+        this.clock = clock;
+        this.maxFrameBytes = maxFrameBytes;
+        this.scratch = ByteBuffer.allocate(maxFrameBytes - HEADER_LENGTH - MAC_LENGTH);
+    }
+
+    /**
+     * Pack events into as few frames as fit. An event too large for any frame is sent in a weaker form that
+     * is still safe: roles dropped instead of replaced, or everything invalidated.
+     */
+    List<ByteBuffer> encodeEvents(long node, LongSupplier sequences, List<InvalidationEvent> events) {
+        List<ByteBuffer> frames = new ArrayList<>();
+        ByteBuffer frame = null;
+        int count = 0;
+        for (InvalidationEvent event : events) {
+            if (!encodeEvent(event)) {
+                continue;
+            }
+            if (frame != null && frame.remaining() - MAC_LENGTH < scratch.position()) {
+                frames.add(finish(frame, count));
+                frame = null;
+            }
+            if (frame == null) {
+                frame = header(EVENTS, node, sequences.getAsLong());
+                count = 0;
+            }
+            frame.put(scratch.flip());
+            count++;
+        }
+        if (frame != null) {
+            frames.add(finish(frame, count));
+        }
+        return frames;
+    }
+
+    ByteBuffer encodeHeartbeat(long node, long lastSequence) {
+        return finish(header(HEARTBEAT, node, lastSequence), 0);
+    }
+
+    /** @return the frame, or null if it is malformed or not authentic */
+    Frame decode(ByteBuffer datagram) {
+        ByteBuffer in = mac.open(datagram);
+        if (in == null || in.remaining() < HEADER_LENGTH) {
+            return null;
+        }
+        try {
+            if (in.getShort() != MAGIC || in.get() != VERSION) {
+                return null;
+            }
+            byte type = in.get();
+            long node = in.getLong();
+            long sentMillis = in.getLong();
+            long sequence = in.getLong();
+            int count = in.getShort() & 0xFFFF;
+            List<InvalidationEvent> events = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                events.add(decodeEvent(in));
+            }
+            return type == EVENTS || type == HEARTBEAT ? new Frame(type, node, sentMillis, sequence, List.copyOf(events)) : null;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** Encode into {@link #scratch}, degrading an event that does not fit; false to skip it. */
+    private boolean encodeEvent(InvalidationEvent event) {
+        if (event instanceof InvalidationEvent.TtlCapped) {
+            return false;
+        }
+        if (tryEncode(event)) {
+            return true;
+        }
+        if (event instanceof InvalidationEvent.UserRolesChanged changed && changed.roles() != null
+                && tryEncode(new InvalidationEvent.UserRolesChanged(changed.userId(), null, changed.version()))) {
+            return true;
+        }
+        return tryEncode(new InvalidationEvent.AllInvalidated());
+    }
+
+    private boolean tryEncode(InvalidationEvent event) {
+        scratch.clear();
+        try {
+            switch (event) {
+                case InvalidationEvent.UserRolesChanged changed -> {
+                    scratch.put(ROLES_CHANGED);
+                    putString(changed.userId());
+                    scratch.putLong(changed.version());
+                    Set<String> roles = changed.roles();
+                    if (roles == null || roles.size() >= DROPPED) {
+                        scratch.putShort((short) DROPPED);
+                    } else {
+                        scratch.putShort((short) roles.size());
+                        for (String role : roles) {
+                            putString(role);
+                        }
+                    }
+                }
+                case InvalidationEvent.UserRemoved removed -> {
+                    scratch.put(USER_REMOVED);
+                    putString(removed.userId());
+                    scratch.putLong(removed.version());
+                }
+                case InvalidationEvent.SessionRevoked revoked -> {
+                    scratch.put(SESSION_REVOKED);
+                    putString(revoked.sessionId());
+                }
+                case InvalidationEvent.AllInvalidated all -> scratch.put(ALL_INVALIDATED);
+                case InvalidationEvent.TtlCapped capped -> throw new IllegalArgumentException("FrameCodec: local event");
+            }
+            return true;
+        } catch (BufferOverflowException e) {
+            return false;
+        }
+    }
+
+    private InvalidationEvent decodeEvent(ByteBuffer in) {
+        byte kind = in.get();
+        return switch (kind) {
+            case ROLES_CHANGED -> {
+                String userId = getString(in);
+                long version = in.getLong();
+                int count = in.getShort() & 0xFFFF;
+                if (count == DROPPED) {
+                    yield new InvalidationEvent.UserRolesChanged(userId, null, version);
+                }
+                Set<String> roles = new HashSet<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    roles.add(getString(in));
+                }
+                yield new InvalidationEvent.UserRolesChanged(userId, roles, version);
+            }
+            case USER_REMOVED -> new InvalidationEvent.UserRemoved(getString(in), in.getLong());
+            case SESSION_REVOKED -> new InvalidationEvent.SessionRevoked(getString(in));
+            case ALL_INVALIDATED -> new InvalidationEvent.AllInvalidated();
+            default -> throw new IllegalArgumentException("FrameCodec: unknown event kind " + kind);
+        };
+    }
+
+    private ByteBuffer header(byte type, long node, long sequence) {
+        ByteBuffer frame = ByteBuffer.allocate(maxFrameBytes);
+        frame.putShort(MAGIC).put(VERSION).put(type).putLong(node).putLong(clock.getAsLong()).putLong(sequence)
+                .putShort((short) 0);
+        return frame;
+    }
+
+    private ByteBuffer finish(ByteBuffer frame, int count) {
+        frame.putShort(HEADER_LENGTH - 2, (short) count);
+        return mac.seal(frame);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new BufferOverflowException();
+        }
+        scratch.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,56 @@
+package com.posadskiy.restsecurity.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Authenticates datagrams with a truncated HMAC-SHA256 trailer. Not thread-safe: each thread owns one.
+ */
+final class FrameMac {
+
+    static final int LENGTH = 16;
+
+    private final Mac mac;
+    private final byte[] tag = new byte[32];
+
+    FrameMac(byte[] secret) {
+        try {
+            this.mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("FrameMac: HmacSHA256 unavailable", e);
+        }
+    }
+
+    /** Append the MAC of everything written to {@code frame} (array-backed, from 0) and flip it for sending. */
+    ByteBuffer seal(ByteBuffer frame) {
+        mac.update(frame.array(), 0, frame.position());
+        try {
+            mac.doFinal(tag, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("FrameMac: MAC failed", e);
+        }
+        return frame.put(tag, 0, LENGTH).flip();
+    }
+
+    /** @return the payload of an authentic datagram, or null */
+    ByteBuffer open(ByteBuffer datagram) {
+        int length = datagram.remaining();
+        if (length < LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        datagram.get(bytes);
+        mac.update(bytes, 0, length - LENGTH);
+        byte[] expected = mac.doFinal();
+        if (!MessageDigest.isEqual(Arrays.copyOf(expected, LENGTH), Arrays.copyOfRange(bytes, length - LENGTH, length))) {
+            return null;
+        }
+        return ByteBuffer.wrap(bytes, 0, length - LENGTH);
+    }
+}
@@ -0,0 +1,178 @@
+package com.posadskiy.restsecurity.cluster;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary frames of {@link GossipSessionStore}, big-endian:
+ * <pre>
+ * magic     2 bytes  "RG"
+ * version   1 byte   1
+ * type      1 byte   0 sessions, 1 digest, 2 pull
+ * sessions  base time (8, epoch millis), count (2), then per session: flags (1, bit 0 revoked),
+ *           id (1-byte length, UTF-8), user (1-byte length, UTF-8), expiry - base (unsigned varint)
+ * digest    64 bucket hashes (8 each)
+ * pull      bucket mask (8)
+ * mac       16 bytes, see {@link FrameMac}
+ * </pre>
+ * Expiry is sent relative to the frame's base time, so most sessions take three bytes for it. Not
+ * thread-safe: each thread of the store owns one.
+ */
+final class GossipCodec {
+
+    static final byte SESSIONS = 0;
+    static final byte DIGEST = 1;
+    static final byte PULL = 2;
+    static final int BUCKETS = 64;
+
+    private static final short MAGIC = 0x5247;
+    private static final byte VERSION = 1;
+    private static final int SESSIONS_HEADER = 14;
+    /** Largest encoded session: flags, two 255-byte strings with lengths, 10-byte varint. */
+    private static final int MAX_SESSION_BYTES = 1 + 256 + 256 + 10;
+
+    private final FrameMac mac;
+    private final int maxFrameBytes;
+
+    /** A decoded frame: sessions for {@link #SESSIONS}, hashes for {@link #DIGEST}, mask for {@link #PULL}. */
+    record Message(byte type, Map<String, GossipSessionStore.SessionState> sessions, long[] digest, long mask) {}
+
+    GossipCodec(byte[] secret, int maxFrameBytes) {
+        this.mac = new FrameMac(secret);
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    List<ByteBuffer> encodeSessions(Iterable<Map.Entry<String, GossipSessionStore.SessionState>> sessions, long now) {
+        List<ByteBuffer> frames = new ArrayList<>();
+        ByteBuffer frame = null;
+        int count = 0;
+        for (Map.Entry<String, GossipSessionStore.SessionState> entry : sessions) {
+            GossipSessionStore.SessionState state = entry.getValue();
+            if (state.expiresAtMillis() <= now) {
+                continue;
+            }
+            if (frame != null && (frame.remaining() - FrameMac.LENGTH < MAX_SESSION_BYTES || count == 0xFFFF)) {
+                frames.add(finishSessions(frame, count));
+                frame = null;
+            }
+            if (frame == null) {
+                frame = header(SESSIONS).putLong(now).putShort((short) 0);
+                count = 0;
+            }
+            frame.put((byte) (state.revoked() ? 1 : 0));
+            putString(frame, entry.getKey());
+            putString(frame, state.userId());
+            putVarint(frame, state.expiresAtMillis() - now);
+            count++;
+        }
+        if (frame != null) {
+            frames.add(finishSessions(frame, count));
+        }
+        return frames;
+    }
+
+    ByteBuffer encodeDigest(long[] digest) {
+        ByteBuffer frame = header(DIGEST);
+        for (long hash : digest) {
+            frame.putLong(hash);
+        }
+        return mac.seal(frame);
+    }
+
+    ByteBuffer encodePull(long mask) {
+        return mac.seal(header(PULL).putLong(mask));
+    }
+
+    /** @return the message, or null if it is malformed or not authentic */
+    Message decode(ByteBuffer datagram) {
+        ByteBuffer in = mac.open(datagram);
+        if (in == null) {
+            return null;
+        }
+        try {
+            if (in.getShort() != MAGIC || in.get() != VERSION) {
+                return null;
+            }
+            byte type = in.get();
+            switch (type) {
+                case SESSIONS -> {
+                    long base = in.getLong();
+                    int count = in.getShort() & 0xFFFF;
+                    Map<String, GossipSessionStore.SessionState> sessions = new LinkedHashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        boolean revoked = (in.get() & 1) != 0;
+                        String sessionId = getString(in);
+                        String userId = getString(in);
+                        long expiresAt = base + getVarint(in);
+                        sessions.put(sessionId, new GossipSessionStore.SessionState(userId, expiresAt, revoked));
+                    }
+                    return new Message(type, sessions, null, 0);
+                }
+                case DIGEST -> {
+                    long[] digest = new long[BUCKETS];
+                    for (int i = 0; i < BUCKETS; i++) {
+                        digest[i] = in.getLong();
+                    }
+                    return new Message(type, Map.of(), digest, 0);
+                }
+                case PULL -> {
+                    return new Message(type, Map.of(), null, in.getLong());
+                }
+                default -> {
+                    return null;
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private ByteBuffer header(byte type) {
+        return ByteBuffer.allocate(maxFrameBytes).putShort(MAGIC).put(VERSION).put(type);
+    }
+
+    private ByteBuffer finishSessions(ByteBuffer frame, int count) {
+        frame.putShort(SESSIONS_HEADER - 2, (short) count);
+        return mac.seal(frame);
+    }
+
+    private static void putString(ByteBuffer frame, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        frame.put((byte) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.get() & 0xFF;
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void putVarint(ByteBuffer frame, long value) {
+        while ((value & ~0x7FL) != 0) {
+            frame.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        frame.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("GossipCodec: varint too long");
+    }
+}
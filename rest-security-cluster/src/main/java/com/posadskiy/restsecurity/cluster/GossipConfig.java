@@ -0,0 +1,70 @@
+package com.posadskiy.restsecurity.cluster;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration for {@link GossipSessionStore}.
+ *
+ * @param bind                local address to receive on
+ * @param peers               addresses of the other nodes
+ * @param secret              shared key authenticating frames (HMAC-SHA256), at least 32 bytes
+ * @param sessionTtl          lifetime of created sessions, and of extensions. Default 30 minutes
+ * @param gossipInterval      how often changed sessions are sent to the peers. Default 100 ms
+ * @param antiEntropyInterval how often a node compares its sessions with a random peer's to repair lost
+ *                            frames. Default 2 seconds
+ * @param maxFrameBytes       largest datagram sent, including header and MAC. Default 1400, below a typical MTU
+ */
+public record GossipConfig(
+        InetSocketAddress bind,
+        List<InetSocketAddress> peers,
+        byte[] secret,
+        Duration sessionTtl,
+        Duration gossipInterval,
+        Duration antiEntropyInterval,
+        int maxFrameBytes
+) {
+
+    public GossipConfig {
+        if (bind == null) {
+            throw new IllegalArgumentException("GossipConfig: bind address is required");
+        }
+        peers = peers != null ? List.copyOf(peers) : List.of();
+        if (secret == null || secret.length < 32) {
+            throw new IllegalArgumentException("GossipConfig: secret must be at least 32 bytes");
+        }
+        secret = secret.clone();
+        sessionTtl = positiveOr(sessionTtl, Duration.ofMinutes(30));
+        gossipInterval = positiveOr(gossipInterval, Duration.ofMillis(100));
+        antiEntropyInterval = positiveOr(antiEntropyInterval, Duration.ofSeconds(2));
+        maxFrameBytes = maxFrameBytes > 0 ? maxFrameBytes : 1400;
+        if (maxFrameBytes < 600 || maxFrameBytes > 65_507) {
+            throw new IllegalArgumentException("GossipConfig: maxFrameBytes must be 600-65507");
+        }
+    }
+
+    /** Gossip with {@code peers}, defaults for the rest. */
+    public static GossipConfig of(InetSocketAddress bind, List<InetSocketAddress> peers, byte[] secret) {
+        return new GossipConfig(bind, peers, secret, null, null, null, 0);
+    }
+
+    /** Copy with session lifetime {@code sessionTtl}. */
+    public GossipConfig withSessionTtl(Duration sessionTtl) {
+        return new GossipConfig(bind, peers, secret, sessionTtl, gossipInterval, antiEntropyInterval, maxFrameBytes);
+    }
+
+    /** Copy with delta period {@code gossipInterval}. */
+    public GossipConfig withGossipInterval(Duration gossipInterval) {
+        return new GossipConfig(bind, peers, secret, sessionTtl, gossipInterval, antiEntropyInterval, maxFrameBytes);
+    }
+
+    /** Copy with repair period {@code antiEntropyInterval}. */
+    public GossipConfig withAntiEntropyInterval(Duration antiEntropyInterval) {
+        return new GossipConfig(bind, peers, secret, sessionTtl, gossipInterval, antiEntropyInterval, maxFrameBytes);
+    }
+
+    private static Duration positiveOr(Duration value, Duration fallback) {
+        return value != null && !value.isNegative() && !value.isZero() ? value : fallback;
+    }
+}
@@ -0,0 +1,403 @@
+package com.posadskiy.restsecurity.cluster;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.id.SessionIdGenerator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory {@link SessionSecurityController} replicated to every node by gossip, for clusters without a
+ * shared session store. Lookups are local map reads; sessions created, extended or revoked on any node reach
+ * the others within about {@link GossipConfig#gossipInterval()}.
+ *
+ * <ul>
+ *   <li>Merge is order-independent, so nodes converge whatever arrives when: a revocation always wins, and
+ *       of two expiry times the later wins.</li>
+ *   <li>Each interval, only the sessions changed since the last one are sent to every peer, many per frame
+ *       (see {@link GossipCodec}).</li>
+ *   <li>Every {@link GossipConfig#antiEntropyInterval()} a node sends a digest of its sessions, hashed in 64
+ *       buckets, to a random peer; buckets that differ are exchanged both ways. This repairs lost frames and
+ *       brings a restarted node up to date.</li>
+ * </ul>
+ * Expired sessions are dropped locally and never sent.
+ *
+ * <pre>
+ * GossipSessionStore sessions = new GossipSessionStore(GossipConfig.of(
+ *         new InetSocketAddress(7700), List.of(new InetSocketAddress("node-b", 7700)), secret));
+ * String sessionId = sessions.createSession("alice");
+ * SecurityEnforcer enforcer = new SecurityEnforcer(sessions, users);
+ * </pre>
+ */
+public final class GossipSessionStore implements SessionSecurityController, AutoCloseable {
+
+    private static final int MAX_ID_BYTES = 255;
+
+    private final GossipConfig config;
+    private final long ttlMillis;
+    private final DatagramChannel channel;
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    /** Ids changed locally since the last gossip round. */
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    /** XOR of the hashes of the sessions in each bucket, kept up to date on every change. */
+    private final AtomicLongArray digest = new AtomicLongArray(GossipCodec.BUCKETS);
+    private final SessionIdGenerator idGenerator = SessionIdGenerator.shared();
+    private final Thread gossiper;
+    private final Thread reader;
+    private volatile boolean closed;
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong rejectedFrames = new AtomicLong();
+    private final AtomicLong sessionsMerged = new AtomicLong();
+
+    /**
+     * Replicated state of one session.
+     *
+     * @param userId          user of the session; empty for a revocation that arrived before the session
+     * @param expiresAtMillis expiry time, epoch millis
+     * @param revoked         true once revoked on any node
+     */
+    record SessionState(String userId, long expiresAtMillis, boolean revoked) {
+
+        /** Least upper bound: revoked wins, the later expiry wins, a known user wins over none. */
+        SessionState merge(SessionState other) {
+            String user = userId.isEmpty() || (!other.userId.isEmpty() && other.userId.compareTo(userId) < 0)
+                    ? other.userId : userId;
+            return new SessionState(user, Math.max(expiresAtMillis, other.expiresAtMillis), revoked || other.revoked);
+        }
+
+        boolean isLive(long now) {
+            return !revoked && !userId.isEmpty() && expiresAtMillis > now;
+        }
+    }
+
+    /**
+     * Bind the socket and start gossiping.
+     *
+     * @throws IllegalStateException if the socket cannot be opened or bound
+     */
+    public GossipSessionStore(GossipConfig config) {
+        this.config = config;
+        this.ttlMillis = config.sessionTtl().toMillis();
+        try {
+            this.channel = DatagramChannel.open().bind(config.bind());
+        } catch (IOException e) {
+            throw new IllegalStateException("GossipSessionStore: could not open " + config.bind(), e);
+        }
+        this.gossiper = new Thread(this::runGossiper, "rest-security-gossip-sender");
+        this.reader = new Thread(this::runReader, "rest-security-gossip-reader");
+        gossiper.setDaemon(true);
+        reader.setDaemon(true);
+        gossiper.start();
+        reader.start();
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        SessionState state = sessionId != null ? sessions.get(sessionId) : null;
+        return state != null && !state.revoked && !state.userId.isEmpty();
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        SessionState state = sessionId != null ? sessions.get(sessionId) : null;
+        return state == null || !state.isLive(System.currentTimeMillis());
+    }
+
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        SessionState state = sessionId != null ? sessions.get(sessionId) : null;
+        return state != null && state.isLive(System.currentTimeMillis()) ? state.userId : null;
+    }
+
+    /**
+     * Create a session for {@code userId} expiring after {@link GossipConfig#sessionTtl()}.
+     *
+     * @return new session id
+     */
+    public String createSession(String userId) {
+        if (userId == null || userId.isBlank()) {
+            throw new IllegalArgumentException("GossipSessionStore: userId must be non-blank");
+        }
+        if (userId.getBytes(StandardCharsets.UTF_8).length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("GossipSessionStore: user id longer than " + MAX_ID_BYTES + " bytes");
+        }
+        String sessionId = idGenerator.nextString();
+        change(sessionId, new SessionState(userId, System.currentTimeMillis() + ttlMillis, false));
+        return sessionId;
+    }
+
+    /**
+     * Extend a live session to {@code now + sessionTtl}; for sliding expiration.
+     *
+     * @return true if the session is live
+     */
+    public boolean extend(String sessionId) {
+        long now = System.currentTimeMillis();
+        SessionState state = sessionId != null ? sessions.get(sessionId) : null;
+        if (state == null || !state.isLive(now)) {
+            return false;
+        }
+        change(sessionId, new SessionState(state.userId, now + ttlMillis, false));
+        return true;
+    }
+
+    /**
+     * Revoke a session on every node. A session not known here yet is revoked when it arrives.
+     *
+     * @return true if it was live here
+     */
+    public boolean revoke(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()
+                || sessionId.getBytes(StandardCharsets.UTF_8).length > MAX_ID_BYTES) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        SessionState state = sessions.get(sessionId);
+        boolean live = state != null && state.isLive(now);
+        // Unknown here: a tombstone lasting as long as the session could.
+        change(sessionId, new SessionState("", now + ttlMillis, true));
+        return live;
+    }
+
+    /** Sessions held here, including revoked ones not yet expired. */
+    public int size() {
+        return sessions.size();
+    }
+
+    /** Address the socket is bound to, e.g. to learn an ephemeral port. */
+    public InetSocketAddress localAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException("GossipSessionStore: closed", e);
+        }
+    }
+
+    /** Datagrams sent so far. */
+    public long framesSent() {
+        return framesSent.get();
+    }
+
+    /** Authentic datagrams received so far. */
+    public long framesReceived() {
+        return framesReceived.get();
+    }
+
+    /** Datagrams dropped as malformed or not authentic. */
+    public long rejectedFrames() {
+        return rejectedFrames.get();
+    }
+
+    /** Received sessions that changed local state. */
+    public long sessionsMerged() {
+        return sessionsMerged.get();
+    }
+
+    /** Send pending changes, then stop gossiping and close the socket. */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(gossiper);
+        join(gossiper);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        join(reader);
+    }
+
+    private void change(String sessionId, SessionState state) {
+        merge(sessionId, state);
+        dirty.add(sessionId);
+    }
+
+    /** @return true if local state changed */
+    private boolean merge(String sessionId, SessionState incoming) {
+        boolean[] changed = new boolean[1];
+        sessions.compute(sessionId, (id, old) -> {
+            SessionState merged = old == null ? incoming : old.merge(incoming);
+            if (!merged.equals(old)) {
+                digest.getAndAccumulate(bucket(id), hash(id, old) ^ hash(id, merged), (a, b) -> a ^ b);
+                changed[0] = true;
+            }
+            return merged;
+        });
+        return changed[0];
+    }
+
+    private void purgeExpired(long now) {
+        sessions.forEach((id, state) -> {
+            if (state.expiresAtMillis <= now) {
+                sessions.computeIfPresent(id, (key, current) -> {
+                    if (current.expiresAtMillis > now) {
+                        return current;
+                    }
+                    digest.getAndAccumulate(bucket(key), hash(key, current), (a, b) -> a ^ b);
+                    return null;
+                });
+            }
+        });
+    }
+
+    private void runGossiper() {
+        GossipCodec codec = new GossipCodec(config.secret(), config.maxFrameBytes());
+        long intervalNanos = config.gossipInterval().toNanos();
+        long antiEntropyNanos = config.antiEntropyInterval().toNanos();
+        long nextAntiEntropy = System.nanoTime() + antiEntropyNanos;
+        while (!closed) {
+            LockSupport.parkNanos(this, intervalNanos);
+            sendDirty(codec);
+            long now = System.nanoTime();
+            if (now - nextAntiEntropy >= 0 && !closed) {
+                purgeExpired(System.currentTimeMillis());
+                if (!config.peers().isEmpty()) {
+                    List<InetSocketAddress> peers = config.peers();
+                    send(codec.encodeDigest(digestSnapshot()), peers.get(ThreadLocalRandom.current().nextInt(peers.size())));
+                }
+                nextAntiEntropy = now + antiEntropyNanos;
+            }
+        }
+        sendDirty(codec);
+    }
+
+    private void sendDirty(GossipCodec codec) {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, SessionState>> changed = new ArrayList<>();
+        for (String sessionId : dirty) {
+            dirty.remove(sessionId);
+            SessionState state = sessions.get(sessionId);
+            if (state != null) {
+                changed.add(Map.entry(sessionId, state));
+            }
+        }
+        for (ByteBuffer frame : codec.encodeSessions(changed, System.currentTimeMillis())) {
+            for (InetSocketAddress peer : config.peers()) {
+                send(frame, peer);
+            }
+        }
+    }
+
+    private void runReader() {
+        GossipCodec codec = new GossipCodec(config.secret(), config.maxFrameBytes());
+        ByteBuffer buffer = ByteBuffer.allocate(65_535);
+        while (!closed) {
+            buffer.clear();
+            SocketAddress from;
+            try {
+                from = channel.receive(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                continue;
+            }
+            GossipCodec.Message message = codec.decode(buffer.flip());
+            if (message == null) {
+                rejectedFrames.incrementAndGet();
+                continue;
+            }
+            framesReceived.incrementAndGet();
+            switch (message.type()) {
+                case GossipCodec.SESSIONS -> {
+                    long now = System.currentTimeMillis();
+                    message.sessions().forEach((sessionId, state) -> {
+                        if (state.expiresAtMillis > now && merge(sessionId, state)) {
+                            sessionsMerged.incrementAndGet();
+                        }
+                    });
+                }
+                case GossipCodec.DIGEST -> {
+                    long[] own = digestSnapshot();
+                    long mask = 0;
+                    for (int i = 0; i < GossipCodec.BUCKETS; i++) {
+                        if (own[i] != message.digest()[i]) {
+                            mask |= 1L << i;
+                        }
+                    }
+                    if (mask != 0) {
+                        sendBuckets(codec, mask, from);
+                        send(codec.encodePull(mask), from);
+                    }
+                }
+                default -> sendBuckets(codec, message.mask(), from);
+            }
+        }
+    }
+
+    private void sendBuckets(GossipCodec codec, long mask, SocketAddress to) {
+        List<Map.Entry<String, SessionState>> selected = new ArrayList<>();
+        sessions.forEach((sessionId, state) -> {
+            if ((mask & 1L << bucket(sessionId)) != 0) {
+                selected.add(Map.entry(sessionId, state));
+            }
+        });
+        for (ByteBuffer frame : codec.encodeSessions(selected, System.currentTimeMillis())) {
+            send(frame, to);
+        }
+    }
+
+    private void send(ByteBuffer frame, SocketAddress to) {
+        try {
+            channel.send(frame.duplicate(), to);
+            framesSent.incrementAndGet();
+        } catch (IOException e) {
+            // Lost like any datagram: anti-entropy repairs it.
+        }
+    }
+
+    private long[] digestSnapshot() {
+        long[] snapshot = new long[GossipCodec.BUCKETS];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = digest.get(i);
+        }
+        return snapshot;
+    }
+
+    private static int bucket(String sessionId) {
+        return (int) (mix(sessionId.hashCode()) & (GossipCodec.BUCKETS - 1));
+    }
+
+    /** Hash of one session's state; 0 for none. Stable across JVMs: String hash codes are specified. */
+    private static long hash(String sessionId, SessionState state) {
+        if (state == null) {
+            return 0;
+        }
+        long h = mix(sessionId.hashCode());
+        h = mix(h ^ state.userId.hashCode());
+        h = mix(h ^ state.expiresAtMillis);
+        return mix(h ^ (state.revoked ? 1 : 2));
+    }
+
+    /** SplitMix64 finalizer. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.posadskiy.restsecurity.cluster;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Consistent-hash ring mapping keys to nodes. Each node is placed on the ring at {@code virtualNodes} points;
+ * a key belongs to the node of the first point at or after its hash. Adding or removing one of N nodes moves
+ * only about 1/N of the keys, all to or from that node. Immutable and thread-safe; rings built from the same
+ * node ids agree on every owner, whatever the order or the JVM.
+ */
+public final class HashRing {
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * @param nodes        ids of the nodes; at least one, duplicates ignored
+     * @param virtualNodes points per node; more spread keys more evenly. 100-200 is typical
+     */
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes == null || nodes.isEmpty()) {
+            throw new IllegalArgumentException("HashRing: at least one node is required");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("HashRing: virtualNodes must be positive");
+        }
+        this.nodes = List.copyOf(new TreeSet<>(nodes));
+        if (this.nodes.size() > 0xFFFF) {
+            throw new IllegalArgumentException("HashRing: at most 65535 nodes");
+        }
+        int size = this.nodes.size() * virtualNodes;
+        long[] hashes = new long[size];
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // Low bits carry the node so ties, however unlikely, still order deterministically.
+                hashes[node * virtualNodes + i] = hash(this.nodes.get(node) + '#' + i) & ~0xFFFFL | node;
+            }
+        }
+        Arrays.sort(hashes);
+        this.points = hashes;
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            owners[i] = (int) (hashes[i] & 0xFFFF);
+        }
+    }
+
+    /** Id of the node owning {@code key}. */
+    public String owner(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return nodes.get(owners[index == points.length ? 0 : index]);
+    }
+
+    /** Node ids, sorted. */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /** 64-bit FNV-1a over the UTF-16 chars, then a SplitMix64 finalizer for avalanche. */
+    static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,76 @@
+package com.posadskiy.restsecurity.cluster;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Configuration for {@link ShardedSessionController}.
+ *
+ * @param nodeId               id of this node; must be one of {@code members}
+ * @param bind                 local address to serve forwarded lookups on. Default this node's member address
+ * @param members              every node of the cluster, this one included: id to RPC address
+ * @param secret               shared key authenticating requests and replies (HMAC-SHA256), at least 32 bytes
+ * @param virtualNodes         points per node on the {@link HashRing}. Default 160
+ * @param timeout              connect and read timeout of a forwarded lookup, and how long a served connection
+ *                             may wait for its first request. Default 1 second
+ * @param connectionsPerPeer   idle connections kept open to each other node. Default 8
+ * @param maxServedConnections connections from other nodes served at once, counted from their first authentic
+ *                             request; more are closed. Default 256
+ */
+public record ShardConfig(
+        String nodeId,
+        InetSocketAddress bind,
+        Map<String, InetSocketAddress> members,
+        byte[] secret,
+        int virtualNodes,
+        Duration timeout,
+        int connectionsPerPeer,
+        int maxServedConnections
+) {
+
+    public ShardConfig {
+        if (members == null || nodeId == null || !members.containsKey(nodeId)) {
+            throw new IllegalArgumentException("ShardConfig: nodeId must be one of the members");
+        }
+        members = Map.copyOf(members);
+        bind = bind != null ? bind : members.get(nodeId);
+        if (secret == null || secret.length < 32) {
+            throw new IllegalArgumentException("ShardConfig: secret must be at least 32 bytes");
+        }
+        secret = secret.clone();
+        virtualNodes = virtualNodes > 0 ? virtualNodes : 160;
+        timeout = timeout != null && !timeout.isNegative() && !timeout.isZero() ? timeout : Duration.ofSeconds(1);
+        connectionsPerPeer = connectionsPerPeer > 0 ? connectionsPerPeer : 8;
+        maxServedConnections = maxServedConnections > 0 ? maxServedConnections : 256;
+    }
+
+    /** This node {@code nodeId} of {@code members}, defaults for the rest. */
+    public static ShardConfig of(String nodeId, Map<String, InetSocketAddress> members, byte[] secret) {
+        return new ShardConfig(nodeId, null, members, secret, 0, null, 0, 0);
+    }
+
+    /** Copy serving on {@code bind}, e.g. the wildcard address while peers use a routable one. */
+    public ShardConfig withBind(InetSocketAddress bind) {
+        return new ShardConfig(nodeId, bind, members, secret, virtualNodes, timeout, connectionsPerPeer,
+                maxServedConnections);
+    }
+
+    /** Copy with {@code virtualNodes} ring points per node. */
+    public ShardConfig withVirtualNodes(int virtualNodes) {
+        return new ShardConfig(nodeId, bind, members, secret, virtualNodes, timeout, connectionsPerPeer,
+                maxServedConnections);
+    }
+
+    /** Copy with forwarding timeout {@code timeout}. */
+    public ShardConfig withTimeout(Duration timeout) {
+        return new ShardConfig(nodeId, bind, members, secret, virtualNodes, timeout, connectionsPerPeer,
+                maxServedConnections);
+    }
+
+    /** Copy serving at most {@code maxServedConnections} connections from other nodes at once. */
+    public ShardConfig withMaxServedConnections(int maxServedConnections) {
+        return new ShardConfig(nodeId, bind, members, secret, virtualNodes, timeout, connectionsPerPeer,
+                maxServedConnections);
+    }
+}
@@ -0,0 +1,432 @@
+package com.posadskiy.restsecurity.cluster;
+
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionLookup;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits sessions between the nodes of a cluster with a {@link HashRing}, so that each node's
+ * {@code local} controller (typically a cache in front of the shared store) holds only its own shard.
+ * Lookups of a session owned by another node are forwarded to it over a small binary TCP protocol and
+ * answered from its local controller; a load balancer can avoid the hop by routing on {@link #ownerOf}.
+ *
+ * <p>Each request and reply is one message: length (2 bytes), then for a request the operation (1 byte), a
+ * nonce (8 bytes) and the session id (UTF-8), for a reply the status (1 byte: missing, live, expired, failed),
+ * the request's nonce and the user id; then a 16-byte MAC over all of it (see {@link FrameMac}). The nonce binds
+ * each reply to its request, so a recorded reply cannot answer another lookup, and no status has the value
+ * of the operation, so a request cannot pass as a reply. Connections to each peer are pooled and reused; at
+ * most {@link ShardConfig#maxServedConnections()} from other nodes are served at once, counted from their
+ * first authentic request. As many again may wait for that request, each for at most
+ * {@link ShardConfig#timeout()}, so connections that never authenticate cannot take a peer's place. Bind to a
+ * private network: the MAC authenticates messages but does not encrypt them.
+ *
+ * <p>The three session checks of an enforcement cost one forwarded lookup ({@link EnforcementMemo}). A node
+ * answers forwarded lookups from its local controller even if its own view of the membership disagrees, so a
+ * lookup is forwarded at most once.
+ *
+ * <pre>
+ * Map&lt;String, InetSocketAddress&gt; members = Map.of(
+ *         "node-a", new InetSocketAddress("node-a", 7800), "node-b", new InetSocketAddress("node-b", 7800));
+ * ShardedSessionController sessions = new ShardedSessionController(
+ *         new CachingSessionSecurityController(store, SecurityCacheConfig.defaults()),
+ *         ShardConfig.of("node-a", members, secret));
+ * SecurityEnforcer enforcer = new SecurityEnforcer(sessions, users);
+ * </pre>
+ */
+public final class ShardedSessionController implements SessionSecurityController, AutoCloseable {
+
+    private static final int MAX_ID_BYTES = 1024;
+    private static final int MAX_BODY_BYTES = 0xFFFF - FrameMac.LENGTH;
+    /** Returned by {@link Connection#lookup} when the owner's local controller failed. */
+    private static final SessionLookup FAILED_LOOKUP = new SessionLookup("", true);
+
+    /** How long a served connection may stay idle between authentic requests; peers reconnect after it. */
+    private static final int SERVED_IDLE_MILLIS = 60_000;
+
+    private static final int NONCE_LENGTH = 8;
+    private static final SecureRandom NONCES = new SecureRandom();
+
+    private static final byte LOOKUP = 0x10;
+    private static final byte MISSING = 0;
+    private static final byte LIVE = 1;
+    private static final byte EXPIRED = 2;
+    private static final byte FAILED = 3;
+
+    private final SessionSecurityController local;
+    private final ShardConfig config;
+    private final int timeoutMillis;
+    private final ServerSocket server;
+    private final Thread acceptor;
+    /** Accepted connections waiting for their first authentic request. */
+    private final Set<Socket> pending = ConcurrentHashMap.newKeySet();
+    private final Set<Socket> served = ConcurrentHashMap.newKeySet();
+    private final Map<InetSocketAddress, Queue<Connection>> idle = new ConcurrentHashMap<>();
+    private final EnforcementMemo<SessionLookup> lastLookup = new EnforcementMemo<>();
+    private volatile Membership membership;
+    private volatile boolean closed;
+
+    private final AtomicLong forwardedLookups = new AtomicLong();
+    private final AtomicLong servedLookups = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    private record Membership(HashRing ring, Map<String, InetSocketAddress> addresses) {}
+
+    /**
+     * Start serving lookups of this node's shard.
+     *
+     * @param local controller answering for sessions this node owns
+     * @throws IllegalStateException if the server socket cannot be bound
+     */
+    public ShardedSessionController(SessionSecurityController local, ShardConfig config) {
+        this.local = local;
+        this.config = config;
+        this.timeoutMillis = (int) Math.min(Integer.MAX_VALUE, config.timeout().toMillis());
+        this.membership = new Membership(new HashRing(config.members().keySet(), config.virtualNodes()),
+                config.members());
+        try {
+            this.server = new ServerSocket();
+            server.bind(config.bind());
+        } catch (IOException e) {
+            throw new IllegalStateException("ShardedSessionController: could not bind " + config.bind(), e);
+        }
+        this.acceptor = new Thread(this::runAcceptor, "rest-security-shard-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        if (isLocal(sessionId)) {
+            return local.isSessionExist(sessionId);
+        }
+        return forwarded(sessionId) != null;
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        if (isLocal(sessionId)) {
+            return local.isSessionExpired(sessionId);
+        }
+        SessionLookup lookup = forwarded(sessionId);
+        return lookup == null || lookup.expired();
+    }
+
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        if (isLocal(sessionId)) {
+            return local.getUserIdBySessionId(sessionId);
+        }
+        SessionLookup lookup = forwarded(sessionId);
+        return lookup != null ? lookup.userId() : null;
+    }
+
+    /** Id of the node owning {@code sessionId}; for routing requests to it (session affinity). */
+    public String ownerOf(String sessionId) {
+        return membership.ring.owner(sessionId);
+    }
+
+    /** True if this node owns {@code sessionId}, or it is not a valid id and is not worth forwarding. */
+    public boolean isLocal(String sessionId) {
+        return sessionId == null || sessionId.isBlank()
+                || sessionId.length() > MAX_ID_BYTES / 3 && utf8(sessionId).length > MAX_ID_BYTES
+                || config.nodeId().equals(membership.ring.owner(sessionId));
+    }
+
+    /**
+     * Replace the cluster members, e.g. when a node joins or leaves. Only the sessions between the changed
+     * node's ring points and their neighbours move, about 1/N of them; lookups follow from the next call.
+     * Entries this node no longer owns stay in the local cache until they expire.
+     *
+     * @param members every node, this one included: id to RPC address
+     */
+    public void updateMembers(Map<String, InetSocketAddress> members) {
+        if (members == null || !members.containsKey(config.nodeId())) {
+            throw new IllegalArgumentException("ShardedSessionController: members must include " + config.nodeId());
+        }
+        Map<String, InetSocketAddress> addresses = Map.copyOf(members);
+        membership = new Membership(new HashRing(addresses.keySet(), config.virtualNodes()), addresses);
+        idle.keySet().removeIf(address -> {
+            if (addresses.containsValue(address)) {
+                return false;
+            }
+            closeAll(idle.get(address));
+            return true;
+        });
+    }
+
+    /** Address the server socket is bound to, e.g. to learn an ephemeral port. */
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) server.getLocalSocketAddress();
+    }
+
+    /** Lookups sent to other nodes so far. */
+    public long forwardedLookups() {
+        return forwardedLookups.get();
+    }
+
+    /** Lookups answered for other nodes so far. */
+    public long servedLookups() {
+        return servedLookups.get();
+    }
+
+    /** Connections dropped for a malformed or unauthentic request, or refused over the connection limit. */
+    public long rejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /** Stop serving and close every connection. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        pending.forEach(ShardedSessionController::closeQuietly);
+        served.forEach(ShardedSessionController::closeQuietly);
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        idle.values().forEach(ShardedSessionController::closeAll);
+        idle.clear();
+    }
+
+    private SessionLookup forwarded(String sessionId) {
+        return lastLookup.get(sessionId, id -> {
+            Membership current = membership;
+            String owner = current.ring.owner(id);
+            return forward(owner, current.addresses.get(owner), id);
+        });
+    }
+
+    /** Ask {@code owner}, on a pooled connection if one is open; a stale pool is retried once on a new one. */
+    private SessionLookup forward(String owner, InetSocketAddress address, String sessionId) {
+        forwardedLookups.incrementAndGet();
+        Queue<Connection> pool = idle.computeIfAbsent(address, key -> new ConcurrentLinkedQueue<>());
+        byte[] id = utf8(sessionId);
+        Connection connection = pool.poll();
+        if (connection != null) {
+            try {
+                return release(pool, connection, connection.lookup(id));
+            } catch (IOException e) {
+                // The owner restarted or dropped idle connections: the others are as stale.
+                closeQuietly(connection.socket);
+                closeAll(pool);
+            }
+        }
+        try {
+            connection = new Connection(address, timeoutMillis, config.secret());
+        } catch (IOException e) {
+            throw new IllegalStateException("ShardedSessionController: could not connect to " + owner, e);
+        }
+        try {
+            return release(pool, connection, connection.lookup(id));
+        } catch (IOException e) {
+            closeQuietly(connection.socket);
+            throw new IllegalStateException("ShardedSessionController: lookup on " + owner + " failed", e);
+        }
+    }
+
+    private SessionLookup release(Queue<Connection> pool, Connection connection, SessionLookup lookup) {
+        if (closed || pool.size() >= config.connectionsPerPeer()) {
+            closeQuietly(connection.socket);
+        } else {
+            pool.offer(connection);
+        }
+        if (lookup == FAILED_LOOKUP) {
+            throw new IllegalStateException("ShardedSessionController: the owner's store failed the lookup");
+        }
+        return lookup;
+    }
+
+    private void runAcceptor() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                continue;
+            }
+            if (pending.size() >= config.maxServedConnections()) {
+                rejectedRequests.incrementAndGet();
+                closeQuietly(socket);
+                continue;
+            }
+            pending.add(socket);
+            Thread handler = new Thread(() -> serve(socket), "rest-security-shard-rpc");
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        FrameMac mac = new FrameMac(config.secret());
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMillis);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            boolean authenticated = false;
+            while (!closed) {
+                ByteBuffer request = read(in, mac);
+                if (request == null || request.remaining() < 1 + NONCE_LENGTH || request.get() != LOOKUP) {
+                    rejectedRequests.incrementAndGet();
+                    return;
+                }
+                if (!authenticated) {
+                    pending.remove(socket);
+                    if (served.size() >= config.maxServedConnections()) {
+                        rejectedRequests.incrementAndGet();
+                        return;
+                    }
+                    served.add(socket);
+                    socket.setSoTimeout(Math.max(timeoutMillis, SERVED_IDLE_MILLIS));
+                    authenticated = true;
+                }
+                long nonce = request.getLong();
+                String sessionId = new String(request.array(), request.position(), request.remaining(),
+                        StandardCharsets.UTF_8);
+                servedLookups.incrementAndGet();
+                write(out, mac, answer(nonce, sessionId));
+            }
+        } catch (IOException e) {
+            // Peer closed the connection, went quiet for too long, or we are closing.
+        } finally {
+            pending.remove(socket);
+            served.remove(socket);
+        }
+    }
+
+    /** Status byte, the request's nonce, then the user id, from the local controller. */
+    private byte[] answer(long nonce, String sessionId) {
+        try {
+            if (!local.isSessionExist(sessionId)) {
+                return reply(MISSING, nonce, new byte[0]);
+            }
+            boolean expired = local.isSessionExpired(sessionId);
+            String userId = local.getUserIdBySessionId(sessionId);
+            byte[] user = utf8(userId != null ? userId : "");
+            if (user.length > MAX_BODY_BYTES - 1 - NONCE_LENGTH) {
+                return reply(FAILED, nonce, new byte[0]);
+            }
+            return reply(expired ? EXPIRED : LIVE, nonce, user);
+        } catch (RuntimeException e) {
+            return reply(FAILED, nonce, new byte[0]);
+        }
+    }
+
+    private static byte[] reply(byte status, long nonce, byte[] user) {
+        return ByteBuffer.allocate(1 + NONCE_LENGTH + user.length).put(status).putLong(nonce).put(user).array();
+    }
+
+    /** Write length, {@code body} and MAC; the MAC covers the length too. */
+    private static void write(DataOutputStream out, FrameMac mac, byte[] body) throws IOException {
+        ByteBuffer message = ByteBuffer.allocate(2 + body.length + FrameMac.LENGTH);
+        message.putShort((short) (body.length + FrameMac.LENGTH)).put(body);
+        mac.seal(message);
+        out.write(message.array(), 0, message.limit());
+        out.flush();
+    }
+
+    /** @return the body of an authentic message, or null */
+    private static ByteBuffer read(DataInputStream in, FrameMac mac) throws IOException {
+        int length = in.readUnsignedShort();
+        if (length <= FrameMac.LENGTH) {
+            return null;
+        }
+        byte[] message = new byte[2 + length];
+        message[0] = (byte) (length >>> 8);
+        message[1] = (byte) length;
+        in.readFully(message, 2, length);
+        ByteBuffer body = mac.open(ByteBuffer.wrap(message));
+        return body != null ? body.position(2) : null;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void closeAll(Queue<Connection> pool) {
+        if (pool == null) {
+            return;
+        }
+        for (Connection connection; (connection = pool.poll()) != null; ) {
+            closeQuietly(connection.socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    /** One client connection to a peer; used by one thread at a time. */
+    private static final class Connection {
+
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final FrameMac mac;
+
+        Connection(InetSocketAddress address, int timeoutMillis, byte[] secret) throws IOException {
+            this.socket = new Socket();
+            try {
+                socket.connect(address, timeoutMillis);
+                socket.setSoTimeout(timeoutMillis);
+                socket.setTcpNoDelay(true);
+                this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } catch (IOException e) {
+                closeQuietly(socket);
+                throw e;
+            }
+            this.mac = new FrameMac(secret);
+        }
+
+        /** @return the session, or null if the owner does not know it */
+        SessionLookup lookup(byte[] sessionId) throws IOException {
+            long nonce = NONCES.nextLong();
+            write(out, mac, ByteBuffer.allocate(1 + NONCE_LENGTH + sessionId.length)
+                    .put(LOOKUP).putLong(nonce).put(sessionId).array());
+            ByteBuffer reply = read(in, mac);
+            if (reply == null || reply.remaining() < 1 + NONCE_LENGTH) {
+                throw new IOException("reply is not authentic");
+            }
+            byte status = reply.get();
+            if (reply.getLong() != nonce) {
+                throw new IOException("reply does not answer this request");
+            }
+            String userId = new String(reply.array(), reply.position(), reply.remaining(), StandardCharsets.UTF_8);
+            return switch (status) {
+                case MISSING -> null;
+                case LIVE, EXPIRED -> new SessionLookup(userId, status == EXPIRED);
+                case FAILED -> FAILED_LOOKUP;
+                default -> throw new IOException("reply has unknown status " + status);
+            };
+        }
+    }
+}
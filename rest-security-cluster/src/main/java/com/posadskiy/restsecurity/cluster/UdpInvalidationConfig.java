@@ -0,0 +1,98 @@
+package com.posadskiy.restsecurity.cluster;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration for {@link UdpInvalidationTransport}. Give either {@code peers} (unicast to each) or
+ * {@code group} (multicast).
+ *
+ * @param bind              local address to receive on
+ * @param peers             addresses of the other nodes, for unicast. Default none
+ * @param group             multicast group to send to and join, instead of peers. Default none
+ * @param multicastInterface name of the network interface to join the group on (e.g. {@code eth0}); multicast only
+ * @param secret            shared key authenticating frames (HMAC-SHA256), at least 32 bytes
+ * @param flushInterval     how long events are gathered into one frame after the first. Default 1 ms
+ * @param heartbeatInterval how often a node announces its last frame, so lost tails are noticed. Default 1 second
+ * @param degradedTtl       cache ttl while frames are being lost. Default 2 seconds
+ * @param maxFrameBytes     largest datagram sent, including header and MAC. Default 1400, below a typical MTU
+ */
+public record UdpInvalidationConfig(
+        InetSocketAddress bind,
+        List<InetSocketAddress> peers,
+        InetSocketAddress group,
+        String multicastInterface,
+        byte[] secret,
+        Duration flushInterval,
+        Duration heartbeatInterval,
+        Duration degradedTtl,
+        int maxFrameBytes
+) {
+
+    public UdpInvalidationConfig {
+        if (bind == null) {
+            throw new IllegalArgumentException("UdpInvalidationConfig: bind address is required");
+        }
+        peers = peers != null ? List.copyOf(peers) : List.of();
+        if (peers.isEmpty() == (group == null)) {
+            throw new IllegalArgumentException("UdpInvalidationConfig: give either peers or a multicast group");
+        }
+        if (group != null && !group.getAddress().isMulticastAddress()) {
+            throw new IllegalArgumentException("UdpInvalidationConfig: " + group + " is not a multicast address");
+        }
+        if (group != null && (multicastInterface == null || multicastInterface.isBlank())) {
+            throw new IllegalArgumentException("UdpInvalidationConfig: multicast needs a network interface");
+        }
+        if (secret == null || secret.length < 32) {
+            throw new IllegalArgumentException("UdpInvalidationConfig: secret must be at least 32 bytes");
+        }
+        secret = secret.clone();
+        flushInterval = flushInterval != null && !flushInterval.isNegative() ? flushInterval : Duration.ofMillis(1);
+        heartbeatInterval = positiveOr(heartbeatInterval, Duration.ofSeconds(1));
+        degradedTtl = positiveOr(degradedTtl, Duration.ofSeconds(2));
+        maxFrameBytes = maxFrameBytes > 0 ? maxFrameBytes : 1400;
+        if (maxFrameBytes < 256 || maxFrameBytes > 65_507) {
+            throw new IllegalArgumentException("UdpInvalidationConfig: maxFrameBytes must be 256-65507");
+        }
+    }
+
+    /** Unicast to each of {@code peers}, defaults for the rest. */
+    public static UdpInvalidationConfig unicast(InetSocketAddress bind, List<InetSocketAddress> peers, byte[] secret) {
+        return new UdpInvalidationConfig(bind, peers, null, null, secret, null, null, null, 0);
+    }
+
+    /** Multicast to {@code group}, received on {@code group}'s port; defaults for the rest. */
+    public static UdpInvalidationConfig multicast(InetSocketAddress group, String networkInterface, byte[] secret) {
+        return new UdpInvalidationConfig(new InetSocketAddress(group.getPort()), null, group, networkInterface, secret,
+                null, null, null, 0);
+    }
+
+    /** Copy with batching window {@code flushInterval}; zero sends each event at once. */
+    public UdpInvalidationConfig withFlushInterval(Duration flushInterval) {
+        return new UdpInvalidationConfig(bind, peers, group, multicastInterface, secret, flushInterval,
+                heartbeatInterval, degradedTtl, maxFrameBytes);
+    }
+
+    /** Copy with heartbeat period {@code heartbeatInterval}. */
+    public UdpInvalidationConfig withHeartbeatInterval(Duration heartbeatInterval) {
+        return new UdpInvalidationConfig(bind, peers, group, multicastInterface, secret, flushInterval,
+                heartbeatInterval, degradedTtl, maxFrameBytes);
+    }
+
+    /** Copy with cache ttl {@code degradedTtl} while frames are lost. */
+    public UdpInvalidationConfig withDegradedTtl(Duration degradedTtl) {
+        return new UdpInvalidationConfig(bind, peers, group, multicastInterface, secret, flushInterval,
+                heartbeatInterval, degradedTtl, maxFrameBytes);
+    }
+
+    /** Copy with datagram size limit {@code maxFrameBytes}. */
+    public UdpInvalidationConfig withMaxFrameBytes(int maxFrameBytes) {
+        return new UdpInvalidationConfig(bind, peers, group, multicastInterface, secret, flushInterval,
+                heartbeatInterval, degradedTtl, maxFrameBytes);
+    }
+
+    private static Duration positiveOr(Duration value, Duration fallback) {
+        return value != null && !value.isNegative() && !value.isZero() ? value : fallback;
+    }
+}
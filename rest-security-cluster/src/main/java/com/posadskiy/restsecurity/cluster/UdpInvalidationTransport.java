@@ -0,0 +1,394 @@
+package com.posadskiy.restsecurity.cluster;
+
+import com.posadskiy.restsecurity.cache.InvalidationEvent;
+import com.posadskiy.restsecurity.cache.InvalidationListener;
+import com.posadskiy.restsecurity.cache.InvalidationTransport;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link InvalidationTransport} over UDP, unicast to a fixed list of peers or multicast to a group.
+ *
+ * <ul>
+ *   <li>Events sent within {@link UdpInvalidationConfig#flushInterval()} go out together in compact binary
+ *       frames (see {@link FrameCodec}), authenticated with the shared secret.</li>
+ *   <li>Frames are numbered per node; receivers drop duplicates and notice gaps. Heartbeats carry the last
+ *       number sent, so a lost last frame is noticed too, and a peer whose heartbeats stop counts as lost.</li>
+ *   <li>Frames carry the sender's clock, and a frame more than {@value #FRESH_HEARTBEATS} heartbeats older or
+ *       newer than the receiver's clock is rejected. Within that window a replayed frame is a duplicate, and a
+ *       peer is only forgotten well after it, so a recorded frame cannot be replayed later to a node that no
+ *       longer remembers its sender. Node clocks must therefore agree to within that window.</li>
+ *   <li>On a loss the local caches are cleared and their ttl capped at {@link UdpInvalidationConfig#degradedTtl()}
+ *       (see {@link InvalidationEvent.TtlCapped}) until nothing has been lost for a while.</li>
+ * </ul>
+ *
+ * <pre>
+ * UdpInvalidationTransport transport = new UdpInvalidationTransport(UdpInvalidationConfig.unicast(
+ *         new InetSocketAddress(7600), List.of(new InetSocketAddress("node-b", 7600)), secret));
+ * bus.attach(transport);
+ * </pre>
+ *
+ * Frames are authenticated but not encrypted, and a restarted node starts a new sequence under a new id.
+ */
+public final class UdpInvalidationTransport implements InvalidationTransport {
+
+    /** Heartbeats a peer may miss before it counts as lost. */
+    private static final int SILENT_HEARTBEATS = 3;
+    /** Heartbeats after which a silent peer is forgotten, e.g. a node that was shut down. */
+    private static final int FORGET_HEARTBEATS = 30;
+    /** Heartbeats a frame's sent time may differ from the local clock; well below {@link #FORGET_HEARTBEATS}. */
+    private static final int FRESH_HEARTBEATS = FORGET_HEARTBEATS / 2;
+
+    private final UdpInvalidationConfig config;
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final DatagramChannel channel;
+    private final List<InetSocketAddress> targets;
+    private final Queue<InvalidationEvent> outbox = new ConcurrentLinkedQueue<>();
+    private final Map<Long, PeerState> peers = new ConcurrentHashMap<>();
+    private final long heartbeatNanos;
+    private final long recoveryNanos;
+    private final long freshMillis;
+    private final AtomicBoolean degraded = new AtomicBoolean();
+    private volatile long degradedUntilNanos;
+    private volatile InvalidationListener receiver;
+    private volatile boolean closed;
+    private Thread sender;
+    private Thread reader;
+    private long lastSequence;
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong duplicateFrames = new AtomicLong();
+    private final AtomicLong lostFrames = new AtomicLong();
+    private final AtomicLong rejectedFrames = new AtomicLong();
+
+    /**
+     * Open and bind the socket; nothing is sent or received before {@link #start}.
+     *
+     * @throws IllegalStateException if the socket cannot be opened, bound or joined to the group
+     */
+    public UdpInvalidationTransport(UdpInvalidationConfig config) {
+        this.config = config;
+        this.heartbeatNanos = config.heartbeatInterval().toNanos();
+        this.recoveryNanos = Math.max(config.degradedTtl().toNanos(), SILENT_HEARTBEATS * heartbeatNanos);
+        this.freshMillis = Math.max(1, FRESH_HEARTBEATS * heartbeatNanos / 1_000_000);
+        this.targets = config.group() != null ? List.of(config.group()) : config.peers();
+        try {
+            this.channel = open(config);
+        } catch (IOException e) {
+            throw new IllegalStateException("UdpInvalidationTransport: could not open " + config.bind(), e);
+        }
+    }
+
+    @Override
+    public synchronized void start(InvalidationListener receiver) {
+        if (this.receiver != null) {
+            throw new IllegalStateException("UdpInvalidationTransport: already started");
+        }
+        this.receiver = receiver;
+        sender = new Thread(this::runSender, "rest-security-invalidation-sender");
+        reader = new Thread(this::runReader, "rest-security-invalidation-reader");
+        sender.setDaemon(true);
+        reader.setDaemon(true);
+        sender.start();
+        reader.start();
+    }
+
+    @Override
+    public void send(InvalidationEvent event) {
+        if (closed || event instanceof InvalidationEvent.TtlCapped) {
+            return;
+        }
+        outbox.add(event);
+        LockSupport.unpark(sender);
+    }
+
+    /** Send what is queued, then stop both threads and close the socket. */
+    @Override
+    public void close() {
+        closed = true;
+        if (sender != null) {
+            LockSupport.unpark(sender);
+            join(sender);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        if (reader != null) {
+            join(reader);
+        }
+    }
+
+    /** Address the socket is bound to, e.g. to learn an ephemeral port. */
+    public InetSocketAddress localAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException("UdpInvalidationTransport: closed", e);
+        }
+    }
+
+    /** Random id of this node, fixed until restart. */
+    public long nodeId() {
+        return nodeId;
+    }
+
+    /** True while frames are being lost and caches run with the degraded ttl. */
+    public boolean isDegraded() {
+        return degraded.get();
+    }
+
+    /** Datagrams sent so far, events and heartbeats, counting each target. */
+    public long framesSent() {
+        return framesSent.get();
+    }
+
+    /** Authentic frames received from other nodes so far. */
+    public long framesReceived() {
+        return framesReceived.get();
+    }
+
+    /** Event frames received more than once and dropped. */
+    public long duplicateFrames() {
+        return duplicateFrames.get();
+    }
+
+    /** Event frames known to be lost. */
+    public long lostFrames() {
+        return lostFrames.get();
+    }
+
+    /** Datagrams dropped as malformed, not authentic, or sent too long ago (e.g. replayed). */
+    public long rejectedFrames() {
+        return rejectedFrames.get();
+    }
+
+    private void runSender() {
+        FrameCodec codec = new FrameCodec(config.secret(), config.maxFrameBytes());
+        long flushNanos = config.flushInterval().toNanos();
+        long nextHeartbeat = System.nanoTime();
+        while (!closed) {
+            long now = System.nanoTime();
+            if (now - nextHeartbeat >= 0) {
+                sendAll(codec.encodeHeartbeat(nodeId, lastSequence));
+                checkPeers(now);
+                nextHeartbeat = now + heartbeatNanos;
+            }
+            if (outbox.isEmpty()) {
+                LockSupport.parkNanos(this, nextHeartbeat - System.nanoTime());
+                continue;
+            }
+            // Let more events join the frame.
+            long deadline = System.nanoTime() + flushNanos;
+            long remaining;
+            while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            flush(codec);
+        }
+        flush(codec);
+    }
+
+    private void flush(FrameCodec codec) {
+        List<InvalidationEvent> events = new ArrayList<>();
+        InvalidationEvent event;
+        while ((event = outbox.poll()) != null) {
+            events.add(event);
+        }
+        if (!events.isEmpty()) {
+            codec.encodeEvents(nodeId, () -> ++lastSequence, events).forEach(this::sendAll);
+        }
+    }
+
+    private void sendAll(ByteBuffer frame) {
+        for (SocketAddress target : targets) {
+            try {
+                channel.send(frame.duplicate(), target);
+                framesSent.incrementAndGet();
+            } catch (IOException e) {
+                // Lost like any datagram: the receiver notices the gap.
+            }
+        }
+    }
+
+    private void runReader() {
+        FrameCodec codec = new FrameCodec(config.secret(), config.maxFrameBytes());
+        ByteBuffer buffer = ByteBuffer.allocate(65_535);
+        while (!closed) {
+            buffer.clear();
+            try {
+                channel.receive(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                continue;
+            }
+            FrameCodec.Frame frame = codec.decode(buffer.flip());
+            if (frame == null || !isFresh(frame.sentMillis())) {
+                rejectedFrames.incrementAndGet();
+            } else if (frame.node() != nodeId) {
+                framesReceived.incrementAndGet();
+                receive(frame);
+            }
+        }
+    }
+
+    private boolean isFresh(long sentMillis) {
+        long now = System.currentTimeMillis();
+        return sentMillis >= now - freshMillis && sentMillis <= now + freshMillis;
+    }
+
+    private void receive(FrameCodec.Frame frame) {
+        long now = System.nanoTime();
+        PeerState peer = peers.computeIfAbsent(frame.node(),
+                node -> new PeerState(frame.type() == FrameCodec.EVENTS ? frame.sequence() - 1 : frame.sequence()));
+        peer.lastHeardNanos = now;
+        if (peer.silent) {
+            peer.silent = false;
+        }
+        if (frame.type() == FrameCodec.HEARTBEAT) {
+            long missing = peer.advanceTo(frame.sequence());
+            if (missing > 0) {
+                lost(missing, now);
+            }
+            return;
+        }
+        long gap = peer.accept(frame.sequence());
+        if (gap < 0) {
+            duplicateFrames.incrementAndGet();
+            return;
+        }
+        if (gap > 0) {
+            lost(gap, now);
+        }
+        frame.events().forEach(this::deliver);
+    }
+
+    /** Runs on the sender thread at each heartbeat: silent peers count as lost; recover when quiet. */
+    private void checkPeers(long now) {
+        peers.forEach((node, peer) -> {
+            long silentNanos = now - peer.lastHeardNanos;
+            if (silentNanos > FORGET_HEARTBEATS * heartbeatNanos) {
+                peers.remove(node, peer);
+            } else if (silentNanos > SILENT_HEARTBEATS * heartbeatNanos) {
+                peer.silent = true;
+                lost(0, now);
+            }
+        });
+        if (degraded.get() && now - degradedUntilNanos >= 0 && degraded.compareAndSet(true, false)) {
+            deliver(new InvalidationEvent.TtlCapped(null));
+        }
+    }
+
+    private void lost(long frames, long now) {
+        lostFrames.addAndGet(frames);
+        degradedUntilNanos = now + recoveryNanos;
+        if (degraded.compareAndSet(false, true)) {
+            deliver(new InvalidationEvent.AllInvalidated());
+            deliver(new InvalidationEvent.TtlCapped(config.degradedTtl()));
+        }
+    }
+
+    private void deliver(InvalidationEvent event) {
+        try {
+            receiver.onInvalidation(event);
+        } catch (RuntimeException e) {
+            // A failing listener must not stop the transport.
+        }
+    }
+
+    private static DatagramChannel open(UdpInvalidationConfig config) throws IOException {
+        InetSocketAddress group = config.group();
+        DatagramChannel channel = group == null ? DatagramChannel.open()
+                : DatagramChannel.open(group.getAddress() instanceof Inet6Address
+                        ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, group != null);
+            channel.bind(config.bind());
+            if (group != null) {
+                NetworkInterface networkInterface = NetworkInterface.getByName(config.multicastInterface());
+                if (networkInterface == null) {
+                    throw new IOException("no network interface " + config.multicastInterface());
+                }
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+                channel.join(group.getAddress(), networkInterface);
+            }
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sequence bookkeeping for one peer: the highest frame number seen and which of the 64 before it arrived.
+     * Only the reader thread changes it.
+     */
+    static final class PeerState {
+        private long highest;
+        private long seen = 1;
+        volatile long lastHeardNanos;
+        volatile boolean silent;
+
+        PeerState(long highest) {
+            this.highest = highest;
+        }
+
+        /** @return frames skipped before {@code sequence}, or -1 if it is a duplicate or too old */
+        long accept(long sequence) {
+            if (sequence > highest) {
+                long shift = sequence - highest;
+                seen = (shift >= 64 ? 0 : seen << shift) | 1;
+                highest = sequence;
+                return shift - 1;
+            }
+            long offset = highest - sequence;
+            if (offset >= 64 || (seen & 1L << offset) != 0) {
+                return -1;
+            }
+            seen |= 1L << offset;
+            return 0;
+        }
+
+        /** A heartbeat announced {@code sequence} as sent; @return frames after {@link #highest} not seen */
+        long advanceTo(long sequence) {
+            if (sequence <= highest) {
+                return 0;
+            }
+            long shift = sequence - highest;
+            seen = shift >= 64 ? 0 : seen << shift;
+            highest = sequence;
+            return shift;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.posadskiy.restsecurity.cluster;
+
+import com.posadskiy.restsecurity.cache.InvalidationEvent;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameCodecTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+
+    private final FrameCodec codec = new FrameCodec(SECRET, 256);
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Test
+    void events_roundTrip_inOneFrame() {
+        List<InvalidationEvent> events = List.of(
+                new InvalidationEvent.UserRolesChanged("alice", Set.of("USER", "ADMIN"), 7),
+                InvalidationEvent.UserRolesChanged.dropped("bob"),
+                new InvalidationEvent.UserRemoved("carol", 3),
+                new InvalidationEvent.SessionRevoked("s-1"),
+                new InvalidationEvent.AllInvalidated(),
+                new InvalidationEvent.TtlCapped(Duration.ofSeconds(1)));
+
+        List<ByteBuffer> frames = codec.encodeEvents(42, sequence::incrementAndGet, events);
+
+        assertEquals(1, frames.size());
+        FrameCodec.Frame frame = codec.decode(frames.get(0));
+        assertEquals(FrameCodec.EVENTS, frame.type());
+        assertEquals(42, frame.node());
+        assertEquals(1, frame.sequence());
+        assertEquals(events.subList(0, 5), frame.events(), "local events are not sent");
+    }
+
+    @Test
+    void manyEvents_areSplitAcrossFrames() {
+        List<InvalidationEvent> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(new InvalidationEvent.SessionRevoked("session-" + i));
+        }
+
+        List<ByteBuffer> frames = codec.encodeEvents(1, sequence::incrementAndGet, events);
+
+        assertTrue(frames.size() > 1);
+        List<InvalidationEvent> decoded = new ArrayList<>();
+        for (int i = 0; i < frames.size(); i++) {
+            assertTrue(frames.get(i).remaining() <= 256);
+            FrameCodec.Frame frame = codec.decode(frames.get(i));
+            assertEquals(i + 1, frame.sequence());
+            decoded.addAll(frame.events());
+        }
+        assertEquals(events, decoded);
+    }
+
+    @Test
+    void oversizedEvents_areSentInASafeWeakerForm() {
+        Set<String> roles = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            roles.add("ROLE_" + i);
+        }
+        List<InvalidationEvent> events = List.of(
+                new InvalidationEvent.UserRolesChanged("alice", roles, 2),
+                new InvalidationEvent.SessionRevoked("s".repeat(1000)));
+
+        List<ByteBuffer> frames = codec.encodeEvents(1, sequence::incrementAndGet, events);
+
+        assertEquals(List.of(new InvalidationEvent.UserRolesChanged("alice", null, 2), new InvalidationEvent.AllInvalidated()),
+                codec.decode(frames.get(0)).events());
+    }
+
+    @Test
+    void heartbeat_roundTrips_withSentTime() {
+        FrameCodec stamped = new FrameCodec(SECRET, 256, () -> 1_700_000_000_000L);
+        FrameCodec.Frame frame = codec.decode(stamped.encodeHeartbeat(9, 77));
+
+        assertEquals(FrameCodec.HEARTBEAT, frame.type());
+        assertEquals(9, frame.node());
+        assertEquals(1_700_000_000_000L, frame.sentMillis());
+        assertEquals(77, frame.sequence());
+        assertTrue(frame.events().isEmpty());
+    }
+
+    @Test
+    void tamperedOrForeignFrames_areRejected() {
+        ByteBuffer frame = codec.encodeEvents(1, sequence::incrementAndGet,
+                List.of(new InvalidationEvent.SessionRevoked("s1"))).get(0);
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+
+        byte[] tampered = bytes.clone();
+        tampered[FrameCodec.HEADER_LENGTH + 3] ^= 1;
+        assertNull(codec.decode(ByteBuffer.wrap(tampered)));
+        assertNull(new FrameCodec("another-secret-another-secret-xx".getBytes(), 256).decode(ByteBuffer.wrap(bytes)));
+        assertNull(codec.decode(ByteBuffer.wrap(Arrays.copyOf(bytes, 10))));
+        assertNotNull(codec.decode(ByteBuffer.wrap(bytes)));
+    }
+}
@@ -0,0 +1,94 @@
+package com.posadskiy.restsecurity.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GossipCodecTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+
+    private final GossipCodec codec = new GossipCodec(SECRET, 600);
+
+    @Test
+    void sessions_roundTrip_skippingExpired() {
+        long now = 1_700_000_000_000L;
+        Map<String, GossipSessionStore.SessionState> sessions = new LinkedHashMap<>();
+        sessions.put("s-1", new GossipSessionStore.SessionState("alice", now + 1_800_000, false));
+        sessions.put("s-2", new GossipSessionStore.SessionState("", now + 5, true));
+        sessions.put("s-3", new GossipSessionStore.SessionState("bob", now, false));
+
+        List<ByteBuffer> frames = codec.encodeSessions(sessions.entrySet(), now);
+
+        assertEquals(1, frames.size());
+        GossipCodec.Message message = codec.decode(frames.get(0));
+        assertEquals(GossipCodec.SESSIONS, message.type());
+        assertEquals(Map.of(
+                "s-1", new GossipSessionStore.SessionState("alice", now + 1_800_000, false),
+                "s-2", new GossipSessionStore.SessionState("", now + 5, true)), message.sessions());
+    }
+
+    @Test
+    void manySessions_areSplitIntoFramesUnderTheLimit() {
+        long now = System.currentTimeMillis();
+        Map<String, GossipSessionStore.SessionState> sessions = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            sessions.put("session-" + i, new GossipSessionStore.SessionState("user-" + i, now + 60_000, false));
+        }
+
+        List<ByteBuffer> frames = codec.encodeSessions(sessions.entrySet(), now);
+
+        assertTrue(frames.size() > 1);
+        Map<String, GossipSessionStore.SessionState> decoded = new LinkedHashMap<>();
+        for (ByteBuffer frame : frames) {
+            assertTrue(frame.remaining() <= 600);
+            decoded.putAll(codec.decode(frame).sessions());
+        }
+        assertEquals(sessions, decoded);
+    }
+
+    @Test
+    void digestAndPull_roundTrip() {
+        long[] digest = new long[GossipCodec.BUCKETS];
+        for (int i = 0; i < digest.length; i++) {
+            digest[i] = i * 31L - 7;
+        }
+
+        assertArrayEquals(digest, codec.decode(codec.encodeDigest(digest)).digest());
+        GossipCodec.Message pull = codec.decode(codec.encodePull(0x8000_0000_0000_0001L));
+        assertEquals(GossipCodec.PULL, pull.type());
+        assertEquals(0x8000_0000_0000_0001L, pull.mask());
+    }
+
+    @Test
+    void tamperedTruncatedOrForeignFrames_areRejected() {
+        ByteBuffer frame = codec.encodePull(1);
+        ByteBuffer tampered = ByteBuffer.allocate(frame.remaining()).put(frame.duplicate()).flip();
+        tampered.put(5, (byte) 0x7F);
+
+        assertNull(codec.decode(tampered));
+        assertNull(codec.decode(ByteBuffer.wrap(new byte[8])));
+        assertNull(new GossipCodec("ffffffffffffffffffffffffffffffff".getBytes(), 600).decode(frame.duplicate()));
+        assertNotNull(codec.decode(frame.duplicate()));
+    }
+
+    @Test
+    void authenticButMalformedFrames_areRejected() {
+        ByteBuffer frame = codec.encodePull(1);
+        byte[] body = new byte[frame.remaining() - FrameMac.LENGTH];
+        frame.duplicate().get(body);
+        body[3] = 9;
+        FrameMac mac = new FrameMac(SECRET);
+        ByteBuffer unknownType = mac.seal(ByteBuffer.allocate(body.length + FrameMac.LENGTH).put(body));
+        ByteBuffer shortSessions = mac.seal(ByteBuffer.allocate(64).put(new byte[] {0x52, 0x47, 1, 0}).putLong(0)
+                .putShort((short) 3));
+
+        assertNull(codec.decode(unknownType));
+        assertNull(codec.decode(shortSessions));
+    }
+}
@@ -0,0 +1,223 @@
+package com.posadskiy.restsecurity.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GossipSessionStoreTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private final List<GossipSessionStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(GossipSessionStore::close);
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static List<InetSocketAddress> freeAddresses(int count) throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        List<DatagramChannel> holders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DatagramChannel holder = DatagramChannel.open().bind(new InetSocketAddress(LOOPBACK, 0));
+            holders.add(holder);
+            addresses.add((InetSocketAddress) holder.getLocalAddress());
+        }
+        for (DatagramChannel holder : holders) {
+            holder.close();
+        }
+        return addresses;
+    }
+
+    private GossipSessionStore node(List<InetSocketAddress> addresses, int index, Duration antiEntropy) {
+        List<InetSocketAddress> peers = new ArrayList<>(addresses);
+        InetSocketAddress bind = peers.remove(index);
+        GossipSessionStore store = new GossipSessionStore(GossipConfig.of(bind, peers, SECRET)
+                .withGossipInterval(Duration.ofMillis(5)).withAntiEntropyInterval(antiEntropy));
+        stores.add(store);
+        return store;
+    }
+
+    private List<GossipSessionStore> cluster(int size, Duration antiEntropy) throws IOException {
+        List<InetSocketAddress> addresses = freeAddresses(size);
+        List<GossipSessionStore> nodes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            nodes.add(node(addresses, i, antiEntropy));
+        }
+        return nodes;
+    }
+
+    @Test
+    void createdSession_isVisibleOnEveryNode() throws Exception {
+        List<GossipSessionStore> nodes = cluster(3, Duration.ofSeconds(10));
+
+        String sessionId = nodes.get(0).createSession("alice");
+
+        for (GossipSessionStore node : nodes) {
+            eventually(() -> "alice".equals(node.getUserIdBySessionId(sessionId)));
+            assertTrue(node.isSessionExist(sessionId));
+            assertFalse(node.isSessionExpired(sessionId));
+        }
+        assertTrue(nodes.get(1).sessionsMerged() >= 1);
+    }
+
+    @Test
+    void revocationOnAnyNode_winsEverywhere() throws Exception {
+        List<GossipSessionStore> nodes = cluster(3, Duration.ofSeconds(10));
+        String sessionId = nodes.get(0).createSession("alice");
+        eventually(() -> nodes.get(2).isSessionExist(sessionId));
+
+        assertTrue(nodes.get(2).revoke(sessionId));
+        nodes.get(1).extend(sessionId);
+
+        for (GossipSessionStore node : nodes) {
+            eventually(() -> !node.isSessionExist(sessionId));
+            assertTrue(node.isSessionExpired(sessionId));
+            assertNull(node.getUserIdBySessionId(sessionId));
+        }
+        assertFalse(nodes.get(0).extend(sessionId));
+        assertFalse(nodes.get(0).revoke(sessionId));
+    }
+
+    @Test
+    void revocationArrivingBeforeTheSession_stillRevokesIt() throws Exception {
+        List<GossipSessionStore> nodes = cluster(2, Duration.ofSeconds(10));
+        String sessionId = nodes.get(0).createSession("alice");
+        nodes.get(1).revoke(sessionId);
+
+        eventually(() -> nodes.get(0).size() == 1 && nodes.get(1).sessionsMerged() >= 1);
+        Thread.sleep(50);
+        for (GossipSessionStore node : nodes) {
+            assertFalse(node.isSessionExist(sessionId));
+            assertTrue(node.isSessionExpired(sessionId));
+        }
+    }
+
+    @Test
+    void lateNode_catchesUpByAntiEntropy() throws Exception {
+        List<InetSocketAddress> addresses = freeAddresses(2);
+        GossipSessionStore first = node(addresses, 0, Duration.ofMillis(50));
+        List<String> sessionIds = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            sessionIds.add(first.createSession("user-" + i));
+        }
+        Thread.sleep(50);
+
+        GossipSessionStore late = node(addresses, 1, Duration.ofMillis(50));
+
+        eventually(() -> late.size() == 300);
+        for (int i = 0; i < sessionIds.size(); i++) {
+            assertEquals("user-" + i, late.getUserIdBySessionId(sessionIds.get(i)));
+        }
+        assertTrue(late.framesReceived() > 1);
+    }
+
+    @Test
+    void expiredSessions_areNeitherServedNorKept() throws Exception {
+        InetSocketAddress bind = freeAddresses(1).get(0);
+        GossipSessionStore store = new GossipSessionStore(GossipConfig.of(bind, List.of(), SECRET)
+                .withSessionTtl(Duration.ofMillis(300)).withAntiEntropyInterval(Duration.ofMillis(20)));
+        stores.add(store);
+
+        String sessionId = store.createSession("alice");
+        assertTrue(store.extend(sessionId));
+        Thread.sleep(350);
+
+        assertTrue(store.isSessionExpired(sessionId));
+        assertNull(store.getUserIdBySessionId(sessionId));
+        assertFalse(store.extend(sessionId));
+        eventually(() -> store.size() == 0);
+    }
+
+    @Test
+    void forgedFrames_areRejected() throws Exception {
+        GossipSessionStore store = cluster(1, Duration.ofSeconds(10)).get(0);
+        GossipCodec forger = new GossipCodec("ffffffffffffffffffffffffffffffff".getBytes(), 1400);
+        List<Map.Entry<String, GossipSessionStore.SessionState>> forged = List.of(Map.entry(
+                "forged", new GossipSessionStore.SessionState("mallory", System.currentTimeMillis() + 60_000, false)));
+
+        try (DatagramChannel attacker = DatagramChannel.open()) {
+            for (ByteBuffer frame : forger.encodeSessions(forged, System.currentTimeMillis())) {
+                attacker.send(frame, store.localAddress());
+            }
+        }
+
+        eventually(() -> store.rejectedFrames() == 1);
+        assertFalse(store.isSessionExist("forged"));
+        assertEquals(0, store.framesReceived());
+    }
+
+    @Test
+    void merge_isCommutativeAndRevocationWins() {
+        GossipSessionStore.SessionState live = new GossipSessionStore.SessionState("alice", 2_000, false);
+        GossipSessionStore.SessionState extended = new GossipSessionStore.SessionState("alice", 3_000, false);
+        GossipSessionStore.SessionState tombstone = new GossipSessionStore.SessionState("", 1_000, true);
+
+        assertEquals(live.merge(extended), extended.merge(live));
+        assertEquals(extended, live.merge(extended));
+        assertEquals(new GossipSessionStore.SessionState("alice", 2_000, true), live.merge(tombstone));
+        assertEquals(live.merge(tombstone), tombstone.merge(live));
+        assertEquals(live.merge(tombstone).merge(extended), extended.merge(tombstone.merge(live)));
+    }
+
+    @Test
+    void invalidArguments_areRejected() throws Exception {
+        GossipSessionStore store = cluster(1, Duration.ofSeconds(10)).get(0);
+
+        assertThrows(IllegalArgumentException.class, () -> store.createSession(" "));
+        assertThrows(IllegalArgumentException.class, () -> store.createSession("x".repeat(256)));
+        assertFalse(store.revoke(null));
+        assertFalse(store.revoke("x".repeat(256)));
+        assertFalse(store.isSessionExist(null));
+        assertTrue(store.isSessionExpired(null));
+        assertNull(store.getUserIdBySessionId(null));
+        assertFalse(store.extend("missing"));
+    }
+
+    @Test
+    void config_validatesAndDefaults() {
+        InetSocketAddress bind = new InetSocketAddress(LOOPBACK, 0);
+        GossipConfig config = GossipConfig.of(bind, null, SECRET);
+
+        assertEquals(List.of(), config.peers());
+        assertEquals(Duration.ofMinutes(30), config.sessionTtl());
+        assertEquals(Duration.ofMillis(100), config.gossipInterval());
+        assertEquals(Duration.ofSeconds(2), config.antiEntropyInterval());
+        assertEquals(1400, config.maxFrameBytes());
+        assertEquals(Duration.ofMinutes(30), config.withSessionTtl(Duration.ZERO).sessionTtl());
+        assertThrows(IllegalArgumentException.class, () -> GossipConfig.of(null, List.of(), SECRET));
+        assertThrows(IllegalArgumentException.class, () -> GossipConfig.of(bind, List.of(), new byte[16]));
+        assertThrows(IllegalArgumentException.class,
+                () -> new GossipConfig(bind, List.of(), SECRET, null, null, null, 100));
+    }
+
+    @Test
+    void bindFailure_isReported() throws Exception {
+        try (DatagramChannel holder = DatagramChannel.open().bind(new InetSocketAddress(LOOPBACK, 0))) {
+            InetSocketAddress taken = (InetSocketAddress) holder.getLocalAddress();
+            assertThrows(IllegalStateException.class,
+                    () -> new GossipSessionStore(GossipConfig.of(taken, List.of(), SECRET)));
+        }
+    }
+}
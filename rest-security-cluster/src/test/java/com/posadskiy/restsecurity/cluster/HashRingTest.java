@@ -0,0 +1,79 @@
+package com.posadskiy.restsecurity.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    void owners_dependOnlyOnTheNodeSet() {
+        HashRing ring = new HashRing(List.of("a", "b", "c"), 160);
+        HashRing shuffled = new HashRing(List.of("c", "a", "b", "a"), 160);
+
+        assertEquals(List.of("a", "b", "c"), shuffled.nodes());
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(ring.owner("session-" + i), shuffled.owner("session-" + i));
+        }
+    }
+
+    @Test
+    void keys_areSpreadEvenly() {
+        HashRing ring = new HashRing(List.of("a", "b", "c", "d"), 160);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.owner("session-" + i), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(Math.abs(count - KEYS / 4) < KEYS / 4 * 0.2, "share " + count);
+        }
+    }
+
+    @Test
+    void addingANode_movesAboutOneNthOfTheKeys_allToIt() {
+        HashRing before = new HashRing(List.of("a", "b", "c"), 160);
+        HashRing after = new HashRing(List.of("a", "b", "c", "d"), 160);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "session-" + i;
+            if (!before.owner(key).equals(after.owner(key))) {
+                assertEquals("d", after.owner(key));
+                moved++;
+            }
+        }
+        assertTrue(Math.abs(moved - KEYS / 4) < KEYS / 4 * 0.2, "moved " + moved);
+    }
+
+    @Test
+    void removingANode_movesOnlyItsKeys() {
+        HashRing before = new HashRing(List.of("a", "b", "c"), 160);
+        HashRing after = new HashRing(List.of("a", "c"), 160);
+
+        for (int i = 0; i < KEYS; i++) {
+            String key = "session-" + i;
+            if (!before.owner(key).equals("b")) {
+                assertEquals(before.owner(key), after.owner(key));
+            }
+        }
+    }
+
+    @Test
+    void singleNode_ownsEverything_andInvalidRingsAreRejected() {
+        HashRing ring = new HashRing(List.of("only"), 1);
+
+        assertEquals("only", ring.owner(""));
+        assertEquals("only", ring.owner("session-1"));
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(List.of(), 160));
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(null, 160));
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(List.of("a"), 0));
+    }
+}
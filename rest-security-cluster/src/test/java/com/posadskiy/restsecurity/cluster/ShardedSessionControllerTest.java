@@ -0,0 +1,444 @@
+package com.posadskiy.restsecurity.cluster;
+
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedSessionControllerTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private final List<ShardedSessionController> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(ShardedSessionController::close);
+    }
+
+    /** Sessions one node's cache would hold; counts lookups so tests can see where they were answered. */
+    private static final class LocalShard implements SessionSecurityController {
+
+        final Map<String, String> users = new ConcurrentHashMap<>();
+        final Map<String, Boolean> expired = new ConcurrentHashMap<>();
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean failing;
+
+        @Override
+        public boolean isSessionExist(String sessionId) {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("store down");
+            }
+            return sessionId != null && users.containsKey(sessionId);
+        }
+
+        @Override
+        public boolean isSessionExpired(String sessionId) {
+            return expired.getOrDefault(sessionId, false);
+        }
+
+        @Override
+        public String getUserIdBySessionId(String sessionId) {
+            return users.get(sessionId);
+        }
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static Map<String, InetSocketAddress> freeMembers(int count) throws IOException {
+        Map<String, InetSocketAddress> members = new LinkedHashMap<>();
+        List<ServerSocket> holders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ServerSocket holder = new ServerSocket(0, 1, LOOPBACK);
+            holders.add(holder);
+            members.put("node-" + i, (InetSocketAddress) holder.getLocalSocketAddress());
+        }
+        for (ServerSocket holder : holders) {
+            holder.close();
+        }
+        return members;
+    }
+
+    private ShardedSessionController node(SessionSecurityController local, String nodeId,
+                                          Map<String, InetSocketAddress> members) {
+        ShardedSessionController node = new ShardedSessionController(local,
+                ShardConfig.of(nodeId, members, SECRET).withTimeout(Duration.ofSeconds(2)));
+        nodes.add(node);
+        return node;
+    }
+
+    /** A session id owned by {@code owner} under {@code ring}. */
+    private static String sessionOwnedBy(ShardedSessionController ring, String owner) {
+        for (int i = 0; ; i++) {
+            if (ring.ownerOf("session-" + i).equals(owner)) {
+                return "session-" + i;
+            }
+        }
+    }
+
+    @Test
+    void foreignSessions_areForwardedToTheirOwner() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(3);
+        List<LocalShard> shards = new ArrayList<>();
+        for (String nodeId : members.keySet()) {
+            LocalShard shard = new LocalShard();
+            shards.add(shard);
+            node(shard, nodeId, members);
+        }
+        ShardedSessionController entry = nodes.get(0);
+        String remote = sessionOwnedBy(entry, "node-2");
+        String expired = sessionOwnedBy(entry, "node-1");
+        String local = sessionOwnedBy(entry, "node-0");
+        shards.get(2).users.put(remote, "alice");
+        shards.get(1).users.put(expired, "bob");
+        shards.get(1).expired.put(expired, true);
+        shards.get(0).users.put(local, "carol");
+
+        EnforcementMemo.begin();
+        try {
+            assertTrue(entry.isSessionExist(remote));
+            assertFalse(entry.isSessionExpired(remote));
+            assertEquals("alice", entry.getUserIdBySessionId(remote));
+            assertTrue(entry.isSessionExist(expired));
+            assertTrue(entry.isSessionExpired(expired));
+            assertEquals("carol", entry.getUserIdBySessionId(local));
+        } finally {
+            EnforcementMemo.end();
+        }
+        assertTrue(entry.isLocal(local));
+        assertFalse(entry.isLocal(remote));
+
+        assertEquals(2, entry.forwardedLookups());
+        assertEquals(1, nodes.get(2).servedLookups());
+        assertEquals(1, shards.get(2).calls.get());
+    }
+
+    @Test
+    void unknownForeignSession_doesNotExist() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(2);
+        node(new LocalShard(), "node-0", members);
+        node(new LocalShard(), "node-1", members);
+        String remote = sessionOwnedBy(nodes.get(0), "node-1");
+
+        EnforcementMemo.begin();
+        try {
+            assertFalse(nodes.get(0).isSessionExist(remote));
+            assertTrue(nodes.get(0).isSessionExpired(remote));
+            assertNull(nodes.get(0).getUserIdBySessionId(remote));
+        } finally {
+            EnforcementMemo.end();
+        }
+        assertEquals(1, nodes.get(0).forwardedLookups());
+    }
+
+    @Test
+    void connections_arePooledAndReused() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(2);
+        LocalShard owner = new LocalShard();
+        node(new LocalShard(), "node-0", members);
+        node(owner, "node-1", members);
+        List<String> remote = new ArrayList<>();
+        for (int i = 0; remote.size() < 20; i++) {
+            if (nodes.get(0).ownerOf("session-" + i).equals("node-1")) {
+                remote.add("session-" + i);
+                owner.users.put("session-" + i, "user-" + i);
+            }
+        }
+
+        for (String sessionId : remote) {
+            assertNotNull(nodes.get(0).getUserIdBySessionId(sessionId));
+        }
+
+        assertEquals(20, nodes.get(1).servedLookups());
+        assertTrue(nodes.get(0).forwardedLookups() >= 20);
+    }
+
+    @Test
+    void ownerFailure_isReported_andTheConnectionStaysUsable() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(2);
+        LocalShard owner = new LocalShard();
+        node(new LocalShard(), "node-0", members);
+        node(owner, "node-1", members);
+        String remote = sessionOwnedBy(nodes.get(0), "node-1");
+        owner.users.put(remote, "alice");
+
+        owner.failing = true;
+        assertThrows(IllegalStateException.class, () -> nodes.get(0).isSessionExist(remote));
+        owner.failing = false;
+
+        assertEquals("alice", nodes.get(0).getUserIdBySessionId(remote));
+    }
+
+    @Test
+    void unreachableOwner_isReported() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(2);
+        ShardedSessionController entry = node(new LocalShard(), "node-0", members);
+
+        assertThrows(IllegalStateException.class, () -> entry.isSessionExist(sessionOwnedBy(entry, "node-1")));
+    }
+
+    @Test
+    void restartedOwner_isReconnected() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(2);
+        LocalShard owner = new LocalShard();
+        ShardedSessionController entry = node(new LocalShard(), "node-0", members);
+        ShardedSessionController first = node(owner, "node-1", members);
+        String remote = sessionOwnedBy(entry, "node-1");
+        owner.users.put(remote, "alice");
+        assertTrue(entry.isSessionExist(remote));
+
+        first.close();
+        nodes.remove(first);
+        ShardedSessionController second = node(owner, "node-1", members);
+
+        assertEquals("alice", entry.getUserIdBySessionId(remote));
+        assertEquals(1, second.servedLookups());
+    }
+
+    @Test
+    void membershipChange_movesLookupsToTheNewOwner() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(3);
+        Map<String, InetSocketAddress> two = new HashMap<>(members);
+        two.remove("node-2");
+        LocalShard newcomer = new LocalShard();
+        ShardedSessionController entry = node(new LocalShard(), "node-0", two);
+        node(new LocalShard(), "node-1", two);
+        node(newcomer, "node-2", members);
+        String moving = null;
+        for (int i = 0; moving == null; i++) {
+            if (nodes.get(2).ownerOf("session-" + i).equals("node-2")) {
+                moving = "session-" + i;
+            }
+        }
+        newcomer.users.put(moving, "alice");
+        assertFalse(entry.ownerOf(moving).equals("node-2"));
+
+        entry.updateMembers(members);
+
+        assertEquals("node-2", entry.ownerOf(moving));
+        assertEquals("alice", entry.getUserIdBySessionId(moving));
+        assertThrows(IllegalArgumentException.class, () -> entry.updateMembers(Map.of("node-1", members.get("node-1"))));
+        entry.updateMembers(two);
+    }
+
+    @Test
+    void unauthenticRequests_closeTheConnection() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(1);
+        ShardedSessionController node = node(new LocalShard(), "node-0", members);
+
+        try (Socket socket = new Socket(LOOPBACK, node.localAddress().getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeShort(20);
+            out.write(new byte[20]);
+            out.flush();
+            assertEquals(-1, new DataInputStream(socket.getInputStream()).read());
+        }
+        eventually(() -> node.rejectedRequests() == 1);
+    }
+
+    /** Send one MAC'd message of {@code body} on {@code socket} and return the raw reply, MAC included. */
+    private static byte[] exchange(Socket socket, byte[] body) throws IOException {
+        ByteBuffer message = ByteBuffer.allocate(2 + body.length + FrameMac.LENGTH);
+        message.putShort((short) (body.length + FrameMac.LENGTH)).put(body);
+        new FrameMac(SECRET).seal(message);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.write(message.array(), 0, message.limit());
+        out.flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        int length = in.readUnsignedShort();
+        byte[] reply = new byte[2 + length];
+        reply[0] = (byte) (length >>> 8);
+        reply[1] = (byte) length;
+        in.readFully(reply, 2, length);
+        return reply;
+    }
+
+    private static byte[] lookupRequest(long nonce, String sessionId) {
+        byte[] id = sessionId.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(9 + id.length).put((byte) 0x10).putLong(nonce).put(id).array();
+    }
+
+    /** Stand-in for an owner that answers every request on its connection with {@code reply}. */
+    private static Thread impostor(ServerSocket server, UnaryOperator<byte[]> reply) {
+        Thread thread = new Thread(() -> {
+            try (server) {
+                while (true) {
+                    try (Socket socket = server.accept()) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        int length = in.readUnsignedShort();
+                        byte[] request = new byte[2 + length];
+                        request[0] = (byte) (length >>> 8);
+                        request[1] = (byte) length;
+                        in.readFully(request, 2, length);
+                        socket.getOutputStream().write(reply.apply(request));
+                        socket.getOutputStream().flush();
+                        in.read();
+                    }
+                }
+            } catch (IOException e) {
+                // closed by the test
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    void recordedReply_doesNotAnswerAnotherLookup() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(2);
+        LocalShard owner = new LocalShard();
+        ShardedSessionController entry = node(new LocalShard(), "node-0", members);
+        ShardedSessionController real = node(owner, "node-1", members);
+        String alices = sessionOwnedBy(entry, "node-1");
+        owner.users.put(alices, "alice");
+        byte[] recorded;
+        try (Socket socket = new Socket(LOOPBACK, real.localAddress().getPort())) {
+            recorded = exchange(socket, lookupRequest(42, alices));
+        }
+        assertEquals(1, recorded[2], "a LIVE reply for alice was recorded");
+        real.close();
+        nodes.remove(real);
+        String revoked = null;
+        for (int i = 0; revoked == null; i++) {
+            if (entry.ownerOf("other-" + i).equals("node-1")) {
+                revoked = "other-" + i;
+            }
+        }
+        String lookedUp = revoked;
+
+        try (ServerSocket server = new ServerSocket()) {
+            server.setReuseAddress(true);
+            server.bind(members.get("node-1"));
+            impostor(server, request -> recorded);
+            assertThrows(IllegalStateException.class, () -> entry.getUserIdBySessionId(lookedUp),
+                    "a recorded LIVE reply must not vouch for another session");
+        }
+        try (ServerSocket server = new ServerSocket()) {
+            server.setReuseAddress(true);
+            server.bind(members.get("node-1"));
+            impostor(server, request -> request);
+            assertThrows(IllegalStateException.class, () -> entry.getUserIdBySessionId(alices),
+                    "a reflected request is not a reply");
+        }
+    }
+
+    @Test
+    void servedConnections_areCapped() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(1);
+        LocalShard local = new LocalShard();
+        local.users.put("s1", "alice");
+        ShardedSessionController node = new ShardedSessionController(local,
+                ShardConfig.of("node-0", members, SECRET).withMaxServedConnections(2));
+        nodes.add(node);
+        int port = node.localAddress().getPort();
+
+        try (Socket first = new Socket(LOOPBACK, port); Socket second = new Socket(LOOPBACK, port)) {
+            assertEquals(1, exchange(first, lookupRequest(1, "s1"))[2]);
+            assertEquals(1, exchange(second, lookupRequest(2, "s1"))[2]);
+            try (Socket third = new Socket(LOOPBACK, port)) {
+                assertThrows(IOException.class, () -> exchange(third, lookupRequest(3, "s1")),
+                        "over the limit, closed on its first request");
+            }
+            assertEquals(1, node.rejectedRequests());
+        }
+        eventually(() -> {
+            try (Socket again = new Socket(LOOPBACK, port)) {
+                return exchange(again, lookupRequest(4, "s1"))[2] == 1;
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    @Test
+    void unauthenticatedConnections_doNotTakeServedPlacesAndTimeOut() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(1);
+        LocalShard local = new LocalShard();
+        local.users.put("s1", "alice");
+        ShardedSessionController node = new ShardedSessionController(local, ShardConfig.of("node-0", members, SECRET)
+                .withMaxServedConnections(2).withTimeout(Duration.ofMillis(200)));
+        nodes.add(node);
+        int port = node.localAddress().getPort();
+
+        try (Socket silent = new Socket(LOOPBACK, port); Socket first = new Socket(LOOPBACK, port)) {
+            assertEquals(1, exchange(first, lookupRequest(1, "s1"))[2]);
+            try (Socket second = new Socket(LOOPBACK, port)) {
+                assertEquals(1, exchange(second, lookupRequest(2, "s1"))[2], "the silent connection holds no place");
+            }
+            assertEquals(-1, silent.getInputStream().read(), "closed once its first request is overdue");
+            assertEquals(1, exchange(first, lookupRequest(3, "s1"))[2]);
+        }
+    }
+
+    @Test
+    void invalidIds_areAnsweredLocally() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(2);
+        LocalShard local = new LocalShard();
+        ShardedSessionController entry = node(local, "node-0", members);
+
+        assertTrue(entry.isLocal(null));
+        assertTrue(entry.isLocal(" "));
+        assertTrue(entry.isLocal("x".repeat(1025)));
+        assertFalse(entry.isSessionExist("x".repeat(1025)));
+        assertEquals(0, entry.forwardedLookups());
+    }
+
+    @Test
+    void config_validatesAndDefaults() throws Exception {
+        Map<String, InetSocketAddress> members = freeMembers(1);
+        ShardConfig config = ShardConfig.of("node-0", members, SECRET);
+
+        assertEquals(members.get("node-0"), config.bind());
+        assertEquals(160, config.virtualNodes());
+        assertEquals(Duration.ofSeconds(1), config.timeout());
+        assertEquals(8, config.connectionsPerPeer());
+        assertEquals(256, config.maxServedConnections());
+        assertEquals(4, config.withMaxServedConnections(4).maxServedConnections());
+        assertEquals(20, config.withVirtualNodes(20).virtualNodes());
+        assertEquals(new InetSocketAddress(0), config.withBind(new InetSocketAddress(0)).bind());
+        assertThrows(IllegalArgumentException.class, () -> ShardConfig.of("node-9", members, SECRET));
+        assertThrows(IllegalArgumentException.class, () -> ShardConfig.of(null, members, SECRET));
+        assertThrows(IllegalArgumentException.class, () -> ShardConfig.of("node-0", members, new byte[8]));
+    }
+
+    @Test
+    void bindFailure_isReported() throws Exception {
+        try (ServerSocket holder = new ServerSocket(0, 1, LOOPBACK)) {
+            Map<String, InetSocketAddress> members = Map.of("node-0",
+                    (InetSocketAddress) holder.getLocalSocketAddress());
+            assertThrows(IllegalStateException.class,
+                    () -> new ShardedSessionController(new LocalShard(), ShardConfig.of("node-0", members, SECRET)));
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.posadskiy.restsecurity.cluster;
+
+import com.posadskiy.restsecurity.cache.InvalidationEvent;
+import com.posadskiy.restsecurity.cache.SecurityInvalidationBus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UdpInvalidationTransportTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private final List<UdpInvalidationTransport> transports = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        transports.forEach(UdpInvalidationTransport::close);
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    /** Reserve free loopback ports so every node can be configured with the others up front. */
+    private static List<InetSocketAddress> freeAddresses(int count) throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        List<DatagramChannel> holders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DatagramChannel holder = DatagramChannel.open().bind(new InetSocketAddress(LOOPBACK, 0));
+            holders.add(holder);
+            addresses.add((InetSocketAddress) holder.getLocalAddress());
+        }
+        for (DatagramChannel holder : holders) {
+            holder.close();
+        }
+        return addresses;
+    }
+
+    private UdpInvalidationTransport node(InetSocketAddress bind, List<InetSocketAddress> peers, Duration heartbeat) {
+        UdpInvalidationTransport transport = new UdpInvalidationTransport(
+                UdpInvalidationConfig.unicast(bind, peers, SECRET).withHeartbeatInterval(heartbeat)
+                        .withDegradedTtl(Duration.ofMillis(100)));
+        transports.add(transport);
+        return transport;
+    }
+
+    @Test
+    void eventsReachEveryOtherNode_once() throws Exception {
+        List<InetSocketAddress> addresses = freeAddresses(3);
+        List<List<InvalidationEvent>> received = new ArrayList<>();
+        List<SecurityInvalidationBus> buses = new ArrayList<>();
+        for (InetSocketAddress address : addresses) {
+            List<InetSocketAddress> peers = new ArrayList<>(addresses);
+            peers.remove(address);
+            SecurityInvalidationBus bus = new SecurityInvalidationBus();
+            List<InvalidationEvent> events = new CopyOnWriteArrayList<>();
+            bus.subscribe(events::add);
+            bus.attach(node(address, peers, Duration.ofSeconds(10)));
+            buses.add(bus);
+            received.add(events);
+        }
+        InvalidationEvent revoked = new InvalidationEvent.SessionRevoked("s1");
+        InvalidationEvent changed = new InvalidationEvent.UserRolesChanged("alice", Set.of("ADMIN"), 2);
+
+        buses.get(0).publish(revoked);
+        buses.get(0).publish(changed);
+
+        eventually(() -> received.get(1).size() == 2 && received.get(2).size() == 2);
+        assertEquals(List.of(revoked, changed), received.get(1));
+        assertEquals(List.of(revoked, changed), received.get(2));
+        assertEquals(List.of(revoked, changed), received.get(0), "local delivery only once");
+        assertFalse(transports.get(1).isDegraded());
+        assertEquals(0, transports.get(1).lostFrames());
+    }
+
+    @Test
+    void duplicates_areDropped_andGaps_degradeUntilQuiet() throws Exception {
+        InetSocketAddress address = freeAddresses(1).get(0);
+        UdpInvalidationTransport transport = node(address, List.of(new InetSocketAddress(LOOPBACK, 9)),
+                Duration.ofMillis(30));
+        List<InvalidationEvent> received = new CopyOnWriteArrayList<>();
+        transport.start(received::add);
+        FrameCodec codec = new FrameCodec(SECRET, 1400);
+        AtomicLong sequence = new AtomicLong();
+        List<ByteBuffer> frames = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            frames.addAll(codec.encodeEvents(5, sequence::incrementAndGet,
+                    List.of(new InvalidationEvent.SessionRevoked("s" + i))));
+        }
+
+        try (DatagramChannel remote = DatagramChannel.open()) {
+            remote.send(frames.get(0).duplicate(), address);
+            remote.send(frames.get(0).duplicate(), address);
+            eventually(() -> transport.duplicateFrames() == 1);
+            remote.send(frames.get(2).duplicate(), address);
+            eventually(() -> transport.isDegraded());
+
+            assertEquals(1, transport.lostFrames());
+            assertEquals(List.of(new InvalidationEvent.SessionRevoked("s1"), new InvalidationEvent.AllInvalidated(),
+                    new InvalidationEvent.TtlCapped(Duration.ofMillis(100)), new InvalidationEvent.SessionRevoked("s3")),
+                    received);
+
+            remote.send(frames.get(1).duplicate(), address);
+            eventually(() -> received.size() == 5);
+            assertEquals(new InvalidationEvent.SessionRevoked("s2"), received.get(4), "late frame still applied");
+
+            // Keep the peer alive with heartbeats until the transport recovers.
+            while (transport.isDegraded()) {
+                remote.send(codec.encodeHeartbeat(5, 3), address);
+                Thread.sleep(20);
+            }
+        }
+        assertEquals(new InvalidationEvent.TtlCapped(null), received.get(received.size() - 1));
+    }
+
+    @Test
+    void heartbeatAhead_ofFramesSeen_countsAsLoss() throws Exception {
+        InetSocketAddress address = freeAddresses(1).get(0);
+        UdpInvalidationTransport transport = node(address, List.of(new InetSocketAddress(LOOPBACK, 9)),
+                Duration.ofSeconds(10));
+        transport.start(event -> { });
+        FrameCodec codec = new FrameCodec(SECRET, 1400);
+
+        try (DatagramChannel remote = DatagramChannel.open()) {
+            remote.send(codec.encodeHeartbeat(6, 10), address);
+            remote.send(codec.encodeHeartbeat(6, 12), address);
+            eventually(() -> transport.lostFrames() == 2);
+        }
+        assertTrue(transport.isDegraded());
+    }
+
+    @Test
+    void silentPeer_degradesTheNode() throws Exception {
+        InetSocketAddress address = freeAddresses(1).get(0);
+        UdpInvalidationTransport transport = node(address, List.of(new InetSocketAddress(LOOPBACK, 9)),
+                Duration.ofMillis(20));
+        transport.start(event -> { });
+        try (DatagramChannel remote = DatagramChannel.open()) {
+            remote.send(new FrameCodec(SECRET, 1400).encodeHeartbeat(7, 0), address);
+        }
+        eventually(() -> transport.framesReceived() == 1);
+
+        eventually(transport::isDegraded);
+        assertEquals(0, transport.lostFrames());
+    }
+
+    @Test
+    void forgedAndOwnFrames_areIgnored() throws Exception {
+        InetSocketAddress address = freeAddresses(1).get(0);
+        UdpInvalidationTransport transport = node(address, List.of(address), Duration.ofSeconds(10));
+        List<InvalidationEvent> received = new CopyOnWriteArrayList<>();
+        transport.start(received::add);
+        FrameCodec forger = new FrameCodec("not-the-secret-not-the-secret-xx".getBytes(), 1400);
+
+        try (DatagramChannel remote = DatagramChannel.open()) {
+            remote.send(forger.encodeEvents(8, () -> 1, List.of(new InvalidationEvent.UserRolesChanged(
+                    "mallory", Set.of("ADMIN"), 0))).get(0), address);
+            eventually(() -> transport.rejectedFrames() == 1);
+        }
+        transport.send(new InvalidationEvent.SessionRevoked("s1"));
+        eventually(() -> transport.framesSent() >= 2);
+        Thread.sleep(50);
+
+        assertTrue(received.isEmpty(), "own frames sent to itself are skipped: " + received);
+        assertEquals(0, transport.framesReceived());
+    }
+
+    @Test
+    void staleFrames_areRejected() throws Exception {
+        InetSocketAddress address = freeAddresses(1).get(0);
+        UdpInvalidationTransport transport = node(address, List.of(new InetSocketAddress(LOOPBACK, 9)),
+                Duration.ofMillis(20));
+        List<InvalidationEvent> received = new CopyOnWriteArrayList<>();
+        transport.start(received::add);
+        List<InvalidationEvent> escalation = List.of(new InvalidationEvent.UserRolesChanged("alice", Set.of("ADMIN"), 1));
+
+        try (DatagramChannel remote = DatagramChannel.open()) {
+            long past = System.currentTimeMillis() - 60_000;
+            remote.send(new FrameCodec(SECRET, 1400, () -> past).encodeEvents(9, () -> 1, escalation).get(0), address);
+            long future = System.currentTimeMillis() + 60_000;
+            remote.send(new FrameCodec(SECRET, 1400, () -> future).encodeEvents(9, () -> 1, escalation).get(0), address);
+            eventually(() -> transport.rejectedFrames() == 2);
+        }
+
+        assertTrue(received.isEmpty(), "stale frames are not applied: " + received);
+        assertEquals(0, transport.framesReceived());
+    }
+
+    @Test
+    void recordedFrame_replayedAfterItsSenderIsForgotten_isRejected() throws Exception {
+        InetSocketAddress address = freeAddresses(1).get(0);
+        UdpInvalidationTransport transport = node(address, List.of(new InetSocketAddress(LOOPBACK, 9)),
+                Duration.ofMillis(20));
+        List<InvalidationEvent> received = new CopyOnWriteArrayList<>();
+        transport.start(received::add);
+        ByteBuffer recorded = new FrameCodec(SECRET, 1400).encodeEvents(10, () -> 1,
+                List.of(new InvalidationEvent.UserRolesChanged("alice", Set.of("ADMIN"), 1))).get(0);
+
+        try (DatagramChannel remote = DatagramChannel.open()) {
+            remote.send(recorded.duplicate(), address);
+            eventually(() -> received.contains(new InvalidationEvent.UserRolesChanged("alice", Set.of("ADMIN"), 1)));
+            remote.send(recorded.duplicate(), address);
+            eventually(() -> transport.duplicateFrames() == 1);
+
+            // Past the 30 heartbeats after which the silent sender is forgotten.
+            Thread.sleep(30 * 20 + 200);
+            int before = received.size();
+            remote.send(recorded.duplicate(), address);
+            eventually(() -> transport.rejectedFrames() == 1);
+            Thread.sleep(50);
+
+            assertEquals(before, received.size(), "replay is not applied: " + received);
+        }
+    }
+
+    @Test
+    void close_sendsWhatIsQueued() throws Exception {
+        List<InetSocketAddress> addresses = freeAddresses(2);
+        UdpInvalidationTransport a = node(addresses.get(0), List.of(addresses.get(1)), Duration.ofSeconds(10));
+        UdpInvalidationTransport b = node(addresses.get(1), List.of(addresses.get(0)), Duration.ofSeconds(10));
+        List<InvalidationEvent> received = new CopyOnWriteArrayList<>();
+        b.start(received::add);
+        a.start(event -> { });
+
+        a.send(new InvalidationEvent.SessionRevoked("s1"));
+        a.close();
+        a.send(new InvalidationEvent.SessionRevoked("after-close"));
+
+        eventually(() -> received.size() == 1);
+        assertThrows(IllegalStateException.class, a::localAddress);
+        assertThrows(IllegalStateException.class, () -> b.start(event -> { }));
+        assertNotEquals(a.nodeId(), b.nodeId());
+    }
+
+    @Test
+    void peerState_tracksDuplicatesAndGaps() {
+        UdpInvalidationTransport.PeerState peer = new UdpInvalidationTransport.PeerState(0);
+
+        assertEquals(0, peer.accept(1));
+        assertEquals(-1, peer.accept(1));
+        assertEquals(2, peer.accept(4));
+        assertEquals(0, peer.accept(3));
+        assertEquals(-1, peer.accept(3));
+        assertEquals(0, peer.advanceTo(4));
+        assertEquals(96, peer.advanceTo(100));
+        assertEquals(-1, peer.accept(20), "too old to tell");
+        assertEquals(0, peer.accept(99));
+        assertEquals(199, peer.accept(300));
+    }
+
+    @Test
+    void config_validation() {
+        InetSocketAddress bind = new InetSocketAddress(LOOPBACK, 0);
+        InetSocketAddress peer = new InetSocketAddress(LOOPBACK, 9);
+        UdpInvalidationConfig config = UdpInvalidationConfig.unicast(bind, List.of(peer), SECRET);
+
+        assertEquals(Duration.ofMillis(1), config.flushInterval());
+        assertEquals(Duration.ofSeconds(1), config.heartbeatInterval());
+        assertEquals(Duration.ofSeconds(2), config.degradedTtl());
+        assertEquals(1400, config.maxFrameBytes());
+        assertEquals(Duration.ZERO, config.withFlushInterval(Duration.ZERO).flushInterval());
+        assertEquals(512, config.withMaxFrameBytes(512).maxFrameBytes());
+        assertThrows(IllegalArgumentException.class, () -> config.withMaxFrameBytes(100));
+        assertThrows(IllegalArgumentException.class, () -> UdpInvalidationConfig.unicast(null, List.of(peer), SECRET));
+        assertThrows(IllegalArgumentException.class, () -> UdpInvalidationConfig.unicast(bind, List.of(), SECRET));
+        assertThrows(IllegalArgumentException.class, () -> UdpInvalidationConfig.unicast(bind, List.of(peer), new byte[8]));
+        assertThrows(IllegalArgumentException.class,
+                () -> UdpInvalidationConfig.multicast(new InetSocketAddress("10.0.0.1", 7600), "eth0", SECRET));
+        assertThrows(IllegalArgumentException.class,
+                () -> UdpInvalidationConfig.multicast(new InetSocketAddress("239.1.2.3", 7600), null, SECRET));
+        assertEquals(7600, UdpInvalidationConfig.multicast(new InetSocketAddress("239.1.2.3", 7600), "lo", SECRET)
+                .bind().getPort());
+    }
+
+    @Test
+    void unknownMulticastInterface_failsToOpen() {
+        UdpInvalidationConfig config = UdpInvalidationConfig.multicast(
+                new InetSocketAddress("239.1.2.3", 0), "no-such-interface", SECRET);
+
+        assertThrows(IllegalStateException.class, () -> new UdpInvalidationTransport(config));
+    }
+}
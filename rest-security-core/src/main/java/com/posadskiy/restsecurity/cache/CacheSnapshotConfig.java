@@ -0,0 +1,30 @@
+package com.posadskiy.restsecurity.cache;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration for {@link CacheSnapshotter}.
+ *
+ * @param file     snapshot file; written through a temporary file next to it and renamed
+ * @param interval how often the caches are written. Default 30 seconds
+ */
+public record CacheSnapshotConfig(Path file, Duration interval) {
+
+    public CacheSnapshotConfig {
+        if (file == null) {
+            throw new IllegalArgumentException("CacheSnapshotConfig: file is required");
+        }
+        interval = interval != null && !interval.isNegative() && !interval.isZero() ? interval : Duration.ofSeconds(30);
+    }
+
+    /** Snapshot to {@code file} every 30 seconds. */
+    public static CacheSnapshotConfig of(Path file) {
+        return new CacheSnapshotConfig(file, null);
+    }
+
+    /** Copy writing every {@code interval}. */
+    public CacheSnapshotConfig withInterval(Duration interval) {
+        return new CacheSnapshotConfig(file, interval);
+    }
+}
@@ -0,0 +1,218 @@
+package com.posadskiy.restsecurity.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps {@link CachingSessionSecurityController} and {@link CachingUserSecurityController} warm across restarts.
+ * The constructor reloads the unexpired entries of the last snapshot, so create it before the service reports
+ * ready; a background thread then writes the caches every {@link CacheSnapshotConfig#interval()}, and
+ * {@link #close()} writes them once more.
+ *
+ * <ul>
+ *   <li>Writing iterates the caches without locking them and streams the entries through a direct buffer in
+ *       bulk writes, so requests are not paused.</li>
+ *   <li>Each entry keeps its expiry time; entries expired by the time they are reloaded are skipped, and a
+ *       reloaded entry never outlives the ttl it was cached with. Events published while the node was down are
+ *       missed, as with any cache that outlives them: keep ttls at the staleness you accept.</li>
+ *   <li>A missing, torn or corrupt file (checked by CRC32C) means a cold start, not a failure.</li>
+ *   <li>The file holds session ids, which are bearer credentials, in plain text. Where the file system
+ *       supports POSIX permissions it is created readable and writable by the owner only ({@code rw-------});
+ *       elsewhere, keep it in a directory only the service can read.</li>
+ * </ul>
+ *
+ * <pre>
+ * CacheSnapshotter snapshots = new CacheSnapshotter(CacheSnapshotConfig.of(Path.of("/var/cache/app/security.snap")),
+ *         sessions, users); // either may be null
+ * </pre>
+ */
+public final class CacheSnapshotter implements AutoCloseable {
+
+    static final byte END = 0;
+    static final byte SESSION = 1;
+    static final byte USER = 2;
+
+    private static final int MAGIC = 0x52534353; // "RSCS"
+    private static final byte VERSION = 1;
+    private static final int HEADER = 4 + 1 + 8;
+    private static final Set<OpenOption> CREATE_NEW =
+            Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    private static final FileAttribute<?>[] OWNER_ONLY =
+            {PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))};
+
+    private final CacheSnapshotConfig config;
+    private final CachingSessionSecurityController sessions;
+    private final CachingUserSecurityController users;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Thread writer;
+    private final int restored;
+    private volatile boolean closed;
+
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong failedSnapshots = new AtomicLong();
+
+    /**
+     * Reload the last snapshot into the caches, then start writing snapshots.
+     *
+     * @param sessions session cache to keep warm, or null
+     * @param users    user cache to keep warm, or null
+     */
+    public CacheSnapshotter(CacheSnapshotConfig config, CachingSessionSecurityController sessions,
+                            CachingUserSecurityController users) {
+        this.config = config;
+        this.sessions = sessions;
+        this.users = users;
+        this.restored = restore();
+        this.writer = new Thread(this::run, "rest-security-cache-snapshots");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Write the caches now, replacing the previous snapshot.
+     *
+     * @return entries written
+     * @throws UncheckedIOException if the file cannot be written; the previous snapshot is kept
+     */
+    public int snapshot() {
+        Path file = config.file();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        writeLock.lock();
+        try {
+            // A leftover temporary file would keep its permissions: start from a new one.
+            Files.deleteIfExists(temporary);
+            return write(file, temporary);
+        } catch (IOException e) {
+            failedSnapshots.incrementAndGet();
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int write(Path file, Path temporary) throws IOException {
+        boolean posix = temporary.getFileSystem().supportedFileAttributeViews().contains("posix");
+        try (FileChannel channel = FileChannel.open(temporary, CREATE_NEW,
+                posix ? OWNER_ONLY : new FileAttribute<?>[0])) {
+            long now = System.currentTimeMillis();
+            SnapshotOutput out = new SnapshotOutput(channel);
+            out.header(MAGIC, VERSION, now);
+            if (sessions != null) {
+                sessions.writeSnapshot(out, now);
+            }
+            if (users != null) {
+                users.writeSnapshot(out, now);
+            }
+            out.finish(END);
+            channel.force(false);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshots.incrementAndGet();
+            return out.entries();
+        }
+    }
+
+    /** Entries reloaded at startup. */
+    public int restored() {
+        return restored;
+    }
+
+    /** Snapshots written so far. */
+    public long snapshots() {
+        return snapshots.get();
+    }
+
+    /** Snapshots that failed to write so far. */
+    public long failedSnapshots() {
+        return failedSnapshots.get();
+    }
+
+    /** Stop the background writer and write a final snapshot, so a restart is warm. */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshot();
+    }
+
+    private void run() {
+        long intervalNanos = config.interval().toNanos();
+        while (!closed) {
+            LockSupport.parkNanos(this, intervalNanos);
+            if (!closed) {
+                try {
+                    snapshot();
+                } catch (UncheckedIOException e) {
+                    // Counted; the next interval tries again.
+                }
+            }
+        }
+    }
+
+    /** @return entries restored; 0 if there is no usable snapshot */
+    private int restore() {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(config.file(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER + 1 + 4 || size > Integer.MAX_VALUE) {
+                return 0;
+            }
+            in = ByteBuffer.allocate((int) size);
+            while (in.hasRemaining() && channel.read(in) >= 0) {
+                // read it all
+            }
+            in.flip();
+        } catch (IOException e) {
+            return 0;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(in.array(), 0, in.limit() - 4);
+        if (in.getInt(in.limit() - 4) != (int) crc.getValue() || in.getInt() != MAGIC || in.get() != VERSION) {
+            return 0;
+        }
+        in.getLong(); // written at
+        in.limit(in.limit() - 4);
+        long now = System.currentTimeMillis();
+        int count = 0;
+        try {
+            for (byte kind = in.get(); kind != END; kind = in.get()) {
+                int length = in.getInt();
+                ByteBuffer body = in.slice(in.position(), length);
+                in.position(in.position() + length);
+                boolean stored = switch (kind) {
+                    case SESSION -> sessions != null && sessions.restoreSnapshotEntry(body, now);
+                    case USER -> users != null && users.restoreSnapshotEntry(body, now);
+                    default -> false;
+                };
+                if (stored) {
+                    count++;
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            // A checksummed file from a newer or broken writer: keep what was restored.
+        }
+        return count;
+    }
+}
@@ -0,0 +1,215 @@
+package com.posadskiy.restsecurity.cache;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorates a {@link SessionSecurityController} with a short-lived cache of session lookups. An entry lives for
+ * {@link SecurityCacheConfig#sessionTtl()}, which bounds how late a time-based expiry is noticed; a
+ * {@link InvalidationEvent.SessionRevoked} takes effect immediately. Subscribe the cache to a
+ * {@link SecurityInvalidationBus} and publish every logout there.
+ *
+ * <p>The store sees lookups only on misses: put a sliding-expiration wrapper such as
+ * {@code WriteBehindSessionController} outside this cache, not inside.
+ *
+ * <p>With {@link SecurityCacheConfig#sessionRefreshAhead()} set, a hot session is reloaded on a background thread
+ * shortly before its entry expires, and requests keep getting the cached answer meanwhile instead of waiting for
+ * the store. Each session has at most one reload in flight; when the reload queue is full, the entry simply
+ * expires and is loaded on the next request. {@link #close()} stops the reload threads.
+ */
+public final class CachingSessionSecurityController implements SessionSecurityController, InvalidationListener,
+        AutoCloseable {
+
+    private static final CachedSession ABSENT = new CachedSession(false, true, null);
+    private static final int REFRESH_QUEUE = 1024;
+
+    private final SessionSecurityController delegate;
+    private final VersionedCache<CachedSession> cache;
+    private final double refreshAhead;
+    /** Null when refresh-ahead is off. */
+    private final ThreadPoolExecutor refresher;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failedRefreshes = new AtomicLong();
+    private final AtomicLong skippedRefreshes = new AtomicLong();
+
+    /** @param userId user of a live session; null if it does not exist or has expired */
+    private record CachedSession(boolean exists, boolean expired, String userId) {}
+
+    public CachingSessionSecurityController(SessionSecurityController delegate, SecurityCacheConfig config) {
+        this.delegate = delegate;
+        this.cache = new VersionedCache<>(config.sessionTtl().toMillis(), config.maxEntries());
+        this.refreshAhead = config.sessionRefreshAhead();
+        if (refreshAhead > 0) {
+            this.refresher = new ThreadPoolExecutor(config.refreshThreads(), config.refreshThreads(),
+                    30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(REFRESH_QUEUE), task -> {
+                        Thread thread = new Thread(task, "rest-security-session-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            refresher.allowCoreThreadTimeOut(true);
+        } else {
+            this.refresher = null;
+        }
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        return session(sessionId).exists;
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        return session(sessionId).expired;
+    }
+
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        return session(sessionId).userId;
+    }
+
+    @Override
+    public void onInvalidation(InvalidationEvent event) {
+        switch (event) {
+            case InvalidationEvent.SessionRevoked revoked ->
+                    cache.apply(revoked.sessionId(), ABSENT, 0, System.currentTimeMillis());
+            case InvalidationEvent.AllInvalidated all -> cache.clear();
+            case InvalidationEvent.TtlCapped capped ->
+                    cache.capTtl(capped.ttl() != null ? capped.ttl().toMillis() : Long.MAX_VALUE);
+            case InvalidationEvent.UserRolesChanged changed -> {
+            }
+            case InvalidationEvent.UserRemoved removed -> {
+            }
+        }
+    }
+
+    /** Cached sessions. */
+    public int size() {
+        return cache.size();
+    }
+
+    /** Lookups answered from the cache so far. */
+    public long hits() {
+        return cache.hits();
+    }
+
+    /** Lookups that went to the store so far. */
+    public long misses() {
+        return cache.misses();
+    }
+
+    /** Sessions reloaded ahead of expiry so far. */
+    public long refreshes() {
+        return refreshes.get();
+    }
+
+    /** Reloads ahead of expiry that failed; the entry then expires and is loaded on a later request. */
+    public long failedRefreshes() {
+        return failedRefreshes.get();
+    }
+
+    /** Reloads ahead of expiry not started because the reload queue was full. */
+    public long skippedRefreshes() {
+        return skippedRefreshes.get();
+    }
+
+    /** Stop the reload threads, if any; reloads in flight are interrupted. */
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /** Write the live cached sessions; entries too large for the file are left out. */
+    void writeSnapshot(SnapshotOutput out, long now) throws IOException {
+        cache.forEachLive(now, (sessionId, session, version, validUntilMillis) -> {
+            byte[] id = SnapshotOutput.utf8(sessionId);
+            byte[] user = session.userId != null ? SnapshotOutput.utf8(session.userId) : null;
+            if (id == null || session.userId != null && user == null) {
+                return;
+            }
+            ByteBuffer body = out.entry(CacheSnapshotter.SESSION,
+                    8 + 8 + 1 + SnapshotOutput.stringBytes(id) + SnapshotOutput.stringBytes(user));
+            if (body != null) {
+                body.putLong(validUntilMillis).putLong(version)
+                        .put((byte) ((session.exists ? 1 : 0) | (session.expired ? 2 : 0)));
+                SnapshotOutput.putString(body, id);
+                SnapshotOutput.putString(body, user);
+            }
+        });
+    }
+
+    /** Restore one entry written by {@link #writeSnapshot}; false if expired or already cached. */
+    boolean restoreSnapshotEntry(ByteBuffer body, long now) {
+        long validUntilMillis = body.getLong();
+        long version = body.getLong();
+        byte flags = body.get();
+        String sessionId = SnapshotOutput.getString(body);
+        String userId = SnapshotOutput.getString(body);
+        CachedSession session = (flags & 1) == 0 ? ABSENT : new CachedSession(true, (flags & 2) != 0, userId);
+        return sessionId != null && cache.restore(sessionId, session, version, validUntilMillis, now);
+    }
+
+    private CachedSession session(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return ABSENT;
+        }
+        long now = System.currentTimeMillis();
+        CachedSession cached = refresher != null
+                ? cache.get(sessionId, now, refreshAhead, this::scheduleRefresh)
+                : cache.get(sessionId, now);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+        CachedSession loaded = load(sessionId);
+        cache.putLoaded(sessionId, loaded, stamp, now);
+        return loaded;
+    }
+
+    private CachedSession load(String sessionId) {
+        if (!delegate.isSessionExist(sessionId)) {
+            return ABSENT;
+        }
+        if (delegate.isSessionExpired(sessionId)) {
+            return new CachedSession(true, true, null);
+        }
+        return new CachedSession(true, false, delegate.getUserIdBySessionId(sessionId));
+    }
+
+    private void scheduleRefresh(String sessionId) {
+        if (!refreshing.add(sessionId)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> refresh(sessionId));
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(sessionId);
+            skippedRefreshes.incrementAndGet();
+        }
+    }
+
+    private void refresh(String sessionId) {
+        try {
+            // Stamped like a request load: a revocation arriving meanwhile wins over the reloaded answer.
+            long stamp = cache.stamp();
+            CachedSession loaded = load(sessionId);
+            cache.putLoaded(sessionId, loaded, stamp, System.currentTimeMillis());
+            refreshes.incrementAndGet();
+        } catch (RuntimeException e) {
+            failedRefreshes.incrementAndGet();
+        } finally {
+            refreshing.remove(sessionId);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.posadskiy.restsecurity.cache;
+
+import com.posadskiy.restsecurity.context.RoleSets;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decorates a {@link UserSecurityController} with a cache of each user's existence and roles. Entries live for
+ * {@link SecurityCacheConfig#userTtl()} and are replaced or dropped as soon as a
+ * {@link InvalidationEvent.UserRolesChanged} or {@link InvalidationEvent.UserRemoved} arrives; subscribe the
+ * cache to a {@link SecurityInvalidationBus} and publish every role change there.
+ *
+ * <pre>
+ * CachingUserSecurityController users = new CachingUserSecurityController(store, SecurityCacheConfig.defaults());
+ * bus.subscribe(users);
+ * </pre>
+ */
+public final class CachingUserSecurityController implements UserSecurityController, InvalidationListener {
+
+    private static final CachedUser ABSENT = new CachedUser(false, Set.of());
+
+    private final UserSecurityController delegate;
+    private final VersionedCache<CachedUser> cache;
+
+    private record CachedUser(boolean exists, Set<String> roles) {}
+
+    public CachingUserSecurityController(UserSecurityController delegate, SecurityCacheConfig config) {
+        this.delegate = delegate;
+        this.cache = new VersionedCache<>(config.userTtl().toMillis(), config.maxEntries());
+    }
+
+    @Override
+    public boolean isUserExist(String userId) {
+        return user(userId).exists;
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        return List.copyOf(user(userId).roles);
+    }
+
+    @Override
+    public Set<String> getUserRolesSet(String userId) {
+        return user(userId).roles;
+    }
+
+    @Override
+    public void onInvalidation(InvalidationEvent event) {
+        long now = System.currentTimeMillis();
+        switch (event) {
+            case InvalidationEvent.UserRolesChanged changed -> cache.apply(changed.userId(),
+                    changed.roles() != null ? new CachedUser(true, changed.roles()) : null, changed.version(), now);
+            case InvalidationEvent.UserRemoved removed -> cache.apply(removed.userId(), ABSENT, removed.version(), now);
+            case InvalidationEvent.AllInvalidated all -> cache.clear();
+            case InvalidationEvent.TtlCapped capped ->
+                    cache.capTtl(capped.ttl() != null ? capped.ttl().toMillis() : Long.MAX_VALUE);
+            case InvalidationEvent.SessionRevoked revoked -> {
+            }
+        }
+    }
+
+    /** Cached users. */
+    public int size() {
+        return cache.size();
+    }
+
+    /** Lookups answered from the cache so far. */
+    public long hits() {
+        return cache.hits();
+    }
+
+    /** Lookups that went to the store so far. */
+    public long misses() {
+        return cache.misses();
+    }
+
+    /** Write the live cached users; entries too large for the file are left out. */
+    void writeSnapshot(SnapshotOutput out, long now) throws IOException {
+        cache.forEachLive(now, (userId, user, version, validUntilMillis) -> {
+            byte[] id = SnapshotOutput.utf8(userId);
+            if (id == null || user.roles.size() >= 0xFFFF) {
+                return;
+            }
+            List<byte[]> roles = new ArrayList<>(user.roles.size());
+            int bodyBytes = 8 + 8 + 1 + 2 + SnapshotOutput.stringBytes(id);
+            for (String role : user.roles) {
+                byte[] bytes = SnapshotOutput.utf8(role);
+                if (bytes == null) {
+                    return;
+                }
+                roles.add(bytes);
+                bodyBytes += SnapshotOutput.stringBytes(bytes);
+            }
+            ByteBuffer body = out.entry(CacheSnapshotter.USER, bodyBytes);
+            if (body != null) {
+                body.putLong(validUntilMillis).putLong(version).put((byte) (user.exists ? 1 : 0))
+                        .putShort((short) roles.size());
+                SnapshotOutput.putString(body, id);
+                roles.forEach(role -> SnapshotOutput.putString(body, role));
+            }
+        });
+    }
+
+    /** Restore one entry written by {@link #writeSnapshot}; false if expired or already cached. */
+    boolean restoreSnapshotEntry(ByteBuffer body, long now) {
+        long validUntilMillis = body.getLong();
+        long version = body.getLong();
+        boolean exists = body.get() != 0;
+        int count = body.getShort() & 0xFFFF;
+        String userId = SnapshotOutput.getString(body);
+        String[] roles = new String[count];
+        for (int i = 0; i < count; i++) {
+            roles[i] = SnapshotOutput.getString(body);
+        }
+        CachedUser user = exists ? new CachedUser(true, RoleSets.intern(Arrays.asList(roles))) : ABSENT;
+        return userId != null && cache.restore(userId, user, version, validUntilMillis, now);
+    }
+
+    private CachedUser user(String userId) {
+        if (userId == null || userId.isBlank()) {
+            return ABSENT;
+        }
+        long now = System.currentTimeMillis();
+        CachedUser cached = cache.get(userId, now);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+        CachedUser loaded = delegate.isUserExist(userId)
+                ? new CachedUser(true, RoleSets.intern(delegate.getUserRolesSet(userId)))
+                : ABSENT;
+        cache.putLoaded(userId, loaded, stamp, now);
+        return loaded;
+    }
+}
@@ -0,0 +1,82 @@
+package com.posadskiy.restsecurity.cache;
+
+import com.posadskiy.restsecurity.context.RoleSets;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Change to security data that caches must apply, published on a {@link SecurityInvalidationBus}.
+ *
+ * <p>User events carry a version from the publisher (e.g. a row version or the change time in millis) that
+ * grows with every change of that user; a cache ignores an event older than what it holds, so events may
+ * arrive out of order. Version 0 means unversioned and is always applied.
+ */
+public sealed interface InvalidationEvent {
+
+    /**
+     * A user's roles changed.
+     *
+     * @param userId  user whose roles changed
+     * @param roles   new roles, replacing the cached ones; null to drop them and reload on next use
+     * @param version version of the change
+     */
+    record UserRolesChanged(String userId, Set<String> roles, long version) implements InvalidationEvent {
+        public UserRolesChanged {
+            if (userId == null || userId.isBlank()) {
+                throw new IllegalArgumentException("UserRolesChanged: userId must be non-blank");
+            }
+            roles = roles != null ? RoleSets.intern(roles) : null;
+        }
+
+        /** Drop the user's roles, unversioned. */
+        public static UserRolesChanged dropped(String userId) {
+            return new UserRolesChanged(userId, null, 0);
+        }
+    }
+
+    /**
+     * A user was deleted.
+     *
+     * @param userId  deleted user
+     * @param version version of the change
+     */
+    record UserRemoved(String userId, long version) implements InvalidationEvent {
+        public UserRemoved {
+            if (userId == null || userId.isBlank()) {
+                throw new IllegalArgumentException("UserRemoved: userId must be non-blank");
+            }
+        }
+    }
+
+    /**
+     * A session was revoked (logout, password change, admin action).
+     *
+     * @param sessionId revoked session
+     */
+    record SessionRevoked(String sessionId) implements InvalidationEvent {
+        public SessionRevoked {
+            if (sessionId == null || sessionId.isBlank()) {
+                throw new IllegalArgumentException("SessionRevoked: sessionId must be non-blank");
+            }
+        }
+    }
+
+    /** Everything may have changed, e.g. after missed events; caches drop all entries. */
+    record AllInvalidated() implements InvalidationEvent {
+    }
+
+    /**
+     * Events may be getting lost, e.g. a transport saw a gap: until lifted, caches keep new entries for at most
+     * {@code ttl}. Raised by transports on the local node; never sent to other nodes.
+     *
+     * @param ttl longest time to cache an entry; null to lift the cap
+     */
+    record TtlCapped(Duration ttl) implements InvalidationEvent {
+        public TtlCapped {
+            if (ttl != null && (ttl.isNegative() || ttl.isZero())) {
+                throw new IllegalArgumentException("TtlCapped: ttl must be positive");
+            }
+        }
+    }
+}
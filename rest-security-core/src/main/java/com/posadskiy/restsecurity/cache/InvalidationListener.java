@@ -0,0 +1,14 @@
+package com.posadskiy.restsecurity.cache;
+
+/**
+ * Receives the events published on a {@link SecurityInvalidationBus}.
+ */
+@FunctionalInterface
+public interface InvalidationListener {
+
+    /**
+     * Apply {@code event}. Called on the publishing thread; keep it short.
+     * @param event published event
+     */
+    void onInvalidation(InvalidationEvent event);
+}
@@ -0,0 +1,29 @@
+package com.posadskiy.restsecurity.cache;
+
+/**
+ * Carries {@link InvalidationEvent}s between the {@link SecurityInvalidationBus}es of several service
+ * instances, so a logout or role change on one node reaches the caches of all. Attach one with
+ * {@link SecurityInvalidationBus#attach}.
+ *
+ * <p>Implementations may lose events; when they notice, they should deliver
+ * {@link InvalidationEvent.AllInvalidated} and a {@link InvalidationEvent.TtlCapped} locally until delivery
+ * is healthy again.
+ */
+public interface InvalidationTransport extends AutoCloseable {
+
+    /**
+     * Start receiving: events from other nodes, and local events the transport raises, go to {@code receiver}.
+     * @param receiver local delivery; never sends back to the transport
+     */
+    void start(InvalidationListener receiver);
+
+    /**
+     * Send an event published on this node to the other nodes. Must not block for long.
+     * @param event event to send; never {@link InvalidationEvent.TtlCapped}
+     */
+    void send(InvalidationEvent event);
+
+    /** Stop sending and receiving. */
+    @Override
+    void close();
+}
@@ -0,0 +1,68 @@
+package com.posadskiy.restsecurity.cache;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link CachingUserSecurityController} and {@link CachingSessionSecurityController}.
+ *
+ * @param userTtl               how long user roles are cached; a backstop for missed events; default 10 min
+ * @param sessionTtl            how long session lookups are cached; bounds how late an expiry is noticed; default 5 s
+ * @param maxEntries            entries per cache; default 100 000
+ * @param sessionRefreshAhead   fraction of {@code sessionTtl}: a session read with less than this left to live is
+ *                              reloaded in the background while the cached answer is served. 0 (default) disables
+ * @param refreshThreads        threads reloading sessions ahead of expiry; default 2
+ */
+public record SecurityCacheConfig(Duration userTtl, Duration sessionTtl, int maxEntries, double sessionRefreshAhead,
+                                  int refreshThreads) {
+
+    public SecurityCacheConfig {
+        if (userTtl == null) {
+            userTtl = Duration.ofMinutes(10);
+        }
+        if (sessionTtl == null) {
+            sessionTtl = Duration.ofSeconds(5);
+        }
+        if (maxEntries <= 0) {
+            maxEntries = 100_000;
+        }
+        if (refreshThreads <= 0) {
+            refreshThreads = 2;
+        }
+        if (userTtl.isNegative() || userTtl.isZero() || sessionTtl.isNegative() || sessionTtl.isZero()) {
+            throw new IllegalArgumentException("SecurityCacheConfig: ttls must be positive");
+        }
+        if (!(sessionRefreshAhead >= 0 && sessionRefreshAhead < 1)) {
+            throw new IllegalArgumentException("SecurityCacheConfig: sessionRefreshAhead must be in [0, 1)");
+        }
+    }
+
+    public SecurityCacheConfig(Duration userTtl, Duration sessionTtl, int maxEntries) {
+        this(userTtl, sessionTtl, maxEntries, 0, 0);
+    }
+
+    /** Defaults for everything. */
+    public static SecurityCacheConfig defaults() {
+        return new SecurityCacheConfig(null, null, 0);
+    }
+
+    public SecurityCacheConfig withUserTtl(Duration userTtl) {
+        return new SecurityCacheConfig(userTtl, sessionTtl, maxEntries, sessionRefreshAhead, refreshThreads);
+    }
+
+    public SecurityCacheConfig withSessionTtl(Duration sessionTtl) {
+        return new SecurityCacheConfig(userTtl, sessionTtl, maxEntries, sessionRefreshAhead, refreshThreads);
+    }
+
+    public SecurityCacheConfig withMaxEntries(int maxEntries) {
+        return new SecurityCacheConfig(userTtl, sessionTtl, maxEntries, sessionRefreshAhead, refreshThreads);
+    }
+
+    /** Copy reloading sessions read in the last {@code fraction} of their ttl, e.g. 0.2. */
+    public SecurityCacheConfig withSessionRefreshAhead(double fraction) {
+        return new SecurityCacheConfig(userTtl, sessionTtl, maxEntries, fraction, refreshThreads);
+    }
+
+    public SecurityCacheConfig withRefreshThreads(int refreshThreads) {
+        return new SecurityCacheConfig(userTtl, sessionTtl, maxEntries, sessionRefreshAhead, refreshThreads);
+    }
+}
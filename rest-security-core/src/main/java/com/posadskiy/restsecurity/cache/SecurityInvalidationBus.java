@@ -0,0 +1,85 @@
+package com.posadskiy.restsecurity.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process channel for {@link InvalidationEvent}s: whoever changes roles or revokes sessions publishes, and
+ * the caching controllers subscribed to it apply the change before {@link #publish} returns.
+ *
+ * <pre>
+ * SecurityInvalidationBus bus = new SecurityInvalidationBus();
+ * CachingUserSecurityController users = new CachingUserSecurityController(store, SecurityCacheConfig.defaults());
+ * bus.subscribe(users);
+ * ...
+ * bus.publish(new InvalidationEvent.UserRolesChanged("alice", Set.of("USER", "ADMIN"), version));
+ * </pre>
+ */
+public final class SecurityInvalidationBus {
+
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<InvalidationTransport> transports = new CopyOnWriteArrayList<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failedDeliveries = new AtomicLong();
+
+    public void subscribe(InvalidationListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("SecurityInvalidationBus: listener must not be null");
+        }
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(InvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Connect this bus to other nodes: events published here are also sent through {@code transport}, and
+     * events it receives are delivered to the local listeners only.
+     */
+    public void attach(InvalidationTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("SecurityInvalidationBus: transport must not be null");
+        }
+        transports.add(transport);
+        transport.start(this::deliver);
+    }
+
+    /**
+     * Deliver {@code event} to every listener on this thread, then hand it to the attached transports. A
+     * listener that throws does not keep the event from the others.
+     */
+    public void publish(InvalidationEvent event) {
+        deliver(event);
+        if (!(event instanceof InvalidationEvent.TtlCapped)) {
+            for (InvalidationTransport transport : transports) {
+                transport.send(event);
+            }
+        }
+    }
+
+    private void deliver(InvalidationEvent event) {
+        if (event == null) {
+            throw new IllegalArgumentException("SecurityInvalidationBus: event must not be null");
+        }
+        published.incrementAndGet();
+        for (InvalidationListener listener : listeners) {
+            try {
+                listener.onInvalidation(event);
+            } catch (RuntimeException e) {
+                failedDeliveries.incrementAndGet();
+            }
+        }
+    }
+
+    /** Events delivered to the listeners so far, local and received. */
+    public long published() {
+        return published.get();
+    }
+
+    /** Deliveries whose listener threw. */
+    public long failedDeliveries() {
+        return failedDeliveries.get();
+    }
+}
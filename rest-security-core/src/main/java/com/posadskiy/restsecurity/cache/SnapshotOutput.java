@@ -0,0 +1,106 @@
+package com.posadskiy.restsecurity.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Buffered writer of a {@link CacheSnapshotter} file. Entries are gathered in a direct buffer and written to the
+ * channel in bulk when it fills; a CRC32C of everything written follows the last entry. Not thread-safe.
+ */
+final class SnapshotOutput {
+
+    /** Longest string an entry can hold; longer entries are skipped. */
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private int entries;
+
+    SnapshotOutput(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /** Write the file header. */
+    void header(int magic, byte version, long createdAtMillis) {
+        buffer.putInt(magic).put(version).putLong(createdAtMillis);
+    }
+
+    /**
+     * Start an entry of {@code bodyBytes} and return the buffer to write exactly that many bytes of body to.
+     *
+     * @return null if the entry is larger than the buffer and must be skipped
+     */
+    ByteBuffer entry(byte kind, int bodyBytes) throws IOException {
+        if (5 + bodyBytes > BUFFER_BYTES) {
+            return null;
+        }
+        if (buffer.remaining() < 5 + bodyBytes) {
+            flush();
+        }
+        entries++;
+        return buffer.put(kind).putInt(bodyBytes);
+    }
+
+    /** Write the buffered entries, the end marker and the checksum. */
+    void finish(byte endKind) throws IOException {
+        if (buffer.remaining() < 1) {
+            flush();
+        }
+        buffer.put(endKind);
+        flush();
+        ByteBuffer trailer = ByteBuffer.allocate(4).putInt(0, (int) crc.getValue());
+        while (trailer.hasRemaining()) {
+            channel.write(trailer);
+        }
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    /** Encoded size of {@code value} written by {@link #putString}; 2 for null. */
+    static int stringBytes(byte[] value) {
+        return 2 + (value != null ? value.length : 0);
+    }
+
+    /** Write a 2-byte length and the bytes; null as length 0xFFFF. {@code value} is below the limit. */
+    static void putString(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.putShort((short) 0xFFFF);
+        } else {
+            out.putShort((short) value.length).put(value);
+        }
+    }
+
+    /** @return the string, or null if written as null */
+    static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length == 0xFFFF) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** @return UTF-8 bytes, or null if too long for an entry */
+    static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length < MAX_STRING_BYTES ? bytes : null;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
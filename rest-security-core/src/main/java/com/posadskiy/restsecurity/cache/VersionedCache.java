@@ -0,0 +1,155 @@
+package com.posadskiy.restsecurity.cache;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Map of cached values with versioned invalidation, shared by the caching controllers.
+ *
+ * <ul>
+ *   <li>An event stores its value, or a tombstone (null value) for a drop, with the event's version; an event
+ *       older than the entry is ignored, so a late replay cannot resurrect dropped data.</li>
+ *   <li>A value loaded from the store is stored only if no event arrived while it was loading, so a slow load
+ *       cannot overwrite a newer change.</li>
+ * </ul>
+ *
+ * @param <V> cached value
+ */
+final class VersionedCache<V> {
+
+    private record Entry<V>(V value, long version, long validUntilMillis) {}
+
+    /** Receives live entries, see {@link #forEachLive}. */
+    @FunctionalInterface
+    interface EntryVisitor<V> {
+        void visit(String key, V value, long version, long validUntilMillis) throws IOException;
+    }
+
+    private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final int maxEntries;
+    /** Bumped by every event; a load started under another generation is not stored. */
+    private final AtomicLong generation = new AtomicLong();
+    /** Upper bound on the ttl of new entries while events may be lost; Long.MAX_VALUE when healthy. */
+    private volatile long capMillis = Long.MAX_VALUE;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    VersionedCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /** @return the cached value, or null on a miss (absent, expired or dropped) */
+    V get(String key, long now) {
+        return get(key, now, 0, null);
+    }
+
+    /**
+     * Like {@link #get(String, long)}; on a hit with less than {@code refreshAhead} of the ttl left to live, also
+     * pass the key to {@code onRefreshDue}.
+     */
+    V get(String key, long now, double refreshAhead, Consumer<String> onRefreshDue) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.value != null && entry.validUntilMillis > now) {
+            hits.incrementAndGet();
+            if (onRefreshDue != null && entry.validUntilMillis - now < ttl() * refreshAhead) {
+                onRefreshDue.accept(key);
+            }
+            return entry.value;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** Take before loading; pass to {@link #putLoaded}. */
+    long stamp() {
+        return generation.get();
+    }
+
+    /** Store a value loaded from the store, unless an event arrived since {@code stamp}. */
+    void putLoaded(String key, V value, long stamp, long now) {
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        entries.compute(key, (k, old) -> generation.get() != stamp ? old
+                : new Entry<>(value, old != null ? old.version : 0, now + ttl()));
+    }
+
+    /**
+     * Apply an event: store {@code value}, or a tombstone if null, unless the entry is newer than
+     * {@code version}.
+     */
+    void apply(String key, V value, long version, long now) {
+        generation.incrementAndGet();
+        entries.compute(key, (k, old) -> version != 0 && old != null && old.version > version ? old
+                : new Entry<>(value, version, now + ttl()));
+    }
+
+    /**
+     * Visit the entries holding a value and not expired at {@code now}. Does not lock: entries changed while
+     * visiting may be seen old or new.
+     */
+    void forEachLive(long now, EntryVisitor<V> visitor) throws IOException {
+        for (Map.Entry<String, Entry<V>> mapping : entries.entrySet()) {
+            Entry<V> entry = mapping.getValue();
+            if (entry.value != null && entry.validUntilMillis > now) {
+                visitor.visit(mapping.getKey(), entry.value, entry.version, entry.validUntilMillis);
+            }
+        }
+    }
+
+    /**
+     * Store an entry from a snapshot, keeping its expiry, unless it has expired, the key is already cached
+     * (a load or event since startup is newer) or the cache is full.
+     *
+     * @return true if stored
+     */
+    boolean restore(String key, V value, long version, long validUntilMillis, long now) {
+        if (validUntilMillis <= now || entries.size() >= maxEntries) {
+            return false;
+        }
+        return entries.putIfAbsent(key, new Entry<>(value, version, Math.min(validUntilMillis, now + ttl()))) == null;
+    }
+
+    /** Keep new entries for at most {@code capMillis}; {@link Long#MAX_VALUE} lifts the cap. */
+    void capTtl(long capMillis) {
+        this.capMillis = capMillis;
+    }
+
+    void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    private long ttl() {
+        return Math.min(ttlMillis, capMillis);
+    }
+
+    /** Drop expired entries; if the cache is still full, drop an arbitrary tenth of it. */
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.validUntilMillis <= now);
+        int excess = entries.size() - maxEntries + Math.max(1, maxEntries / 10);
+        Iterator<String> keys = entries.keySet().iterator();
+        while (excess-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.posadskiy.restsecurity.coalesce;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link BatchingSecurityController}.
+ *
+ * @param maxWait      longest a batch stays open for more keys; default 200 µs
+ * @param maxBatchSize keys per batch; a full batch is sent at once; default 128
+ * @param timeout      how long a caller waits for its batch; default 2 s
+ */
+public record BatchConfig(Duration maxWait, int maxBatchSize, Duration timeout) {
+
+    public BatchConfig {
+        if (maxWait == null) {
+            maxWait = Duration.ofNanos(200_000);
+        }
+        if (maxBatchSize <= 0) {
+            maxBatchSize = 128;
+        }
+        if (timeout == null) {
+            timeout = Duration.ofSeconds(2);
+        }
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("BatchConfig: maxWait must not be negative");
+        }
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("BatchConfig: timeout must be positive");
+        }
+    }
+
+    /** Defaults for everything. */
+    public static BatchConfig defaults() {
+        return new BatchConfig(null, 0, null);
+    }
+
+    public BatchConfig withMaxWait(Duration maxWait) {
+        return new BatchConfig(maxWait, maxBatchSize, timeout);
+    }
+
+    public BatchConfig withMaxBatchSize(int maxBatchSize) {
+        return new BatchConfig(maxWait, maxBatchSize, timeout);
+    }
+
+    public BatchConfig withTimeout(Duration timeout) {
+        return new BatchConfig(maxWait, maxBatchSize, timeout);
+    }
+}
@@ -0,0 +1,97 @@
+package com.posadskiy.restsecurity.coalesce;
+
+import com.posadskiy.restsecurity.controller.BatchSessionSecurityController;
+import com.posadskiy.restsecurity.controller.BatchUserSecurityController;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionLookup;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decorates batch-capable stores so that lookups running concurrently on different threads reach the store as
+ * one multi-key call: sessions through {@link BatchSessionSecurityController#lookupSessions}, users through
+ * {@link BatchUserSecurityController#getUsersRoles}. Under load this turns many single-key round-trips into a
+ * few batched ones; when idle a lookup is sent at once (see {@link BatchConfig#maxWait()}).
+ *
+ * <p>A session id or user id joins a batch once per enforcement; the enforcer's later checks of the same id
+ * answer from an {@link EnforcementMemo}.
+ *
+ * <pre>
+ * BatchingSecurityController batching = new BatchingSecurityController(store, store, BatchConfig.defaults());
+ * SecurityEnforcer enforcer = new SecurityEnforcer(batching, batching);
+ * </pre>
+ */
+public final class BatchingSecurityController implements SessionSecurityController, UserSecurityController {
+
+    private final MicroBatcher<String, SessionLookup> sessions;
+    private final MicroBatcher<String, Set<String>> users;
+    private final EnforcementMemo<SessionLookup> lastSession = new EnforcementMemo<>();
+    private final EnforcementMemo<Set<String>> lastUser = new EnforcementMemo<>();
+
+    public BatchingSecurityController(BatchSessionSecurityController sessions, BatchUserSecurityController users,
+                                      BatchConfig config) {
+        this.sessions = new MicroBatcher<>(sessions::lookupSessions, config, "BatchingSecurityController");
+        this.users = new MicroBatcher<>(users::getUsersRoles, config, "BatchingSecurityController");
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        return session(sessionId) != null;
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        SessionLookup lookup = session(sessionId);
+        return lookup == null || lookup.expired();
+    }
+
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        SessionLookup lookup = session(sessionId);
+        return lookup != null ? lookup.userId() : null;
+    }
+
+    @Override
+    public boolean isUserExist(String userId) {
+        return roles(userId) != null;
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        Set<String> roles = roles(userId);
+        return roles != null ? List.copyOf(roles) : List.of();
+    }
+
+    @Override
+    public Set<String> getUserRolesSet(String userId) {
+        Set<String> roles = roles(userId);
+        return roles != null ? roles : Set.of();
+    }
+
+    /** Multi-key store calls made so far, sessions and users. */
+    public long storeCalls() {
+        return sessions.batches() + users.batches();
+    }
+
+    /** Keys looked up so far, sessions and users; divided by {@link #storeCalls()}, the mean batch size. */
+    public long lookups() {
+        return sessions.keys() + users.keys();
+    }
+
+    private SessionLookup session(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return null;
+        }
+        return lastSession.get(sessionId, sessions::load);
+    }
+
+    private Set<String> roles(String userId) {
+        if (userId == null || userId.isBlank()) {
+            return null;
+        }
+        return lastUser.get(userId, users::load);
+    }
+}
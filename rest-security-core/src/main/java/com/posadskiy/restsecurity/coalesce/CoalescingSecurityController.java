@@ -0,0 +1,104 @@
+package com.posadskiy.restsecurity.coalesce;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decorates a {@link SessionSecurityController} and a {@link UserSecurityController} so that concurrent identical
+ * lookups (same method, same id) reach the store once and share the result or the exception; see
+ * {@link SingleFlight}. Protects the store when many requests for one popular session arrive together, e.g.
+ * right after its cache entry expired. Place it between a cache and the store.
+ *
+ * <p>A shared answer is only right if the lookup has no side effect and does not depend on the calling
+ * thread. {@link SessionSecurityController#isSessionExist} of a delegate that
+ * {@linkplain SessionSecurityController#isSessionCheckConsuming() consumes} on each check (e.g. a JWT
+ * controller with replay protection) is therefore called for every caller. Delegates that keep per-thread
+ * state between the calls of one enforcement do not belong behind this class at all.
+ *
+ * <pre>
+ * CoalescingSecurityController coalescing = new CoalescingSecurityController(store, store, Duration.ofSeconds(2));
+ * SecurityEnforcer enforcer = new SecurityEnforcer(coalescing, coalescing);
+ * </pre>
+ */
+public final class CoalescingSecurityController implements SessionSecurityController, UserSecurityController {
+
+    private final SessionSecurityController sessions;
+    private final UserSecurityController users;
+    private final boolean shareSessionChecks;
+    private final SingleFlight<String, Boolean> sessionExists;
+    private final SingleFlight<String, Boolean> sessionExpired;
+    private final SingleFlight<String, String> userIds;
+    private final SingleFlight<String, Boolean> userExists;
+    private final SingleFlight<String, List<String>> roles;
+    private final SingleFlight<String, Set<String>> roleSets;
+
+    /**
+     * @param timeout how long a caller waits for a lookup another caller started
+     */
+    public CoalescingSecurityController(SessionSecurityController sessions, UserSecurityController users,
+                                        Duration timeout) {
+        this.sessions = sessions;
+        this.users = users;
+        this.shareSessionChecks = !sessions.isSessionCheckConsuming();
+        this.sessionExists = new SingleFlight<>(timeout);
+        this.sessionExpired = new SingleFlight<>(timeout);
+        this.userIds = new SingleFlight<>(timeout);
+        this.userExists = new SingleFlight<>(timeout);
+        this.roles = new SingleFlight<>(timeout);
+        this.roleSets = new SingleFlight<>(timeout);
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        if (!shareSessionChecks) {
+            return sessions.isSessionExist(sessionId);
+        }
+        return sessionExists.load(sessionId, () -> sessions.isSessionExist(sessionId));
+    }
+
+    @Override
+    public boolean isSessionCheckConsuming() {
+        return !shareSessionChecks;
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        return sessionExpired.load(sessionId, () -> sessions.isSessionExpired(sessionId));
+    }
+
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        return userIds.load(sessionId, () -> sessions.getUserIdBySessionId(sessionId));
+    }
+
+    @Override
+    public boolean isUserExist(String userId) {
+        return userExists.load(userId, () -> users.isUserExist(userId));
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        return roles.load(userId, () -> users.getUserRoles(userId));
+    }
+
+    @Override
+    public Set<String> getUserRolesSet(String userId) {
+        return roleSets.load(userId, () -> users.getUserRolesSet(userId));
+    }
+
+    /** Store calls made so far, over all lookups. */
+    public long storeCalls() {
+        return sessionExists.loads() + sessionExpired.loads() + userIds.loads()
+                + userExists.loads() + roles.loads() + roleSets.loads();
+    }
+
+    /** Lookups answered by another caller's store call so far. */
+    public long sharedCalls() {
+        return sessionExists.shared() + sessionExpired.shared() + userIds.shared()
+                + userExists.shared() + roles.shared() + roleSets.shared();
+    }
+}
@@ -0,0 +1,126 @@
+package com.posadskiy.restsecurity.coalesce;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Gathers concurrent loads of different keys into one multi-key load. The first caller of a batch (its leader)
+ * keeps it open for up to {@link BatchConfig#maxWait()} or until it holds {@link BatchConfig#maxBatchSize()}
+ * keys, then runs the loader on its own thread; everyone waits for their key's value. Repeated keys in a batch
+ * share one slot.
+ *
+ * <p>The window adapts to load: a leader only waits while another batch is being loaded. An idle system
+ * therefore loads a single key at once with no added latency, and batches form as soon as loads overlap.
+ *
+ * @param <K> key type
+ * @param <V> value type; keys missing from the loader's result get null
+ */
+final class MicroBatcher<K, V> {
+
+    private final Function<Set<K>, Map<K, V>> loader;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final long timeoutNanos;
+    private final String owner;
+    /** Not synchronized: a monitor would pin virtual-thread callers to their carrier. */
+    private final ReentrantLock lock = new ReentrantLock();
+    private Batch<K, V> open;
+    private final AtomicInteger loading = new AtomicInteger();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong keys = new AtomicLong();
+
+    private static final class Batch<K, V> {
+        final Thread leader = Thread.currentThread();
+        final Map<K, CompletableFuture<V>> calls = new LinkedHashMap<>();
+        volatile boolean full;
+    }
+
+    MicroBatcher(Function<Set<K>, Map<K, V>> loader, BatchConfig config, String owner) {
+        this.loader = loader;
+        this.maxBatchSize = config.maxBatchSize();
+        this.maxWaitNanos = config.maxWait().toNanos();
+        this.timeoutNanos = config.timeout().toNanos();
+        this.owner = owner;
+    }
+
+    V load(K key) {
+        Batch<K, V> batch;
+        CompletableFuture<V> call;
+        boolean leader;
+        lock.lock();
+        try {
+            leader = open == null;
+            if (leader) {
+                open = new Batch<>();
+            }
+            batch = open;
+            call = batch.calls.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if (batch.calls.size() >= maxBatchSize) {
+                open = null;
+                batch.full = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (leader) {
+            awaitMoreKeys(batch);
+            dispatch(batch);
+        } else if (batch.full) {
+            LockSupport.unpark(batch.leader);
+        }
+        return SingleFlight.await(call, timeoutNanos, owner);
+    }
+
+    /** Multi-key loads made so far. */
+    long batches() {
+        return batches.get();
+    }
+
+    /** Distinct keys loaded so far, over all batches. */
+    long keys() {
+        return keys.get();
+    }
+
+    private void awaitMoreKeys(Batch<K, V> batch) {
+        if (maxWaitNanos == 0 || loading.get() == 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + maxWaitNanos;
+        long remaining;
+        while (!batch.full && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void dispatch(Batch<K, V> batch) {
+        lock.lock();
+        try {
+            if (open == batch) {
+                open = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Closed: nobody adds to the batch from here on.
+        Map<K, CompletableFuture<V>> calls = batch.calls;
+        batches.incrementAndGet();
+        keys.addAndGet(calls.size());
+        loading.incrementAndGet();
+        try {
+            Map<K, V> values = loader.apply(Collections.unmodifiableSet(calls.keySet()));
+            calls.forEach((key, call) -> call.complete(values.get(key)));
+        } catch (RuntimeException | Error e) {
+            calls.values().forEach(call -> call.completeExceptionally(e));
+        } finally {
+            loading.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.posadskiy.restsecurity.coalesce;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent loads of the same key into one call. The first caller (leader) runs the loader on its
+ * own thread; callers arriving while it runs wait for its result, or its exception, instead of calling again.
+ * Nothing is cached: a call that starts after the leader finished loads again.
+ *
+ * <p>Waiting parks on a {@link CompletableFuture}, so virtual-thread waiters do not pin their carrier. A waiter
+ * gives up after the timeout with an {@link IllegalStateException}; the leader itself is never interrupted.
+ * A loader must not load the same key again from within itself.
+ *
+ * @param <K> key type
+ * @param <V> value type; null values are shared like any other
+ */
+public final class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutNanos;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * @param timeout how long a waiter waits for the leader
+     */
+    public SingleFlight(Duration timeout) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("SingleFlight: timeout must be positive");
+        }
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * Load {@code key}, or wait for the load already in flight for it.
+     *
+     * @throws RuntimeException the loader's exception, rethrown to the leader and every waiter
+     * @throws IllegalStateException if waiting timed out or was interrupted
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, call);
+        if (leader != null) {
+            shared.incrementAndGet();
+            return await(leader, timeoutNanos, "SingleFlight");
+        }
+        loads.incrementAndGet();
+        try {
+            V value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /** Loads in flight now. */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /** Loader calls made so far. */
+    public long loads() {
+        return loads.get();
+    }
+
+    /** Calls answered by another caller's load so far. */
+    public long shared() {
+        return shared.get();
+    }
+
+    /** Wait for {@code call}, rethrowing its exception; {@code owner} prefixes the messages. */
+    static <V> V await(CompletableFuture<V> call, long timeoutNanos, String owner) {
+        try {
+            return call.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(owner + ": load failed", cause);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(owner + ": timed out waiting for the load in flight", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(owner + ": interrupted while waiting for the load in flight", e);
+        }
+    }
+}
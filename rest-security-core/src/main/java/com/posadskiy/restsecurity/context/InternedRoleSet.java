@@ -0,0 +1,46 @@
+package com.posadskiy.restsecurity.context;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Immutable set of role names obtained from {@link RoleSets#intern}. Equal role sets interned while the pool has
+ * room are the same instance, and {@link SecurityContext} keeps such a set without copying it. Equal to any other
+ * {@link Set} of the same names.
+ */
+public final class InternedRoleSet extends AbstractSet<String> {
+
+    private final Set<String> roles;
+    private final int hash;
+
+    InternedRoleSet(Set<String> roles) {
+        this.roles = Set.copyOf(roles);
+        this.hash = this.roles.hashCode();
+    }
+
+    @Override
+    public boolean contains(Object role) {
+        return roles.contains(role);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return roles.iterator();
+    }
+
+    @Override
+    public int size() {
+        return roles.size();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other == this || super.equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
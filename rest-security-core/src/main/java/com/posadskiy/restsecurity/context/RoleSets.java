@@ -0,0 +1,55 @@
+package com.posadskiy.restsecurity.context;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool of canonical role sets. Applications have few distinct combinations of roles but may hold millions of
+ * contexts, cached users or sessions; interning makes all holders of the same roles share one
+ * {@link InternedRoleSet}. A lookup of a set already interned does not allocate.
+ *
+ * <p>The pool keeps at most {@value #MAX_POOLED} combinations for the life of the JVM; past that, {@link #intern}
+ * still returns an immutable {@link InternedRoleSet}, just not a shared one.
+ */
+public final class RoleSets {
+
+    /** Distinct role combinations kept. */
+    public static final int MAX_POOLED = 4096;
+
+    private static final Map<Set<String>, InternedRoleSet> POOL = new ConcurrentHashMap<>();
+    private static final InternedRoleSet EMPTY = new InternedRoleSet(Set.of());
+
+    private RoleSets() {
+    }
+
+    /**
+     * @return the canonical set of {@code roles}; empty for null
+     * @throws NullPointerException if {@code roles} contains null
+     */
+    public static InternedRoleSet intern(Collection<String> roles) {
+        if (roles instanceof InternedRoleSet interned) {
+            return interned;
+        }
+        if (roles == null || roles.isEmpty()) {
+            return EMPTY;
+        }
+        Set<String> key = roles instanceof Set<String> set ? set : Set.copyOf(roles);
+        InternedRoleSet pooled = POOL.get(key);
+        if (pooled != null) {
+            return pooled;
+        }
+        InternedRoleSet created = new InternedRoleSet(key);
+        if (POOL.size() >= MAX_POOLED) {
+            return created;
+        }
+        InternedRoleSet raced = POOL.putIfAbsent(created, created);
+        return raced != null ? raced : created;
+    }
+
+    /** Role combinations pooled so far. */
+    public static int size() {
+        return POOL.size();
+    }
+}
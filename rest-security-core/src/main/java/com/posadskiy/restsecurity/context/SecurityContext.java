@@ -8,12 +8,14 @@ import java.util.Set;
  *
  * @param sessionId session identifier
  * @param userId authenticated user identifier
- * @param roles user's roles
+ * @param roles user's roles; an {@link InternedRoleSet} is kept as is, any other set is copied
  */
 public record SecurityContext(String sessionId, String userId, Set<String> roles) {
 
     public SecurityContext {
-        roles = roles != null ? Set.copyOf(roles) : Set.of();
+        if (!(roles instanceof InternedRoleSet)) {
+            roles = roles != null ? Set.copyOf(roles) : Set.of();
+        }
     }
 
     /**
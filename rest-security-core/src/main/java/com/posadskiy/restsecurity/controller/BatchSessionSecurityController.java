@@ -0,0 +1,18 @@
+package com.posadskiy.restsecurity.controller;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Session store that can look up many sessions in one round-trip (e.g. Redis MGET, SQL {@code IN}).
+ * Implement it to use the store with {@code BatchingSecurityController}.
+ */
+public interface BatchSessionSecurityController extends SessionSecurityController {
+
+    /**
+     * Look up several sessions at once.
+     * @param sessionIds session identifiers, never empty
+     * @return state of each existing session; ids of sessions that do not exist are absent
+     */
+    Map<String, SessionLookup> lookupSessions(Set<String> sessionIds);
+}
@@ -0,0 +1,18 @@
+package com.posadskiy.restsecurity.controller;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * User store that can load the roles of many users in one round-trip.
+ * Implement it to use the store with {@code BatchingSecurityController}.
+ */
+public interface BatchUserSecurityController extends UserSecurityController {
+
+    /**
+     * Load the roles of several users at once.
+     * @param userIds user identifiers, never empty
+     * @return roles of each existing user (empty set if none); ids of users that do not exist are absent
+     */
+    Map<String, Set<String>> getUsersRoles(Set<String> userIds);
+}
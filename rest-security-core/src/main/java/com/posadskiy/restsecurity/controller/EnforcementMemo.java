@@ -0,0 +1,87 @@
+package com.posadskiy.restsecurity.controller;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Reuses a controller's last lookup on the calling thread for the rest of one enforcement, so the
+ * session checks and the user checks of a single request each reach the store once.
+ *
+ * <p>{@link com.posadskiy.restsecurity.enforcer.SecurityEnforcer} opens an enforcement before its first
+ * check and closes it afterwards, also when a check throws; a memo from an earlier enforcement is never
+ * served, so a pooled thread does not see the previous request's answer. Outside an enforcement every
+ * call is a fresh lookup.
+ *
+ * <pre>
+ * private final EnforcementMemo&lt;SessionLookup&gt; lastSession = new EnforcementMemo&lt;&gt;();
+ * SessionLookup lookup = lastSession.get(sessionId, this::load);
+ * </pre>
+ *
+ * @param <V> looked up value; {@code null} values are memoized too
+ */
+public final class EnforcementMemo<V> {
+
+    /** Per thread: [0] the open enforcement, 0 when none; [1] the last one opened. */
+    private static final ThreadLocal<long[]> ENFORCEMENT = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final ThreadLocal<Entry<V>> last = new ThreadLocal<>();
+
+    private record Entry<V>(long enforcement, String id, V value) {}
+
+    /** Open an enforcement on the calling thread; memos of earlier ones are no longer served. */
+    public static void begin() {
+        long[] enforcement = ENFORCEMENT.get();
+        enforcement[0] = ++enforcement[1];
+    }
+
+    /** Close the calling thread's enforcement; later calls look up afresh until the next {@link #begin()}. */
+    public static void end() {
+        ENFORCEMENT.get()[0] = 0;
+    }
+
+    /**
+     * Run {@code task} as an enforcement of its own and restore the calling thread's state afterwards: for
+     * controllers that hand the store calls of an enforcement to another thread.
+     */
+    public static <T> T within(Supplier<T> task) {
+        long[] enforcement = ENFORCEMENT.get();
+        long outer = enforcement[0];
+        enforcement[0] = ++enforcement[1];
+        try {
+            return task.get();
+        } finally {
+            enforcement[0] = outer;
+        }
+    }
+
+    /** Memoize {@code value} for {@code id} in the current enforcement; a no-op outside one. */
+    public void put(String id, V value) {
+        long enforcement = ENFORCEMENT.get()[0];
+        if (enforcement != 0) {
+            last.set(new Entry<>(enforcement, id, value));
+        }
+    }
+
+    /** Drop the calling thread's memo, e.g. after a write that changes the answer. */
+    public void clear() {
+        last.remove();
+    }
+
+    /**
+     * The value memoized for {@code id} in the current enforcement, or {@code loader}'s answer,
+     * memoized in place of the previous one.
+     */
+    public V get(String id, Function<String, V> loader) {
+        long enforcement = ENFORCEMENT.get()[0];
+        if (enforcement == 0) {
+            return loader.apply(id);
+        }
+        Entry<V> entry = last.get();
+        if (entry != null && entry.enforcement == enforcement && id.equals(entry.id)) {
+            return entry.value;
+        }
+        V value = loader.apply(id);
+        last.set(new Entry<>(enforcement, id, value));
+        return value;
+    }
+}
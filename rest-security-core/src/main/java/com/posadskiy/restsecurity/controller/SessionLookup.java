@@ -0,0 +1,10 @@
+package com.posadskiy.restsecurity.controller;
+
+/**
+ * State of one existing session, as returned by {@link BatchSessionSecurityController#lookupSessions}.
+ *
+ * @param userId  user of the session
+ * @param expired true if the session has expired
+ */
+public record SessionLookup(String userId, boolean expired) {
+}
@@ -22,6 +22,15 @@ public interface SessionSecurityController {
      */
     boolean isSessionExpired(String sessionId);
 
+    /**
+     * True if {@link #isSessionExist} changes state, e.g. consumes a one-time token id, so that two calls must
+     * not share one answer. Decorators that share a lookup between callers then call it for each caller.
+     * @return false by default
+     */
+    default boolean isSessionCheckConsuming() {
+        return false;
+    }
+
     /**
      * Get the user ID associated with a session.
      * @param sessionId session identifier
@@ -3,10 +3,13 @@ package com.posadskiy.restsecurity.enforcer;
 import com.posadskiy.restsecurity.audit.SecurityAuditListener;
 import com.posadskiy.restsecurity.context.SecurityContext;
 import com.posadskiy.restsecurity.context.SecurityContextHolder;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
 import com.posadskiy.restsecurity.controller.SessionSecurityController;
 import com.posadskiy.restsecurity.controller.UserSecurityController;
 import com.posadskiy.restsecurity.enumeration.Role;
 import com.posadskiy.restsecurity.exception.*;
+import com.posadskiy.restsecurity.id.SessionIdPrefilter;
+import com.posadskiy.restsecurity.id.SessionIdVerdict;
 import com.posadskiy.restsecurity.rest.SecuredRequestContext;
 
 import java.util.Set;
@@ -22,6 +25,7 @@ public final class SecurityEnforcer {
     private final SessionSecurityController sessionController;
     private final UserSecurityController userController;
     private SecurityAuditListener auditListener;
+    private SessionIdPrefilter sessionIdPrefilter;
 
     public SecurityEnforcer(SessionSecurityController sessionController,
                             UserSecurityController userController) {
@@ -36,6 +40,14 @@ public final class SecurityEnforcer {
         this.auditListener = auditListener;
     }
 
+    /**
+     * Optional check of session ids before any store lookup (e.g.
+     * {@link com.posadskiy.restsecurity.id.SignedSessionIds}). Not used by default.
+     */
+    public void setSessionIdPrefilter(SessionIdPrefilter sessionIdPrefilter) {
+        this.sessionIdPrefilter = sessionIdPrefilter;
+    }
+
     /**
      * Validate session and roles. On success, populates {@link SecurityContextHolder} and returns the context.
      * Caller should call {@link SecurityContextHolder#clearContext()} when done, or use {@link #enforceAndRun}
@@ -143,10 +155,28 @@ public final class SecurityEnforcer {
      * Useful when you need to check without populating the holder.
      */
     public SecurityContext validateAndBuildContext(SecuredRequestContext ctx, String... requiredRoles) {
+        EnforcementMemo.begin();
+        try {
+            return validate(ctx, requiredRoles);
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    private SecurityContext validate(SecuredRequestContext ctx, String[] requiredRoles) {
         String sessionId = ctx.getSessionId();
         if (sessionId == null || sessionId.isBlank()) {
             throw new SessionDoesNotExistException();
         }
+        if (sessionIdPrefilter != null) {
+            SessionIdVerdict verdict = sessionIdPrefilter.check(sessionId);
+            if (verdict == SessionIdVerdict.EXPIRED) {
+                throw new SessionExpiredException();
+            }
+            if (verdict != SessionIdVerdict.VALID) {
+                throw new SessionDoesNotExistException();
+            }
+        }
         if (!sessionController.isSessionExist(sessionId)) {
             throw new SessionDoesNotExistException();
         }
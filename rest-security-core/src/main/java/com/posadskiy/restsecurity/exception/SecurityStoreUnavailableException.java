@@ -0,0 +1,13 @@
+package com.posadskiy.restsecurity.exception;
+
+/**
+ * Thrown when a session or user store cannot answer in time and no stale answer may be served. Not a
+ * {@link RestSecurityException}: the request was not denied, it could not be checked; answer 503 rather
+ * than 401 or 403.
+ */
+public final class SecurityStoreUnavailableException extends RuntimeException {
+
+    public SecurityStoreUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,49 @@
+package com.posadskiy.restsecurity.hedge;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link HedgedSecurityController}.
+ *
+ * @param percentile    latency percentile after which a second replica is asked. Default 0.95
+ * @param minDelay      hedge delay while there are too few samples, and its lower bound. Default 1 ms
+ * @param maxHedgeRatio hedged lookups per lookup, at most; caps the extra load. Default 0.05
+ * @param timeout       how long a lookup waits for any replica in total. Default 1 second
+ */
+public record HedgeConfig(double percentile, Duration minDelay, double maxHedgeRatio, Duration timeout) {
+
+    public HedgeConfig {
+        percentile = percentile > 0 ? percentile : 0.95;
+        minDelay = minDelay != null && !minDelay.isNegative() && !minDelay.isZero() ? minDelay : Duration.ofMillis(1);
+        maxHedgeRatio = maxHedgeRatio > 0 ? maxHedgeRatio : 0.05;
+        timeout = timeout != null && !timeout.isNegative() && !timeout.isZero() ? timeout : Duration.ofSeconds(1);
+        if (percentile >= 1 || maxHedgeRatio > 1) {
+            throw new IllegalArgumentException("HedgeConfig: percentile must be below 1 and maxHedgeRatio at most 1");
+        }
+    }
+
+    /** Defaults for everything. */
+    public static HedgeConfig defaults() {
+        return new HedgeConfig(0, null, 0, null);
+    }
+
+    /** Copy hedging after latency percentile {@code percentile}, e.g. 0.99. */
+    public HedgeConfig withPercentile(double percentile) {
+        return new HedgeConfig(percentile, minDelay, maxHedgeRatio, timeout);
+    }
+
+    /** Copy hedging at most {@code maxHedgeRatio} of the lookups. */
+    public HedgeConfig withMaxHedgeRatio(double maxHedgeRatio) {
+        return new HedgeConfig(percentile, minDelay, maxHedgeRatio, timeout);
+    }
+
+    /** Copy waiting at most {@code timeout} per lookup. */
+    public HedgeConfig withTimeout(Duration timeout) {
+        return new HedgeConfig(percentile, minDelay, maxHedgeRatio, timeout);
+    }
+
+    /** Copy with hedge delay floor {@code minDelay}. */
+    public HedgeConfig withMinDelay(Duration minDelay) {
+        return new HedgeConfig(percentile, minDelay, maxHedgeRatio, timeout);
+    }
+}
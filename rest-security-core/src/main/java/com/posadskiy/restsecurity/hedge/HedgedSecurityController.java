@@ -0,0 +1,308 @@
+package com.posadskiy.restsecurity.hedge;
+
+import com.posadskiy.restsecurity.context.RoleSets;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import com.posadskiy.restsecurity.exception.SecurityStoreUnavailableException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cuts tail latency when one replica of the store is slow at a time. A lookup goes to the replica with the
+ * lowest moving-average latency ({@link ReplicaSet}); if it has not answered within the recent
+ * {@link HedgeConfig#percentile()} of lookup latency, the same lookup is sent to a second replica and the first
+ * answer wins. The other call is cancelled (its thread interrupted) and its replica charged the time it took
+ * so far. Hedges are limited to {@link HedgeConfig#maxHedgeRatio()} of the lookups, so a store that is slow
+ * everywhere does not get twice the load. A replica that fails is replaced by another at once, outside that limit.
+ *
+ * <p>Hedging is decided per answer, not per check: the session checks of an enforcement share one possibly
+ * hedged lookup and its user checks another ({@link EnforcementMemo}). Calls run on virtual threads, each
+ * as an enforcement of its own, so a memoizing replica answers one attempt with one lookup.
+ *
+ * <pre>
+ * HedgedSecurityController hedged = new HedgedSecurityController(ReplicaSet.of(
+ *         new Replica("replica-a", storeA, storeA), new Replica("replica-b", storeB, storeB)), HedgeConfig.defaults());
+ * SecurityEnforcer enforcer = new SecurityEnforcer(hedged, hedged);
+ * </pre>
+ */
+public final class HedgedSecurityController implements SessionSecurityController, UserSecurityController,
+        AutoCloseable {
+
+    /** Hedge budget unit; the budget saves up at most 10 hedges for a burst. */
+    private static final long TOKEN = 1000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private static final SessionAnswer NO_SESSION = new SessionAnswer(false, true, null);
+    private static final UserAnswer NO_USER = new UserAnswer(false, Set.of());
+
+    private final ReplicaSet replicas;
+    private final long minDelayNanos;
+    private final long timeoutNanos;
+    private final long tokensPerLookup;
+    private final LatencyWindow latencies;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong tokens = new AtomicLong();
+    private final EnforcementMemo<SessionAnswer> lastSession = new EnforcementMemo<>();
+    private final EnforcementMemo<UserAnswer> lastUser = new EnforcementMemo<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+
+    private record SessionAnswer(boolean exists, boolean expired, String userId) {}
+
+    private record UserAnswer(boolean exists, Set<String> roles) {}
+
+    /** One call to one replica. */
+    private final class Attempt<V> {
+
+        final int replica;
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        /** Set by whichever of the call and a cancellation charges the replica first. */
+        final AtomicBoolean charged = new AtomicBoolean();
+        final Future<?> task;
+
+        Attempt(int replica, Function<Replica, V> loader) {
+            this.replica = replica;
+            this.task = executor.submit(() -> {
+                try {
+                    // One attempt costs its replica one lookup, however many checks the loader makes.
+                    V value = EnforcementMemo.within(() -> loader.apply(replicas.get(replica)));
+                    long took = System.nanoTime() - startNanos;
+                    if (charged.compareAndSet(false, true)) {
+                        replicas.record(replica, took);
+                        latencies.record(took);
+                    }
+                    result.complete(value);
+                } catch (RuntimeException | Error e) {
+                    if (charged.compareAndSet(false, true)) {
+                        replicas.record(replica, timeoutNanos);
+                    }
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+
+        /** Stop waiting for this call and charge its replica the time spent so far. */
+        void cancel() {
+            if (charged.compareAndSet(false, true)) {
+                replicas.record(replica, System.nanoTime() - startNanos);
+            }
+            task.cancel(true);
+        }
+    }
+
+    public HedgedSecurityController(ReplicaSet replicas, HedgeConfig config) {
+        this.replicas = replicas;
+        this.minDelayNanos = config.minDelay().toNanos();
+        this.timeoutNanos = config.timeout().toNanos();
+        this.tokensPerLookup = Math.round(config.maxHedgeRatio() * TOKEN);
+        this.latencies = new LatencyWindow(config.percentile());
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        return session(sessionId).exists;
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        return session(sessionId).expired;
+    }
+
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        return session(sessionId).userId;
+    }
+
+    @Override
+    public boolean isUserExist(String userId) {
+        return user(userId).exists;
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        return List.copyOf(user(userId).roles);
+    }
+
+    @Override
+    public Set<String> getUserRolesSet(String userId) {
+        return user(userId).roles;
+    }
+
+    /** Current hedge delay: the latency percentile, at least {@link HedgeConfig#minDelay()}. */
+    public Duration hedgeDelay() {
+        return Duration.ofNanos(Math.max(minDelayNanos, latencies.percentileNanos()));
+    }
+
+    /** Lookups made so far, sessions and users. */
+    public long lookups() {
+        return lookups.get();
+    }
+
+    /** Lookups sent to a second replica because the first was slow. */
+    public long hedges() {
+        return hedges.get();
+    }
+
+    /** Hedges answered before the first call. */
+    public long hedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /** Lookups sent to a second replica because the first failed. */
+    public long failovers() {
+        return failovers.get();
+    }
+
+    /** Stop the call executor; later lookups throw {@link SecurityStoreUnavailableException}. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private SessionAnswer session(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return NO_SESSION;
+        }
+        return lastSession.get(sessionId, id -> lookup(replica -> {
+            SessionSecurityController sessions = replica.sessions();
+            if (!sessions.isSessionExist(sessionId)) {
+                return NO_SESSION;
+            }
+            if (sessions.isSessionExpired(sessionId)) {
+                return new SessionAnswer(true, true, null);
+            }
+            return new SessionAnswer(true, false, sessions.getUserIdBySessionId(sessionId));
+        }));
+    }
+
+    private UserAnswer user(String userId) {
+        if (userId == null || userId.isBlank()) {
+            return NO_USER;
+        }
+        return lastUser.get(userId, id -> lookup(replica -> replica.users().isUserExist(userId)
+                ? new UserAnswer(true, RoleSets.intern(replica.users().getUserRolesSet(userId)))
+                : NO_USER));
+    }
+
+    private <V> V lookup(Function<Replica, V> loader) {
+        lookups.incrementAndGet();
+        tokens.getAndUpdate(current -> Math.min(MAX_TOKENS, current + tokensPerLookup));
+        long deadline = System.nanoTime() + timeoutNanos;
+        Attempt<V> first = start(replicas.select(-1), loader);
+        RuntimeException firstFailure = null;
+        try {
+            return first.result.get(Math.max(minDelayNanos, latencies.percentileNanos()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Slow: hedge below, if the budget allows.
+        } catch (ExecutionException e) {
+            firstFailure = unwrap(e);
+        } catch (InterruptedException e) {
+            first.cancel();
+            Thread.currentThread().interrupt();
+            throw new SecurityStoreUnavailableException("HedgedSecurityController: interrupted", e);
+        }
+        int other = replicas.select(first.replica);
+        if (firstFailure != null) {
+            if (other < 0) {
+                throw new SecurityStoreUnavailableException("HedgedSecurityController: lookup failed", firstFailure);
+            }
+            failovers.incrementAndGet();
+            return await(start(other, loader).result, deadline, null);
+        }
+        if (other < 0 || !takeToken()) {
+            return await(first.result, deadline, first);
+        }
+        hedges.incrementAndGet();
+        Attempt<V> second = start(other, loader);
+        CompletableFuture<V> winner = new CompletableFuture<>();
+        first.result.thenAccept(winner::complete);
+        second.result.thenAccept(value -> {
+            if (winner.complete(value)) {
+                hedgeWins.incrementAndGet();
+            }
+        });
+        CompletableFuture.allOf(first.result, second.result).whenComplete((ignored, failure) -> {
+            // Dependents may run in any order: a success completing last must still win.
+            if (failure == null || !first.result.isCompletedExceptionally()) {
+                winner.complete(first.result.getNow(null));
+            } else if (!second.result.isCompletedExceptionally()) {
+                winner.complete(second.result.getNow(null));
+            } else {
+                winner.completeExceptionally(failure);
+            }
+        });
+        try {
+            return await(winner, deadline, null);
+        } finally {
+            first.cancel();
+            second.cancel();
+        }
+    }
+
+    private <V> Attempt<V> start(int replica, Function<Replica, V> loader) {
+        try {
+            return new Attempt<>(replica, loader);
+        } catch (RejectedExecutionException e) {
+            throw new SecurityStoreUnavailableException("HedgedSecurityController: closed", e);
+        }
+    }
+
+    /** Wait until {@code deadline}; on timeout cancel {@code attempt} if given. */
+    private static <V> V await(CompletableFuture<V> result, long deadline, Attempt<V> attempt) {
+        try {
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (attempt != null) {
+                attempt.cancel();
+            }
+            throw new SecurityStoreUnavailableException("HedgedSecurityController: no replica answered in time", e);
+        } catch (ExecutionException e) {
+            throw new SecurityStoreUnavailableException("HedgedSecurityController: lookup failed", unwrap(e));
+        } catch (InterruptedException e) {
+            if (attempt != null) {
+                attempt.cancel();
+            }
+            Thread.currentThread().interrupt();
+            throw new SecurityStoreUnavailableException("HedgedSecurityController: interrupted", e);
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause() instanceof CompletionException completion
+                ? completion.getCause() : e.getCause();
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+    }
+
+    private boolean takeToken() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+package com.posadskiy.restsecurity.hedge;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies of the last {@value #SIZE} lookups, with a percentile recomputed every {@value #REFRESH} samples.
+ * Lock-free; concurrent samples may overwrite each other, which only thins the window.
+ */
+final class LatencyWindow {
+
+    static final int SIZE = 1024;
+    static final int REFRESH = 128;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+    private final AtomicLong count = new AtomicLong();
+    private final double percentile;
+    private volatile long percentileNanos = -1;
+
+    LatencyWindow(double percentile) {
+        this.percentile = percentile;
+    }
+
+    void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n & (SIZE - 1)), nanos);
+        if ((n + 1) % REFRESH == 0) {
+            refresh(Math.min(n + 1, SIZE));
+        }
+    }
+
+    /** @return the percentile in nanos, or -1 until {@value #REFRESH} samples are in */
+    long percentileNanos() {
+        return percentileNanos;
+    }
+
+    private void refresh(long filled) {
+        long[] sorted = new long[(int) filled];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        percentileNanos = sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))];
+    }
+}
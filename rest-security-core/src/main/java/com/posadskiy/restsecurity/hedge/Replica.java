@@ -0,0 +1,20 @@
+package com.posadskiy.restsecurity.hedge;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+
+/**
+ * One replica of the session and user stores, e.g. a controller connected to one read replica.
+ *
+ * @param name     name for monitoring
+ * @param sessions session lookups on this replica
+ * @param users    user lookups on this replica
+ */
+public record Replica(String name, SessionSecurityController sessions, UserSecurityController users) {
+
+    public Replica {
+        if (name == null || name.isBlank() || sessions == null || users == null) {
+            throw new IllegalArgumentException("Replica: name, sessions and users are required");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.posadskiy.restsecurity.hedge;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Replicas of the stores with the moving average of each one's latency. Lookups go to the replica with the
+ * lowest average; one in {@value #EXPLORE} goes to a random one instead, so a replica that was slow is
+ * measured again once it recovers. Thread-safe.
+ */
+public final class ReplicaSet {
+
+    static final int EXPLORE = 32;
+
+    private final List<Replica> replicas;
+    /** Moving average latency per replica in nanos, as double bits; 0 until measured. */
+    private final AtomicLongArray averages;
+    private final double weight;
+
+    /**
+     * @param replicas   replicas to choose from
+     * @param ewmaWeight weight of a new latency sample in the moving average, in (0, 1]
+     */
+    public ReplicaSet(List<Replica> replicas, double ewmaWeight) {
+        if (replicas == null || replicas.isEmpty()) {
+            throw new IllegalArgumentException("ReplicaSet: at least one replica is required");
+        }
+        if (!(ewmaWeight > 0 && ewmaWeight <= 1)) {
+            throw new IllegalArgumentException("ReplicaSet: ewmaWeight must be in (0, 1]");
+        }
+        this.replicas = List.copyOf(replicas);
+        this.averages = new AtomicLongArray(this.replicas.size());
+        this.weight = ewmaWeight;
+    }
+
+    /** Replicas with moving-average weight 0.2. */
+    public static ReplicaSet of(Replica... replicas) {
+        return new ReplicaSet(List.of(replicas), 0.2);
+    }
+
+    public List<Replica> replicas() {
+        return replicas;
+    }
+
+    /** Moving average latency of replica {@code index}; 0 until it has been measured. */
+    public double averageNanos(int index) {
+        return Double.longBitsToDouble(averages.get(index));
+    }
+
+    int size() {
+        return replicas.size();
+    }
+
+    Replica get(int index) {
+        return replicas.get(index);
+    }
+
+    /** Index of the replica to ask, other than {@code excluded} (-1 for none); -1 if there is none. */
+    int select(int excluded) {
+        int size = replicas.size();
+        if (size == 1) {
+            return excluded == 0 ? -1 : 0;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(EXPLORE) == 0) {
+            int pick = random.nextInt(size - (excluded >= 0 ? 1 : 0));
+            return excluded >= 0 && pick >= excluded ? pick + 1 : pick;
+        }
+        int best = -1;
+        double bestAverage = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            double average = averageNanos(i);
+            if (i != excluded && average < bestAverage) {
+                best = i;
+                bestAverage = average;
+            }
+        }
+        return best;
+    }
+
+    /** Add a latency sample of replica {@code index}; the first sample is taken as is. */
+    void record(int index, long nanos) {
+        averages.getAndUpdate(index, bits -> {
+            double average = Double.longBitsToDouble(bits);
+            return Double.doubleToRawLongBits(average == 0 ? nanos : average + weight * (nanos - average));
+        });
+    }
+}
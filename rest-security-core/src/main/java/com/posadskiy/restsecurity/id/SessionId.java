@@ -0,0 +1,116 @@
+package com.posadskiy.restsecurity.id;
+
+import java.util.Arrays;
+
+/**
+ * Binary form of a 128-bit session id: two longs that stores can key on without hashing a string.
+ * The text form is 22 base64url characters, 11 per half, the first character of each half carrying
+ * its top 4 bits. The static methods read one half of a text id at a time without allocating.
+ *
+ * @param hi high 64 bits
+ * @param lo low 64 bits
+ */
+public record SessionId(long hi, long lo) {
+
+    /** Length of the text form. */
+    public static final int ENCODED_LENGTH = 22;
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    /**
+     * Parse a text id.
+     * @throws IllegalArgumentException if {@code id} is not well-formed
+     */
+    public static SessionId parse(String id) {
+        if (!isValid(id)) {
+            throw new IllegalArgumentException("SessionId: malformed session id");
+        }
+        return new SessionId(hi(id), lo(id));
+    }
+
+    /** True if {@code id} is a well-formed text id. */
+    public static boolean isValid(String id) {
+        return id != null && id.length() == ENCODED_LENGTH && validHalf(id, 0) && validHalf(id, 11);
+    }
+
+    /** High half of a text id; only meaningful when {@link #isValid(String)}. */
+    public static long hi(String id) {
+        return readHalf(id, 0);
+    }
+
+    /** Low half of a text id; only meaningful when {@link #isValid(String)}. */
+    public static long lo(String id) {
+        return readHalf(id, 11);
+    }
+
+    /** Text form of the id with halves {@code hi} and {@code lo}. */
+    public static String encode(long hi, long lo) {
+        char[] out = new char[ENCODED_LENGTH];
+        writeHalf(hi, out, 0);
+        writeHalf(lo, out, 11);
+        return new String(out);
+    }
+
+    /** Text form, 22 base64url characters. */
+    public String encoded() {
+        return encode(hi, lo);
+    }
+
+    /** Big-endian 16 bytes. */
+    public byte[] toBytes() {
+        byte[] out = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            out[i] = (byte) (hi >>> (56 - 8 * i));
+            out[8 + i] = (byte) (lo >>> (56 - 8 * i));
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return encoded();
+    }
+
+    /** Value of a base64url character, or -1. */
+    static int base64Value(char c) {
+        return c < 128 ? VALUES[c] : -1;
+    }
+
+    private static void writeHalf(long value, char[] out, int offset) {
+        out[offset] = ALPHABET[(int) (value >>> 60)];
+        for (int i = 1; i < 11; i++) {
+            out[offset + i] = ALPHABET[(int) (value >>> (60 - 6 * i)) & 0x3F];
+        }
+    }
+
+    private static boolean validHalf(String id, int offset) {
+        char first = id.charAt(offset);
+        if (first >= 128 || VALUES[first] < 0 || VALUES[first] > 15) {
+            return false;
+        }
+        for (int i = 1; i < 11; i++) {
+            char c = id.charAt(offset + i);
+            if (c >= 128 || VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long readHalf(String id, int offset) {
+        long value = VALUES[id.charAt(offset) & 0x7F] & 0x0FL;
+        for (int i = 1; i < 11; i++) {
+            value = value << 6 | VALUES[id.charAt(offset + i) & 0x7F] & 0x3FL;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,116 @@
+package com.posadskiy.restsecurity.id;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Generates 128-bit random session ids without a shared lock. Threads are spread over stripes, each with its
+ * own {@link SecureRandom} (DRBG where available) drawing random bytes 4096 at a time, so concurrent logins
+ * scale with cores instead of queueing on one generator. Ids are encoded straight to 22 base64url characters,
+ * or returned in binary form as {@link SessionId}.
+ *
+ * <pre>
+ * String sessionId = SessionIdGenerator.shared().nextString();
+ * </pre>
+ */
+public final class SessionIdGenerator {
+
+    private static final int BUFFER_BYTES = 4096;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    /** Two stripes per available processor, rounded up to a power of two. */
+    public SessionIdGenerator() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes number of independent generators, rounded up to a power of two
+     */
+    public SessionIdGenerator(int stripes) {
+        if (stripes <= 0 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("SessionIdGenerator: stripes must be between 1 and 65536");
+        }
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe(newSecureRandom());
+        }
+        this.mask = size - 1;
+    }
+
+    /** Process-wide generator with default striping. */
+    public static SessionIdGenerator shared() {
+        return Shared.INSTANCE;
+    }
+
+    /** Random non-zero id in binary form. */
+    public SessionId next() {
+        Stripe stripe = stripe();
+        synchronized (stripe) {
+            return new SessionId(stripe.nonZeroHi(), stripe.lo);
+        }
+    }
+
+    /** Random non-zero id as 22 base64url characters. */
+    public String nextString() {
+        Stripe stripe = stripe();
+        long hi;
+        long lo;
+        synchronized (stripe) {
+            hi = stripe.nonZeroHi();
+            lo = stripe.lo;
+        }
+        return SessionId.encode(hi, lo);
+    }
+
+    /** Number of stripes. */
+    public int stripes() {
+        return stripes.length;
+    }
+
+    private Stripe stripe() {
+        long threadId = Thread.currentThread().threadId();
+        return stripes[(int) (threadId * 0x9E3779B97F4A7C15L >>> 32) & mask];
+    }
+
+    private static SecureRandom newSecureRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    private static final class Shared {
+        static final SessionIdGenerator INSTANCE = new SessionIdGenerator();
+    }
+
+    /** One generator and its buffered bytes; guarded by its monitor. */
+    private static final class Stripe {
+        final SecureRandom random;
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        long lo;
+
+        Stripe(SecureRandom random) {
+            this.random = random;
+            buffer.position(BUFFER_BYTES);
+        }
+
+        /** Draw an id that is not all zeros; returns the high half and leaves the low half in {@link #lo}. */
+        long nonZeroHi() {
+            long hi;
+            do {
+                if (buffer.remaining() < 16) {
+                    random.nextBytes(buffer.array());
+                    buffer.clear();
+                }
+                hi = buffer.getLong();
+                lo = buffer.getLong();
+            } while (hi == 0 && lo == 0);
+            return hi;
+        }
+    }
+}
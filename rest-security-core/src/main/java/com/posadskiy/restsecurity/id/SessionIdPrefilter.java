@@ -0,0 +1,18 @@
+package com.posadskiy.restsecurity.id;
+
+/**
+ * Cheap check of a session id before any store lookup. Set on
+ * {@link com.posadskiy.restsecurity.enforcer.SecurityEnforcer#setSessionIdPrefilter} so that malformed,
+ * forged and expired ids are rejected on the CPU and only plausible ids reach the
+ * {@link com.posadskiy.restsecurity.controller.SessionSecurityController}.
+ */
+@FunctionalInterface
+public interface SessionIdPrefilter {
+
+    /**
+     * Check a session id. Must not do I/O.
+     * @param sessionId non-blank session id from the request
+     * @return verdict; anything but {@link SessionIdVerdict#VALID} rejects the request
+     */
+    SessionIdVerdict check(String sessionId);
+}
@@ -0,0 +1,15 @@
+package com.posadskiy.restsecurity.id;
+
+/**
+ * Result of checking a session id without the store. See {@link SessionIdPrefilter}.
+ */
+public enum SessionIdVerdict {
+    /** Well-formed, authentic and unexpired; the store decides the rest. */
+    VALID,
+    /** Not in the expected format. */
+    MALFORMED,
+    /** Authentication code does not match, or the key version is unknown. */
+    FORGED,
+    /** Authentic, but past the expiry it carries. */
+    EXPIRED
+}
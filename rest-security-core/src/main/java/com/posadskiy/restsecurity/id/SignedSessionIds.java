@@ -0,0 +1,219 @@
+package com.posadskiy.restsecurity.id;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Session ids that carry their own expiry and authentication code, so forged, malformed and expired ids are
+ * rejected without a store lookup (a few hundred nanoseconds: one base64url decode and one HMAC).
+ *
+ * <p>An id is 30 bytes as 40 base64url characters: key version (1 byte), expiry in epoch seconds (5 bytes),
+ * 128 random bits, and the first 8 bytes of HMAC-SHA256 over the preceding 22 bytes. Ids are issued with the
+ * current key and verified with any key in the ring, so keys rotate by adding a new version, making it
+ * current, and removing the old one once its ids have expired.
+ *
+ * <p>The embedded expiry is the session's maximum lifetime. The store still decides existence, revocation
+ * and idle expiry. A store keyed by 128-bit {@link SessionId}s can sign its own ids with
+ * {@link #issue(SessionId, Duration)} and find them again with {@link #storeKey(String)}; the
+ * {@code InMemorySessionStore} of {@code rest-security-session} does both.
+ *
+ * <pre>
+ * SignedSessionIds ids = SignedSessionIds.of(secret);
+ * String sessionId = store.createSession(userId, ids, Duration.ofHours(8));
+ * enforcer.setSessionIdPrefilter(ids);
+ * </pre>
+ */
+public final class SignedSessionIds implements SessionIdPrefilter {
+
+    /** Length of an id. */
+    public static final int ENCODED_LENGTH = 40;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int BYTES = 30;
+    private static final int SIGNED_BYTES = 22;
+    private static final int MAC_BYTES = 8;
+    private static final int MIN_KEY_BYTES = 32;
+    private static final long MAX_EXPIRY_SECONDS = (1L << 40) - 1;
+
+    private final SecretKeySpec[] keys = new SecretKeySpec[256];
+    private final int currentVersion;
+    private final SessionIdGenerator generator = SessionIdGenerator.shared();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * @param keys           key ring: version (0-255) to HMAC key of at least 32 bytes
+     * @param currentVersion version used to issue new ids
+     */
+    public SignedSessionIds(Map<Integer, byte[]> keys, int currentVersion) {
+        if (keys == null || !keys.containsKey(currentVersion)) {
+            throw new IllegalArgumentException("SignedSessionIds: key ring must contain the current version");
+        }
+        keys.forEach((version, key) -> {
+            if (version < 0 || version > 255) {
+                throw new IllegalArgumentException("SignedSessionIds: key version must be 0-255, got " + version);
+            }
+            if (key == null || key.length < MIN_KEY_BYTES) {
+                throw new IllegalArgumentException("SignedSessionIds: key " + version + " must be at least "
+                        + MIN_KEY_BYTES + " bytes");
+            }
+            this.keys[version] = new SecretKeySpec(key, ALGORITHM);
+        });
+        this.currentVersion = currentVersion;
+    }
+
+    /** Single key, version 1. */
+    public static SignedSessionIds of(byte[] key) {
+        return new SignedSessionIds(Map.of(1, key), 1);
+    }
+
+    /** New id that expires {@code ttl} from now. */
+    public String issue(Duration ttl) {
+        return issue(System.currentTimeMillis() + ttl.toMillis());
+    }
+
+    /**
+     * New id that expires at {@code expiresAtMillis}, rounded down to the second.
+     */
+    public String issue(long expiresAtMillis) {
+        return issue(generator.next(), expiresAtMillis);
+    }
+
+    /** Signed id for the store key {@code key} that expires {@code ttl} from now. */
+    public String issue(SessionId key, Duration ttl) {
+        return issue(key, System.currentTimeMillis() + ttl.toMillis());
+    }
+
+    private String issue(SessionId random, long expiresAtMillis) {
+        long seconds = Math.floorDiv(expiresAtMillis, 1000);
+        if (seconds < 0 || seconds > MAX_EXPIRY_SECONDS) {
+            throw new IllegalArgumentException("SignedSessionIds: expiry out of range");
+        }
+        byte[] bytes = new byte[BYTES];
+        bytes[0] = (byte) currentVersion;
+        for (int i = 0; i < 5; i++) {
+            bytes[1 + i] = (byte) (seconds >>> (32 - 8 * i));
+        }
+        for (int i = 0; i < 8; i++) {
+            bytes[6 + i] = (byte) (random.hi() >>> (56 - 8 * i));
+            bytes[14 + i] = (byte) (random.lo() >>> (56 - 8 * i));
+        }
+        Scratch s = scratch.get();
+        s.sign(keys, currentVersion, bytes);
+        System.arraycopy(s.digest, 0, bytes, SIGNED_BYTES, MAC_BYTES);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @Override
+    public SessionIdVerdict check(String sessionId) {
+        Scratch s = scratch.get();
+        SessionIdVerdict verdict = s.authenticate(keys, sessionId);
+        if (verdict != SessionIdVerdict.VALID) {
+            return verdict;
+        }
+        return expirySeconds(s.bytes) * 1000 <= System.currentTimeMillis()
+                ? SessionIdVerdict.EXPIRED
+                : SessionIdVerdict.VALID;
+    }
+
+    /**
+     * Expiry carried by an authentic id, in epoch millis.
+     * @return expiry, or -1 if the id is malformed or forged
+     */
+    public long expiresAtMillis(String sessionId) {
+        Scratch s = scratch.get();
+        return s.authenticate(keys, sessionId) == SessionIdVerdict.VALID ? expirySeconds(s.bytes) * 1000 : -1;
+    }
+
+    /**
+     * The 128 random bits of a signed id, which a store can key the session by. The id is not authenticated
+     * here: the prefilter does that before any store lookup.
+     *
+     * @return the key, or null if {@code signedId} is malformed
+     */
+    public static SessionId storeKey(String signedId) {
+        byte[] bytes = new byte[BYTES];
+        if (!decode(signedId, bytes)) {
+            return null;
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++) {
+            hi = hi << 8 | bytes[6 + i] & 0xFF;
+            lo = lo << 8 | bytes[14 + i] & 0xFF;
+        }
+        return new SessionId(hi, lo);
+    }
+
+    /** Base64url-decode an id of {@link #ENCODED_LENGTH} characters into {@code bytes}; false if malformed. */
+    private static boolean decode(String sessionId, byte[] bytes) {
+        if (sessionId == null || sessionId.length() != ENCODED_LENGTH) {
+            return false;
+        }
+        for (int i = 0, b = 0; i < ENCODED_LENGTH; i += 4, b += 3) {
+            int c0 = SessionId.base64Value(sessionId.charAt(i));
+            int c1 = SessionId.base64Value(sessionId.charAt(i + 1));
+            int c2 = SessionId.base64Value(sessionId.charAt(i + 2));
+            int c3 = SessionId.base64Value(sessionId.charAt(i + 3));
+            if ((c0 | c1 | c2 | c3) < 0) {
+                return false;
+            }
+            int group = c0 << 18 | c1 << 12 | c2 << 6 | c3;
+            bytes[b] = (byte) (group >>> 16);
+            bytes[b + 1] = (byte) (group >>> 8);
+            bytes[b + 2] = (byte) group;
+        }
+        return true;
+    }
+
+    private static long expirySeconds(byte[] bytes) {
+        long seconds = 0;
+        for (int i = 1; i <= 5; i++) {
+            seconds = seconds << 8 | bytes[i] & 0xFF;
+        }
+        return seconds;
+    }
+
+    /** Per-thread buffers and one {@link Mac} per key version, so checks do not allocate. */
+    private static final class Scratch {
+        final byte[] bytes = new byte[BYTES];
+        final byte[] digest = new byte[32];
+        final Mac[] macs = new Mac[256];
+
+        /** Decode into {@link #bytes} and verify the authentication code; expiry is not checked. */
+        SessionIdVerdict authenticate(SecretKeySpec[] keys, String sessionId) {
+            if (!decode(sessionId, bytes)) {
+                return SessionIdVerdict.MALFORMED;
+            }
+            int version = bytes[0] & 0xFF;
+            if (keys[version] == null) {
+                return SessionIdVerdict.FORGED;
+            }
+            sign(keys, version, bytes);
+            int diff = 0;
+            for (int i = 0; i < MAC_BYTES; i++) {
+                diff |= digest[i] ^ bytes[SIGNED_BYTES + i];
+            }
+            return diff == 0 ? SessionIdVerdict.VALID : SessionIdVerdict.FORGED;
+        }
+
+        /** HMAC of the first {@link #SIGNED_BYTES} of {@code input} into {@link #digest}. */
+        void sign(SecretKeySpec[] keys, int version, byte[] input) {
+            try {
+                Mac mac = macs[version];
+                if (mac == null) {
+                    mac = Mac.getInstance(ALGORITHM);
+                    mac.init(keys[version]);
+                    macs[version] = mac;
+                }
+                mac.update(input, 0, SIGNED_BYTES);
+                mac.doFinal(digest, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("SignedSessionIds: " + ALGORITHM + " unavailable", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.posadskiy.restsecurity.resilience;
+
+/** State of a store's circuit breaker in {@link ResilientSecurityController}. */
+public enum CircuitState {
+    /** Calls go to the store. */
+    CLOSED,
+    /** Calls fail fast (or are served stale) without reaching the store. */
+    OPEN,
+    /** One probe call is let through; its outcome closes or reopens the circuit. */
+    HALF_OPEN
+}
@@ -0,0 +1,56 @@
+package com.posadskiy.restsecurity.resilience;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link ResilientSecurityController}.
+ *
+ * @param timeout          deadline of one store call. Default 200 ms
+ * @param failureThreshold consecutive failures or timeouts that open the circuit. Default 5
+ * @param openDuration     how long an open circuit refuses calls before letting one probe through. Default 5 s
+ * @param staleTtl         how old an answer may be to be served while the store is failing, or null to never
+ *                         serve stale answers. Default null
+ * @param maxStaleEntries  last good answers kept per store for stale serving. Default 10 000
+ */
+public record ResilienceConfig(Duration timeout, int failureThreshold, Duration openDuration, Duration staleTtl,
+                               int maxStaleEntries) {
+
+    public ResilienceConfig {
+        timeout = positiveOr(timeout, Duration.ofMillis(200));
+        failureThreshold = failureThreshold > 0 ? failureThreshold : 5;
+        openDuration = positiveOr(openDuration, Duration.ofSeconds(5));
+        if (staleTtl != null && (staleTtl.isNegative() || staleTtl.isZero())) {
+            throw new IllegalArgumentException("ResilienceConfig: staleTtl must be positive");
+        }
+        maxStaleEntries = maxStaleEntries > 0 ? maxStaleEntries : 10_000;
+    }
+
+    /** Defaults for everything; no stale serving. */
+    public static ResilienceConfig defaults() {
+        return new ResilienceConfig(null, 0, null, null, 0);
+    }
+
+    /** Copy with per-call deadline {@code timeout}. */
+    public ResilienceConfig withTimeout(Duration timeout) {
+        return new ResilienceConfig(timeout, failureThreshold, openDuration, staleTtl, maxStaleEntries);
+    }
+
+    /** Copy opening the circuit after {@code failureThreshold} consecutive failures. */
+    public ResilienceConfig withFailureThreshold(int failureThreshold) {
+        return new ResilienceConfig(timeout, failureThreshold, openDuration, staleTtl, maxStaleEntries);
+    }
+
+    /** Copy keeping the circuit open for {@code openDuration} before probing. */
+    public ResilienceConfig withOpenDuration(Duration openDuration) {
+        return new ResilienceConfig(timeout, failureThreshold, openDuration, staleTtl, maxStaleEntries);
+    }
+
+    /** Copy serving answers up to {@code staleTtl} old while the store is failing. */
+    public ResilienceConfig withStaleTtl(Duration staleTtl) {
+        return new ResilienceConfig(timeout, failureThreshold, openDuration, staleTtl, maxStaleEntries);
+    }
+
+    private static Duration positiveOr(Duration value, Duration fallback) {
+        return value != null && !value.isNegative() && !value.isZero() ? value : fallback;
+    }
+}
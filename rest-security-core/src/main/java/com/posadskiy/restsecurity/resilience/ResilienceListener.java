@@ -0,0 +1,26 @@
+package com.posadskiy.restsecurity.resilience;
+
+import java.time.Duration;
+
+/**
+ * Receives the events of a {@link ResilientSecurityController}, e.g. to log or count them. {@code store} is
+ * {@code "sessions"} or {@code "users"}. Called on the request thread: keep it fast and do not throw.
+ */
+public interface ResilienceListener {
+
+    /** A store call did not finish within {@code timeout}. */
+    default void onTimeout(String store, Duration timeout) {
+    }
+
+    /** A store call threw {@code cause}. */
+    default void onFailure(String store, RuntimeException cause) {
+    }
+
+    /** The store's circuit went from {@code from} to {@code to}. */
+    default void onCircuitStateChange(String store, CircuitState from, CircuitState to) {
+    }
+
+    /** A failed or refused call was answered with the last good answer for {@code key}, {@code age} old. */
+    default void onStaleServed(String store, String key, Duration age) {
+    }
+}
@@ -0,0 +1,153 @@
+package com.posadskiy.restsecurity.resilience;
+
+import com.posadskiy.restsecurity.context.RoleSets;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import com.posadskiy.restsecurity.exception.SecurityStoreUnavailableException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounds how long authorization waits on a degraded store. Each store call runs on a virtual thread with a
+ * deadline ({@link ResilienceConfig#timeout()}); consecutive failures open a per-store circuit that fails fast
+ * until a single probe call succeeds again. A call that fails, times out or is refused throws
+ * {@link SecurityStoreUnavailableException} or, if {@link ResilienceConfig#staleTtl()} is set, returns the last
+ * good answer for the same key if it is recent enough. Every such event reaches the {@link ResilienceListener}.
+ *
+ * <p>The deadline and the circuit count answers, not checks: an enforcement makes one guarded session call and
+ * one guarded user call, and its other checks reuse their answers ({@link EnforcementMemo}). A guarded call
+ * runs as an enforcement of its own, so a memoizing store answers it with one lookup.
+ *
+ * <p>Stale serving trades freshness for availability: a session revoked during the incident stays valid for
+ * up to {@code staleTtl}. Leave it off where that is not acceptable.
+ *
+ * <pre>
+ * ResilientSecurityController resilient = new ResilientSecurityController(store, store,
+ *         ResilienceConfig.defaults().withStaleTtl(Duration.ofMinutes(1)), listener);
+ * SecurityEnforcer enforcer = new SecurityEnforcer(resilient, resilient);
+ * </pre>
+ */
+public final class ResilientSecurityController implements SessionSecurityController, UserSecurityController,
+        AutoCloseable {
+
+    private static final SessionAnswer NO_SESSION = new SessionAnswer(false, true, null);
+    private static final UserAnswer NO_USER = new UserAnswer(false, Set.of());
+
+    private final SessionSecurityController sessions;
+    private final UserSecurityController users;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final StoreGuard<SessionAnswer> sessionGuard;
+    private final StoreGuard<UserAnswer> userGuard;
+    private final EnforcementMemo<SessionAnswer> lastSession = new EnforcementMemo<>();
+    private final EnforcementMemo<UserAnswer> lastUser = new EnforcementMemo<>();
+
+    private record SessionAnswer(boolean exists, boolean expired, String userId) {}
+
+    private record UserAnswer(boolean exists, Set<String> roles) {}
+
+    /**
+     * @param listener receives timeouts, failures, circuit changes and stale answers; may be null
+     */
+    public ResilientSecurityController(SessionSecurityController sessions, UserSecurityController users,
+                                       ResilienceConfig config, ResilienceListener listener) {
+        this.sessions = sessions;
+        this.users = users;
+        ResilienceListener events = listener != null ? listener : new ResilienceListener() {};
+        this.sessionGuard = new StoreGuard<>("sessions", config, events, executor);
+        this.userGuard = new StoreGuard<>("users", config, events, executor);
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        return session(sessionId).exists;
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        return session(sessionId).expired;
+    }
+
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        return session(sessionId).userId;
+    }
+
+    @Override
+    public boolean isUserExist(String userId) {
+        return user(userId).exists;
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        return List.copyOf(user(userId).roles);
+    }
+
+    @Override
+    public Set<String> getUserRolesSet(String userId) {
+        return user(userId).roles;
+    }
+
+    /** State of the session store's circuit. */
+    public CircuitState sessionCircuit() {
+        return sessionGuard.state();
+    }
+
+    /** State of the user store's circuit. */
+    public CircuitState userCircuit() {
+        return userGuard.state();
+    }
+
+    /** Store calls that missed their deadline so far, both stores. */
+    public long timeouts() {
+        return sessionGuard.timeouts() + userGuard.timeouts();
+    }
+
+    /** Store calls that threw so far, both stores. */
+    public long failures() {
+        return sessionGuard.failures() + userGuard.failures();
+    }
+
+    /** Calls refused by an open circuit so far, both stores. */
+    public long refusedCalls() {
+        return sessionGuard.refused() + userGuard.refused();
+    }
+
+    /** Stale answers served so far, both stores. */
+    public long staleServed() {
+        return sessionGuard.staleServed() + userGuard.staleServed();
+    }
+
+    /** Stop the call executor; later calls throw {@link SecurityStoreUnavailableException}. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private SessionAnswer session(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return NO_SESSION;
+        }
+        return lastSession.get(sessionId, id -> sessionGuard.call(sessionId, () -> {
+            if (!sessions.isSessionExist(sessionId)) {
+                return NO_SESSION;
+            }
+            if (sessions.isSessionExpired(sessionId)) {
+                return new SessionAnswer(true, true, null);
+            }
+            return new SessionAnswer(true, false, sessions.getUserIdBySessionId(sessionId));
+        }));
+    }
+
+    private UserAnswer user(String userId) {
+        if (userId == null || userId.isBlank()) {
+            return NO_USER;
+        }
+        return lastUser.get(userId, id -> userGuard.call(userId, () -> users.isUserExist(userId)
+                ? new UserAnswer(true, RoleSets.intern(users.getUserRolesSet(userId)))
+                : NO_USER));
+    }
+}
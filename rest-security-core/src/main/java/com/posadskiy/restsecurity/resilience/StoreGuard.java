@@ -0,0 +1,198 @@
+package com.posadskiy.restsecurity.resilience;
+
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.exception.SecurityStoreUnavailableException;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Deadline, circuit breaker and stale answers for the calls to one store, shared by both sides of
+ * {@link ResilientSecurityController}.
+ *
+ * @param <V> answer of one call; never null
+ */
+final class StoreGuard<V> {
+
+    private record Stamped<V>(V value, long atNanos) {}
+
+    private final String store;
+    private final ResilienceListener listener;
+    private final ExecutorService executor;
+    private final long timeoutNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final long staleNanos;
+    private final int maxStaleEntries;
+
+    private final AtomicReference<CircuitState> state = new AtomicReference<>(CircuitState.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAtNanos;
+    /** Last good answer per key; empty unless stale serving is on. */
+    private final Map<String, Stamped<V>> lastGood = new ConcurrentHashMap<>();
+
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+
+    StoreGuard(String store, ResilienceConfig config, ResilienceListener listener, ExecutorService executor) {
+        this.store = store;
+        this.listener = listener;
+        this.executor = executor;
+        this.timeoutNanos = config.timeout().toNanos();
+        this.failureThreshold = config.failureThreshold();
+        this.openNanos = config.openDuration().toNanos();
+        this.staleNanos = config.staleTtl() != null ? config.staleTtl().toNanos() : -1;
+        this.maxStaleEntries = config.maxStaleEntries();
+    }
+
+    /**
+     * Call {@code loader} within the deadline, unless the circuit is open.
+     *
+     * @throws SecurityStoreUnavailableException if the call fails, times out or is refused and no stale answer
+     *                                           may be served
+     */
+    V call(String key, Supplier<V> loader) {
+        if (!allow()) {
+            refused.incrementAndGet();
+            return stale(key, null);
+        }
+        Future<V> future;
+        try {
+            // The caller's enforcement does not reach the executor thread: open one so memoizing stores still
+            // answer the checks of this call with one round trip.
+            future = executor.submit(() -> EnforcementMemo.within(loader));
+        } catch (RejectedExecutionException e) {
+            throw new SecurityStoreUnavailableException("ResilientSecurityController: closed", e);
+        }
+        try {
+            V value = future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            succeeded();
+            if (staleNanos > 0) {
+                remember(key, value);
+            }
+            return value;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.incrementAndGet();
+            listener.onTimeout(store, Duration.ofNanos(timeoutNanos));
+            failed();
+            return stale(key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            RuntimeException cause = e.getCause() instanceof RuntimeException runtime ? runtime
+                    : new IllegalStateException(e.getCause());
+            failures.incrementAndGet();
+            listener.onFailure(store, cause);
+            failed();
+            return stale(key, cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SecurityStoreUnavailableException("ResilientSecurityController: interrupted", e);
+        }
+    }
+
+    CircuitState state() {
+        return state.get();
+    }
+
+    long timeouts() {
+        return timeouts.get();
+    }
+
+    long failures() {
+        return failures.get();
+    }
+
+    long refused() {
+        return refused.get();
+    }
+
+    long staleServed() {
+        return staleServed.get();
+    }
+
+    /** Closed: yes. Open: no, until {@code openDuration} has passed; then this caller is the half-open probe. */
+    private boolean allow() {
+        CircuitState current = state.get();
+        if (current == CircuitState.CLOSED) {
+            return true;
+        }
+        if (current == CircuitState.OPEN && System.nanoTime() - openedAtNanos >= openNanos
+                && transition(CircuitState.OPEN, CircuitState.HALF_OPEN)) {
+            return true;
+        }
+        return false;
+    }
+
+    private void succeeded() {
+        consecutiveFailures.set(0);
+        transition(CircuitState.HALF_OPEN, CircuitState.CLOSED);
+    }
+
+    private void failed() {
+        if (state.get() == CircuitState.HALF_OPEN) {
+            openedAtNanos = System.nanoTime();
+            transition(CircuitState.HALF_OPEN, CircuitState.OPEN);
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAtNanos = System.nanoTime();
+            if (transition(CircuitState.CLOSED, CircuitState.OPEN)) {
+                consecutiveFailures.set(0);
+            }
+        }
+    }
+
+    private boolean transition(CircuitState from, CircuitState to) {
+        if (!state.compareAndSet(from, to)) {
+            return false;
+        }
+        listener.onCircuitStateChange(store, from, to);
+        return true;
+    }
+
+    private V stale(String key, Throwable cause) {
+        Stamped<V> stamped = staleNanos > 0 ? lastGood.get(key) : null;
+        if (stamped != null) {
+            long age = System.nanoTime() - stamped.atNanos;
+            if (age <= staleNanos) {
+                staleServed.incrementAndGet();
+                listener.onStaleServed(store, key, Duration.ofNanos(age));
+                return stamped.value;
+            }
+        }
+        throw new SecurityStoreUnavailableException(cause == null
+                ? "ResilientSecurityController: " + store + " circuit is open"
+                : "ResilientSecurityController: " + store + " store failed", cause);
+    }
+
+    /** Keep {@code value}; if full, drop answers too old to serve, then an arbitrary tenth. */
+    private void remember(String key, V value) {
+        long now = System.nanoTime();
+        if (lastGood.size() >= maxStaleEntries && !lastGood.containsKey(key)) {
+            lastGood.values().removeIf(stamped -> now - stamped.atNanos > staleNanos);
+            int excess = lastGood.size() - maxStaleEntries + Math.max(1, maxStaleEntries / 10);
+            Iterator<String> keys = lastGood.keySet().iterator();
+            while (excess-- > 0 && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+        lastGood.put(key, new Stamped<>(value, now));
+    }
+}
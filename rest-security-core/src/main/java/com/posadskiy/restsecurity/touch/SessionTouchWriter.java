@@ -0,0 +1,18 @@
+package com.posadskiy.restsecurity.touch;
+
+import java.util.Map;
+
+/**
+ * Batch write of session "last accessed" times, used by {@link WriteBehindSessionController}.
+ * Implement this on top of your session store (one multi-row update, pipeline or bulk call).
+ */
+@FunctionalInterface
+public interface SessionTouchWriter {
+
+    /**
+     * Persist last-access times. Called from the flush thread, never concurrently with itself.
+     * @param lastAccess session id to last access time in epoch millis; at most one entry per session
+     * @throws RuntimeException if the write failed; the touches are retried with the next flush
+     */
+    void writeTouches(Map<String, Long> lastAccess);
+}
@@ -0,0 +1,42 @@
+package com.posadskiy.restsecurity.touch;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link WriteBehindSessionController}.
+ *
+ * @param tolerance     how far the store's last-access time may lag the real one; touches are coalesced and
+ *                      flushed at this interval. Default 1 second
+ * @param idleTimeout   sliding idle timeout of the store, or null if unknown. When set, a session the store
+ *                      considers expired is still live if a touch not yet written keeps it within the timeout
+ * @param maxBatchSize  most touches handed to {@link SessionTouchWriter#writeTouches} at once. Default 1000
+ * @param maxPending    pending touches that trigger a flush before the interval ends. Default 100000
+ */
+public record WriteBehindConfig(Duration tolerance, Duration idleTimeout, int maxBatchSize, int maxPending) {
+
+    public WriteBehindConfig {
+        tolerance = tolerance != null && !tolerance.isNegative() && !tolerance.isZero() ? tolerance : Duration.ofSeconds(1);
+        if (idleTimeout != null && (idleTimeout.isNegative() || idleTimeout.isZero())) {
+            throw new IllegalArgumentException("WriteBehindConfig: idleTimeout must be positive");
+        }
+        maxBatchSize = maxBatchSize > 0 ? maxBatchSize : 1000;
+        maxPending = maxPending > 0 ? maxPending : 100_000;
+    }
+
+    /**
+     * Flush every {@code tolerance}; expiry left to the store.
+     */
+    public static WriteBehindConfig of(Duration tolerance) {
+        return new WriteBehindConfig(tolerance, null, 0, 0);
+    }
+
+    /** Copy that corrects expiry decisions using pending touches and {@code idleTimeout}. */
+    public WriteBehindConfig withIdleTimeout(Duration idleTimeout) {
+        return new WriteBehindConfig(tolerance, idleTimeout, maxBatchSize, maxPending);
+    }
+
+    /** Copy with batch size {@code maxBatchSize}. */
+    public WriteBehindConfig withMaxBatchSize(int maxBatchSize) {
+        return new WriteBehindConfig(tolerance, idleTimeout, maxBatchSize, maxPending);
+    }
+}
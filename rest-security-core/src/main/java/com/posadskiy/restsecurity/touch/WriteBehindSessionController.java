@@ -0,0 +1,196 @@
+package com.posadskiy.restsecurity.touch;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decorates a {@link SessionSecurityController} with write-behind sliding expiration: each successful user
+ * lookup records a touch in memory instead of writing the store, repeated touches of a session are coalesced
+ * (latest wins), and a background thread hands them to a {@link SessionTouchWriter} in batches every
+ * {@link WriteBehindConfig#tolerance()}.
+ *
+ * <p>The store's last-access time lags the real one by at most the tolerance plus one write. With
+ * {@link WriteBehindConfig#idleTimeout()} set, expiry decisions also account for touches not yet written, so
+ * they match a synchronous store. {@link #close()} writes everything still pending.
+ *
+ * <pre>
+ * WriteBehindSessionController sessions = new WriteBehindSessionController(
+ *         store, store::touchAll, WriteBehindConfig.of(Duration.ofSeconds(1)).withIdleTimeout(Duration.ofMinutes(30)));
+ * SecurityEnforcer enforcer = new SecurityEnforcer(sessions, users);
+ * </pre>
+ */
+public final class WriteBehindSessionController implements SessionSecurityController, AutoCloseable {
+
+    private final SessionSecurityController delegate;
+    private final SessionTouchWriter writer;
+    private final WriteBehindConfig config;
+    private final long idleMillis;
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+    /** Batch being written; a lookup still sees its touches while the write runs. */
+    private volatile Map<String, Long> inFlight = Map.of();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    public WriteBehindSessionController(SessionSecurityController delegate, SessionTouchWriter writer,
+                                        WriteBehindConfig config) {
+        this.delegate = delegate;
+        this.writer = writer;
+        this.config = config;
+        this.idleMillis = config.idleTimeout() != null ? config.idleTimeout().toMillis() : -1;
+        this.flusher = new Thread(this::run, "rest-security-touch-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        return delegate.isSessionExist(sessionId);
+    }
+
+    /**
+     * Expired per the store, unless a touch not yet written keeps the session within
+     * {@link WriteBehindConfig#idleTimeout()}.
+     */
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        if (idleMillis > 0 && sessionId != null) {
+            Long lastAccess = lastPendingAccess(sessionId);
+            if (lastAccess != null && lastAccess + idleMillis > System.currentTimeMillis()) {
+                return false;
+            }
+        }
+        return delegate.isSessionExpired(sessionId);
+    }
+
+    /**
+     * User of the session from the store; records a touch when there is one.
+     */
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        String userId = delegate.getUserIdBySessionId(sessionId);
+        if (userId != null) {
+            touch(sessionId);
+        }
+        return userId;
+    }
+
+    /**
+     * Record an access to {@code sessionId} now. Lock-free when the session was already touched in the same
+     * millisecond.
+     */
+    public void touch(String sessionId) {
+        long now = System.currentTimeMillis();
+        Long previous = pending.get(sessionId);
+        if (previous != null && previous >= now && !closed) {
+            return;
+        }
+        pending.merge(sessionId, now, Math::max);
+        // Read after the merge: either close's final flush sees this touch or this thread flushes it.
+        if (closed) {
+            flush();
+        } else if (previous == null && pending.mappingCount() >= config.maxPending()) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /** Drop the pending touch of a session, e.g. after revoking it. */
+    public void forget(String sessionId) {
+        pending.remove(sessionId);
+    }
+
+    /**
+     * Write pending touches now, in batches of at most {@link WriteBehindConfig#maxBatchSize()}. A failed
+     * batch is kept for the next flush.
+     */
+    public synchronized void flush() {
+        // Bounded so a steady stream of touches cannot keep one flush running.
+        int rounds = (int) (pending.mappingCount() / config.maxBatchSize()) + 1;
+        while (rounds-- > 0 && !pending.isEmpty()) {
+            Map<String, Long> batch = new ConcurrentHashMap<>();
+            inFlight = batch;
+            Iterator<Map.Entry<String, Long>> it = pending.entrySet().iterator();
+            while (batch.size() < config.maxBatchSize() && it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                String sessionId = entry.getKey();
+                Long lastAccess = entry.getValue();
+                batch.put(sessionId, lastAccess);
+                if (!pending.remove(sessionId, lastAccess)) {
+                    // Touched again meanwhile; the newer time goes with a later batch.
+                    batch.remove(sessionId);
+                }
+            }
+            if (!batch.isEmpty() && !write(batch)) {
+                batch.forEach((sessionId, lastAccess) -> pending.merge(sessionId, lastAccess, Math::max));
+                inFlight = Map.of();
+                failedWrites.incrementAndGet();
+                return;
+            }
+            inFlight = Map.of();
+        }
+    }
+
+    /** Touches recorded and not yet written. */
+    public int pendingTouches() {
+        return pending.size();
+    }
+
+    /** Touches written to the store so far. */
+    public long writtenTouches() {
+        return written.get();
+    }
+
+    /** Batches whose write threw. */
+    public long failedWrites() {
+        return failedWrites.get();
+    }
+
+    /**
+     * Stop the flush thread and write everything still pending. Touches recorded afterwards, or racing with
+     * close, are written through by the touching thread, under the same lock as {@link #flush()}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private Long lastPendingAccess(String sessionId) {
+        // Pending before in-flight: a flush copies a touch into the batch before removing it from pending.
+        Long lastAccess = pending.get(sessionId);
+        return lastAccess != null ? lastAccess : inFlight.get(sessionId);
+    }
+
+    private boolean write(Map<String, Long> batch) {
+        try {
+            writer.writeTouches(Collections.unmodifiableMap(batch));
+            written.addAndGet(batch.size());
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void run() {
+        long intervalNanos = config.tolerance().toNanos();
+        while (!closed) {
+            LockSupport.parkNanos(this, intervalNanos);
+            if (!closed) {
+                flush();
+            }
+        }
+    }
+}
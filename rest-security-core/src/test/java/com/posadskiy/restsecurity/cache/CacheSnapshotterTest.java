@@ -0,0 +1,230 @@
+package com.posadskiy.restsecurity.cache;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CacheSnapshotterTest {
+
+    @TempDir
+    Path directory;
+
+    private final Store store = new Store();
+
+    {
+        store.sessions.put("s1", "alice");
+        store.sessions.put("s2", "bob");
+        store.expired.add("s2");
+        store.roles.put("alice", Set.of("USER", "ADMIN"));
+        store.roles.put("carol", Set.of());
+    }
+
+    private CachingSessionSecurityController sessions(SecurityCacheConfig config) {
+        return new CachingSessionSecurityController(store, config);
+    }
+
+    private CachingUserSecurityController users(SecurityCacheConfig config) {
+        return new CachingUserSecurityController(store, config);
+    }
+
+    private static void warm(CachingSessionSecurityController sessions, CachingUserSecurityController users) {
+        for (String sessionId : List.of("s1", "s2", "missing")) {
+            sessions.isSessionExist(sessionId);
+        }
+        for (String userId : List.of("alice", "carol", "nobody")) {
+            users.isUserExist(userId);
+        }
+    }
+
+    @Test
+    void restart_reloadsEntries_withoutAskingTheStore() {
+        CacheSnapshotConfig config = CacheSnapshotConfig.of(directory.resolve("security.snap"));
+        CachingSessionSecurityController sessions = sessions(SecurityCacheConfig.defaults());
+        CachingUserSecurityController users = users(SecurityCacheConfig.defaults());
+        warm(sessions, users);
+        CacheSnapshotter before = new CacheSnapshotter(config, sessions, users);
+        assertEquals(0, before.restored());
+        before.close();
+        int loads = store.calls.get();
+
+        CachingSessionSecurityController restartedSessions = sessions(SecurityCacheConfig.defaults());
+        CachingUserSecurityController restartedUsers = users(SecurityCacheConfig.defaults());
+        CacheSnapshotter after = new CacheSnapshotter(config, restartedSessions, restartedUsers);
+
+        assertEquals(6, after.restored());
+        assertEquals("alice", restartedSessions.getUserIdBySessionId("s1"));
+        assertTrue(restartedSessions.isSessionExist("s2"));
+        assertTrue(restartedSessions.isSessionExpired("s2"));
+        assertFalse(restartedSessions.isSessionExist("missing"));
+        assertEquals(Set.of("USER", "ADMIN"), restartedUsers.getUserRolesSet("alice"));
+        assertTrue(restartedUsers.isUserExist("carol"));
+        assertFalse(restartedUsers.isUserExist("nobody"));
+        assertEquals(loads, store.calls.get());
+        assertEquals(0, restartedSessions.misses() + restartedUsers.misses());
+        after.close();
+    }
+
+    @Test
+    void expiredEntries_areNotReloaded() throws Exception {
+        CacheSnapshotConfig config = CacheSnapshotConfig.of(directory.resolve("security.snap"));
+        SecurityCacheConfig shortLived = SecurityCacheConfig.defaults().withSessionTtl(Duration.ofMillis(50));
+        CachingSessionSecurityController sessions = sessions(shortLived);
+        CachingUserSecurityController users = users(SecurityCacheConfig.defaults());
+        warm(sessions, users);
+        new CacheSnapshotter(config, sessions, users).close();
+        Thread.sleep(80);
+
+        CachingSessionSecurityController restarted = sessions(shortLived);
+        CacheSnapshotter after = new CacheSnapshotter(config, restarted, null);
+
+        assertEquals(0, after.restored());
+        assertEquals(0, restarted.size());
+        after.close();
+    }
+
+    @Test
+    void newerEntries_winOverTheSnapshot() {
+        CacheSnapshotConfig config = CacheSnapshotConfig.of(directory.resolve("security.snap"));
+        CachingUserSecurityController users = users(SecurityCacheConfig.defaults());
+        users.isUserExist("alice");
+        new CacheSnapshotter(config, null, users).close();
+
+        CachingUserSecurityController restarted = users(SecurityCacheConfig.defaults());
+        restarted.onInvalidation(new InvalidationEvent.UserRolesChanged("alice", Set.of("USER"), 5));
+        CacheSnapshotter after = new CacheSnapshotter(config, null, restarted);
+
+        assertEquals(0, after.restored());
+        assertEquals(Set.of("USER"), restarted.getUserRolesSet("alice"));
+        after.close();
+    }
+
+    @Test
+    void snapshots_areWrittenInTheBackground() throws Exception {
+        Path file = directory.resolve("security.snap");
+        CachingSessionSecurityController sessions = sessions(SecurityCacheConfig.defaults());
+        sessions.isSessionExist("s1");
+        CacheSnapshotter snapshotter = new CacheSnapshotter(
+                CacheSnapshotConfig.of(file).withInterval(Duration.ofMillis(10)), sessions, null);
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (snapshotter.snapshots() < 2) {
+            assertTrue(System.currentTimeMillis() < deadline, "no snapshot in time");
+            Thread.sleep(5);
+        }
+        snapshotter.close();
+        snapshotter.close();
+
+        assertTrue(Files.size(file) > 0);
+        assertFalse(Files.exists(directory.resolve("security.snap.tmp")));
+        assertEquals(0, snapshotter.failedSnapshots());
+    }
+
+    @Test
+    void missingOrCorruptSnapshot_meansAColdStart() throws Exception {
+        Path file = directory.resolve("security.snap");
+        CachingSessionSecurityController sessions = sessions(SecurityCacheConfig.defaults());
+        CacheSnapshotter first = new CacheSnapshotter(CacheSnapshotConfig.of(file), sessions, null);
+        assertEquals(0, first.restored());
+
+        sessions.isSessionExist("s1");
+        first.close();
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(file, bytes);
+        CacheSnapshotter corrupt = new CacheSnapshotter(CacheSnapshotConfig.of(file),
+                sessions(SecurityCacheConfig.defaults()), null);
+        assertEquals(0, corrupt.restored());
+        corrupt.close();
+
+        Files.write(file, new byte[] {1, 2, 3});
+        CacheSnapshotter truncated = new CacheSnapshotter(CacheSnapshotConfig.of(file), sessions, null);
+        assertEquals(0, truncated.restored());
+        truncated.close();
+    }
+
+    @Test
+    void snapshotFile_isReadableByTheOwnerOnly() throws Exception {
+        assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path file = directory.resolve("security.snap");
+        Path leftover = directory.resolve("security.snap.tmp");
+        Files.createFile(leftover, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-r--r--")));
+        CachingSessionSecurityController sessions = sessions(SecurityCacheConfig.defaults());
+        sessions.isSessionExist("s1");
+        CacheSnapshotter snapshotter = new CacheSnapshotter(CacheSnapshotConfig.of(file), sessions, null);
+
+        snapshotter.close();
+
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(file));
+        assertFalse(Files.exists(leftover));
+    }
+
+    @Test
+    void unwritableFile_isReported() {
+        Path file = directory.resolve("missing-dir").resolve("security.snap");
+        CacheSnapshotter snapshotter = new CacheSnapshotter(CacheSnapshotConfig.of(file), null, null);
+
+        assertThrows(UncheckedIOException.class, snapshotter::snapshot);
+        assertThrows(UncheckedIOException.class, snapshotter::close);
+        assertEquals(2, snapshotter.failedSnapshots());
+    }
+
+    @Test
+    void config_validatesAndDefaults() {
+        CacheSnapshotConfig config = CacheSnapshotConfig.of(directory.resolve("x"));
+
+        assertEquals(Duration.ofSeconds(30), config.interval());
+        assertEquals(Duration.ofSeconds(1), config.withInterval(Duration.ofSeconds(1)).interval());
+        assertEquals(Duration.ofSeconds(30), config.withInterval(Duration.ZERO).interval());
+        assertThrows(IllegalArgumentException.class, () -> CacheSnapshotConfig.of(null));
+    }
+
+    private static final class Store implements SessionSecurityController, UserSecurityController {
+        final Map<String, String> sessions = new ConcurrentHashMap<>();
+        final Set<String> expired = ConcurrentHashMap.newKeySet();
+        final Map<String, Set<String>> roles = new ConcurrentHashMap<>();
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public boolean isSessionExist(String sessionId) {
+            calls.incrementAndGet();
+            return sessions.containsKey(sessionId);
+        }
+
+        @Override
+        public boolean isSessionExpired(String sessionId) {
+            return expired.contains(sessionId);
+        }
+
+        @Override
+        public String getUserIdBySessionId(String sessionId) {
+            return sessions.get(sessionId);
+        }
+
+        @Override
+        public boolean isUserExist(String userId) {
+            calls.incrementAndGet();
+            return roles.containsKey(userId);
+        }
+
+        @Override
+        public List<String> getUserRoles(String userId) {
+            Set<String> result = roles.get(userId);
+            return result != null ? List.copyOf(result) : List.of();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.posadskiy.restsecurity.cache;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingSessionSecurityControllerTest {
+
+    private final SessionStore store = new SessionStore();
+    private final SecurityInvalidationBus bus = new SecurityInvalidationBus();
+    private final CachingSessionSecurityController sessions =
+            new CachingSessionSecurityController(store, SecurityCacheConfig.defaults());
+
+    {
+        bus.subscribe(sessions);
+        store.users.put("s1", "alice");
+    }
+
+    @Test
+    void enforcementLookups_loadOnce() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(sessions.isSessionExist("s1"));
+            assertFalse(sessions.isSessionExpired("s1"));
+            assertEquals("alice", sessions.getUserIdBySessionId("s1"));
+        }
+
+        assertEquals(1, store.existCalls.get());
+        assertEquals(1, sessions.misses());
+        assertEquals(29, sessions.hits());
+    }
+
+    @Test
+    void revokedSession_isGoneAtOnce() {
+        assertTrue(sessions.isSessionExist("s1"));
+
+        bus.publish(new InvalidationEvent.SessionRevoked("s1"));
+
+        assertFalse(sessions.isSessionExist("s1"));
+        assertTrue(sessions.isSessionExpired("s1"));
+        assertNull(sessions.getUserIdBySessionId("s1"));
+        assertEquals(1, store.existCalls.get(), "revocation is known without asking the store");
+    }
+
+    @Test
+    void expiredAndUnknownSessions() {
+        store.users.put("old", "bob");
+        store.expired.add("old");
+
+        assertTrue(sessions.isSessionExist("old"));
+        assertTrue(sessions.isSessionExpired("old"));
+        assertNull(sessions.getUserIdBySessionId("old"));
+        assertFalse(sessions.isSessionExist("nope"));
+        assertFalse(sessions.isSessionExist(null));
+    }
+
+    @Test
+    void ttl_boundsStaleness() throws InterruptedException {
+        CachingSessionSecurityController shortLived = new CachingSessionSecurityController(store,
+                SecurityCacheConfig.defaults().withSessionTtl(Duration.ofMillis(20)));
+        assertFalse(shortLived.isSessionExpired("s1"));
+        store.expired.add("s1");
+        assertFalse(shortLived.isSessionExpired("s1"));
+
+        Thread.sleep(40);
+
+        assertTrue(shortLived.isSessionExpired("s1"));
+    }
+
+    @Test
+    void allInvalidated_clears_userEventsAreIgnored() {
+        sessions.isSessionExist("s1");
+        bus.publish(new InvalidationEvent.UserRolesChanged("alice", Set.of(), 1));
+        bus.publish(new InvalidationEvent.UserRemoved("alice", 1));
+        assertEquals(1, sessions.size());
+
+        bus.publish(new InvalidationEvent.AllInvalidated());
+
+        assertEquals(0, sessions.size());
+        bus.publish(new InvalidationEvent.TtlCapped(Duration.ofMillis(1)));
+        bus.publish(new InvalidationEvent.TtlCapped(null));
+    }
+
+    @Test
+    void refreshAhead_reloadsInBackground_whileServingTheCachedAnswer() throws InterruptedException {
+        try (CachingSessionSecurityController refreshing = new CachingSessionSecurityController(store,
+                SecurityCacheConfig.defaults().withSessionTtl(Duration.ofMillis(400)).withSessionRefreshAhead(0.5))) {
+            assertTrue(refreshing.isSessionExist("s1"));
+            assertTrue(refreshing.isSessionExist("s1"));
+            assertEquals(0, refreshing.refreshes(), "not due yet");
+
+            Thread.sleep(250);
+            assertTrue(refreshing.isSessionExist("s1"));
+            awaitCount(refreshing::refreshes, 1);
+            Thread.sleep(200);
+
+            assertTrue(refreshing.isSessionExist("s1"));
+            assertEquals(1, refreshing.misses(), "the reload kept the entry alive past its first ttl");
+            assertEquals(2, store.existCalls.get());
+            assertEquals(0, refreshing.failedRefreshes());
+            assertEquals(0, refreshing.skippedRefreshes());
+        }
+    }
+
+    @Test
+    void refreshAhead_runsOncePerEntry_andLosesToARevocation() throws InterruptedException {
+        try (CachingSessionSecurityController refreshing = new CachingSessionSecurityController(store,
+                SecurityCacheConfig.defaults().withSessionTtl(Duration.ofSeconds(2)).withSessionRefreshAhead(0.95))) {
+            bus.subscribe(refreshing);
+            refreshing.isSessionExist("s1");
+            store.gate = new CountDownLatch(1);
+            Thread.sleep(150);
+
+            for (int i = 0; i < 20; i++) {
+                assertTrue(refreshing.isSessionExist("s1"));
+            }
+            awaitCount(() -> store.existCalls.get(), 2);
+            bus.publish(new InvalidationEvent.SessionRevoked("s1"));
+            store.gate.countDown();
+            awaitCount(refreshing::refreshes, 1);
+
+            assertEquals(2, store.existCalls.get(), "one reload in flight per session");
+            assertFalse(refreshing.isSessionExist("s1"), "the revocation is not overwritten by the reload");
+        }
+    }
+
+    @Test
+    void failedRefresh_isCounted_andTheEntryServedUntilItExpires() throws InterruptedException {
+        try (CachingSessionSecurityController refreshing = new CachingSessionSecurityController(store,
+                SecurityCacheConfig.defaults().withSessionTtl(Duration.ofSeconds(2)).withSessionRefreshAhead(0.95))) {
+            refreshing.isSessionExist("s1");
+            store.failing = true;
+            Thread.sleep(150);
+
+            assertTrue(refreshing.isSessionExist("s1"));
+            awaitCount(refreshing::failedRefreshes, 1);
+
+            assertTrue(refreshing.isSessionExist("s1"));
+            assertEquals(0, refreshing.refreshes());
+        }
+    }
+
+    @Test
+    void refreshConfig_defaultsAndValidation() {
+        SecurityCacheConfig config = SecurityCacheConfig.defaults();
+
+        assertEquals(0, config.sessionRefreshAhead());
+        assertEquals(2, config.refreshThreads());
+        assertEquals(4, config.withRefreshThreads(4).refreshThreads());
+        assertThrows(IllegalArgumentException.class, () -> config.withSessionRefreshAhead(1));
+        assertThrows(IllegalArgumentException.class, () -> config.withSessionRefreshAhead(-0.1));
+    }
+
+    private static void awaitCount(LongSupplier count, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (count.getAsLong() < expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for " + expected);
+            Thread.sleep(5);
+        }
+    }
+
+    private static final class SessionStore implements SessionSecurityController {
+        final Map<String, String> users = new ConcurrentHashMap<>();
+        final Set<String> expired = ConcurrentHashMap.newKeySet();
+        final AtomicInteger existCalls = new AtomicInteger();
+        volatile CountDownLatch gate;
+        volatile boolean failing;
+
+        @Override
+        public boolean isSessionExist(String sessionId) {
+            existCalls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("store down");
+            }
+            CountDownLatch latch = gate;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return users.containsKey(sessionId);
+        }
+
+        @Override
+        public boolean isSessionExpired(String sessionId) {
+            return expired.contains(sessionId);
+        }
+
+        @Override
+        public String getUserIdBySessionId(String sessionId) {
+            return users.get(sessionId);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.posadskiy.restsecurity.cache;
+
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingUserSecurityControllerTest {
+
+    private final UserStore store = new UserStore();
+    private final SecurityInvalidationBus bus = new SecurityInvalidationBus();
+    private final CachingUserSecurityController users =
+            new CachingUserSecurityController(store, SecurityCacheConfig.defaults());
+
+    {
+        bus.subscribe(users);
+        store.roles.put("alice", Set.of("USER"));
+    }
+
+    @Test
+    void repeatedLookups_hitTheCache() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(users.isUserExist("alice"));
+            assertEquals(Set.of("USER"), users.getUserRolesSet("alice"));
+        }
+        assertEquals(List.of("USER"), users.getUserRoles("alice"));
+
+        assertEquals(1, store.loads.get());
+        assertEquals(1, users.misses());
+        assertEquals(200, users.hits());
+        assertEquals(1, users.size());
+    }
+
+    @Test
+    void rolesChanged_replacesEntry_withoutReload() {
+        users.getUserRolesSet("alice");
+
+        bus.publish(new InvalidationEvent.UserRolesChanged("alice", Set.of("USER", "ADMIN"), 2));
+
+        assertEquals(Set.of("USER", "ADMIN"), users.getUserRolesSet("alice"));
+        assertEquals(1, store.loads.get());
+    }
+
+    @Test
+    void droppedRoles_areReloaded() {
+        users.getUserRolesSet("alice");
+        store.roles.put("alice", Set.of("ADMIN"));
+
+        bus.publish(InvalidationEvent.UserRolesChanged.dropped("alice"));
+
+        assertEquals(Set.of("ADMIN"), users.getUserRolesSet("alice"));
+        assertEquals(2, store.loads.get());
+    }
+
+    @Test
+    void olderEvent_doesNotOverwriteNewer() {
+        bus.publish(new InvalidationEvent.UserRolesChanged("alice", Set.of("ADMIN"), 5));
+        bus.publish(new InvalidationEvent.UserRolesChanged("alice", Set.of("USER"), 4));
+        assertEquals(Set.of("ADMIN"), users.getUserRolesSet("alice"));
+
+        bus.publish(new InvalidationEvent.UserRolesChanged("alice", null, 6));
+        bus.publish(new InvalidationEvent.UserRolesChanged("alice", Set.of("USER", "ADMIN"), 5));
+        assertEquals(Set.of("USER"), users.getUserRolesSet("alice"), "tombstone keeps the late event out");
+    }
+
+    @Test
+    void removedUser_isAbsentAtOnce() {
+        assertTrue(users.isUserExist("alice"));
+
+        bus.publish(new InvalidationEvent.UserRemoved("alice", 0));
+
+        assertFalse(users.isUserExist("alice"));
+        assertEquals(Set.of(), users.getUserRolesSet("alice"));
+        assertEquals(1, store.loads.get());
+    }
+
+    @Test
+    void eventDuringLoad_keepsStaleResultOutOfTheCache() throws InterruptedException {
+        store.gate = new CountDownLatch(1);
+        Thread loader = Thread.ofVirtual().start(() -> assertEquals(Set.of("USER"), users.getUserRolesSet("alice")));
+        while (store.loads.get() == 0) {
+            Thread.sleep(1);
+        }
+        store.roles.put("alice", Set.of("ADMIN"));
+        bus.publish(InvalidationEvent.UserRolesChanged.dropped("alice"));
+        store.gate.countDown();
+        loader.join();
+        store.gate = null;
+
+        assertEquals(Set.of("ADMIN"), users.getUserRolesSet("alice"));
+    }
+
+    @Test
+    void allInvalidated_andTtl_reload() throws InterruptedException {
+        CachingUserSecurityController shortLived = new CachingUserSecurityController(store,
+                SecurityCacheConfig.defaults().withUserTtl(Duration.ofMillis(20)));
+        shortLived.getUserRolesSet("alice");
+        Thread.sleep(40);
+        shortLived.getUserRolesSet("alice");
+        assertEquals(2, store.loads.get());
+
+        shortLived.onInvalidation(new InvalidationEvent.AllInvalidated());
+        assertEquals(0, shortLived.size());
+        shortLived.onInvalidation(new InvalidationEvent.SessionRevoked("s1"));
+    }
+
+    @Test
+    void ttlCap_shortensNewEntries_untilLifted() throws InterruptedException {
+        bus.publish(new InvalidationEvent.TtlCapped(Duration.ofMillis(20)));
+        users.getUserRolesSet("alice");
+        Thread.sleep(40);
+        users.getUserRolesSet("alice");
+        assertEquals(2, store.loads.get());
+
+        bus.publish(new InvalidationEvent.TtlCapped(null));
+        users.getUserRolesSet("alice");
+        users.getUserRolesSet("alice");
+        Thread.sleep(40);
+        users.getUserRolesSet("alice");
+        assertEquals(3, store.loads.get());
+    }
+
+    @Test
+    void unknownAndBlankUsers() {
+        assertFalse(users.isUserExist("bob"));
+        assertFalse(users.isUserExist("bob"));
+        assertFalse(users.isUserExist(null));
+        assertEquals(List.of(), users.getUserRoles(" "));
+
+        assertEquals(1, store.loads.get());
+    }
+
+    @Test
+    void fullCache_evicts() {
+        CachingUserSecurityController small = new CachingUserSecurityController(store,
+                SecurityCacheConfig.defaults().withMaxEntries(10));
+        for (int i = 0; i < 50; i++) {
+            small.isUserExist("u" + i);
+        }
+
+        assertTrue(small.size() <= 10);
+    }
+
+    @Test
+    void config_defaultsAndValidation() {
+        SecurityCacheConfig config = SecurityCacheConfig.defaults();
+
+        assertEquals(Duration.ofMinutes(10), config.userTtl());
+        assertEquals(Duration.ofSeconds(5), config.sessionTtl());
+        assertEquals(100_000, config.maxEntries());
+        assertThrows(IllegalArgumentException.class, () -> config.withUserTtl(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> config.withSessionTtl(Duration.ofSeconds(-1)));
+    }
+
+    private static final class UserStore implements UserSecurityController {
+        final Map<String, Set<String>> roles = new ConcurrentHashMap<>();
+        final AtomicInteger loads = new AtomicInteger();
+        volatile CountDownLatch gate;
+
+        @Override
+        public boolean isUserExist(String userId) {
+            loads.incrementAndGet();
+            return roles.containsKey(userId);
+        }
+
+        @Override
+        public List<String> getUserRoles(String userId) {
+            Set<String> result = roles.get(userId);
+            CountDownLatch latch = gate;
+            if (latch != null) {
+                try {
+                    assertTrue(latch.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return result != null ? List.copyOf(result) : List.of();
+        }
+    }
+}
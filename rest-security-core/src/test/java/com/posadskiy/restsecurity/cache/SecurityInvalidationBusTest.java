@@ -0,0 +1,93 @@
+package com.posadskiy.restsecurity.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SecurityInvalidationBusTest {
+
+    private final SecurityInvalidationBus bus = new SecurityInvalidationBus();
+
+    @Test
+    void publish_reachesEveryListener_evenAfterOneThrows() {
+        List<InvalidationEvent> received = new ArrayList<>();
+        bus.subscribe(event -> {
+            throw new IllegalStateException("broken listener");
+        });
+        bus.subscribe(received::add);
+        InvalidationEvent event = new InvalidationEvent.SessionRevoked("s1");
+
+        bus.publish(event);
+
+        assertEquals(List.of(event), received);
+        assertEquals(1, bus.published());
+        assertEquals(1, bus.failedDeliveries());
+    }
+
+    @Test
+    void unsubscribed_listener_receivesNothing() {
+        List<InvalidationEvent> received = new ArrayList<>();
+        InvalidationListener listener = received::add;
+        bus.subscribe(listener);
+        bus.unsubscribe(listener);
+
+        bus.publish(new InvalidationEvent.AllInvalidated());
+
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void attachedTransport_sendsLocalEvents_andDeliversReceivedOnesLocally() {
+        List<InvalidationEvent> received = new ArrayList<>();
+        bus.subscribe(received::add);
+        LoopTransport transport = new LoopTransport();
+        bus.attach(transport);
+        InvalidationEvent local = new InvalidationEvent.SessionRevoked("s1");
+        InvalidationEvent remote = new InvalidationEvent.UserRemoved("bob", 3);
+        InvalidationEvent cap = new InvalidationEvent.TtlCapped(Duration.ofSeconds(1));
+
+        bus.publish(local);
+        transport.receiver.onInvalidation(remote);
+        bus.publish(cap);
+
+        assertEquals(List.of(local, remote, cap), received);
+        assertEquals(List.of(local), transport.sent, "received and local-only events are not sent");
+        assertThrows(IllegalArgumentException.class, () -> bus.attach(null));
+    }
+
+    @Test
+    void events_validate() {
+        assertThrows(IllegalArgumentException.class, () -> bus.publish(null));
+        assertThrows(IllegalArgumentException.class, () -> bus.subscribe(null));
+        assertThrows(IllegalArgumentException.class, () -> new InvalidationEvent.UserRolesChanged(" ", Set.of(), 1));
+        assertThrows(IllegalArgumentException.class, () -> new InvalidationEvent.UserRemoved(null, 1));
+        assertThrows(IllegalArgumentException.class, () -> new InvalidationEvent.SessionRevoked(""));
+        assertNull(InvalidationEvent.UserRolesChanged.dropped("alice").roles());
+        assertThrows(IllegalArgumentException.class, () -> new InvalidationEvent.TtlCapped(Duration.ZERO));
+        assertNull(new InvalidationEvent.TtlCapped(null).ttl());
+    }
+
+    private static final class LoopTransport implements InvalidationTransport {
+        final List<InvalidationEvent> sent = new ArrayList<>();
+        InvalidationListener receiver;
+
+        @Override
+        public void start(InvalidationListener receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public void send(InvalidationEvent event) {
+            sent.add(event);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
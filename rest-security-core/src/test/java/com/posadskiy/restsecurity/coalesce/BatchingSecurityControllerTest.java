@@ -0,0 +1,148 @@
+package com.posadskiy.restsecurity.coalesce;
+
+import com.posadskiy.restsecurity.controller.BatchSessionSecurityController;
+import com.posadskiy.restsecurity.controller.BatchUserSecurityController;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionLookup;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchingSecurityControllerTest {
+
+    private final BatchStore store = new BatchStore();
+    private final BatchingSecurityController controller =
+            new BatchingSecurityController(store, store, BatchConfig.defaults());
+
+    @Test
+    void enforcementCalls_shareOneSessionAndOneUserLookup() {
+        EnforcementMemo.begin();
+        try {
+            assertTrue(controller.isSessionExist("s1"));
+            assertFalse(controller.isSessionExpired("s1"));
+            assertEquals("alice", controller.getUserIdBySessionId("s1"));
+            assertTrue(controller.isUserExist("alice"));
+            assertEquals(Set.of("USER", "ADMIN"), controller.getUserRolesSet("alice"));
+            assertEquals(Set.of("USER", "ADMIN"), Set.copyOf(controller.getUserRoles("alice")));
+        } finally {
+            EnforcementMemo.end();
+        }
+
+        assertEquals(1, store.sessionCalls.get());
+        assertEquals(1, store.userCalls.get());
+        assertEquals(2, controller.storeCalls());
+        assertEquals(2, controller.lookups());
+    }
+
+    @Test
+    void absentAndExpired() {
+        assertFalse(controller.isSessionExist("nope"));
+        assertTrue(controller.isSessionExpired("nope"));
+        assertNull(controller.getUserIdBySessionId("nope"));
+        assertTrue(controller.isSessionExist("old"));
+        assertTrue(controller.isSessionExpired("old"));
+        assertFalse(controller.isUserExist("bob"));
+        assertEquals(List.of(), controller.getUserRoles("bob"));
+        assertEquals(Set.of(), controller.getUserRolesSet("bob"));
+    }
+
+    @Test
+    void blankIds_doNotReachStore() {
+        assertFalse(controller.isSessionExist(null));
+        assertFalse(controller.isSessionExist(" "));
+        assertFalse(controller.isUserExist(null));
+        assertEquals(0, controller.storeCalls());
+    }
+
+    @Test
+    void concurrentEnforcements_areBatched() throws InterruptedException {
+        // Slow store: loads overlap, so later lookups gather into shared batches.
+        store.delayMillis = 20;
+        Thread[] threads = new Thread[50];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = Thread.ofVirtual().start(() -> assertEquals("alice", controller.getUserIdBySessionId("s1")));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(controller.storeCalls() < 50, "batched: " + controller.storeCalls());
+    }
+
+    @Test
+    void config_defaultsAndValidation() {
+        BatchConfig config = BatchConfig.defaults();
+
+        assertEquals(Duration.ofNanos(200_000), config.maxWait());
+        assertEquals(128, config.maxBatchSize());
+        assertEquals(Duration.ofSeconds(2), config.timeout());
+        assertThrows(IllegalArgumentException.class, () -> config.withMaxWait(Duration.ofMillis(-1)));
+        assertThrows(IllegalArgumentException.class, () -> config.withTimeout(Duration.ZERO));
+    }
+
+    private static final class BatchStore implements BatchSessionSecurityController, BatchUserSecurityController {
+        final AtomicInteger sessionCalls = new AtomicInteger();
+        final AtomicInteger userCalls = new AtomicInteger();
+        volatile long delayMillis;
+
+        @Override
+        public Map<String, SessionLookup> lookupSessions(Set<String> sessionIds) {
+            sessionCalls.incrementAndGet();
+            sleep();
+            Map<String, SessionLookup> found = new HashMap<>();
+            if (sessionIds.contains("s1")) {
+                found.put("s1", new SessionLookup("alice", false));
+            }
+            if (sessionIds.contains("old")) {
+                found.put("old", new SessionLookup("alice", true));
+            }
+            return found;
+        }
+
+        @Override
+        public Map<String, Set<String>> getUsersRoles(Set<String> userIds) {
+            userCalls.incrementAndGet();
+            return userIds.contains("alice") ? Map.of("alice", Set.of("USER", "ADMIN")) : Map.of();
+        }
+
+        private void sleep() {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean isSessionExist(String sessionId) {
+            throw new AssertionError("single-key call");
+        }
+
+        @Override
+        public boolean isSessionExpired(String sessionId) {
+            throw new AssertionError("single-key call");
+        }
+
+        @Override
+        public String getUserIdBySessionId(String sessionId) {
+            throw new AssertionError("single-key call");
+        }
+
+        @Override
+        public boolean isUserExist(String userId) {
+            throw new AssertionError("single-key call");
+        }
+
+        @Override
+        public List<String> getUserRoles(String userId) {
+            throw new AssertionError("single-key call");
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.posadskiy.restsecurity.coalesce;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingSecurityControllerTest {
+
+    private final SlowStore store = new SlowStore();
+    private final CoalescingSecurityController controller =
+            new CoalescingSecurityController(store, store, Duration.ofSeconds(5));
+
+    @Test
+    void concurrentSessionLookups_reachStoreOnce() throws InterruptedException {
+        store.gate = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<String> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            threads.add(Thread.ofVirtual().start(() -> results.add(controller.getUserIdBySessionId("s1"))));
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (controller.sharedCalls() < 49) {
+            assertTrue(System.currentTimeMillis() < deadline, "waiters did not arrive in time");
+            Thread.sleep(5);
+        }
+        store.gate.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(50, results.size());
+        results.forEach(userId -> assertEquals("alice", userId));
+        assertEquals(1, store.calls.get());
+        assertEquals(1, controller.storeCalls());
+        assertEquals(49, controller.sharedCalls());
+    }
+
+    @Test
+    void everyMethod_delegates() {
+        assertTrue(controller.isSessionExist("s1"));
+        assertFalse(controller.isSessionExist("nope"));
+        assertFalse(controller.isSessionExpired("s1"));
+        assertEquals("alice", controller.getUserIdBySessionId("s1"));
+        assertNull(controller.getUserIdBySessionId("nope"));
+        assertTrue(controller.isUserExist("alice"));
+        assertEquals(List.of("USER"), controller.getUserRoles("alice"));
+        assertEquals(Set.of("USER"), controller.getUserRolesSet("alice"));
+
+        assertEquals(8, controller.storeCalls());
+        assertEquals(0, controller.sharedCalls());
+    }
+
+    @Test
+    void sequentialLookups_areNotCached() {
+        controller.isSessionExist("s1");
+        controller.isSessionExist("s1");
+
+        assertEquals(2, store.calls.get());
+    }
+
+    @Test
+    void consumingSessionChecks_areNotShared() throws InterruptedException {
+        store.consuming = true;
+        CoalescingSecurityController consuming = new CoalescingSecurityController(store, store, Duration.ofSeconds(5));
+        store.gate = new CountDownLatch(1);
+        List<Boolean> results = new CopyOnWriteArrayList<>();
+        Thread first = Thread.ofVirtual().start(() -> results.add(consuming.isSessionExist("s1")));
+        Thread second = Thread.ofVirtual().start(() -> results.add(consuming.isSessionExist("s1")));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (store.calls.get() < 2) {
+            assertTrue(System.currentTimeMillis() < deadline, "the second check did not reach the store");
+            Thread.sleep(5);
+        }
+        store.gate.countDown();
+        first.join();
+        second.join();
+
+        assertEquals(1, results.stream().filter(Boolean::booleanValue).count(), "one use of a one-time check");
+        assertEquals(0, consuming.sharedCalls());
+        assertTrue(consuming.isSessionCheckConsuming());
+        assertFalse(controller.isSessionCheckConsuming());
+    }
+
+    @Test
+    void storeException_reachesCaller() {
+        store.failing = true;
+
+        assertThrows(IllegalStateException.class, () -> controller.isSessionExist("s1"));
+    }
+
+    private static final class SlowStore implements SessionSecurityController, UserSecurityController {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile CountDownLatch gate;
+        volatile boolean failing;
+        volatile boolean consuming;
+        final Set<String> used = ConcurrentHashMap.newKeySet();
+
+        private void call() {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("store down");
+            }
+            CountDownLatch latch = gate;
+            if (latch != null) {
+                try {
+                    assertTrue(latch.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        public boolean isSessionExist(String sessionId) {
+            call();
+            return "s1".equals(sessionId) && (!consuming || used.add(sessionId));
+        }
+
+        @Override
+        public boolean isSessionCheckConsuming() {
+            return consuming;
+        }
+
+        @Override
+        public boolean isSessionExpired(String sessionId) {
+            call();
+            return !"s1".equals(sessionId);
+        }
+
+        @Override
+        public String getUserIdBySessionId(String sessionId) {
+            call();
+            return "s1".equals(sessionId) ? "alice" : null;
+        }
+
+        @Override
+        public boolean isUserExist(String userId) {
+            call();
+            return "alice".equals(userId);
+        }
+
+        @Override
+        public List<String> getUserRoles(String userId) {
+            call();
+            return "alice".equals(userId) ? List.of("USER") : List.of();
+        }
+
+        @Override
+        public Set<String> getUserRolesSet(String userId) {
+            call();
+            return "alice".equals(userId) ? Set.of("USER") : Set.of();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.posadskiy.restsecurity.coalesce;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatcherTest {
+
+    /** Upper-cases its keys; blocks on the gate for the key "slow"; leaves out "missing". */
+    private final List<Set<String>> batches = new CopyOnWriteArrayList<>();
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final Function<Set<String>, Map<String, String>> loader = keys -> {
+        batches.add(Set.copyOf(keys));
+        if (keys.contains("slow")) {
+            await(gate);
+        }
+        if (keys.contains("boom")) {
+            throw new IllegalStateException("store down");
+        }
+        Map<String, String> values = new HashMap<>();
+        keys.stream().filter(key -> !key.equals("missing")).forEach(key -> values.put(key, key.toUpperCase()));
+        return values;
+    };
+
+    @Test
+    void idle_loadsAtOnce_withoutWaitingForTheWindow() {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>(loader,
+                BatchConfig.defaults().withMaxWait(Duration.ofSeconds(10)), "test");
+
+        long start = System.nanoTime();
+        assertEquals("A", batcher.load("a"));
+        assertNull(batcher.load("missing"));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "no window while idle");
+        assertEquals(List.of(Set.of("a"), Set.of("missing")), batches);
+    }
+
+    @Test
+    void underLoad_keysArrivingWithinTheWindow_shareOneBatch() throws InterruptedException {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>(loader,
+                BatchConfig.defaults().withMaxWait(Duration.ofMillis(500)), "test");
+        Thread slow = Thread.ofVirtual().start(() -> batcher.load("slow"));
+        while (batches.isEmpty()) {
+            Thread.sleep(1);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        Map<String, String> results = new ConcurrentHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            String key = "k" + (i % 10);
+            threads.add(Thread.ofVirtual().start(() -> results.put(key, batcher.load(key))));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        gate.countDown();
+        slow.join();
+
+        assertEquals(2, batches.size(), "one batch for the slow key, one for the rest: " + batches);
+        assertEquals(10, batches.get(1).size());
+        assertEquals(10, results.size());
+        results.forEach((key, value) -> assertEquals(key.toUpperCase(), value));
+        assertEquals(2, batcher.batches());
+        assertEquals(11, batcher.keys());
+    }
+
+    @Test
+    void fullBatch_isSentBeforeTheWindowEnds() throws InterruptedException {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>(loader,
+                BatchConfig.defaults().withMaxWait(Duration.ofSeconds(30)).withMaxBatchSize(3), "test");
+        Thread slow = Thread.ofVirtual().start(() -> batcher.load("slow"));
+        while (batches.isEmpty()) {
+            Thread.sleep(1);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (String key : List.of("a", "b", "c")) {
+            threads.add(Thread.ofVirtual().start(() -> batcher.load(key)));
+        }
+        for (Thread thread : threads) {
+            assertTrue(thread.join(Duration.ofSeconds(10)), "full batch was not sent");
+        }
+        gate.countDown();
+        slow.join();
+
+        assertEquals(Set.of("a", "b", "c"), batches.get(1));
+    }
+
+    @Test
+    void loaderException_reachesEveryCallerOfTheBatch() {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>(loader, BatchConfig.defaults(), "test");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> batcher.load("boom"));
+        assertEquals("store down", e.getMessage());
+        assertEquals("B", batcher.load("b"), "a failed batch is not remembered");
+    }
+
+    @Test
+    void follower_timesOut_whenItsBatchTakesTooLong() throws InterruptedException {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>(loader,
+                new BatchConfig(Duration.ofSeconds(1), 0, Duration.ofMillis(50)), "test");
+        Thread first = Thread.ofVirtual().start(() -> batcher.load("slow"));
+        while (batches.isEmpty()) {
+            Thread.sleep(1);
+        }
+        // A load is running, so the next batch stays open for the window.
+        Thread second = Thread.ofVirtual().start(() -> batcher.load("a"));
+        Thread.sleep(50);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> batcher.load("b"));
+        assertTrue(e.getMessage().startsWith("test: timed out"), e.getMessage());
+
+        gate.countDown();
+        first.join();
+        second.join();
+        assertEquals(Set.of("a", "b"), batches.get(1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.posadskiy.restsecurity.coalesce;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static void awaitWaiters(SingleFlight<?, ?> flight, long waiters) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (flight.shared() < waiters) {
+            assertTrue(System.currentTimeMillis() < deadline, "waiters did not arrive in time");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void concurrentLoads_ofOneKey_callLoaderOnce() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = executor.submit(() -> flight.load("k", () -> {
+                calls.incrementAndGet();
+                await(release);
+                return "v";
+            }));
+            while (flight.inFlight() == 0) {
+                Thread.sleep(1);
+            }
+            List<Future<String>> waiters = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                waiters.add(executor.submit(() -> flight.load("k", () -> {
+                    calls.incrementAndGet();
+                    return "other";
+                })));
+            }
+            awaitWaiters(flight, 100);
+            release.countDown();
+
+            assertEquals("v", leader.get());
+            for (Future<String> waiter : waiters) {
+                assertEquals("v", waiter.get());
+            }
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.loads());
+        assertEquals(100, flight.shared());
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void exception_isSharedWithWaiters() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("store down");
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = executor.submit(() -> flight.load("k", () -> {
+                await(release);
+                throw failure;
+            }));
+            while (flight.inFlight() == 0) {
+                Thread.sleep(1);
+            }
+            Future<String> waiter = executor.submit(() -> flight.load("k", () -> "unused"));
+            awaitWaiters(flight, 1);
+            release.countDown();
+
+            assertSame(failure, assertThrows(Exception.class, leader::get).getCause());
+            assertSame(failure, assertThrows(Exception.class, waiter::get).getCause());
+        }
+        assertEquals("fresh", flight.load("k", () -> "fresh"), "a failure is not remembered");
+    }
+
+    @Test
+    void waiter_timesOut_whileLeaderContinues() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofMillis(50));
+        CountDownLatch release = new CountDownLatch(1);
+        Thread leader = Thread.ofVirtual().start(() -> flight.load("k", () -> {
+            await(release);
+            return "v";
+        }));
+        while (flight.inFlight() == 0) {
+            Thread.sleep(1);
+        }
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> flight.load("k", () -> "unused"));
+        assertTrue(e.getMessage().contains("timed out"));
+
+        release.countDown();
+        leader.join();
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void interruptedWaiter_keepsInterruptFlag() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        CountDownLatch release = new CountDownLatch(1);
+        Thread leader = Thread.ofVirtual().start(() -> flight.load("k", () -> {
+            await(release);
+            return "v";
+        }));
+        while (flight.inFlight() == 0) {
+            Thread.sleep(1);
+        }
+
+        Thread.currentThread().interrupt();
+        assertThrows(IllegalStateException.class, () -> flight.load("k", () -> "unused"));
+        assertTrue(Thread.interrupted());
+
+        release.countDown();
+        leader.join();
+    }
+
+    @Test
+    void differentKeys_doNotWaitForEachOther() {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+
+        String outer = flight.load("a", () -> "a" + flight.load("b", () -> "b"));
+
+        assertEquals("ab", outer);
+        assertEquals(2, flight.loads());
+        assertEquals(0, flight.shared());
+    }
+
+    @Test
+    void nullValues_areShared() {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(1));
+
+        assertNull(flight.load("k", () -> null));
+    }
+
+    @Test
+    void timeout_mustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new SingleFlight<>(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new SingleFlight<>(null));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
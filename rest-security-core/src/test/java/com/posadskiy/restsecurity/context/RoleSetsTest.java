@@ -0,0 +1,82 @@
+package com.posadskiy.restsecurity.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoleSetsTest {
+
+    @Test
+    void equalRoles_internToOneInstance() {
+        InternedRoleSet fromSet = RoleSets.intern(Set.of("USER", "ADMIN"));
+        InternedRoleSet fromHashSet = RoleSets.intern(new HashSet<>(List.of("ADMIN", "USER")));
+        InternedRoleSet fromList = RoleSets.intern(List.of("ADMIN", "USER", "USER"));
+
+        assertSame(fromSet, fromHashSet);
+        assertSame(fromSet, fromList);
+        assertSame(fromSet, RoleSets.intern(fromSet));
+        assertNotSame(fromSet, RoleSets.intern(Set.of("USER")));
+        assertSame(RoleSets.intern(null), RoleSets.intern(List.of()));
+        assertTrue(RoleSets.intern(Set.of()).isEmpty());
+        assertTrue(RoleSets.size() >= 2);
+    }
+
+    @Test
+    void internedSet_behavesLikeAnImmutableSet() {
+        Set<String> mutable = new HashSet<>(Set.of("USER", "EDITOR"));
+        InternedRoleSet roles = RoleSets.intern(mutable);
+        mutable.add("ADMIN");
+
+        assertEquals(Set.of("USER", "EDITOR"), roles);
+        assertEquals(roles, Set.of("EDITOR", "USER"));
+        assertEquals(Set.of("USER", "EDITOR").hashCode(), roles.hashCode());
+        assertEquals(roles, roles);
+        assertNotEquals(roles, Set.of("USER"));
+        assertEquals(2, roles.size());
+        assertTrue(roles.contains("EDITOR"));
+        assertFalse(roles.contains("ADMIN"));
+        assertThrows(UnsupportedOperationException.class, () -> roles.add("ADMIN"));
+        assertThrows(UnsupportedOperationException.class, () -> roles.remove("USER"));
+        assertThrows(UnsupportedOperationException.class, roles::clear);
+        Iterator<String> iterator = roles.iterator();
+        iterator.next();
+        assertThrows(UnsupportedOperationException.class, iterator::remove);
+        assertThrows(NullPointerException.class, () -> RoleSets.intern(Arrays.asList("USER", null)));
+    }
+
+    /** Run with {@code -Dsession.benchmark=true}: heap held by a million contexts, copied vs interned roles. */
+    @Test
+    @EnabledIfSystemProperty(named = "session.benchmark", matches = "true")
+    void benchmark_millionContexts() {
+        int contexts = 1_000_000;
+        List<List<String>> combinations = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            combinations.add(List.of("USER", "TEAM_" + i % 4, "REGION_" + i / 4));
+        }
+        Runtime runtime = Runtime.getRuntime();
+        for (String mode : List.of("copied", "interned")) {
+            for (int round = 0; round < 2; round++) {
+                List<SecurityContext> held = new ArrayList<>(contexts);
+                System.gc();
+                long before = runtime.totalMemory() - runtime.freeMemory();
+                for (int i = 0; i < contexts; i++) {
+                    // A fresh set per context, as a store deserializing its rows returns.
+                    Set<String> loaded = new HashSet<>(combinations.get(i % combinations.size()));
+                    Set<String> roles = mode.equals("copied") ? loaded : RoleSets.intern(loaded);
+                    held.add(new SecurityContext("s" + i, null, roles));
+                }
+                System.gc();
+                long heap = runtime.totalMemory() - runtime.freeMemory() - before;
+                System.out.printf("%s: %d bytes/context (%d)%n", mode, heap / contexts, held.size());
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.posadskiy.restsecurity.context;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -46,4 +47,18 @@ class SecurityContextTest {
         assertEquals("user-1", ctx.userId());
         assertEquals(Set.of("ADMIN"), ctx.roles());
     }
+
+    @Test
+    void internedRoles_areKept_otherRolesCopied() {
+        Set<String> interned = RoleSets.intern(Set.of("USER", "EDITOR"));
+        Set<String> mutable = new HashSet<>(Set.of("USER"));
+
+        var shared = new SecurityContext("s1", "u1", interned);
+        var copied = new SecurityContext("s2", "u2", mutable);
+        mutable.add("ADMIN");
+
+        assertSame(interned, shared.roles());
+        assertFalse(copied.hasRole("ADMIN"));
+        assertEquals(Set.of(), new SecurityContext("s3", "u3", null).roles());
+    }
 }
@@ -0,0 +1,101 @@
+package com.posadskiy.restsecurity.controller;
+
+import com.posadskiy.restsecurity.enforcer.SecurityEnforcer;
+import com.posadskiy.restsecurity.exception.UserDoesNotExistException;
+import com.posadskiy.restsecurity.rest.SecuredRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnforcementMemoTest {
+
+    private final EnforcementMemo<String> memo = new EnforcementMemo<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, String> loader = id -> {
+        loads.incrementAndGet();
+        return id.equals("missing") ? null : "value-" + id;
+    };
+
+    @AfterEach
+    void tearDown() {
+        EnforcementMemo.end();
+    }
+
+    @Test
+    void outsideAnEnforcement_everyCallLoads() {
+        assertEquals("value-a", memo.get("a", loader));
+        assertEquals("value-a", memo.get("a", loader));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void withinAnEnforcement_theLastLookupIsReused() {
+        EnforcementMemo.begin();
+
+        assertEquals("value-a", memo.get("a", loader));
+        assertEquals("value-a", memo.get("a", loader));
+        assertNull(memo.get("missing", loader));
+        assertNull(memo.get("missing", loader));
+        assertEquals("value-a", memo.get("a", loader));
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void aLaterEnforcement_doesNotSeeTheEarlierAnswer() {
+        EnforcementMemo.begin();
+        memo.get("a", loader);
+        EnforcementMemo.end();
+        assertEquals("value-a", memo.get("a", loader));
+
+        EnforcementMemo.begin();
+        memo.get("a", loader);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void theEnforcer_closesItsEnforcementWhenACheckFails() {
+        SessionSecurityController sessions = new SessionSecurityController() {
+            @Override
+            public boolean isSessionExist(String sessionId) {
+                return memo.get(sessionId, loader) != null;
+            }
+
+            @Override
+            public boolean isSessionExpired(String sessionId) {
+                return memo.get(sessionId, loader) == null;
+            }
+
+            @Override
+            public String getUserIdBySessionId(String sessionId) {
+                return null;
+            }
+        };
+        UserSecurityController users = new UserSecurityController() {
+            @Override
+            public boolean isUserExist(String userId) {
+                return false;
+            }
+
+            @Override
+            public List<String> getUserRoles(String userId) {
+                return List.of();
+            }
+        };
+        SecurityEnforcer enforcer = new SecurityEnforcer(sessions, users);
+
+        assertThrows(UserDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest("a"), "USER"));
+        assertEquals(1, loads.get());
+        memo.get("a", loader);
+
+        assertEquals(2, loads.get());
+    }
+}
@@ -12,6 +12,7 @@ import com.posadskiy.restsecurity.exception.UserDoesNotExistException;
 import com.posadskiy.restsecurity.exception.UserRolesDoesNotExistException;
 import com.posadskiy.restsecurity.exception.PermissionForGetAnotherUserIsAbsentException;
 import com.posadskiy.restsecurity.exception.PermissionIsAbsentException;
+import com.posadskiy.restsecurity.id.SessionIdVerdict;
 import com.posadskiy.restsecurity.rest.SecuredRequest;
 import com.posadskiy.restsecurity.rest.SecuredRequestContext;
 import org.junit.jupiter.api.AfterEach;
@@ -324,4 +325,31 @@ class SecurityEnforcerTest {
         assertEquals("myMethod", failureMethod.get());
         assertTrue(failureEx.get() instanceof SessionDoesNotExistException);
     }
+
+    @Test
+    void sessionIdPrefilter_rejectsWithoutStoreLookup() {
+        enforcer.setSessionIdPrefilter(sessionId -> sessionId.equals("expired")
+                ? SessionIdVerdict.EXPIRED
+                : SessionIdVerdict.FORGED);
+
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(SESSION_ID), "USER"));
+        assertThrows(SessionExpiredException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest("expired"), "USER"));
+        verifyNoInteractions(sessionController, userController);
+    }
+
+    @Test
+    void sessionIdPrefilter_validIdReachesStore() {
+        enforcer.setSessionIdPrefilter(sessionId -> SessionIdVerdict.VALID);
+        when(sessionController.isSessionExist(SESSION_ID)).thenReturn(true);
+        when(sessionController.isSessionExpired(SESSION_ID)).thenReturn(false);
+        when(sessionController.getUserIdBySessionId(SESSION_ID)).thenReturn(USER_ID);
+        when(userController.isUserExist(USER_ID)).thenReturn(true);
+        when(userController.getUserRolesSet(USER_ID)).thenReturn(Set.of("USER"));
+
+        SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest(SESSION_ID), "USER");
+
+        assertEquals(USER_ID, ctx.userId());
+    }
 }
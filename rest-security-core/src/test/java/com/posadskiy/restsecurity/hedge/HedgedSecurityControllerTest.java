@@ -0,0 +1,327 @@
+package com.posadskiy.restsecurity.hedge;
+
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import com.posadskiy.restsecurity.exception.SecurityStoreUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgedSecurityControllerTest {
+
+    private HedgedSecurityController hedged;
+
+    @AfterEach
+    void tearDown() {
+        if (hedged != null) {
+            hedged.close();
+        }
+    }
+
+    /** A replica answering after a simulated latency in micros; counts calls and cancellations. */
+    private static final class SimulatedStore implements SessionSecurityController, UserSecurityController {
+        volatile LongSupplier latencyMicros = () -> 0;
+        volatile boolean failing;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+
+        private void respond() {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("replica down");
+            }
+            long micros = latencyMicros.getAsLong();
+            if (micros > 0) {
+                try {
+                    Thread.sleep(Duration.ofNanos(micros * 1000));
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public boolean isSessionExist(String sessionId) {
+            respond();
+            return !sessionId.startsWith("missing");
+        }
+
+        @Override
+        public boolean isSessionExpired(String sessionId) {
+            return sessionId.startsWith("old");
+        }
+
+        @Override
+        public String getUserIdBySessionId(String sessionId) {
+            return "alice";
+        }
+
+        @Override
+        public boolean isUserExist(String userId) {
+            respond();
+            return userId.equals("alice");
+        }
+
+        @Override
+        public List<String> getUserRoles(String userId) {
+            return List.of("USER");
+        }
+    }
+
+    private static Replica replica(String name, SimulatedStore store) {
+        return new Replica(name, store, store);
+    }
+
+    private HedgedSecurityController hedged(HedgeConfig config, SimulatedStore... stores) {
+        Replica[] replicas = new Replica[stores.length];
+        for (int i = 0; i < stores.length; i++) {
+            replicas[i] = replica("replica-" + i, stores[i]);
+        }
+        hedged = new HedgedSecurityController(ReplicaSet.of(replicas), config);
+        return hedged;
+    }
+
+    @Test
+    void answers_areMemoizedPerEnforcement() {
+        SimulatedStore store = new SimulatedStore();
+        HedgedSecurityController controller = hedged(HedgeConfig.defaults(), store);
+
+        EnforcementMemo.begin();
+        try {
+            assertTrue(controller.isSessionExist("s1"));
+            assertFalse(controller.isSessionExpired("s1"));
+            assertEquals("alice", controller.getUserIdBySessionId("s1"));
+            assertTrue(controller.isUserExist("alice"));
+            assertEquals(List.of("USER"), controller.getUserRoles("alice"));
+            assertEquals(Set.of("USER"), controller.getUserRolesSet("alice"));
+            assertTrue(controller.isSessionExpired("old-1"));
+            assertNull(controller.getUserIdBySessionId("old-1"));
+            assertFalse(controller.isSessionExist("missing-1"));
+            assertFalse(controller.isUserExist("bob"));
+            assertFalse(controller.isSessionExist(null));
+            assertFalse(controller.isUserExist(""));
+        } finally {
+            EnforcementMemo.end();
+        }
+
+        assertEquals(5, store.calls.get());
+        assertEquals(5, controller.lookups());
+    }
+
+    @Test
+    void lookups_preferTheFasterReplica() {
+        SimulatedStore slow = new SimulatedStore();
+        SimulatedStore fast = new SimulatedStore();
+        slow.latencyMicros = () -> 3_000;
+        HedgedSecurityController controller = hedged(HedgeConfig.defaults().withMinDelay(Duration.ofSeconds(1)),
+                slow, fast);
+
+        for (int i = 0; i < 100; i++) {
+            controller.isSessionExist("s" + i);
+        }
+
+        assertTrue(fast.calls.get() > 80, "fast replica got " + fast.calls.get());
+        assertEquals(0, controller.hedges());
+    }
+
+    @Test
+    void slowFirstCall_isHedged_andTheLoserCancelled() throws Exception {
+        SimulatedStore a = new SimulatedStore();
+        SimulatedStore b = new SimulatedStore();
+        HedgedSecurityController controller = hedged(HedgeConfig.defaults().withMaxHedgeRatio(1)
+                .withMinDelay(Duration.ofMillis(5)), a, b);
+        // Whichever replica gets the first call hangs on it; every later call is instant.
+        AtomicInteger calls = new AtomicInteger();
+        LongSupplier firstHangs = () -> calls.getAndIncrement() == 0 ? 5_000_000 : 0;
+        a.latencyMicros = firstHangs;
+        b.latencyMicros = firstHangs;
+
+        long start = System.nanoTime();
+        assertTrue(controller.isSessionExist("s1"));
+
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+        assertEquals(1, controller.hedges());
+        assertEquals(1, controller.hedgeWins());
+        assertEquals(1, a.calls.get());
+        assertEquals(1, b.calls.get());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (a.interrupted.get() + b.interrupted.get() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "loser was not cancelled");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void hedges_areCappedByTheBudget() {
+        SimulatedStore a = new SimulatedStore();
+        SimulatedStore b = new SimulatedStore();
+        a.latencyMicros = () -> 3_000;
+        b.latencyMicros = () -> 3_000;
+        HedgedSecurityController controller = hedged(HedgeConfig.defaults().withMaxHedgeRatio(0.1)
+                .withMinDelay(Duration.ofNanos(1)), a, b);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(controller.isSessionExist("s" + i));
+        }
+
+        assertTrue(controller.hedges() <= 10, "hedges " + controller.hedges());
+        assertTrue(controller.hedges() >= 5, "hedges " + controller.hedges());
+        assertTrue(controller.hedgeDelay().toNanos() >= 1);
+    }
+
+    @Test
+    void failingReplica_failsOverToAnother() {
+        SimulatedStore down = new SimulatedStore();
+        SimulatedStore up = new SimulatedStore();
+        down.failing = true;
+        HedgedSecurityController controller = hedged(HedgeConfig.defaults().withMinDelay(Duration.ofSeconds(1)),
+                down, up);
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(controller.isSessionExist("s" + i));
+        }
+
+        assertTrue(controller.failovers() >= 1);
+        assertEquals(0, controller.hedges());
+    }
+
+    @Test
+    void noReplicaAnswering_isUnavailable() {
+        SimulatedStore down = new SimulatedStore();
+        down.failing = true;
+        HedgedSecurityController single = hedged(HedgeConfig.defaults(), down);
+        assertThrows(SecurityStoreUnavailableException.class, () -> single.isSessionExist("s1"));
+        single.close();
+
+        SimulatedStore otherDown = new SimulatedStore();
+        otherDown.failing = true;
+        HedgedSecurityController both = hedged(HedgeConfig.defaults(), down, otherDown);
+        SecurityStoreUnavailableException e = assertThrows(SecurityStoreUnavailableException.class,
+                () -> both.isUserExist("alice"));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        both.close();
+
+        SimulatedStore hanging = new SimulatedStore();
+        hanging.latencyMicros = () -> 5_000_000;
+        HedgedSecurityController slow = hedged(HedgeConfig.defaults().withTimeout(Duration.ofMillis(30)), hanging);
+        assertThrows(SecurityStoreUnavailableException.class, () -> slow.isSessionExist("s1"));
+        slow.close();
+        assertThrows(SecurityStoreUnavailableException.class, () -> slow.isSessionExist("s2"));
+    }
+
+    @Test
+    void hedgedRace_whereBothFail_isUnavailable() {
+        SimulatedStore a = new SimulatedStore();
+        SimulatedStore b = new SimulatedStore();
+        HedgedSecurityController controller = hedged(HedgeConfig.defaults().withMaxHedgeRatio(1)
+                .withMinDelay(Duration.ofMillis(2)), a, b);
+        AtomicInteger calls = new AtomicInteger();
+        LongSupplier slowThenFail = () -> {
+            if (calls.incrementAndGet() > 0) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("replica down");
+            }
+            return 0;
+        };
+        a.latencyMicros = slowThenFail;
+        b.latencyMicros = slowThenFail;
+        controller.lookups();
+
+        assertThrows(SecurityStoreUnavailableException.class, () -> controller.isSessionExist("s1"));
+        assertThrows(AssertionError.class, () -> {
+            a.latencyMicros = () -> {
+                throw new AssertionError("bug");
+            };
+            b.latencyMicros = a.latencyMicros;
+            controller.isSessionExist("s2");
+        });
+    }
+
+    @Test
+    void config_andReplicaSet_validate() {
+        HedgeConfig config = HedgeConfig.defaults();
+        assertEquals(0.95, config.percentile());
+        assertEquals(Duration.ofMillis(1), config.minDelay());
+        assertEquals(0.05, config.maxHedgeRatio());
+        assertEquals(Duration.ofSeconds(1), config.timeout());
+        assertEquals(0.99, config.withPercentile(0.99).percentile());
+        assertThrows(IllegalArgumentException.class, () -> config.withPercentile(1));
+        assertThrows(IllegalArgumentException.class, () -> config.withMaxHedgeRatio(2));
+
+        SimulatedStore store = new SimulatedStore();
+        assertThrows(IllegalArgumentException.class, () -> new Replica(" ", store, store));
+        assertThrows(IllegalArgumentException.class, () -> new Replica("a", null, store));
+        assertThrows(IllegalArgumentException.class, () -> new ReplicaSet(List.of(), 0.2));
+        assertThrows(IllegalArgumentException.class, () -> new ReplicaSet(List.of(replica("a", store)), 0));
+        ReplicaSet set = ReplicaSet.of(replica("a", store), replica("b", store), replica("c", store));
+        assertEquals(3, set.replicas().size());
+        assertEquals(0, set.averageNanos(0));
+        set.record(1, 100);
+        set.record(1, 200);
+        assertEquals(120, set.averageNanos(1), 0.001);
+        for (int i = 0; i < 200; i++) {
+            int picked = set.select(2);
+            assertTrue(picked == 0 || picked == 1);
+        }
+        assertEquals(-1, ReplicaSet.of(replica("a", store)).select(0));
+    }
+
+    @Test
+    void latencyWindow_tracksThePercentile() {
+        LatencyWindow window = new LatencyWindow(0.95);
+        assertEquals(-1, window.percentileNanos());
+        for (int i = 0; i < LatencyWindow.REFRESH - 1; i++) {
+            window.record(i);
+        }
+        assertEquals(-1, window.percentileNanos());
+        for (int i = 0; i < LatencyWindow.SIZE * 2; i++) {
+            window.record(i % LatencyWindow.SIZE);
+        }
+        assertEquals(972, window.percentileNanos());
+    }
+
+    /** Run with {@code -Dsession.benchmark=true}: tail latency of a 2-replica store where 3% of calls stall. */
+    @Test
+    @EnabledIfSystemProperty(named = "session.benchmark", matches = "true")
+    void benchmark_tailLatency() {
+        LongSupplier distribution = () -> ThreadLocalRandom.current().nextInt(100) < 3
+                ? 20_000 : 300 + ThreadLocalRandom.current().nextInt(400);
+        SimulatedStore a = new SimulatedStore();
+        SimulatedStore b = new SimulatedStore();
+        a.latencyMicros = distribution;
+        b.latencyMicros = distribution;
+        HedgedSecurityController controller = hedged(HedgeConfig.defaults().withMaxHedgeRatio(0.1), a, b);
+        int rounds = 2_000;
+        for (String mode : List.of("direct", "hedged")) {
+            long[] latencies = new long[rounds];
+            for (int i = 0; i < rounds; i++) {
+                long began = System.nanoTime();
+                if (mode.equals("direct")) {
+                    a.isSessionExist("s" + i);
+                } else {
+                    controller.isSessionExist("s" + i);
+                }
+                latencies[i] = System.nanoTime() - began;
+            }
+            Arrays.sort(latencies);
+            System.out.printf("%s: p50 %d us, p99 %d us, hedges %d%n", mode, latencies[rounds / 2] / 1000,
+                    latencies[rounds * 99 / 100] / 1000, controller.hedges());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.posadskiy.restsecurity.id;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionIdGeneratorTest {
+
+    @Test
+    void nextString_isWellFormedAndUnique() throws InterruptedException {
+        SessionIdGenerator generator = new SessionIdGenerator(4);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    String id = generator.nextString();
+                    assertTrue(SessionId.isValid(id));
+                    ids.add(id);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80_000, ids.size());
+    }
+
+    @Test
+    void next_isNonZeroAndDistinct() {
+        SessionIdGenerator generator = new SessionIdGenerator(1);
+        SessionId a = generator.next();
+        SessionId b = generator.next();
+
+        assertNotEquals(a, b);
+        assertFalse(a.hi() == 0 && a.lo() == 0);
+        assertEquals(a, SessionId.parse(a.encoded()));
+    }
+
+    @Test
+    void stripes_roundUpToPowerOfTwo() {
+        assertEquals(1, new SessionIdGenerator(1).stripes());
+        assertEquals(2, new SessionIdGenerator(2).stripes());
+        assertEquals(8, new SessionIdGenerator(5).stripes());
+        assertEquals(8, new SessionIdGenerator(8).stripes());
+        assertTrue(new SessionIdGenerator().stripes() >= 2);
+        assertSame(SessionIdGenerator.shared(), SessionIdGenerator.shared());
+        assertThrows(IllegalArgumentException.class, () -> new SessionIdGenerator(0));
+    }
+
+    /** Run with {@code -Dsession.benchmark=true}. */
+    @Test
+    @EnabledIfSystemProperty(named = "session.benchmark", matches = "true")
+    void benchmark_againstRandomUuid() throws InterruptedException {
+        SessionIdGenerator generator = new SessionIdGenerator();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            run("warm-up", threads, () -> UUID.randomUUID().toString());
+            run("warm-up", threads, generator::nextString);
+            double uuid = run("UUID.randomUUID().toString()", threads, () -> UUID.randomUUID().toString());
+            double striped = run("SessionIdGenerator.nextString()", threads, generator::nextString);
+            System.out.printf("%d threads: %.1fx%n", threads, striped / uuid);
+        }
+    }
+
+    /** @return ids per second */
+    private static double run(String name, int threads, Supplier<String> ids) throws InterruptedException {
+        int perThread = 200_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int sink = 0;
+                for (int i = 0; i < perThread; i++) {
+                    sink += ids.get().length();
+                }
+                assertTrue(sink > 0);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        long began = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double perSecond = (double) threads * perThread / ((System.nanoTime() - began) / 1e9);
+        if (!name.equals("warm-up")) {
+            System.out.printf("%-32s %2d threads %,14.0f ids/s%n", name, threads, perSecond);
+        }
+        return perSecond;
+    }
+}
@@ -0,0 +1,44 @@
+package com.posadskiy.restsecurity.id;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionIdTest {
+
+    @Test
+    void encodeAndParse_roundTrip() {
+        SessionId id = new SessionId(0xF123456789ABCDEFL, -1L);
+
+        String text = id.encoded();
+
+        assertEquals(SessionId.ENCODED_LENGTH, text.length());
+        assertTrue(SessionId.isValid(text));
+        assertEquals(id, SessionId.parse(text));
+        assertEquals(id.hi(), SessionId.hi(text));
+        assertEquals(id.lo(), SessionId.lo(text));
+        assertEquals(text, id.toString());
+        assertEquals("AAAAAAAAAAAAAAAAAAAAAA", new SessionId(0, 0).encoded());
+    }
+
+    @Test
+    void isValid_rejectsMalformed() {
+        assertFalse(SessionId.isValid(null));
+        assertFalse(SessionId.isValid("short"));
+        assertFalse(SessionId.isValid("QAAAAAAAAAAAAAAAAAAAAA"), "first char of a half carries 4 bits only");
+        assertFalse(SessionId.isValid("AAAAAAAAAAAQAAAAAAAAAA"));
+        assertFalse(SessionId.isValid("AAAAAAAAAA+AAAAAAAAAAA"));
+        assertFalse(SessionId.isValid("AAAAAAAAAAAAAAAAAAAAAé"));
+        assertFalse(SessionId.isValid("éAAAAAAAAAAAAAAAAAAAAA"));
+        assertThrows(IllegalArgumentException.class, () -> SessionId.parse("not-an-id"));
+    }
+
+    @Test
+    void toBytes_isBigEndian() {
+        byte[] bytes = new SessionId(0x0102030405060708L, 0x090A0B0C0D0E0F10L).toBytes();
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i + 1, bytes[i]);
+        }
+    }
+}
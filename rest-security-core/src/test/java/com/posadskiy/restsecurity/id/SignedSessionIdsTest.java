@@ -0,0 +1,126 @@
+package com.posadskiy.restsecurity.id;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignedSessionIdsTest {
+
+    private static final byte[] KEY = key('a');
+    private static final byte[] OTHER_KEY = key('b');
+
+    private static byte[] key(char fill) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) fill);
+        return key;
+    }
+
+    @Test
+    void issuedId_isValidAndCarriesExpiry() {
+        SignedSessionIds ids = SignedSessionIds.of(KEY);
+        long expiresAt = System.currentTimeMillis() + 60_000;
+
+        String id = ids.issue(expiresAt);
+
+        assertEquals(SignedSessionIds.ENCODED_LENGTH, id.length());
+        assertEquals(SessionIdVerdict.VALID, ids.check(id));
+        assertEquals(expiresAt / 1000 * 1000, ids.expiresAtMillis(id));
+        assertNotEquals(id, ids.issue(expiresAt));
+        assertEquals(SessionIdVerdict.VALID, ids.check(ids.issue(Duration.ofMinutes(5))));
+    }
+
+    @Test
+    void storeKey_isTheRandomPartOfTheId() {
+        SignedSessionIds ids = SignedSessionIds.of(KEY);
+        SessionId key = SessionIdGenerator.shared().next();
+
+        String id = ids.issue(key, Duration.ofMinutes(5));
+
+        assertEquals(SessionIdVerdict.VALID, ids.check(id));
+        assertEquals(key, SignedSessionIds.storeKey(id));
+        assertEquals(SignedSessionIds.storeKey(ids.issue(key, Duration.ofMinutes(1))), SignedSessionIds.storeKey(id));
+        assertNull(SignedSessionIds.storeKey(null));
+        assertNull(SignedSessionIds.storeKey(key.encoded()));
+        assertNull(SignedSessionIds.storeKey("!".repeat(SignedSessionIds.ENCODED_LENGTH)));
+    }
+
+    @Test
+    void expiredId_isExpired() {
+        SignedSessionIds ids = SignedSessionIds.of(KEY);
+
+        assertEquals(SessionIdVerdict.EXPIRED, ids.check(ids.issue(System.currentTimeMillis() - 1_000)));
+    }
+
+    @Test
+    void malformedIds() {
+        SignedSessionIds ids = SignedSessionIds.of(KEY);
+
+        assertEquals(SessionIdVerdict.MALFORMED, ids.check(null));
+        assertEquals(SessionIdVerdict.MALFORMED, ids.check("abc"));
+        assertEquals(SessionIdVerdict.MALFORMED, ids.check("+".repeat(SignedSessionIds.ENCODED_LENGTH)));
+        assertEquals(-1, ids.expiresAtMillis("abc"));
+    }
+
+    @Test
+    void tamperedOrForeignIds_areForged() {
+        SignedSessionIds ids = SignedSessionIds.of(KEY);
+        String id = ids.issue(Duration.ofMinutes(5));
+
+        for (int i = 0; i < id.length(); i++) {
+            char[] chars = id.toCharArray();
+            chars[i] = chars[i] == 'A' ? 'B' : 'A';
+            assertEquals(SessionIdVerdict.FORGED, ids.check(new String(chars)), "position " + i);
+        }
+        assertEquals(SessionIdVerdict.FORGED, ids.check(SignedSessionIds.of(OTHER_KEY).issue(Duration.ofMinutes(5))));
+        assertEquals(SessionIdVerdict.FORGED, ids.check("A".repeat(SignedSessionIds.ENCODED_LENGTH)));
+        assertEquals(-1, ids.expiresAtMillis(SignedSessionIds.of(OTHER_KEY).issue(Duration.ofMinutes(5))));
+    }
+
+    @Test
+    void keyRotation_verifiesOldVersionsAndIssuesWithCurrent() {
+        String oldId = SignedSessionIds.of(KEY).issue(Duration.ofMinutes(5));
+        SignedSessionIds rotated = new SignedSessionIds(Map.of(1, KEY, 2, OTHER_KEY), 2);
+        String newId = rotated.issue(Duration.ofMinutes(5));
+
+        assertEquals(SessionIdVerdict.VALID, rotated.check(oldId));
+        assertEquals(SessionIdVerdict.VALID, rotated.check(newId));
+        assertEquals(SessionIdVerdict.FORGED, SignedSessionIds.of(KEY).check(newId), "version 2 unknown");
+        assertEquals(SessionIdVerdict.VALID, new SignedSessionIds(Map.of(2, OTHER_KEY), 2).check(newId));
+    }
+
+    @Test
+    void validation() {
+        assertThrows(IllegalArgumentException.class, () -> SignedSessionIds.of("short".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> new SignedSessionIds(Map.of(1, KEY), 2));
+        assertThrows(IllegalArgumentException.class, () -> new SignedSessionIds(Map.of(256, KEY), 256));
+        assertThrows(IllegalArgumentException.class, () -> new SignedSessionIds(null, 1));
+        assertThrows(IllegalArgumentException.class, () -> SignedSessionIds.of(KEY).issue(-5_000));
+    }
+
+    /** Run with {@code -Dsession.benchmark=true}. */
+    @Test
+    @EnabledIfSystemProperty(named = "session.benchmark", matches = "true")
+    void benchmark_check() {
+        SignedSessionIds ids = SignedSessionIds.of(KEY);
+        String valid = ids.issue(Duration.ofHours(1));
+        String forged = SignedSessionIds.of(OTHER_KEY).issue(Duration.ofHours(1));
+        int rounds = 2_000_000;
+        for (int warmUp = 0; warmUp < 2; warmUp++) {
+            long began = System.nanoTime();
+            int valids = 0;
+            for (int i = 0; i < rounds; i++) {
+                if (ids.check((i & 1) == 0 ? valid : forged) == SessionIdVerdict.VALID) {
+                    valids++;
+                }
+            }
+            assertEquals(rounds / 2, valids);
+            System.out.printf("SignedSessionIds.check: %.0f ns%n", (System.nanoTime() - began) / (double) rounds);
+        }
+    }
+}
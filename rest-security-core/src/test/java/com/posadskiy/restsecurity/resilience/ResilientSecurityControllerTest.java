@@ -0,0 +1,202 @@
+package com.posadskiy.restsecurity.resilience;
+
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import com.posadskiy.restsecurity.enforcer.SecurityEnforcer;
+import com.posadskiy.restsecurity.exception.SecurityStoreUnavailableException;
+import com.posadskiy.restsecurity.exception.SessionDoesNotExistException;
+import com.posadskiy.restsecurity.rest.SecuredRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientSecurityControllerTest {
+
+    private final Store store = new Store();
+    private ResilientSecurityController resilient;
+
+    {
+        store.sessions.put("s1", "alice");
+        store.roles.put("alice", Set.of("USER"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        resilient.close();
+    }
+
+    private ResilientSecurityController resilient(ResilienceConfig config) {
+        resilient = new ResilientSecurityController(store, store, config, null);
+        return resilient;
+    }
+
+    @Test
+    void healthyStore_isCalledOncePerEnforcement() {
+        ResilientSecurityController controller = resilient(ResilienceConfig.defaults());
+
+        EnforcementMemo.begin();
+        try {
+            assertTrue(controller.isSessionExist("s1"));
+            assertFalse(controller.isSessionExpired("s1"));
+            assertEquals("alice", controller.getUserIdBySessionId("s1"));
+            assertTrue(controller.isUserExist("alice"));
+            assertEquals(List.of("USER"), controller.getUserRoles("alice"));
+            assertEquals(Set.of("USER"), controller.getUserRolesSet("alice"));
+        } finally {
+            EnforcementMemo.end();
+        }
+
+        assertEquals(1, store.sessionCalls.get());
+        assertEquals(1, store.userCalls.get());
+        assertEquals(CircuitState.CLOSED, controller.sessionCircuit());
+        assertEquals(CircuitState.CLOSED, controller.userCircuit());
+    }
+
+    @Test
+    void missingExpiredAndBlank() {
+        store.sessions.put("old", "bob");
+        store.expired.add("old");
+        ResilientSecurityController controller = resilient(ResilienceConfig.defaults());
+
+        assertTrue(controller.isSessionExist("old"));
+        assertTrue(controller.isSessionExpired("old"));
+        assertNull(controller.getUserIdBySessionId("old"));
+        assertFalse(controller.isSessionExist("nope"));
+        assertFalse(controller.isSessionExist(null));
+        assertFalse(controller.isUserExist(" "));
+        assertFalse(controller.isUserExist("nobody"));
+        assertEquals(List.of(), controller.getUserRoles("nobody"));
+    }
+
+    @Test
+    void hangingStore_failsFastOnceTheCircuitOpens() {
+        ResilientSecurityController controller = resilient(ResilienceConfig.defaults()
+                .withTimeout(Duration.ofMillis(20)).withFailureThreshold(2));
+        store.delayMillis = 2_000;
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            String sessionId = "s" + i;
+            assertThrows(SecurityStoreUnavailableException.class, () -> enforcer.enforce(new SecuredRequest(sessionId, null, null), "USER"));
+        }
+
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        assertEquals(2, controller.timeouts());
+        assertEquals(3, controller.refusedCalls());
+        assertEquals(CircuitState.OPEN, controller.sessionCircuit());
+    }
+
+    @Test
+    void failingStore_servesStaleAnswers() {
+        ResilientSecurityController controller = resilient(ResilienceConfig.defaults()
+                .withStaleTtl(Duration.ofMinutes(1)));
+        controller.isSessionExist("s1");
+        controller.isUserExist("alice");
+        store.failing = true;
+        assertThrows(SecurityStoreUnavailableException.class, () -> controller.isSessionExist("s2"));
+        assertThrows(SecurityStoreUnavailableException.class, () -> controller.isUserExist("bob"));
+        assertEquals("alice", controller.getUserIdBySessionId("s1"));
+        assertEquals(Set.of("USER"), controller.getUserRolesSet("alice"));
+
+        assertEquals(2, controller.staleServed());
+        assertEquals(4, controller.failures());
+    }
+
+    @Test
+    void nextEnforcement_onAPooledThread_seesARevokedSession() {
+        ResilientSecurityController controller = resilient(ResilienceConfig.defaults());
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+        assertEquals("alice", enforcer.validateAndBuildContext(new SecuredRequest("s1"), "USER").userId());
+
+        store.sessions.remove("s1");
+
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest("s1"), "USER"));
+        assertEquals(2, store.sessionCalls.get());
+    }
+
+    @Test
+    void closedController_isUnavailable() {
+        ResilientSecurityController controller = resilient(ResilienceConfig.defaults());
+        controller.close();
+
+        assertThrows(SecurityStoreUnavailableException.class, () -> controller.isSessionExist("s1"));
+    }
+
+    @Test
+    void config_validatesAndDefaults() {
+        ResilienceConfig config = ResilienceConfig.defaults();
+
+        assertEquals(Duration.ofMillis(200), config.timeout());
+        assertEquals(5, config.failureThreshold());
+        assertEquals(Duration.ofSeconds(5), config.openDuration());
+        assertNull(config.staleTtl());
+        assertEquals(10_000, config.maxStaleEntries());
+        assertEquals(Duration.ofSeconds(1), config.withOpenDuration(Duration.ofSeconds(1)).openDuration());
+        assertThrows(IllegalArgumentException.class, () -> config.withStaleTtl(Duration.ZERO));
+        resilient(config);
+    }
+
+    private static final class Store implements SessionSecurityController, UserSecurityController {
+        final Map<String, String> sessions = new ConcurrentHashMap<>();
+        final Set<String> expired = ConcurrentHashMap.newKeySet();
+        final Map<String, Set<String>> roles = new ConcurrentHashMap<>();
+        final AtomicInteger sessionCalls = new AtomicInteger();
+        final AtomicInteger userCalls = new AtomicInteger();
+        volatile boolean failing;
+        volatile long delayMillis;
+
+        private void degrade() {
+            if (failing) {
+                throw new IllegalStateException("store down");
+            }
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public boolean isSessionExist(String sessionId) {
+            sessionCalls.incrementAndGet();
+            degrade();
+            return sessions.containsKey(sessionId);
+        }
+
+        @Override
+        public boolean isSessionExpired(String sessionId) {
+            return expired.contains(sessionId);
+        }
+
+        @Override
+        public String getUserIdBySessionId(String sessionId) {
+            return sessions.get(sessionId);
+        }
+
+        @Override
+        public boolean isUserExist(String userId) {
+            userCalls.incrementAndGet();
+            degrade();
+            return roles.containsKey(userId);
+        }
+
+        @Override
+        public List<String> getUserRoles(String userId) {
+            Set<String> result = roles.get(userId);
+            return result != null ? List.copyOf(result) : List.of();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.posadskiy.restsecurity.resilience;
+
+import com.posadskiy.restsecurity.exception.SecurityStoreUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StoreGuardTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final ResilienceListener listener = new ResilienceListener() {
+        @Override
+        public void onTimeout(String store, Duration timeout) {
+            events.add("timeout");
+        }
+
+        @Override
+        public void onFailure(String store, RuntimeException cause) {
+            events.add("failure");
+        }
+
+        @Override
+        public void onCircuitStateChange(String store, CircuitState from, CircuitState to) {
+            events.add(from + "->" + to);
+        }
+
+        @Override
+        public void onStaleServed(String store, String key, Duration age) {
+            events.add("stale " + key);
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private StoreGuard<String> guard(ResilienceConfig config) {
+        return new StoreGuard<>("sessions", config, listener, executor);
+    }
+
+    private static String fail() {
+        throw new IllegalStateException("store down");
+    }
+
+    @Test
+    void consecutiveFailures_openTheCircuit_thenAProbeClosesIt() throws Exception {
+        StoreGuard<String> guard = guard(ResilienceConfig.defaults().withFailureThreshold(2)
+                .withOpenDuration(Duration.ofMillis(50)));
+
+        assertThrows(SecurityStoreUnavailableException.class, () -> guard.call("k", StoreGuardTest::fail));
+        assertEquals(CircuitState.CLOSED, guard.state());
+        assertThrows(SecurityStoreUnavailableException.class, () -> guard.call("k", StoreGuardTest::fail));
+        assertEquals(CircuitState.OPEN, guard.state());
+        SecurityStoreUnavailableException refused = assertThrows(SecurityStoreUnavailableException.class,
+                () -> guard.call("k", () -> "never called"));
+        assertTrue(refused.getMessage().contains("circuit is open"));
+        assertEquals(1, guard.refused());
+
+        Thread.sleep(60);
+        assertEquals("ok", guard.call("k", () -> "ok"));
+
+        assertEquals(CircuitState.CLOSED, guard.state());
+        assertEquals(List.of("failure", "failure", "CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), events);
+    }
+
+    @Test
+    void failedProbe_reopensTheCircuit() throws Exception {
+        StoreGuard<String> guard = guard(ResilienceConfig.defaults().withFailureThreshold(1)
+                .withOpenDuration(Duration.ofMillis(30)));
+        assertThrows(SecurityStoreUnavailableException.class, () -> guard.call("k", StoreGuardTest::fail));
+        Thread.sleep(40);
+
+        assertThrows(SecurityStoreUnavailableException.class, () -> guard.call("k", StoreGuardTest::fail));
+
+        assertEquals(CircuitState.OPEN, guard.state());
+        assertTrue(events.contains("HALF_OPEN->OPEN"));
+        assertEquals(0, guard.refused());
+    }
+
+    @Test
+    void slowCalls_areCutAtTheDeadline() {
+        StoreGuard<String> guard = guard(ResilienceConfig.defaults().withTimeout(Duration.ofMillis(20)));
+
+        long start = System.nanoTime();
+        SecurityStoreUnavailableException e = assertThrows(SecurityStoreUnavailableException.class,
+                () -> guard.call("k", () -> {
+                    try {
+                        Thread.sleep(5_000);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "late";
+                }));
+
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+        assertInstanceOf(java.util.concurrent.TimeoutException.class, e.getCause());
+        assertEquals(1, guard.timeouts());
+        assertEquals(List.of("timeout"), events);
+    }
+
+    @Test
+    void staleAnswers_areServedOnlyWithinTheirTtl() throws Exception {
+        StoreGuard<String> guard = guard(ResilienceConfig.defaults().withStaleTtl(Duration.ofMillis(100)));
+        assertEquals("alice", guard.call("s1", () -> "alice"));
+
+        assertEquals("alice", guard.call("s1", StoreGuardTest::fail));
+        assertThrows(SecurityStoreUnavailableException.class, () -> guard.call("s2", StoreGuardTest::fail));
+        Thread.sleep(120);
+        assertThrows(SecurityStoreUnavailableException.class, () -> guard.call("s1", StoreGuardTest::fail));
+
+        assertEquals(1, guard.staleServed());
+        assertTrue(events.contains("stale s1"));
+    }
+
+    @Test
+    void staleAnswers_areBounded() {
+        StoreGuard<String> guard = guard(new ResilienceConfig(null, 0, null, Duration.ofMinutes(1), 10));
+        for (int i = 0; i < 100; i++) {
+            String value = "user-" + i;
+            guard.call("s" + i, () -> value);
+        }
+
+        assertEquals("user-99", guard.call("s99", StoreGuardTest::fail));
+        int served = 0;
+        for (int i = 0; i < 100; i++) {
+            try {
+                guard.call("s" + i, StoreGuardTest::fail);
+                served++;
+            } catch (SecurityStoreUnavailableException e) {
+                // evicted
+            }
+        }
+        assertTrue(served <= 10, "served " + served);
+    }
+
+    @Test
+    void errorsPropagate_andCheckedCausesAreWrapped() {
+        StoreGuard<String> guard = guard(ResilienceConfig.defaults());
+
+        assertThrows(AssertionError.class, () -> guard.call("k", () -> {
+            throw new AssertionError("bug");
+        }));
+        executor.shutdown();
+        assertThrows(SecurityStoreUnavailableException.class, () -> guard.call("k", () -> "ok"));
+    }
+
+    @Test
+    void interruptedCaller_getsUnavailable() {
+        StoreGuard<String> guard = guard(ResilienceConfig.defaults().withTimeout(Duration.ofSeconds(5)));
+        Thread.currentThread().interrupt();
+
+        assertThrows(SecurityStoreUnavailableException.class, () -> guard.call("k", () -> {
+            try {
+                Thread.sleep(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "late";
+        }));
+        assertTrue(Thread.interrupted());
+    }
+}
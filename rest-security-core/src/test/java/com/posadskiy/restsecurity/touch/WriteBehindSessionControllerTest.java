@@ -0,0 +1,274 @@
+package com.posadskiy.restsecurity.touch;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindSessionControllerTest {
+
+    private static final long IDLE_MILLIS = 300;
+
+    private final IdleStore store = new IdleStore();
+    private WriteBehindSessionController controller;
+
+    @AfterEach
+    void tearDown() {
+        if (controller != null) {
+            controller.close();
+        }
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void repeatedTouches_areCoalescedIntoOneBatch() {
+        controller = new WriteBehindSessionController(store, store, WriteBehindConfig.of(Duration.ofHours(1)));
+        store.add("s1", "alice");
+        store.add("s2", "bob");
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals("alice", controller.getUserIdBySessionId("s1"));
+            controller.getUserIdBySessionId("s2");
+        }
+        assertTrue(store.batches.isEmpty(), "nothing written synchronously");
+
+        controller.flush();
+
+        assertEquals(2, controller.writtenTouches());
+        assertEquals(1, store.batches.size());
+        assertEquals(Map.of("s1", store.lastAccess.get("s1"), "s2", store.lastAccess.get("s2")), store.batches.get(0));
+        assertEquals(0, controller.pendingTouches());
+    }
+
+    @Test
+    void unknownSession_isNotTouched() {
+        controller = new WriteBehindSessionController(store, store, WriteBehindConfig.of(Duration.ofMillis(100)));
+
+        assertNull(controller.getUserIdBySessionId("nope"));
+        assertFalse(controller.isSessionExist("nope"));
+        assertEquals(0, controller.pendingTouches());
+    }
+
+    @Test
+    void pendingTouch_keepsSessionAlive_withIdleTimeout() throws InterruptedException {
+        controller = new WriteBehindSessionController(store, store,
+                WriteBehindConfig.of(Duration.ofHours(1)).withIdleTimeout(Duration.ofMillis(IDLE_MILLIS)));
+        store.add("s1", "alice");
+        Thread.sleep(IDLE_MILLIS / 2);
+        controller.getUserIdBySessionId("s1");
+
+        Thread.sleep(IDLE_MILLIS * 2 / 3);
+
+        assertTrue(store.isSessionExpired("s1"), "store has not seen the touch");
+        assertFalse(controller.isSessionExpired("s1"), "pending touch keeps it alive");
+
+        Thread.sleep(IDLE_MILLIS);
+        assertTrue(controller.isSessionExpired("s1"));
+    }
+
+    @Test
+    void withoutIdleTimeout_expiryIsTheStores() throws InterruptedException {
+        controller = new WriteBehindSessionController(store, store, WriteBehindConfig.of(Duration.ofHours(1)));
+        store.add("s1", "alice");
+        Thread.sleep(IDLE_MILLIS / 2);
+        controller.getUserIdBySessionId("s1");
+        Thread.sleep(IDLE_MILLIS * 2 / 3);
+
+        assertTrue(controller.isSessionExpired("s1"));
+    }
+
+    @Test
+    void failedWrite_isRetried() throws InterruptedException {
+        controller = new WriteBehindSessionController(store, store, WriteBehindConfig.of(Duration.ofMillis(50)));
+        store.add("s1", "alice");
+        store.failing = true;
+        controller.getUserIdBySessionId("s1");
+
+        eventually(() -> controller.failedWrites() > 0);
+        assertEquals(1, controller.pendingTouches());
+        store.failing = false;
+
+        eventually(() -> controller.writtenTouches() == 1);
+        assertEquals(0, controller.pendingTouches());
+    }
+
+    @Test
+    void flush_writesInBatchesOfMaxSize() {
+        controller = new WriteBehindSessionController(store, store,
+                WriteBehindConfig.of(Duration.ofHours(1)).withMaxBatchSize(10));
+        for (int i = 0; i < 35; i++) {
+            controller.touch("s" + i);
+        }
+
+        controller.flush();
+
+        assertEquals(List.of(10, 10, 10, 5), store.batches.stream().map(Map::size).toList());
+        assertEquals(35, controller.writtenTouches());
+    }
+
+    @Test
+    void maxPending_triggersEarlyFlush() throws InterruptedException {
+        controller = new WriteBehindSessionController(store, store,
+                new WriteBehindConfig(Duration.ofHours(1), null, 0, 20));
+        for (int i = 0; i < 20; i++) {
+            controller.touch("s" + i);
+        }
+
+        eventually(() -> controller.writtenTouches() == 20);
+    }
+
+    @Test
+    void close_flushesPending_andLaterTouchesWriteThrough() {
+        controller = new WriteBehindSessionController(store, store, WriteBehindConfig.of(Duration.ofHours(1)));
+        controller.touch("s1");
+        controller.touch("s2");
+        controller.forget("s2");
+
+        controller.close();
+
+        assertEquals(1, controller.writtenTouches());
+        assertTrue(store.lastAccess.containsKey("s1"));
+        assertFalse(store.lastAccess.containsKey("s2"));
+
+        controller.touch("s3");
+        assertEquals(2, controller.writtenTouches());
+    }
+
+    @Test
+    void closeRacingTouches_losesNothing_andNeverWritesConcurrently() throws Exception {
+        AtomicInteger writing = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        Set<String> written = ConcurrentHashMap.newKeySet();
+        SessionTouchWriter slowWriter = touches -> {
+            if (writing.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.addAll(touches.keySet());
+            writing.decrementAndGet();
+        };
+        controller = new WriteBehindSessionController(store, slowWriter, WriteBehindConfig.of(Duration.ofHours(1)));
+        Set<String> touched = ConcurrentHashMap.newKeySet();
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                started.countDown();
+                for (int i = 0; i < 200; i++) {
+                    String sessionId = "s" + thread + "-" + i;
+                    controller.touch(sessionId);
+                    touched.add(sessionId);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        started.await();
+
+        controller.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, overlaps.get(), "the writer never runs concurrently with itself");
+        assertEquals(0, controller.pendingTouches());
+        assertEquals(touched, written, "no touch racing close is lost");
+    }
+
+    @Test
+    void concurrentTouches_keepLatestTime() throws InterruptedException {
+        controller = new WriteBehindSessionController(store, store, WriteBehindConfig.of(Duration.ofMillis(20)));
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    controller.touch("s" + (i % 50));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long touchedBy = System.currentTimeMillis();
+
+        controller.close();
+
+        assertEquals(50, store.lastAccess.size());
+        store.lastAccess.values().forEach(lastAccess -> assertTrue(lastAccess <= touchedBy));
+        assertEquals(0, controller.pendingTouches());
+    }
+
+    @Test
+    void config_defaultsAndValidation() {
+        WriteBehindConfig config = new WriteBehindConfig(null, null, 0, 0);
+
+        assertEquals(Duration.ofSeconds(1), config.tolerance());
+        assertNull(config.idleTimeout());
+        assertEquals(1000, config.maxBatchSize());
+        assertEquals(100_000, config.maxPending());
+        assertThrows(IllegalArgumentException.class, () -> config.withIdleTimeout(Duration.ZERO));
+    }
+
+    /** Session store with idle expiry driven by written last-access times. */
+    private static final class IdleStore implements SessionSecurityController, SessionTouchWriter {
+        final Map<String, String> users = new ConcurrentHashMap<>();
+        final Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+        final List<Map<String, Long>> batches = new CopyOnWriteArrayList<>();
+        volatile boolean failing;
+
+        void add(String sessionId, String userId) {
+            users.put(sessionId, userId);
+            lastAccess.put(sessionId, System.currentTimeMillis());
+        }
+
+        @Override
+        public boolean isSessionExist(String sessionId) {
+            return users.containsKey(sessionId);
+        }
+
+        @Override
+        public boolean isSessionExpired(String sessionId) {
+            Long last = lastAccess.get(sessionId);
+            return last == null || last + IDLE_MILLIS <= System.currentTimeMillis();
+        }
+
+        @Override
+        public String getUserIdBySessionId(String sessionId) {
+            return users.get(sessionId);
+        }
+
+        @Override
+        public void writeTouches(Map<String, Long> touches) {
+            if (failing) {
+                throw new IllegalStateException("store down");
+            }
+            batches.add(Map.copyOf(touches));
+            lastAccess.putAll(touches);
+        }
+    }
+}
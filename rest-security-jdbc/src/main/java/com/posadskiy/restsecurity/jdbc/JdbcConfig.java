@@ -0,0 +1,85 @@
+package com.posadskiy.restsecurity.jdbc;
+
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * Configuration for {@link JdbcSecurityController}.
+ *
+ * <p>Tables and columns: {@code sessionsTable(id, user_id, expires_at)} with {@code expires_at} in epoch
+ * millis, {@code usersTable(id)} and {@code rolesTable(user_id, role)}. See {@link JdbcSecurityController#createSchema()}.
+ *
+ * @param sessionsTable       sessions table. Default {@code rs_sessions}
+ * @param usersTable          users table. Default {@code rs_users}
+ * @param rolesTable          user-role table. Default {@code rs_user_roles}
+ * @param connections         connections held for lookups, each with its statements prepared once. Default 4
+ * @param sessionTtl          lifetime of created sessions. Default 30 minutes
+ * @param sliding             if true, each successful user lookup extends the session to {@code now + sessionTtl}
+ * @param maxBatchSize        most inserts or touches written in one batch. Default 500
+ * @param touchFlushInterval  how long sliding touches are coalesced before they are written. Default 1 second
+ * @param timeout             how long a lookup waits for a free connection. Default 5 seconds
+ */
+public record JdbcConfig(
+        String sessionsTable,
+        String usersTable,
+        String rolesTable,
+        int connections,
+        Duration sessionTtl,
+        boolean sliding,
+        int maxBatchSize,
+        Duration touchFlushInterval,
+        Duration timeout
+) {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    public JdbcConfig {
+        sessionsTable = identifier(sessionsTable, "rs_sessions");
+        usersTable = identifier(usersTable, "rs_users");
+        rolesTable = identifier(rolesTable, "rs_user_roles");
+        connections = connections > 0 ? connections : 4;
+        sessionTtl = positiveOr(sessionTtl, Duration.ofMinutes(30));
+        maxBatchSize = maxBatchSize > 0 ? maxBatchSize : 500;
+        touchFlushInterval = positiveOr(touchFlushInterval, Duration.ofSeconds(1));
+        timeout = positiveOr(timeout, Duration.ofSeconds(5));
+    }
+
+    /**
+     * Default tables, fixed 30-minute sessions.
+     */
+    public static JdbcConfig defaults() {
+        return new JdbcConfig(null, null, null, 0, null, false, 0, null, null);
+    }
+
+    /** Copy using the given table names (optionally schema-qualified). */
+    public JdbcConfig withTables(String sessionsTable, String usersTable, String rolesTable) {
+        return new JdbcConfig(sessionsTable, usersTable, rolesTable, connections, sessionTtl, sliding, maxBatchSize,
+                touchFlushInterval, timeout);
+    }
+
+    /** Copy with session lifetime {@code sessionTtl}. */
+    public JdbcConfig withSessionTtl(Duration sessionTtl) {
+        return new JdbcConfig(sessionsTable, usersTable, rolesTable, connections, sessionTtl, sliding, maxBatchSize,
+                touchFlushInterval, timeout);
+    }
+
+    /** Copy with sliding expiration on or off. */
+    public JdbcConfig withSliding(boolean sliding) {
+        return new JdbcConfig(sessionsTable, usersTable, rolesTable, connections, sessionTtl, sliding, maxBatchSize,
+                touchFlushInterval, timeout);
+    }
+
+    private static String identifier(String name, String fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        if (!IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("JdbcConfig: invalid table name " + name);
+        }
+        return name;
+    }
+
+    private static Duration positiveOr(Duration value, Duration fallback) {
+        return value != null && !value.isNegative() && !value.isZero() ? value : fallback;
+    }
+}
@@ -0,0 +1,438 @@
+package com.posadskiy.restsecurity.jdbc;
+
+import com.posadskiy.restsecurity.controller.BatchSessionSecurityController;
+import com.posadskiy.restsecurity.controller.BatchUserSecurityController;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionLookup;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import com.posadskiy.restsecurity.id.SessionIdGenerator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements both {@link SessionSecurityController} and {@link UserSecurityController} on a relational
+ * database through JDBC.
+ *
+ * <ul>
+ *   <li>One prepared statement joins session, user and roles, so an enforcement costs one query: the
+ *       result is reused by the calls of the same enforcement on the same thread
+ *       ({@link EnforcementMemo}).</li>
+ *   <li>As a {@link BatchSessionSecurityController} and {@link BatchUserSecurityController} it looks up many
+ *       ids with one {@code IN} query, for {@code BatchingSecurityController}.</li>
+ *   <li>Lookups run on {@link JdbcConfig#connections()} held connections whose statements are prepared
+ *       once, independent of any statement cache in the pool.</li>
+ *   <li>Session inserts are group-committed in batches by a writer thread; {@link #createSession} returns
+ *       once its batch is committed. Sliding touches are coalesced and written in batches, and lookups
+ *       account for touches not yet written.</li>
+ * </ul>
+ * Database errors fail closed for lookups and throw {@link IllegalStateException} for writes.
+ */
+public final class JdbcSecurityController implements BatchSessionSecurityController, BatchUserSecurityController,
+        AutoCloseable {
+
+    private static final long SLIDE_GRANULARITY_MILLIS = 1_000;
+
+    private final DataSource dataSource;
+    private final JdbcConfig config;
+    private final long ttlMillis;
+    private final BlockingQueue<StatementLane> lanes;
+    private final AtomicInteger openLanes = new AtomicInteger();
+    private final SessionWriter writer;
+    private final EnforcementMemo<SessionRow> lastSession = new EnforcementMemo<>();
+    private final EnforcementMemo<UserRow> lastUser = new EnforcementMemo<>();
+    private final SessionIdGenerator idGenerator = SessionIdGenerator.shared();
+    private volatile boolean closed;
+
+    public JdbcSecurityController(DataSource dataSource, JdbcConfig config) {
+        this.dataSource = dataSource;
+        this.config = config;
+        this.ttlMillis = config.sessionTtl().toMillis();
+        this.lanes = new ArrayBlockingQueue<>(config.connections());
+        this.writer = new SessionWriter(dataSource, config);
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        return session(sessionId).userId != null;
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        SessionRow row = session(sessionId);
+        return row.userId == null || row.expiresAtMillis <= System.currentTimeMillis();
+    }
+
+    /**
+     * User of a live session. With sliding expiration this also queues an extension of the session.
+     */
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        SessionRow row = session(sessionId);
+        long now = System.currentTimeMillis();
+        if (row.userId == null || row.expiresAtMillis <= now) {
+            return null;
+        }
+        slide(sessionId, row.expiresAtMillis, now);
+        return row.userId;
+    }
+
+    /**
+     * Sessions by id with one {@code IN} query per 32 ids. With sliding expiration each live session is
+     * extended, as by {@link #getUserIdBySessionId}. On database error no session is returned.
+     */
+    @Override
+    public Map<String, SessionLookup> lookupSessions(Set<String> sessionIds) {
+        StatementLane lane = borrowOrNull();
+        if (lane == null) {
+            return Map.of();
+        }
+        Map<String, SessionLookup> found = new HashMap<>();
+        long now = System.currentTimeMillis();
+        try {
+            for (List<String> chunk : chunks(sessionIds)) {
+                StatementLane.bindIds(lane.sessionsLookup, chunk);
+                try (ResultSet rs = lane.sessionsLookup.executeQuery()) {
+                    while (rs.next()) {
+                        String sessionId = rs.getString(1);
+                        Long touched = writer.pendingTouch(sessionId);
+                        long expiresAt = Math.max(rs.getLong(3), touched != null ? touched : Long.MIN_VALUE);
+                        boolean expired = expiresAt <= now;
+                        if (!expired) {
+                            slide(sessionId, expiresAt, now);
+                        }
+                        found.put(sessionId, new SessionLookup(rs.getString(2), expired));
+                    }
+                }
+            }
+            release(lane);
+            return found;
+        } catch (SQLException e) {
+            discard(lane);
+            return Map.of();
+        }
+    }
+
+    @Override
+    public boolean isUserExist(String userId) {
+        return user(userId).exists;
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        return user(userId).roles;
+    }
+
+    /**
+     * Roles by user id with one {@code IN} query per 32 ids. On database error no user is returned.
+     */
+    @Override
+    public Map<String, Set<String>> getUsersRoles(Set<String> userIds) {
+        StatementLane lane = borrowOrNull();
+        if (lane == null) {
+            return Map.of();
+        }
+        Map<String, Set<String>> found = new HashMap<>();
+        try {
+            for (List<String> chunk : chunks(userIds)) {
+                StatementLane.bindIds(lane.usersLookup, chunk);
+                try (ResultSet rs = lane.usersLookup.executeQuery()) {
+                    while (rs.next()) {
+                        Set<String> roles = found.computeIfAbsent(rs.getString(1), id -> new HashSet<>());
+                        String role = rs.getString(2);
+                        if (role != null) {
+                            roles.add(role);
+                        }
+                    }
+                }
+            }
+            release(lane);
+        } catch (SQLException e) {
+            discard(lane);
+            return Map.of();
+        }
+        found.replaceAll((userId, roles) -> Set.copyOf(roles));
+        return found;
+    }
+
+    /**
+     * Create a session for {@code userId}; returns once it is committed.
+     *
+     * @return new session id (22 base64url characters)
+     * @throws IllegalStateException if the insert failed
+     */
+    public String createSession(String userId) {
+        if (userId == null || userId.isBlank()) {
+            throw new IllegalArgumentException("JdbcSecurityController: userId must be non-blank");
+        }
+        String sessionId = idGenerator.nextString();
+        try {
+            writer.insert(sessionId, userId, System.currentTimeMillis() + ttlMillis)
+                    .get(config.timeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("JdbcSecurityController: interrupted while creating session", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("JdbcSecurityController: could not create session", e);
+        }
+        return sessionId;
+    }
+
+    /**
+     * Delete a session.
+     *
+     * @return true if it existed
+     * @throws IllegalStateException on database error
+     */
+    public boolean revoke(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return false;
+        }
+        writer.forget(sessionId);
+        lastSession.clear();
+        StatementLane lane = borrow();
+        try {
+            lane.deleteSession.setString(1, sessionId);
+            boolean deleted = lane.deleteSession.executeUpdate() > 0;
+            release(lane);
+            return deleted;
+        } catch (SQLException e) {
+            discard(lane);
+            throw new IllegalStateException("JdbcSecurityController: revoke failed", e);
+        }
+    }
+
+    /**
+     * Delete sessions that expired before now.
+     *
+     * @return number of sessions deleted
+     */
+    public int purgeExpired() {
+        lastSession.clear();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement delete = connection.prepareStatement(
+                     "DELETE FROM " + config.sessionsTable() + " WHERE expires_at <= ?")) {
+            delete.setLong(1, System.currentTimeMillis());
+            return delete.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("JdbcSecurityController: purge failed", e);
+        }
+    }
+
+    /** Write queued touches now and wait for them. */
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * Create the three tables if they do not exist (portable DDL for H2, PostgreSQL, MySQL and others).
+     */
+    public void createSchema() {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + config.usersTable()
+                    + " (id VARCHAR(255) PRIMARY KEY)");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + config.rolesTable()
+                    + " (user_id VARCHAR(255) NOT NULL, role VARCHAR(255) NOT NULL, PRIMARY KEY (user_id, role))");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + config.sessionsTable()
+                    + " (id VARCHAR(64) PRIMARY KEY, user_id VARCHAR(255) NOT NULL, expires_at BIGINT NOT NULL)");
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("JdbcSecurityController: schema creation failed", e);
+        }
+    }
+
+    /** Flush pending writes and close held connections. */
+    @Override
+    public void close() {
+        closed = true;
+        writer.close();
+        StatementLane lane;
+        while ((lane = lanes.poll()) != null) {
+            lane.close();
+        }
+    }
+
+    private SessionRow session(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return SessionRow.ABSENT;
+        }
+        SessionRow row = lastSession.get(sessionId, id -> {
+            SessionRow queried = querySession(id);
+            if (queried != null && queried.userId != null) {
+                lastUser.put(queried.userId, queried.user);
+            }
+            return queried;
+        });
+        if (row == null) {
+            return SessionRow.ABSENT;
+        }
+        return withPendingTouch(row);
+    }
+
+    private UserRow user(String userId) {
+        if (userId == null || userId.isBlank()) {
+            return UserRow.ABSENT;
+        }
+        UserRow row = lastUser.get(userId, this::queryUser);
+        return row != null ? row : UserRow.ABSENT;
+    }
+
+    private void slide(String sessionId, long expiresAtMillis, long now) {
+        if (config.sliding() && now + ttlMillis - expiresAtMillis >= SLIDE_GRANULARITY_MILLIS) {
+            writer.touch(sessionId, now + ttlMillis);
+        }
+    }
+
+    private static List<List<String>> chunks(Set<String> ids) {
+        List<String> all = List.copyOf(ids);
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += StatementLane.BATCH_WIDTH) {
+            chunks.add(all.subList(from, Math.min(all.size(), from + StatementLane.BATCH_WIDTH)));
+        }
+        return chunks;
+    }
+
+    private SessionRow withPendingTouch(SessionRow row) {
+        Long touched = row.userId != null ? writer.pendingTouch(row.sessionId) : null;
+        return touched != null && touched > row.expiresAtMillis ? row.withExpiry(touched) : row;
+    }
+
+    /** @return the row, or null on database error */
+    private SessionRow querySession(String sessionId) {
+        StatementLane lane = borrowOrNull();
+        if (lane == null) {
+            return null;
+        }
+        try {
+            lane.sessionLookup.setString(1, sessionId);
+            SessionRow row;
+            try (ResultSet rs = lane.sessionLookup.executeQuery()) {
+                if (!rs.next()) {
+                    row = new SessionRow(sessionId, null, -1, UserRow.ABSENT);
+                } else {
+                    String userId = rs.getString(1);
+                    long expiresAt = rs.getLong(2);
+                    boolean userExists = rs.getString(3) != null;
+                    List<String> roles = new ArrayList<>();
+                    do {
+                        String role = rs.getString(4);
+                        if (role != null) {
+                            roles.add(role);
+                        }
+                    } while (rs.next());
+                    row = new SessionRow(sessionId, userId, expiresAt,
+                            new UserRow(userId, userExists, List.copyOf(roles)));
+                }
+            }
+            release(lane);
+            return row;
+        } catch (SQLException e) {
+            discard(lane);
+            return null;
+        }
+    }
+
+    /** @return the row, or null on database error */
+    private UserRow queryUser(String userId) {
+        StatementLane lane = borrowOrNull();
+        if (lane == null) {
+            return null;
+        }
+        try {
+            lane.userLookup.setString(1, userId);
+            boolean exists = false;
+            List<String> roles = new ArrayList<>();
+            try (ResultSet rs = lane.userLookup.executeQuery()) {
+                while (rs.next()) {
+                    exists = true;
+                    String role = rs.getString(2);
+                    if (role != null) {
+                        roles.add(role);
+                    }
+                }
+            }
+            release(lane);
+            return new UserRow(userId, exists, List.copyOf(roles));
+        } catch (SQLException e) {
+            discard(lane);
+            return null;
+        }
+    }
+
+    private StatementLane borrowOrNull() {
+        try {
+            return borrow();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /** Take a free lane, opening one while fewer than {@link JdbcConfig#connections()} exist. */
+    private StatementLane borrow() {
+        if (closed) {
+            throw new IllegalStateException("JdbcSecurityController: closed");
+        }
+        StatementLane lane = lanes.poll();
+        if (lane != null) {
+            return lane;
+        }
+        if (openLanes.incrementAndGet() <= config.connections()) {
+            try {
+                return new StatementLane(dataSource.getConnection(), config);
+            } catch (SQLException e) {
+                openLanes.decrementAndGet();
+                throw new IllegalStateException("JdbcSecurityController: could not open connection", e);
+            }
+        }
+        openLanes.decrementAndGet();
+        try {
+            lane = lanes.poll(config.timeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (lane == null) {
+            throw new IllegalStateException("JdbcSecurityController: no free connection");
+        }
+        return lane;
+    }
+
+    private void release(StatementLane lane) {
+        if (closed || !lanes.offer(lane)) {
+            discard(lane);
+        }
+    }
+
+    private void discard(StatementLane lane) {
+        openLanes.decrementAndGet();
+        lane.close();
+    }
+
+    private record SessionRow(String sessionId, String userId, long expiresAtMillis, UserRow user) {
+        static final SessionRow ABSENT = new SessionRow(null, null, -1, UserRow.ABSENT);
+
+        SessionRow withExpiry(long expiresAtMillis) {
+            return new SessionRow(sessionId, userId, expiresAtMillis, user);
+        }
+    }
+
+    private record UserRow(String userId, boolean exists, List<String> roles) {
+        static final UserRow ABSENT = new UserRow(null, false, List.of());
+    }
+}
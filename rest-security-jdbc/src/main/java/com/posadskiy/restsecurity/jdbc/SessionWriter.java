@@ -0,0 +1,247 @@
+package com.posadskiy.restsecurity.jdbc;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer of {@link JdbcSecurityController}. Session inserts are group-committed: whatever
+ * queued while the previous batch ran goes out as the next batch, and each caller waits for its commit.
+ * Sliding touches are coalesced per session (latest expiry wins) and written every
+ * {@link JdbcConfig#touchFlushInterval()}, or after the next insert batch, in a transaction of their own.
+ * Uses one dedicated connection with its statements prepared once.
+ */
+final class SessionWriter implements AutoCloseable {
+
+    private final DataSource dataSource;
+    private final JdbcConfig config;
+    private final Queue<PendingInsert> inserts = new ConcurrentLinkedQueue<>();
+    private final Map<String, Long> touches = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private volatile boolean closed;
+    private Connection connection;
+    private PreparedStatement insert;
+    private PreparedStatement touch;
+
+    private record PendingInsert(String sessionId, String userId, long expiresAt, CompletableFuture<Void> committed) {}
+
+    SessionWriter(DataSource dataSource, JdbcConfig config) {
+        this.dataSource = dataSource;
+        this.config = config;
+        this.thread = new Thread(this::run, "rest-security-jdbc-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Queue an insert; the future completes when its batch commits. */
+    CompletableFuture<Void> insert(String sessionId, String userId, long expiresAt) {
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        if (closed) {
+            committed.completeExceptionally(new IllegalStateException("JdbcSecurityController: closed"));
+            return committed;
+        }
+        inserts.add(new PendingInsert(sessionId, userId, expiresAt, committed));
+        LockSupport.unpark(thread);
+        return committed;
+    }
+
+    /** Queue an expiry extension; only the latest per session is written. */
+    void touch(String sessionId, long expiresAt) {
+        touches.merge(sessionId, expiresAt, Math::max);
+    }
+
+    /** Expiry of a touch not yet written, or {@code null}. */
+    Long pendingTouch(String sessionId) {
+        return touches.get(sessionId);
+    }
+
+    void forget(String sessionId) {
+        touches.remove(sessionId);
+    }
+
+    /** Write everything queued so far and wait for it. */
+    void flush() {
+        try {
+            insert(null, null, 0).get(config.timeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw new IllegalStateException("JdbcSecurityController: flush failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(config.timeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long flushNanos = config.touchFlushInterval().toNanos();
+        long nextTouchFlush = System.nanoTime() + flushNanos;
+        while (true) {
+            boolean stopping = closed;
+            boolean touchesDue = System.nanoTime() - nextTouchFlush >= 0;
+            if (!inserts.isEmpty() || (touchesDue && !touches.isEmpty()) || stopping) {
+                writeBatches();
+                nextTouchFlush = System.nanoTime() + flushNanos;
+            } else if (touchesDue) {
+                nextTouchFlush = System.nanoTime() + flushNanos;
+            }
+            if (stopping) {
+                break;
+            }
+            if (inserts.isEmpty()) {
+                LockSupport.parkNanos(this, Math.max(0, nextTouchFlush - System.nanoTime()));
+            }
+        }
+        closeConnection();
+        PendingInsert left;
+        while ((left = inserts.poll()) != null) {
+            left.committed.completeExceptionally(new IllegalStateException("JdbcSecurityController: closed"));
+        }
+    }
+
+    private void writeBatches() {
+        // Bounded so a steady stream of touches cannot keep the writer from parking.
+        int touchRounds = touches.size() / config.maxBatchSize() + 1;
+        // Flush markers complete once the touches queued before them are written too.
+        List<PendingInsert> flushes = new ArrayList<>();
+        do {
+            List<PendingInsert> batch = new ArrayList<>();
+            PendingInsert next;
+            while (batch.size() < config.maxBatchSize() && (next = inserts.poll()) != null) {
+                batch.add(next);
+            }
+            try {
+                writeInserts(batch);
+                for (PendingInsert p : batch) {
+                    if (p.sessionId != null) {
+                        p.committed.complete(null);
+                    } else {
+                        flushes.add(p);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                closeConnection();
+                batch.forEach(p -> p.committed.completeExceptionally(e));
+            }
+            List<Map.Entry<String, Long>> touched = drainTouches();
+            try {
+                writeTouches(touched);
+            } catch (SQLException | RuntimeException e) {
+                // Touches are best effort: a lost touch only shortens a sliding session.
+                closeConnection();
+            }
+        } while (!inserts.isEmpty() || (--touchRounds > 0 && !touches.isEmpty()));
+        flushes.forEach(p -> p.committed.complete(null));
+    }
+
+    private List<Map.Entry<String, Long>> drainTouches() {
+        List<Map.Entry<String, Long>> drained = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = touches.entrySet().iterator();
+        while (drained.size() < config.maxBatchSize() && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (touches.remove(entry.getKey(), entry.getValue())) {
+                drained.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        return drained;
+    }
+
+    /** Insert and commit on their own, so a failing touch cannot roll back a created session. */
+    private void writeInserts(List<PendingInsert> batch) throws SQLException {
+        if (batch.stream().noneMatch(p -> p.sessionId != null)) {
+            return;
+        }
+        open();
+        try {
+            for (PendingInsert p : batch) {
+                if (p.sessionId != null) {
+                    insert.setString(1, p.sessionId);
+                    insert.setString(2, p.userId);
+                    insert.setLong(3, p.expiresAt);
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw e;
+        }
+    }
+
+    private void writeTouches(List<Map.Entry<String, Long>> touched) throws SQLException {
+        if (touched.isEmpty()) {
+            return;
+        }
+        open();
+        try {
+            for (Map.Entry<String, Long> t : touched) {
+                touch.setLong(1, t.getValue());
+                touch.setString(2, t.getKey());
+                touch.setLong(3, t.getValue());
+                touch.addBatch();
+            }
+            touch.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw e;
+        }
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException ignored) {
+            // Connection is discarded anyway.
+        }
+    }
+
+    private void open() throws SQLException {
+        if (connection != null) {
+            return;
+        }
+        Connection opened = dataSource.getConnection();
+        try {
+            opened.setAutoCommit(false);
+            insert = opened.prepareStatement("INSERT INTO " + config.sessionsTable()
+                    + " (id, user_id, expires_at) VALUES (?, ?, ?)");
+            touch = opened.prepareStatement("UPDATE " + config.sessionsTable()
+                    + " SET expires_at = ? WHERE id = ? AND expires_at < ?");
+        } catch (SQLException e) {
+            opened.close();
+            throw e;
+        }
+        connection = opened;
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Already broken.
+            }
+            connection = null;
+        }
+    }
+}
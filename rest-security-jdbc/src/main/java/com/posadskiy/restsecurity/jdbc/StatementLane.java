@@ -0,0 +1,71 @@
+package com.posadskiy.restsecurity.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * One connection held by {@link JdbcSecurityController} for lookups, with its statements prepared once
+ * and reused by every call that borrows the lane.
+ */
+final class StatementLane implements AutoCloseable {
+
+    /** Ids bound by one multi-key lookup; shorter lists repeat their last id, longer ones take several. */
+    static final int BATCH_WIDTH = 32;
+
+    final Connection connection;
+    /** {@code user_id, expires_at, users.id, role} for one session id, one row per role. */
+    final PreparedStatement sessionLookup;
+    /** {@code users.id, role} for one user id, one row per role. */
+    final PreparedStatement userLookup;
+    /** {@code id, user_id, expires_at} for {@link #BATCH_WIDTH} session ids. */
+    final PreparedStatement sessionsLookup;
+    /** {@code users.id, role} for {@link #BATCH_WIDTH} user ids, one row per role. */
+    final PreparedStatement usersLookup;
+    final PreparedStatement deleteSession;
+
+    StatementLane(Connection connection, JdbcConfig config) throws SQLException {
+        this.connection = connection;
+        connection.setAutoCommit(true);
+        try {
+            this.sessionLookup = connection.prepareStatement(
+                    "SELECT s.user_id, s.expires_at, u.id, r.role FROM " + config.sessionsTable() + " s"
+                            + " LEFT JOIN " + config.usersTable() + " u ON u.id = s.user_id"
+                            + " LEFT JOIN " + config.rolesTable() + " r ON r.user_id = u.id"
+                            + " WHERE s.id = ?");
+            this.userLookup = connection.prepareStatement(
+                    "SELECT u.id, r.role FROM " + config.usersTable() + " u"
+                            + " LEFT JOIN " + config.rolesTable() + " r ON r.user_id = u.id"
+                            + " WHERE u.id = ?");
+            String ids = " IN (" + "?, ".repeat(BATCH_WIDTH - 1) + "?)";
+            this.sessionsLookup = connection.prepareStatement(
+                    "SELECT id, user_id, expires_at FROM " + config.sessionsTable() + " WHERE id" + ids);
+            this.usersLookup = connection.prepareStatement(
+                    "SELECT u.id, r.role FROM " + config.usersTable() + " u"
+                            + " LEFT JOIN " + config.rolesTable() + " r ON r.user_id = u.id"
+                            + " WHERE u.id" + ids);
+            this.deleteSession = connection.prepareStatement(
+                    "DELETE FROM " + config.sessionsTable() + " WHERE id = ?");
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /** Bind up to {@link #BATCH_WIDTH} ids, repeating the last one in the unused places. */
+    static void bindIds(PreparedStatement statement, List<String> ids) throws SQLException {
+        for (int i = 0; i < BATCH_WIDTH; i++) {
+            statement.setString(i + 1, ids.get(Math.min(i, ids.size() - 1)));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Closing a broken connection.
+        }
+    }
+}
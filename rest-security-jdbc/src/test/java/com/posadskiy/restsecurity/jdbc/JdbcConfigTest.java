@@ -0,0 +1,46 @@
+package com.posadskiy.restsecurity.jdbc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcConfigTest {
+
+    @Test
+    void defaults() {
+        JdbcConfig config = JdbcConfig.defaults();
+
+        assertEquals("rs_sessions", config.sessionsTable());
+        assertEquals("rs_users", config.usersTable());
+        assertEquals("rs_user_roles", config.rolesTable());
+        assertEquals(4, config.connections());
+        assertEquals(Duration.ofMinutes(30), config.sessionTtl());
+        assertFalse(config.sliding());
+        assertEquals(500, config.maxBatchSize());
+        assertEquals(Duration.ofSeconds(1), config.touchFlushInterval());
+        assertEquals(Duration.ofSeconds(5), config.timeout());
+    }
+
+    @Test
+    void copies() {
+        JdbcConfig config = JdbcConfig.defaults()
+                .withTables("auth.sessions", "auth.users", "auth.roles")
+                .withSessionTtl(Duration.ofMinutes(5))
+                .withSliding(true);
+
+        assertEquals("auth.sessions", config.sessionsTable());
+        assertEquals("auth.roles", config.rolesTable());
+        assertEquals(Duration.ofMinutes(5), config.sessionTtl());
+        assertTrue(config.sliding());
+    }
+
+    @Test
+    void rejectsUnsafeTableNames() {
+        assertThrows(IllegalArgumentException.class,
+                () -> JdbcConfig.defaults().withTables("s; DROP TABLE x", null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> JdbcConfig.defaults().withTables(null, "1users", null));
+    }
+}
@@ -0,0 +1,523 @@
+package com.posadskiy.restsecurity.jdbc;
+
+import com.posadskiy.restsecurity.coalesce.BatchConfig;
+import com.posadskiy.restsecurity.coalesce.BatchingSecurityController;
+import com.posadskiy.restsecurity.context.SecurityContext;
+import com.posadskiy.restsecurity.controller.SessionLookup;
+import com.posadskiy.restsecurity.enforcer.SecurityEnforcer;
+import com.posadskiy.restsecurity.exception.SessionDoesNotExistException;
+import com.posadskiy.restsecurity.resilience.ResilienceConfig;
+import com.posadskiy.restsecurity.resilience.ResilientSecurityController;
+import com.posadskiy.restsecurity.rest.SecuredRequest;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcSecurityControllerTest {
+
+    private CountingDataSource dataSource;
+    private JdbcSecurityController controller;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource = new CountingDataSource(h2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (controller != null) {
+            controller.close();
+        }
+    }
+
+    private JdbcSecurityController controller(JdbcConfig config) {
+        controller = new JdbcSecurityController(dataSource.proxy(), config);
+        controller.createSchema();
+        return controller;
+    }
+
+    private void sql(String... statements) throws SQLException {
+        try (Connection connection = dataSource.target.getConnection(); Statement statement = connection.createStatement()) {
+            for (String s : statements) {
+                statement.execute(s);
+            }
+        }
+    }
+
+    private void givenUser(String userId, String... roles) throws SQLException {
+        sql("INSERT INTO rs_users (id) VALUES ('" + userId + "')");
+        for (String role : roles) {
+            sql("INSERT INTO rs_user_roles (user_id, role) VALUES ('" + userId + "', '" + role + "')");
+        }
+    }
+
+    private long storedExpiry(String sessionId) throws SQLException {
+        try (Connection connection = dataSource.target.getConnection();
+             PreparedStatement select = connection.prepareStatement("SELECT expires_at FROM rs_sessions WHERE id = ?")) {
+            select.setString(1, sessionId);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    @Test
+    void enforcement_costsOneQuery() throws SQLException {
+        controller(JdbcConfig.defaults());
+        givenUser("alice", "USER", "ADMIN");
+        String sessionId = controller.createSession("alice");
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+
+        int before = dataSource.executions.get();
+        SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest(sessionId), "ADMIN");
+
+        assertEquals("alice", ctx.userId());
+        assertEquals(Set.of("USER", "ADMIN"), ctx.roles());
+        assertEquals(before + 1, dataSource.executions.get(), "session, user and roles in one joined query");
+    }
+
+    @Test
+    void nextEnforcement_onTheSameThread_seesADeletedSession() throws SQLException {
+        controller(JdbcConfig.defaults());
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+        enforcer.validateAndBuildContext(new SecuredRequest(sessionId), "USER");
+
+        sql("DELETE FROM rs_sessions WHERE id = '" + sessionId + "'");
+
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(sessionId), "USER"));
+    }
+
+    @Test
+    void behindResilient_eachGuardedCallCostsOneQuery() throws SQLException {
+        controller(JdbcConfig.defaults());
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+        try (ResilientSecurityController resilient =
+                     new ResilientSecurityController(controller, controller, ResilienceConfig.defaults(), null)) {
+            SecurityEnforcer enforcer = new SecurityEnforcer(resilient, resilient);
+
+            int before = dataSource.executions.get();
+            enforcer.validateAndBuildContext(new SecuredRequest(sessionId), "USER");
+
+            assertEquals(before + 2, dataSource.executions.get(), "one query for the session call, one for the user call");
+        }
+    }
+
+    @Test
+    void lookups_reuseStatements() throws SQLException {
+        controller(JdbcConfig.defaults());
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+        enforcer.validateAndBuildContext(new SecuredRequest(sessionId), "USER");
+        int prepared = dataSource.prepares.get();
+
+        for (int i = 0; i < 20; i++) {
+            controller.isUserExist("alice-" + i);
+        }
+
+        assertEquals(prepared, dataSource.prepares.get());
+    }
+
+    @Test
+    void unknownOrRevokedSession_isRejected() throws SQLException {
+        controller(JdbcConfig.defaults());
+        givenUser("alice", "USER");
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest("nope"), "USER"));
+
+        String sessionId = controller.createSession("alice");
+        assertTrue(controller.revoke(sessionId));
+        assertFalse(controller.revoke(sessionId));
+        assertFalse(controller.isSessionExist(sessionId));
+        assertNull(controller.getUserIdBySessionId(sessionId));
+        assertFalse(controller.revoke(null));
+    }
+
+    @Test
+    void expiredSession_isExpiredAndPurged() throws Exception {
+        controller(JdbcConfig.defaults().withSessionTtl(Duration.ofMillis(50)));
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+        assertFalse(controller.isSessionExpired(sessionId));
+
+        Thread.sleep(300);
+
+        assertTrue(controller.isSessionExist(sessionId));
+        assertTrue(controller.isSessionExpired(sessionId));
+        assertNull(controller.getUserIdBySessionId(sessionId));
+        assertEquals(1, controller.purgeExpired());
+        assertFalse(controller.isSessionExist(sessionId));
+    }
+
+    @Test
+    void sessionOfDeletedUser_hasNoUser() throws SQLException {
+        controller(JdbcConfig.defaults());
+        String sessionId = controller.createSession("ghost");
+
+        assertEquals("ghost", controller.getUserIdBySessionId(sessionId));
+        assertFalse(controller.isUserExist("ghost"));
+        assertEquals(List.of(), controller.getUserRoles("ghost"));
+    }
+
+    @Test
+    void userLookup_withoutSession() throws SQLException {
+        controller(JdbcConfig.defaults());
+        givenUser("bob", "AUDITOR");
+
+        assertTrue(controller.isUserExist("bob"));
+        assertEquals(List.of("AUDITOR"), controller.getUserRoles("bob"));
+        assertFalse(controller.isUserExist("carol"));
+        assertFalse(controller.isUserExist(null));
+        assertFalse(controller.isSessionExist(" "));
+    }
+
+    @Test
+    void batchLookups_takeOneQueryPerThirtyTwoIds() throws Exception {
+        controller(JdbcConfig.defaults().withSessionTtl(Duration.ofMillis(200)));
+        Set<String> sessionIds = new HashSet<>();
+        Set<String> userIds = new HashSet<>();
+        for (int i = 0; i < 40; i++) {
+            givenUser("user-" + i, "USER");
+            sessionIds.add(controller.createSession("user-" + i));
+            userIds.add("user-" + i);
+        }
+        givenUser("bob");
+        userIds.add("bob");
+        userIds.add("carol");
+        sessionIds.add("missing");
+
+        int before = dataSource.executions.get();
+        Map<String, SessionLookup> sessions = controller.lookupSessions(sessionIds);
+        Map<String, Set<String>> users = controller.getUsersRoles(userIds);
+
+        assertEquals(before + 4, dataSource.executions.get(), "two IN queries per batch of 41 or 42 ids");
+        assertEquals(40, sessions.size());
+        assertTrue(sessions.values().stream().noneMatch(SessionLookup::expired));
+        assertEquals(41, users.size());
+        assertEquals(Set.of("USER"), users.get("user-7"));
+        assertEquals(Set.of(), users.get("bob"));
+        assertFalse(users.containsKey("carol"));
+
+        Thread.sleep(300);
+        assertTrue(controller.lookupSessions(sessionIds).values().stream().allMatch(SessionLookup::expired));
+        assertEquals(Map.of(), controller.lookupSessions(Set.of()));
+    }
+
+    @Test
+    void batchLookups_slideLiveSessions() throws Exception {
+        controller(JdbcConfig.defaults().withSessionTtl(Duration.ofSeconds(10)).withSliding(true));
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+        long created = storedExpiry(sessionId);
+
+        Thread.sleep(1_100);
+        assertEquals(Map.of(sessionId, new SessionLookup("alice", false)),
+                controller.lookupSessions(Set.of(sessionId)));
+        controller.flush();
+
+        assertTrue(storedExpiry(sessionId) >= created + 1_000);
+    }
+
+    @Test
+    void behindBatching_enforcesWithBatchedLookups() throws SQLException {
+        controller(JdbcConfig.defaults());
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+        BatchingSecurityController batching = new BatchingSecurityController(controller, controller,
+                BatchConfig.defaults());
+        SecurityEnforcer enforcer = new SecurityEnforcer(batching, batching);
+
+        int before = dataSource.executions.get();
+        SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest(sessionId), "USER");
+
+        assertEquals(Set.of("USER"), ctx.roles());
+        assertEquals(before + 2, dataSource.executions.get(), "one IN query for sessions, one for users");
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest("missing"), "USER"));
+    }
+
+    @Test
+    void concurrentCreates_areGroupCommitted() throws Exception {
+        controller(JdbcConfig.defaults());
+        int sessions = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < sessions; i++) {
+                String userId = "user-" + i;
+                tasks.add(() -> controller.createSession(userId));
+            }
+            int before = dataSource.batches.get();
+            List<String> ids = new ArrayList<>();
+            for (Future<String> future : pool.invokeAll(tasks)) {
+                ids.add(future.get());
+            }
+
+            assertEquals(sessions, Set.copyOf(ids).size());
+            assertTrue(dataSource.batches.get() - before < sessions,
+                    "expected fewer batches than sessions, got " + (dataSource.batches.get() - before));
+            assertEquals("user-7", controller.getUserIdBySessionId(ids.get(7)));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void slidingTouches_areCoalescedAndVisibleBeforeWrite() throws Exception {
+        controller(JdbcConfig.defaults().withSessionTtl(Duration.ofSeconds(10)).withSliding(true));
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+        long created = storedExpiry(sessionId);
+
+        Thread.sleep(1_100);
+        int before = dataSource.batches.get();
+        for (int i = 0; i < 50; i++) {
+            assertEquals("alice", controller.getUserIdBySessionId(sessionId));
+        }
+        controller.flush();
+
+        assertEquals(before + 1, dataSource.batches.get(), "touches coalesced into one batch");
+        assertTrue(storedExpiry(sessionId) >= created + 1_000);
+    }
+
+    @Test
+    void failingTouches_doNotRollBackCreatedSessions() throws Exception {
+        controller(new JdbcConfig(null, null, null, 0, Duration.ofSeconds(10), true, 0, Duration.ofHours(1), null));
+        givenUser("alice", "USER");
+        String first = controller.createSession("alice");
+        Thread.sleep(1_100);
+        assertEquals("alice", controller.getUserIdBySessionId(first));
+        dataSource.failingUpdates = true;
+
+        String second = controller.createSession("alice");
+
+        assertTrue(storedExpiry(second) > 0, "the insert committed although the touch written with it failed");
+        dataSource.failingUpdates = false;
+        assertEquals("alice", controller.getUserIdBySessionId(second));
+    }
+
+    @Test
+    void flush_waitsForEveryTouchRound() throws Exception {
+        controller(new JdbcConfig(null, null, null, 0, Duration.ofSeconds(10), true, 2, Duration.ofHours(1), null));
+        givenUser("alice", "USER");
+        List<String> sessions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sessions.add(controller.createSession("alice"));
+        }
+        long created = storedExpiry(sessions.get(4));
+        Thread.sleep(1_100);
+        sessions.forEach(sessionId -> assertEquals("alice", controller.getUserIdBySessionId(sessionId)));
+        dataSource.updateDelayMillis = 50;
+
+        controller.flush();
+
+        for (String sessionId : sessions) {
+            assertTrue(storedExpiry(sessionId) >= created + 1_000, "touch of " + sessionId + " written");
+        }
+    }
+
+    @Test
+    void pendingTouch_keepsSessionAlive() throws Exception {
+        controller(JdbcConfig.defaults().withSessionTtl(Duration.ofMillis(1_200)).withSliding(true));
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+        Thread.sleep(1_000);
+        assertEquals("alice", controller.getUserIdBySessionId(sessionId));
+
+        Thread.sleep(400);
+
+        assertFalse(controller.isSessionExpired(sessionId), "queued or written touch extends the session");
+    }
+
+    @Test
+    void databaseDown_failsClosed_andRecovers() throws SQLException {
+        controller(JdbcConfig.defaults());
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+
+        dataSource.failing = true;
+        assertFalse(controller.isSessionExist("other"));
+        assertTrue(controller.isSessionExpired("other"));
+        assertFalse(controller.isUserExist("alice-2"));
+        assertEquals(Map.of(), controller.lookupSessions(Set.of(sessionId)));
+        assertEquals(Map.of(), controller.getUsersRoles(Set.of("alice")));
+        assertThrows(IllegalStateException.class, () -> controller.createSession("alice"));
+        assertThrows(IllegalStateException.class, () -> controller.revoke(sessionId));
+        assertThrows(IllegalStateException.class, controller::purgeExpired);
+
+        dataSource.failing = false;
+        assertTrue(controller.isSessionExist(sessionId));
+        assertNotNull(controller.createSession("alice"));
+    }
+
+    @Test
+    void failingStatement_discardsConnection() throws SQLException {
+        controller(JdbcConfig.defaults());
+        givenUser("alice", "USER");
+        String sessionId = controller.createSession("alice");
+
+        assertTrue(controller.isSessionExist(sessionId));
+        dataSource.failing = true;
+        assertFalse(controller.isSessionExist("other"));
+        dataSource.failing = false;
+        assertTrue(controller.isUserExist("alice"));
+        dataSource.failing = true;
+        assertFalse(controller.isUserExist("bob"));
+        assertThrows(IllegalStateException.class, controller::createSchema);
+        dataSource.failing = false;
+
+        assertTrue(controller.isUserExist("alice"));
+        dataSource.failing = true;
+        assertThrows(IllegalStateException.class, () -> controller.revoke(sessionId));
+        dataSource.failing = false;
+        assertTrue(controller.revoke(sessionId));
+    }
+
+    @Test
+    void allConnectionsBusy_failsClosedAfterTimeout() throws Exception {
+        controller(new JdbcConfig(null, null, null, 1, null, false, 0, null, Duration.ofMillis(100)));
+        givenUser("alice", "USER");
+        dataSource.queryDelayMillis = 600;
+        Thread slow = new Thread(() -> controller.isUserExist("alice"));
+        slow.start();
+        Thread.sleep(200);
+
+        assertFalse(controller.isUserExist("alice"), "no free connection within the timeout");
+
+        slow.join();
+        dataSource.queryDelayMillis = 0;
+        assertTrue(controller.isUserExist("alice"));
+    }
+
+    @Test
+    void closed_rejectsWrites() {
+        controller(JdbcConfig.defaults());
+        controller.close();
+
+        assertThrows(IllegalStateException.class, () -> controller.createSession("alice"));
+        assertThrows(IllegalStateException.class, controller::flush);
+        assertFalse(controller.isSessionExist("s1"));
+        assertThrows(IllegalArgumentException.class, () -> controller.createSession(" "));
+    }
+
+    @Test
+    void customTables() throws SQLException {
+        controller(JdbcConfig.defaults().withTables("app_sessions", "app_users", "app_roles"));
+        sql("INSERT INTO app_users (id) VALUES ('alice')", "INSERT INTO app_roles (user_id, role) VALUES ('alice', 'USER')");
+        String sessionId = controller.createSession("alice");
+
+        assertEquals("alice", controller.getUserIdBySessionId(sessionId));
+        assertEquals(List.of("USER"), controller.getUserRoles("alice"));
+    }
+
+    /** Wraps a data source, counting statement preparations and executions, and failing on demand. */
+    private static final class CountingDataSource {
+        final DataSource target;
+        final AtomicInteger prepares = new AtomicInteger();
+        final AtomicInteger executions = new AtomicInteger();
+        final AtomicInteger batches = new AtomicInteger();
+        volatile boolean failing;
+        volatile boolean failingUpdates;
+        volatile long queryDelayMillis;
+        volatile long updateDelayMillis;
+
+        CountingDataSource(DataSource target) {
+            this.target = target;
+        }
+
+        DataSource proxy() {
+            return proxy(DataSource.class, target, (method, args) -> {
+                if (method.getName().equals("getConnection")) {
+                    failIfDown();
+                    Connection connection = (Connection) method.invoke(target, args);
+                    return proxy(Connection.class, connection, (m, a) -> connectionCall(connection, m, a));
+                }
+                return method.invoke(target, args);
+            });
+        }
+
+        private Object connectionCall(Connection connection, java.lang.reflect.Method method, Object[] args)
+                throws Exception {
+            Object result = method.invoke(connection, args);
+            if (method.getName().equals("prepareStatement")) {
+                prepares.incrementAndGet();
+                PreparedStatement statement = (PreparedStatement) result;
+                boolean update = ((String) args[0]).startsWith("UPDATE");
+                return proxy(PreparedStatement.class, statement, (m, a) -> {
+                    String name = m.getName();
+                    if (name.startsWith("execute")) {
+                        failIfDown();
+                        if (update && failingUpdates) {
+                            throw new SQLException("update failed");
+                        }
+                        if (update && updateDelayMillis > 0) {
+                            Thread.sleep(updateDelayMillis);
+                        }
+                        executions.incrementAndGet();
+                        if (name.equals("executeBatch")) {
+                            batches.incrementAndGet();
+                        }
+                        if (name.equals("executeQuery") && queryDelayMillis > 0) {
+                            Thread.sleep(queryDelayMillis);
+                        }
+                    }
+                    return m.invoke(statement, a);
+                });
+            }
+            return result;
+        }
+
+        private void failIfDown() throws SQLException {
+            if (failing) {
+                throw new SQLException("database down");
+            }
+        }
+
+        private interface Call {
+            Object invoke(java.lang.reflect.Method method, Object[] args) throws Exception;
+        }
+
+        private static <T> T proxy(Class<T> type, Object target, Call call) {
+            InvocationHandler handler = (p, method, args) -> {
+                try {
+                    return call.invoke(method, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            };
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+    }
+}
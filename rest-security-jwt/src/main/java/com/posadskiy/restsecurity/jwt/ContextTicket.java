@@ -0,0 +1,21 @@
+package com.posadskiy.restsecurity.jwt;
+
+import java.util.Set;
+
+/**
+ * Verified content of a context ticket issued by {@link ContextTicketCodec}.
+ *
+ * @param userId          authenticated user identifier
+ * @param roles           user's roles
+ * @param expiresAtMillis expiry, epoch millis (second precision)
+ */
+public record ContextTicket(String userId, Set<String> roles, long expiresAtMillis) {
+
+    public ContextTicket {
+        roles = roles != null ? Set.copyOf(roles) : Set.of();
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return expiresAtMillis <= nowMillis;
+    }
+}
@@ -0,0 +1,141 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.posadskiy.restsecurity.context.SecurityContext;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Compact signed "context ticket" for service-to-service propagation of a verified {@link SecurityContext}.
+ * Cheaper to issue and verify than a JWT: no JSON, roles as a bitmask against a shared {@link RoleTable},
+ * and a truncated HMAC-SHA256.
+ *
+ * <p>Binary layout (big-endian), then base64url without padding:
+ * <pre>
+ * offset 0   version           1 byte
+ * offset 1   expires at        4 bytes, epoch seconds (unsigned)
+ * offset 5   roles mask        8 bytes
+ * offset 13  user id length    1 byte
+ * offset 14  user id           UTF-8, up to 255 bytes
+ * then       MAC               16 bytes, HMAC-SHA256 of everything before it
+ * </pre>
+ * Gateway and downstream services share the secret and the role table.
+ */
+public final class ContextTicketCodec {
+
+    static final byte VERSION = 1;
+    static final int MAC_LENGTH = 16;
+    private static final int HEADER_LENGTH = 14;
+    private static final int MAX_USER_ID_BYTES = 255;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final HmacSigner signer;
+    private final RoleTable roleTable;
+    private final long ttlSeconds;
+
+    /**
+     * @param secret    shared HMAC secret (at least 32 bytes recommended)
+     * @param roleTable shared role table
+     * @param ttl       lifetime of issued tickets; keep short (seconds to minutes)
+     */
+    public ContextTicketCodec(byte[] secret, RoleTable roleTable, Duration ttl) {
+        if (secret == null || secret.length == 0) {
+            throw new IllegalArgumentException("ContextTicketCodec: secret must be non-empty");
+        }
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ContextTicketCodec: ttl must be positive");
+        }
+        this.signer = new HmacSigner("HmacSHA256", secret);
+        this.roleTable = roleTable;
+        this.ttlSeconds = Math.max(1, ttl.toSeconds());
+    }
+
+    public ContextTicketCodec(String secret, RoleTable roleTable, Duration ttl) {
+        this(secret != null ? secret.getBytes(StandardCharsets.UTF_8) : null, roleTable, ttl);
+    }
+
+    public RoleTable roleTable() {
+        return roleTable;
+    }
+
+    /**
+     * Issue a ticket for the given context, expiring after the configured ttl.
+     *
+     * @throws IllegalArgumentException if the user id is longer than 255 UTF-8 bytes or a role is not in the table
+     */
+    public String issue(SecurityContext context) {
+        return issue(context.userId(), context.roles().isEmpty() ? 0L : roleTable.toMask(context.roles()),
+                System.currentTimeMillis() / 1000 + ttlSeconds);
+    }
+
+    String issue(String userId, long rolesMask, long expiresAtSeconds) {
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        if (user.length > MAX_USER_ID_BYTES) {
+            throw new IllegalArgumentException("ContextTicketCodec: user id longer than " + MAX_USER_ID_BYTES + " bytes");
+        }
+        int bodyLength = HEADER_LENGTH + user.length;
+        byte[] buf = new byte[bodyLength + MAC_LENGTH];
+        buf[0] = VERSION;
+        putInt(buf, 1, (int) expiresAtSeconds);
+        putLong(buf, 5, rolesMask);
+        buf[13] = (byte) user.length;
+        System.arraycopy(user, 0, buf, HEADER_LENGTH, user.length);
+        byte[] mac = signer.sign(buf, 0, bodyLength);
+        System.arraycopy(mac, 0, buf, bodyLength, MAC_LENGTH);
+        return ENCODER.encodeToString(buf);
+    }
+
+    /**
+     * Verify a ticket. Expired tickets are returned; check {@link ContextTicket#isExpired(long)}.
+     *
+     * @return ticket content, or null if malformed or the MAC does not match
+     */
+    public ContextTicket parse(String ticket) {
+        if (ticket == null || ticket.isEmpty()) {
+            return null;
+        }
+        byte[] buf;
+        try {
+            buf = DECODER.decode(ticket);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (buf.length < HEADER_LENGTH + MAC_LENGTH || buf[0] != VERSION) {
+            return null;
+        }
+        int userLength = buf[13] & 0xFF;
+        int bodyLength = HEADER_LENGTH + userLength;
+        if (buf.length != bodyLength + MAC_LENGTH
+                || !signer.verify(buf, 0, bodyLength, buf, bodyLength, MAC_LENGTH)) {
+            return null;
+        }
+        long expiresAtSeconds = getInt(buf, 1) & 0xFFFFFFFFL;
+        long rolesMask = getLong(buf, 5);
+        String userId = new String(buf, HEADER_LENGTH, userLength, StandardCharsets.UTF_8);
+        return new ContextTicket(userId, roleTable.toRoles(rolesMask), expiresAtSeconds * 1000L);
+    }
+
+    /** Big-endian byte helpers, shared with {@link TicketSessionSecurityController}. */
+    static void putInt(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) (value >>> 24);
+        buf[offset + 1] = (byte) (value >>> 16);
+        buf[offset + 2] = (byte) (value >>> 8);
+        buf[offset + 3] = (byte) value;
+    }
+
+    static void putLong(byte[] buf, int offset, long value) {
+        putInt(buf, offset, (int) (value >>> 32));
+        putInt(buf, offset + 4, (int) value);
+    }
+
+    static int getInt(byte[] buf, int offset) {
+        return (buf[offset] & 0xFF) << 24 | (buf[offset + 1] & 0xFF) << 16
+                | (buf[offset + 2] & 0xFF) << 8 | buf[offset + 3] & 0xFF;
+    }
+
+    static long getLong(byte[] buf, int offset) {
+        return (long) getInt(buf, offset) << 32 | getInt(buf, offset + 4) & 0xFFFFFFFFL;
+    }
+}
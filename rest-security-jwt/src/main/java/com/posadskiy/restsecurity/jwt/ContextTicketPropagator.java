@@ -0,0 +1,51 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.posadskiy.restsecurity.context.SecurityContext;
+import com.posadskiy.restsecurity.context.SecurityContextHolder;
+
+import java.net.http.HttpRequest;
+
+/**
+ * Attaches a context ticket to outbound {@link java.net.http} requests so downstream services
+ * receive the caller's verified context.
+ *
+ * <pre>
+ * HttpRequest request = propagator.attachCurrent(HttpRequest.newBuilder(uri)).GET().build();
+ * </pre>
+ * Downstream, read {@link #HEADER} and pass it as the session id to a {@link ContextTicketSecurityController}.
+ */
+public final class ContextTicketPropagator {
+
+    /** Default request header carrying the ticket. */
+    public static final String HEADER = "X-Context-Ticket";
+
+    private final ContextTicketCodec codec;
+    private final String header;
+
+    public ContextTicketPropagator(ContextTicketCodec codec) {
+        this(codec, HEADER);
+    }
+
+    public ContextTicketPropagator(ContextTicketCodec codec, String header) {
+        this.codec = codec;
+        this.header = header;
+    }
+
+    /** Set the ticket header for {@code context}. */
+    public HttpRequest.Builder attach(HttpRequest.Builder builder, SecurityContext context) {
+        return builder.setHeader(header, codec.issue(context));
+    }
+
+    /**
+     * Set the ticket header for the context in {@link SecurityContextHolder}.
+     *
+     * @throws IllegalStateException when called outside a secured call
+     */
+    public HttpRequest.Builder attachCurrent(HttpRequest.Builder builder) {
+        SecurityContext context = SecurityContextHolder.getContext();
+        if (context == null) {
+            throw new IllegalStateException("ContextTicketPropagator: no SecurityContext on this thread");
+        }
+        return attach(builder, context);
+    }
+}
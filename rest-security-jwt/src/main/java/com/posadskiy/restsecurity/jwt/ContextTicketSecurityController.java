@@ -0,0 +1,75 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implements both {@link SessionSecurityController} and {@link UserSecurityController}
+ * from context tickets issued by {@link ContextTicketCodec}. The "session" is the ticket itself.
+ * Use in downstream services instead of re-parsing the caller's JWT (or trusting it unverified).
+ *
+ * <p>The roles come from the ticket parsed earlier in the same enforcement on the same thread
+ * ({@link EnforcementMemo}); outside an enforcement, or for another user, there are none. Pass this
+ * controller to the {@link com.posadskiy.restsecurity.enforcer.SecurityEnforcer} as both sides and do not
+ * wrap it in a decorator that caches, shares or moves its calls to other threads.
+ */
+public final class ContextTicketSecurityController implements SessionSecurityController, UserSecurityController {
+
+    private final ContextTicketCodec codec;
+    private final EnforcementMemo<ContextTicket> lastTicket = new EnforcementMemo<>();
+    /** Roles of the ticket parsed in the current enforcement, by its user. */
+    private final EnforcementMemo<Set<String>> lastRoles = new EnforcementMemo<>();
+
+    public ContextTicketSecurityController(ContextTicketCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public boolean isSessionExist(String ticket) {
+        return parse(ticket) != null;
+    }
+
+    @Override
+    public boolean isSessionExpired(String ticket) {
+        ContextTicket parsed = parse(ticket);
+        return parsed == null || parsed.isExpired(System.currentTimeMillis());
+    }
+
+    @Override
+    public String getUserIdBySessionId(String ticket) {
+        ContextTicket parsed = parse(ticket);
+        return parsed != null ? parsed.userId() : null;
+    }
+
+    @Override
+    public boolean isUserExist(String userId) {
+        return userId != null && !userId.isBlank();
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        return List.copyOf(getUserRolesSet(userId));
+    }
+
+    /** Roles of the ticket resolved to {@code userId} earlier in the current enforcement. */
+    @Override
+    public Set<String> getUserRolesSet(String userId) {
+        return userId != null ? lastRoles.get(userId, id -> Set.of()) : Set.of();
+    }
+
+    private ContextTicket parse(String ticket) {
+        return ticket != null ? lastTicket.get(ticket, this::load) : null;
+    }
+
+    private ContextTicket load(String ticket) {
+        ContextTicket content = codec.parse(ticket);
+        if (content != null) {
+            lastRoles.put(content.userId(), content.roles());
+        }
+        return content;
+    }
+}
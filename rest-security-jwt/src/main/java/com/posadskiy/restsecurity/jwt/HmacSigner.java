@@ -0,0 +1,57 @@
+package com.posadskiy.restsecurity.jwt;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * HMAC with a keyed {@link Mac} per thread. {@code Mac} is not thread-safe and looking it up and
+ * initializing it costs more than signing a short message, so each thread keys one instance once.
+ */
+final class HmacSigner {
+
+    private final SecretKeySpec key;
+    private final int macLength;
+    private final ThreadLocal<Mac> macs;
+
+    HmacSigner(String algorithm, byte[] key) {
+        this.key = new SecretKeySpec(key, algorithm);
+        this.macLength = newMac().getMacLength();
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /** Length in bytes of a full (untruncated) signature. */
+    int macLength() {
+        return macLength;
+    }
+
+    /** Full signature of {@code data[offset, offset + length)}. */
+    byte[] sign(byte[] data, int offset, int length) {
+        Mac mac = macs.get();
+        mac.update(data, offset, length);
+        return mac.doFinal();
+    }
+
+    /**
+     * Constant-time check that {@code signature[sigOffset, sigOffset + sigLength)} equals the first
+     * {@code sigLength} bytes of the signature of {@code data[offset, offset + length)}.
+     */
+    boolean verify(byte[] data, int offset, int length, byte[] signature, int sigOffset, int sigLength) {
+        byte[] expected = sign(data, offset, length);
+        int diff = 0;
+        for (int i = 0; i < sigLength; i++) {
+            diff |= expected[i] ^ signature[sigOffset + i];
+        }
+        return diff == 0;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(key.getAlgorithm());
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("HmacSigner: cannot initialize " + key.getAlgorithm(), e);
+        }
+    }
+}
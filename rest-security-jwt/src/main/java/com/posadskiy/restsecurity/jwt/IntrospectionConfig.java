@@ -0,0 +1,49 @@
+package com.posadskiy.restsecurity.jwt;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Configuration for RFC 7662 token introspection.
+ *
+ * @param endpoint         introspection endpoint
+ * @param clientId         client id for HTTP Basic authentication (null to send no credentials)
+ * @param clientSecret     client secret for HTTP Basic authentication
+ * @param rolesClaim       response member holding roles (array or space-separated string); default "roles"
+ * @param userIdClaim      response member holding the user ID; default "sub"
+ * @param maxPositiveTtl   upper bound for caching active tokens (they are cached until {@code exp}); default 5 minutes
+ * @param negativeTtl      how long inactive tokens are cached; default 10 seconds
+ * @param requestTimeout   per-request timeout; default 5 seconds
+ * @param maxCacheEntries  cache size bound; default 100 000
+ */
+public record IntrospectionConfig(
+        URI endpoint,
+        String clientId,
+        String clientSecret,
+        String rolesClaim,
+        String userIdClaim,
+        Duration maxPositiveTtl,
+        Duration negativeTtl,
+        Duration requestTimeout,
+        int maxCacheEntries
+) {
+
+    public IntrospectionConfig {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("IntrospectionConfig: endpoint is required");
+        }
+        rolesClaim = rolesClaim != null && !rolesClaim.isBlank() ? rolesClaim : "roles";
+        userIdClaim = userIdClaim != null && !userIdClaim.isBlank() ? userIdClaim : "sub";
+        maxPositiveTtl = maxPositiveTtl != null ? maxPositiveTtl : Duration.ofMinutes(5);
+        negativeTtl = negativeTtl != null ? negativeTtl : Duration.ofSeconds(10);
+        requestTimeout = requestTimeout != null ? requestTimeout : Duration.ofSeconds(5);
+        maxCacheEntries = maxCacheEntries > 0 ? maxCacheEntries : 100_000;
+    }
+
+    /**
+     * Endpoint with client credentials and default claim names, cache and timeouts.
+     */
+    public static IntrospectionConfig of(URI endpoint, String clientId, String clientSecret) {
+        return new IntrospectionConfig(endpoint, clientId, clientSecret, null, null, null, null, null, 0);
+    }
+}
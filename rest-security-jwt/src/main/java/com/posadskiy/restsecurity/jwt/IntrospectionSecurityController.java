@@ -0,0 +1,230 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements both {@link SessionSecurityController} and {@link UserSecurityController} for opaque tokens,
+ * checked against an RFC 7662 introspection endpoint. The "session" is the token itself.
+ *
+ * <p>Active tokens are cached until their {@code exp} (bounded by {@link IntrospectionConfig#maxPositiveTtl()}),
+ * inactive tokens for {@link IntrospectionConfig#negativeTtl()}. Concurrent lookups of the same uncached token
+ * share one introspection call. Requests go through one {@link HttpClient} preferring HTTP/2, which keeps
+ * pooled connections to the endpoint. Endpoint failures are not cached and are treated as inactive.
+ * The roles lookup answers from the token that the user lookup of the same enforcement resolved
+ * ({@link EnforcementMemo}), so use this controller as both sides of the enforcer and do not wrap it.
+ */
+public final class IntrospectionSecurityController implements SessionSecurityController, UserSecurityController {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Introspection INACTIVE = new Introspection(false, null, List.of(), Long.MAX_VALUE);
+
+    private final IntrospectionConfig config;
+    private final HttpClient httpClient;
+    private final String authorization;
+    private final Map<String, CachedIntrospection> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Introspection>> inFlight = new ConcurrentHashMap<>();
+    /** Roles of the token resolved to a user in the current enforcement, by that user. */
+    private final EnforcementMemo<List<String>> lastRoles = new EnforcementMemo<>();
+
+    public IntrospectionSecurityController(IntrospectionConfig config) {
+        this(config, HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(config.requestTimeout())
+                .build());
+    }
+
+    /**
+     * Use a caller-configured client (proxy, TLS, executor). Share one client per endpoint so connections are pooled.
+     */
+    public IntrospectionSecurityController(IntrospectionConfig config, HttpClient httpClient) {
+        this.config = config;
+        this.httpClient = httpClient;
+        this.authorization = config.clientId() == null ? null : "Basic " + Base64.getEncoder().encodeToString(
+                (formEncode(config.clientId()) + ":" + formEncode(config.clientSecret() != null ? config.clientSecret() : ""))
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean isSessionExist(String token) {
+        return introspect(token).active();
+    }
+
+    @Override
+    public boolean isSessionExpired(String token) {
+        Introspection result = introspect(token);
+        return !result.active() || result.expiresAtMillis() <= System.currentTimeMillis();
+    }
+
+    @Override
+    public String getUserIdBySessionId(String token) {
+        Introspection result = introspect(token);
+        if (!result.active() || result.userId() == null) {
+            return null;
+        }
+        lastRoles.put(result.userId(), result.roles());
+        return result.userId();
+    }
+
+    @Override
+    public boolean isUserExist(String userId) {
+        return userId != null && !userId.isBlank();
+    }
+
+    /** Roles of the token resolved to {@code userId} earlier in the current enforcement. */
+    @Override
+    public List<String> getUserRoles(String userId) {
+        return userId != null ? lastRoles.get(userId, id -> Collections.emptyList()) : Collections.emptyList();
+    }
+
+    /** Number of cached introspection results. */
+    public int cacheSize() {
+        return cache.size();
+    }
+
+    private Introspection introspect(String token) {
+        if (token == null || token.isBlank()) {
+            return INACTIVE;
+        }
+        long now = System.currentTimeMillis();
+        CachedIntrospection cached = cache.get(token);
+        if (cached != null && cached.validUntilMillis > now) {
+            return cached.result;
+        }
+
+        CompletableFuture<Introspection> call = new CompletableFuture<>();
+        CompletableFuture<Introspection> leader = inFlight.putIfAbsent(token, call);
+        if (leader != null) {
+            return await(leader);
+        }
+        try {
+            cached = cache.get(token);
+            if (cached != null && cached.validUntilMillis > System.currentTimeMillis()) {
+                call.complete(cached.result);
+                return cached.result;
+            }
+            Introspection result = callEndpoint(token);
+            if (result != null) {
+                cacheResult(token, result, System.currentTimeMillis());
+            }
+            call.complete(result != null ? result : INACTIVE);
+        } catch (RuntimeException e) {
+            call.complete(INACTIVE);
+        } finally {
+            inFlight.remove(token, call);
+        }
+        return call.join();
+    }
+
+    private Introspection await(CompletableFuture<Introspection> leader) {
+        try {
+            return leader.get(config.requestTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return INACTIVE;
+        } catch (Exception e) {
+            return INACTIVE;
+        }
+    }
+
+    /** @return parsed result, or null when the endpoint could not be reached or answered with an error */
+    private Introspection callEndpoint(String token) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(config.endpoint())
+                .timeout(config.requestTimeout())
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "token=" + formEncode(token) + "&token_type_hint=access_token"));
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                return null;
+            }
+            return parseResponse(response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Introspection parseResponse(byte[] body) throws java.io.IOException {
+        Map<String, Object> map = OBJECT_MAPPER.readValue(body, Map.class);
+        if (!Boolean.TRUE.equals(map.get("active"))) {
+            return INACTIVE;
+        }
+        Object user = map.get(config.userIdClaim());
+        long expiresAt = map.get("exp") instanceof Number n ? n.longValue() * 1000L : Long.MAX_VALUE;
+        return new Introspection(true, user != null ? user.toString() : null, toRolesList(map.get(config.rolesClaim())), expiresAt);
+    }
+
+    private void cacheResult(String token, Introspection result, long now) {
+        long ttl = result.active()
+                ? Math.min(result.expiresAtMillis() - now, config.maxPositiveTtl().toMillis())
+                : config.negativeTtl().toMillis();
+        if (ttl <= 0) {
+            return;
+        }
+        if (cache.size() >= config.maxCacheEntries()) {
+            evict(now);
+        }
+        cache.put(token, new CachedIntrospection(result, now + ttl));
+    }
+
+    /** Drop expired entries; if the cache is still full, drop an arbitrary tenth of it. */
+    private void evict(long now) {
+        cache.values().removeIf(entry -> entry.validUntilMillis <= now);
+        int excess = cache.size() - config.maxCacheEntries() + Math.max(1, config.maxCacheEntries() / 10);
+        Iterator<String> keys = cache.keySet().iterator();
+        while (excess-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static List<String> toRolesList(Object rolesObj) {
+        if (rolesObj instanceof List<?> list) {
+            List<String> out = new ArrayList<>(list.size());
+            for (Object o : list) {
+                if (o != null) {
+                    out.add(o.toString());
+                }
+            }
+            return List.copyOf(out);
+        }
+        if (rolesObj instanceof String s && !s.isBlank()) {
+            return List.of(s.trim().split("\\s+"));
+        }
+        return List.of();
+    }
+
+    private static String formEncode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private record Introspection(boolean active, String userId, List<String> roles, long expiresAtMillis) {}
+
+    private record CachedIntrospection(Introspection result, long validUntilMillis) {}
+}
@@ -0,0 +1,90 @@
+package com.posadskiy.restsecurity.jwt;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers token ids ({@code jti}) until their token expires.
+ * Ids are grouped into buckets by expiry time; a ring of buckets covers the replay window and a bucket
+ * is dropped as a whole once its expiry range has passed, so there is no per-entry expiry work.
+ * Inserts go to a concurrent set, so they scale across cores.
+ */
+final class JtiReplayGuard {
+
+    private static final int BUCKETS_PER_WINDOW = 16;
+
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final AtomicReferenceArray<Bucket> ring;
+
+    JtiReplayGuard(Duration window) {
+        this.windowMillis = window.toMillis();
+        this.bucketMillis = Math.max(1_000L, (windowMillis + BUCKETS_PER_WINDOW - 1) / BUCKETS_PER_WINDOW);
+        // Two spare slots: the bucket being drained by the clock and the partially covered last one.
+        this.ring = new AtomicReferenceArray<>((int) ((windowMillis + bucketMillis - 1) / bucketMillis) + 2);
+    }
+
+    /**
+     * Record a token id.
+     *
+     * @param jti              token id (null is never accepted)
+     * @param expiresAtMillis  token expiry, epoch millis
+     * @param nowMillis        current time, epoch millis
+     * @return true on first use; false on replay, or when the token cannot be tracked
+     *         (no id, already expired, or expiring beyond the replay window)
+     */
+    boolean firstUse(String jti, long expiresAtMillis, long nowMillis) {
+        if (jti == null || expiresAtMillis <= nowMillis || expiresAtMillis - nowMillis > windowMillis) {
+            return false;
+        }
+        long index = expiresAtMillis / bucketMillis;
+        int slot = (int) (index % ring.length());
+        Bucket bucket = ring.get(slot);
+        while (bucket == null || bucket.index != index) {
+            if (bucket != null && bucket.index > index) {
+                // Slot already reused for a later range: this token's range has aged out.
+                return false;
+            }
+            Bucket fresh = new Bucket(index);
+            if (ring.compareAndSet(slot, bucket, fresh)) {
+                dropAged(nowMillis / bucketMillis);
+                bucket = fresh;
+                break;
+            }
+            bucket = ring.get(slot);
+        }
+        return bucket.jtis.add(jti);
+    }
+
+    /** Number of ids currently remembered. */
+    int size() {
+        int total = 0;
+        for (int i = 0; i < ring.length(); i++) {
+            Bucket bucket = ring.get(i);
+            if (bucket != null) {
+                total += bucket.jtis.size();
+            }
+        }
+        return total;
+    }
+
+    private void dropAged(long currentIndex) {
+        for (int i = 0; i < ring.length(); i++) {
+            Bucket bucket = ring.get(i);
+            if (bucket != null && bucket.index < currentIndex) {
+                ring.compareAndSet(i, bucket, null);
+            }
+        }
+    }
+
+    private static final class Bucket {
+        final long index;
+        final Set<String> jtis = ConcurrentHashMap.newKeySet();
+
+        Bucket(long index) {
+            this.index = index;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.posadskiy.restsecurity.jwt;
 
+import java.time.Duration;
+
 /**
  * Configuration for JWT-based security.
  *
@@ -7,12 +9,15 @@ package com.posadskiy.restsecurity.jwt;
  * @param rolesClaim    JWT claim name for roles (e.g. "roles", "authorities"); default "roles"
  * @param userIdClaim   JWT claim name for user ID; default "sub"
  * @param trustGateway  if true, skip signature verification (gateway already verified the token)
+ * @param replayWindow  optional; when set, each {@code jti} is accepted once and tokens must carry
+ *                      {@code jti} and {@code exp} no further than this window in the future
  */
 public record JwtConfig(
         String secret,
         String rolesClaim,
         String userIdClaim,
-        boolean trustGateway
+        boolean trustGateway,
+        Duration replayWindow
 ) {
 
     public JwtConfig {
@@ -21,6 +26,16 @@ public record JwtConfig(
         if (!trustGateway && (secret == null || secret.isBlank())) {
             throw new IllegalArgumentException("JwtConfig: secret must be non-blank when trustGateway is false");
         }
+        if (replayWindow != null && (replayWindow.isNegative() || replayWindow.isZero())) {
+            throw new IllegalArgumentException("JwtConfig: replayWindow must be positive");
+        }
+    }
+
+    /**
+     * Configuration without replay protection.
+     */
+    public JwtConfig(String secret, String rolesClaim, String userIdClaim, boolean trustGateway) {
+        this(secret, rolesClaim, userIdClaim, trustGateway, null);
     }
 
     /**
@@ -36,4 +51,17 @@ public record JwtConfig(
     public static JwtConfig withSecretTrustGateway(String secret) {
         return new JwtConfig(secret, "roles", "sub", true);
     }
+
+    /**
+     * Copy of this configuration that rejects a {@code jti} seen before within {@code window}.
+     * Intended for one-time and short-lived tokens.
+     */
+    public JwtConfig withReplayProtection(Duration window) {
+        return new JwtConfig(secret, rolesClaim, userIdClaim, trustGateway, window);
+    }
+
+    /** True when {@link #replayWindow()} is set. */
+    public boolean replayProtection() {
+        return replayWindow != null;
+    }
 }
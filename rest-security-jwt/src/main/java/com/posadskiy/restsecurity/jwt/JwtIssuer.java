@@ -0,0 +1,240 @@
+package com.posadskiy.restsecurity.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues HMAC-signed JWTs that {@link JwtSecurityController} accepts with the same {@link JwtConfig}.
+ * Built for login-heavy services: the header segment is encoded once, serialized role arrays are cached
+ * per distinct role set, the payload is written into a per-thread reusable buffer, and signing uses a
+ * per-thread keyed {@code Mac}. Thread-safe; create one per secret and share it.
+ *
+ * <p>Like {@code Jwts.builder().signWith(key)}, the algorithm follows the key length:
+ * HS512 for secrets of 64+ bytes, HS384 for 48+, HS256 for 32+.
+ */
+public final class JwtIssuer {
+
+    private static final int MAX_CACHED_ROLE_SETS = 1024;
+    private static final byte[] BASE64URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final HmacSigner signer;
+    private final byte[] encodedHeader;
+    private final byte[] subjectPrefix;
+    private final byte[] rolesPrefix;
+    private final Map<Collection<String>, byte[]> rolesJson = new ConcurrentHashMap<>();
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * @param config uses {@link JwtConfig#secret()}, {@link JwtConfig#userIdClaim()} and {@link JwtConfig#rolesClaim()}
+     * @throws IllegalArgumentException if the secret is shorter than 32 bytes
+     */
+    public JwtIssuer(JwtConfig config) {
+        byte[] key = config.secret() != null ? config.secret().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        String algorithm;
+        if (key.length >= 64) {
+            algorithm = "HS512";
+        } else if (key.length >= 48) {
+            algorithm = "HS384";
+        } else if (key.length >= 32) {
+            algorithm = "HS256";
+        } else {
+            throw new IllegalArgumentException("JwtIssuer: secret must be at least 32 bytes (256 bits)");
+        }
+        this.signer = new HmacSigner("HmacSHA" + algorithm.substring(2), key);
+        this.encodedHeader = Base64.getUrlEncoder().withoutPadding().encode(
+                ("{\"alg\":\"" + algorithm + "\",\"typ\":\"JWT\"}").getBytes(StandardCharsets.UTF_8));
+        this.subjectPrefix = ("{" + jsonString(config.userIdClaim()) + ":").getBytes(StandardCharsets.UTF_8);
+        this.rolesPrefix = ("," + jsonString(config.rolesClaim()) + ":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Issue a token with user id, roles, {@code iat} and {@code exp}.
+     */
+    public String issue(String userId, Collection<String> roles, Duration validity) {
+        return issue(userId, roles, validity, null);
+    }
+
+    /**
+     * Issue a token with user id, roles, {@code iat}, {@code exp} and, when non-null, {@code jti}
+     * (required by {@link JwtConfig#withReplayProtection}).
+     */
+    public String issue(String userId, Collection<String> roles, Duration validity, String jti) {
+        if (userId == null) {
+            throw new IllegalArgumentException("JwtIssuer: userId is required");
+        }
+        long now = System.currentTimeMillis() / 1000;
+        Buffers b = buffers.get();
+
+        ByteSink payload = b.payload.reset();
+        payload.write(subjectPrefix);
+        payload.writeJsonString(userId);
+        payload.write(rolesPrefix);
+        payload.write(rolesJson(roles != null ? roles : List.of()));
+        payload.writeAscii(",\"iat\":");
+        payload.writeLong(now);
+        payload.writeAscii(",\"exp\":");
+        payload.writeLong(now + validity.toSeconds());
+        if (jti != null) {
+            payload.writeAscii(",\"jti\":");
+            payload.writeJsonString(jti);
+        }
+        payload.write((byte) '}');
+
+        ByteSink token = b.token.reset();
+        token.write(encodedHeader);
+        token.write((byte) '.');
+        token.writeBase64Url(payload.bytes, 0, payload.length);
+        byte[] signature = signer.sign(token.bytes, 0, token.length);
+        token.write((byte) '.');
+        token.writeBase64Url(signature, 0, signature.length);
+        return new String(token.bytes, 0, token.length, StandardCharsets.ISO_8859_1);
+    }
+
+    private byte[] rolesJson(Collection<String> roles) {
+        byte[] cached = rolesJson.get(roles);
+        if (cached != null) {
+            return cached;
+        }
+        ByteSink sink = new ByteSink(64);
+        sink.write((byte) '[');
+        Collection<String> key = roles instanceof Set<?> ? Set.copyOf(roles) : List.copyOf(roles);
+        boolean first = true;
+        for (String role : key) {
+            if (!first) {
+                sink.write((byte) ',');
+            }
+            sink.writeJsonString(role);
+            first = false;
+        }
+        sink.write((byte) ']');
+        byte[] json = sink.toByteArray();
+        if (rolesJson.size() < MAX_CACHED_ROLE_SETS) {
+            rolesJson.putIfAbsent(key, json);
+        }
+        return json;
+    }
+
+    private static String jsonString(String value) {
+        ByteSink sink = new ByteSink(value.length() + 2);
+        sink.writeJsonString(value);
+        return new String(sink.bytes, 0, sink.length, StandardCharsets.UTF_8);
+    }
+
+    private static final class Buffers {
+        final ByteSink payload = new ByteSink(256);
+        final ByteSink token = new ByteSink(512);
+    }
+
+    /** Growable byte buffer with the few encoders a JWT needs. */
+    private static final class ByteSink {
+        byte[] bytes;
+        int length;
+
+        ByteSink(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        ByteSink reset() {
+            length = 0;
+            return this;
+        }
+
+        byte[] toByteArray() {
+            byte[] out = new byte[length];
+            System.arraycopy(bytes, 0, out, 0, length);
+            return out;
+        }
+
+        void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+
+        void write(byte b) {
+            ensure(1);
+            bytes[length++] = b;
+        }
+
+        void write(byte[] src) {
+            ensure(src.length);
+            System.arraycopy(src, 0, bytes, length, src.length);
+            length += src.length;
+        }
+
+        void writeAscii(String s) {
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                bytes[length++] = (byte) s.charAt(i);
+            }
+        }
+
+        void writeLong(long value) {
+            writeAscii(Long.toString(value));
+        }
+
+        void writeJsonString(String s) {
+            ensure(s.length() + 2);
+            bytes[length++] = '"';
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    write((byte) '\\');
+                    write((byte) c);
+                } else if (c < 0x20) {
+                    ensure(6);
+                    bytes[length++] = '\\';
+                    bytes[length++] = 'u';
+                    bytes[length++] = '0';
+                    bytes[length++] = '0';
+                    bytes[length++] = HEX[c >> 4];
+                    bytes[length++] = HEX[c & 0xF];
+                } else if (c < 0x80) {
+                    write((byte) c);
+                } else {
+                    int end = i + 1;
+                    if (Character.isHighSurrogate(c) && end < s.length()) {
+                        end++;
+                    }
+                    write(s.substring(i, end).getBytes(StandardCharsets.UTF_8));
+                    i = end - 1;
+                }
+            }
+            write((byte) '"');
+        }
+
+        void writeBase64Url(byte[] src, int offset, int len) {
+            ensure((len + 2) / 3 * 4);
+            int end = offset + len - len % 3;
+            int i = offset;
+            while (i < end) {
+                int bits = (src[i++] & 0xFF) << 16 | (src[i++] & 0xFF) << 8 | src[i++] & 0xFF;
+                bytes[length++] = BASE64URL[bits >>> 18 & 0x3F];
+                bytes[length++] = BASE64URL[bits >>> 12 & 0x3F];
+                bytes[length++] = BASE64URL[bits >>> 6 & 0x3F];
+                bytes[length++] = BASE64URL[bits & 0x3F];
+            }
+            int rest = offset + len - end;
+            if (rest == 1) {
+                int bits = (src[i] & 0xFF) << 16;
+                bytes[length++] = BASE64URL[bits >>> 18 & 0x3F];
+                bytes[length++] = BASE64URL[bits >>> 12 & 0x3F];
+            } else if (rest == 2) {
+                int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8;
+                bytes[length++] = BASE64URL[bits >>> 18 & 0x3F];
+                bytes[length++] = BASE64URL[bits >>> 12 & 0x3F];
+                bytes[length++] = BASE64URL[bits >>> 6 & 0x3F];
+            }
+        }
+    }
+}
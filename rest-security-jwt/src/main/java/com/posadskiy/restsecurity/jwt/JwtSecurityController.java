@@ -6,6 +6,7 @@ import com.posadskiy.restsecurity.controller.UserSecurityController;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 
@@ -13,9 +14,13 @@ import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Implements both {@link SessionSecurityController} and {@link UserSecurityController}
@@ -28,6 +33,9 @@ public final class JwtSecurityController implements SessionSecurityController, U
 
     private final JwtConfig config;
     private final SecretKey secretKey;
+    /** Immutable and thread-safe; built once instead of per token. */
+    private final JwtParser parser;
+    private final JtiReplayGuard replayGuard;
     /** Single-slot cache: last token string and its parsed result, to avoid ThreadLocal lifecycle issues. */
     private volatile String lastTokenKey;
     private volatile ParsedToken lastParsedToken;
@@ -41,11 +49,31 @@ public final class JwtSecurityController implements SessionSecurityController, U
         } else {
             this.secretKey = null;
         }
+        this.parser = secretKey != null ? Jwts.parser().verifyWith(secretKey).build() : null;
+        this.replayGuard = config.replayProtection() ? new JtiReplayGuard(config.replayWindow()) : null;
     }
 
+    /**
+     * With replay protection enabled, the first successful call for a token consumes its {@code jti};
+     * later calls for the same token return false until it expires.
+     */
     @Override
     public boolean isSessionExist(String token) {
-        return parseToken(token) != null;
+        ParsedToken parsed = parseToken(token);
+        if (parsed == null) {
+            return false;
+        }
+        if (replayGuard == null || parsed.expired) {
+            return true;
+        }
+        return parsed.expiresAtMillis != null
+                && replayGuard.firstUse(parsed.jti, parsed.expiresAtMillis, System.currentTimeMillis());
+    }
+
+    /** True with replay protection: each check may consume a {@code jti}. */
+    @Override
+    public boolean isSessionCheckConsuming() {
+        return replayGuard != null;
     }
 
     @Override
@@ -81,6 +109,70 @@ public final class JwtSecurityController implements SessionSecurityController, U
         return Collections.emptyList();
     }
 
+    /**
+     * Verify a batch of tokens on the {@link ForkJoinPool#commonPool()}.
+     *
+     * @see #verifyAll(List, Executor)
+     */
+    public List<JwtVerification> verifyAll(List<String> tokens) {
+        return verifyAll(tokens, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Verify a batch of tokens, spreading signature verification across {@code executor}.
+     * Identical tokens are verified once. Results are returned in input order.
+     * Replay protection is not applied: verification does not consume a {@code jti}.
+     *
+     * @param tokens   tokens to verify (null or blank entries yield an invalid result)
+     * @param executor executor that runs verification chunks
+     * @return one result per input token, in input order
+     */
+    public List<JwtVerification> verifyAll(List<String> tokens, Executor executor) {
+        Map<String, Integer> slots = new HashMap<>();
+        List<String> distinct = new ArrayList<>();
+        for (String token : tokens) {
+            if (slots.putIfAbsent(token, distinct.size()) == null) {
+                distinct.add(token);
+            }
+        }
+
+        JwtVerification[] verified = new JwtVerification[distinct.size()];
+        int chunks = Math.min(distinct.size(), Runtime.getRuntime().availableProcessors() * 4);
+        if (chunks <= 1) {
+            verifyRange(distinct, verified, 0, distinct.size());
+        } else {
+            int chunkSize = (distinct.size() + chunks - 1) / chunks;
+            List<CompletableFuture<Void>> futures = new ArrayList<>(chunks);
+            for (int from = 0; from < distinct.size(); from += chunkSize) {
+                int start = from;
+                int end = Math.min(distinct.size(), from + chunkSize);
+                futures.add(CompletableFuture.runAsync(() -> verifyRange(distinct, verified, start, end), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        List<JwtVerification> results = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            results.add(verified[slots.get(token)]);
+        }
+        return results;
+    }
+
+    private void verifyRange(List<String> distinct, JwtVerification[] verified, int start, int end) {
+        for (int i = start; i < end; i++) {
+            String token = distinct.get(i);
+            ParsedToken parsed;
+            try {
+                parsed = parseToken(token);
+            } catch (RuntimeException e) {
+                parsed = null;
+            }
+            verified[i] = parsed == null
+                    ? JwtVerification.invalid(token)
+                    : new JwtVerification(token, true, parsed.expired, parsed.userId, parsed.roles);
+        }
+    }
+
     private ParsedToken parseToken(String token) {
         if (token == null || token.isBlank()) {
             return null;
@@ -89,14 +181,10 @@ public final class JwtSecurityController implements SessionSecurityController, U
             if (config.trustGateway()) {
                 return parseUnverified(token);
             }
-            if (secretKey == null) {
+            if (parser == null) {
                 return null;
             }
-            Claims claims = Jwts.parser()
-                    .verifyWith(secretKey)
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            Claims claims = parser.parseSignedClaims(token).getPayload();
             return toParsedToken(claims, false);
         } catch (ExpiredJwtException e) {
             return toParsedToken(e.getClaims(), true);
@@ -122,9 +210,10 @@ public final class JwtSecurityController implements SessionSecurityController, U
                     : null;
             Object rolesObj = map.get(config.rolesClaim());
             List<String> roles = toRolesList(rolesObj);
-            Long exp = map.get("exp") instanceof Number n ? n.longValue() : null;
-            boolean expired = exp != null && exp * 1000L < System.currentTimeMillis();
-            return new ParsedToken(userId, roles, expired);
+            Long exp = map.get("exp") instanceof Number n ? n.longValue() * 1000L : null;
+            boolean expired = exp != null && exp < System.currentTimeMillis();
+            String jti = map.get("jti") != null ? map.get("jti").toString() : null;
+            return new ParsedToken(userId, roles, expired, jti, exp);
         } catch (Exception e) {
             return null;
         }
@@ -138,7 +227,8 @@ public final class JwtSecurityController implements SessionSecurityController, U
         }
         Object rolesObj = claims.get(config.rolesClaim());
         List<String> roles = toRolesList(rolesObj);
-        return new ParsedToken(userId, roles, expired);
+        Long exp = claims.getExpiration() != null ? claims.getExpiration().getTime() : null;
+        return new ParsedToken(userId, roles, expired, claims.getId(), exp);
     }
 
     @SuppressWarnings("unchecked")
@@ -161,5 +251,5 @@ public final class JwtSecurityController implements SessionSecurityController, U
         return Collections.emptyList();
     }
 
-    private record ParsedToken(String userId, List<String> roles, boolean expired) {}
+    private record ParsedToken(String userId, List<String> roles, boolean expired, String jti, Long expiresAtMillis) {}
 }
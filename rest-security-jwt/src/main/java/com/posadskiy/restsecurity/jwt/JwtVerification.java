@@ -0,0 +1,28 @@
+package com.posadskiy.restsecurity.jwt;
+
+import java.util.List;
+
+/**
+ * Outcome of verifying one token with {@link JwtSecurityController#verifyAll}.
+ *
+ * @param token   the verified token
+ * @param valid   true if the token parsed and (unless trustGateway) its signature verified
+ * @param expired true if the token is valid but past its {@code exp}
+ * @param userId  user ID claim (null when invalid)
+ * @param roles   roles claim (never null; empty when invalid)
+ */
+public record JwtVerification(String token, boolean valid, boolean expired, String userId, List<String> roles) {
+
+    public JwtVerification {
+        roles = roles != null ? List.copyOf(roles) : List.of();
+    }
+
+    /** Valid and not expired. */
+    public boolean active() {
+        return valid && !expired;
+    }
+
+    static JwtVerification invalid(String token) {
+        return new JwtVerification(token, false, false, null, List.of());
+    }
+}
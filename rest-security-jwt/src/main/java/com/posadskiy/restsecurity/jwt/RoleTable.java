@@ -0,0 +1,83 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.posadskiy.restsecurity.context.RoleSets;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared, ordered table of role names used to encode role sets as a 64-bit mask.
+ * Bit {@code i} stands for the {@code i}-th role. Every party that encodes or decodes masks
+ * (e.g. gateway and downstream services) must use the same table; append new roles at the end.
+ */
+public final class RoleTable {
+
+    public static final int MAX_ROLES = Long.SIZE;
+
+    private final List<String> roles;
+    private final Map<String, Integer> bits;
+    private final long validBits;
+    private final Map<Long, Set<String>> decoded = new ConcurrentHashMap<>();
+
+    public RoleTable(List<String> roles) {
+        if (roles.size() > MAX_ROLES) {
+            throw new IllegalArgumentException("RoleTable: at most " + MAX_ROLES + " roles, got " + roles.size());
+        }
+        this.roles = List.copyOf(roles);
+        this.bits = new HashMap<>();
+        for (int i = 0; i < this.roles.size(); i++) {
+            if (bits.put(this.roles.get(i), i) != null) {
+                throw new IllegalArgumentException("RoleTable: duplicate role " + this.roles.get(i));
+            }
+        }
+        this.validBits = this.roles.size() == MAX_ROLES ? -1L : (1L << this.roles.size()) - 1;
+    }
+
+    public static RoleTable of(String... roles) {
+        return new RoleTable(List.of(roles));
+    }
+
+    /** Role names in bit order. */
+    public List<String> roles() {
+        return roles;
+    }
+
+    /**
+     * Encode roles as a mask.
+     *
+     * @throws IllegalArgumentException if a role is not in the table
+     */
+    public long toMask(Collection<String> roleNames) {
+        long mask = 0L;
+        for (String role : roleNames) {
+            Integer bit = bits.get(role);
+            if (bit == null) {
+                throw new IllegalArgumentException("RoleTable: unknown role " + role);
+            }
+            mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    /**
+     * Decode a mask. Returns one shared immutable set per distinct mask; bits beyond the table are ignored.
+     */
+    public Set<String> toRoles(long mask) {
+        mask &= validBits;
+        Set<String> cached = decoded.get(mask);
+        if (cached != null) {
+            return cached;
+        }
+        List<String> names = new ArrayList<>(Long.bitCount(mask));
+        for (long rest = mask; rest != 0; rest &= rest - 1) {
+            int bit = Long.numberOfTrailingZeros(rest);
+            names.add(roles.get(bit));
+        }
+        return decoded.computeIfAbsent(mask, m -> RoleSets.intern(names));
+    }
+}
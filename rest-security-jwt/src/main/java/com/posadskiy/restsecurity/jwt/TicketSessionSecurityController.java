@@ -0,0 +1,225 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import com.posadskiy.restsecurity.id.SessionId;
+import com.posadskiy.restsecurity.id.SessionIdGenerator;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implements both {@link SessionSecurityController} and {@link UserSecurityController} from encrypted
+ * session tickets (e.g. a cookie), so enforcement needs no session store and does no I/O. Unlike a JWT the
+ * client cannot read the claims: the ticket is AES-GCM encrypted and authenticated.
+ *
+ * <p>Binary layout, then base64url without padding:
+ * <pre>
+ * offset 0   key version       1 byte, also authenticated as associated data
+ * offset 1   nonce             12 bytes, random
+ * offset 13  ciphertext of     expires at (4 bytes, epoch seconds), roles mask (8 bytes, see {@link RoleTable}),
+ *                              user id length (1 byte), user id (UTF-8, up to 255 bytes)
+ * then       GCM tag           16 bytes
+ * </pre>
+ * Tickets are issued with the current key and accepted with any key in the ring; rotate by adding a version,
+ * making it current, and dropping the old one after the ticket ttl. Each thread reuses one {@link Cipher}.
+ * Tickets cannot be revoked before they expire; keep the ttl short or use a session store where revocation
+ * matters.
+ *
+ * <p>A ticket is decrypted once per enforcement ({@link EnforcementMemo}), and the roles lookup answers from
+ * it: outside an enforcement, or on another thread, a user has no roles. Hand this controller to the enforcer
+ * as its session and its user controller, not through a cache, coalescing or resilience decorator.
+ */
+public final class TicketSessionSecurityController implements SessionSecurityController, UserSecurityController {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int HEADER_LENGTH = 1 + NONCE_LENGTH;
+    private static final int BODY_HEADER_LENGTH = 13;
+    private static final int MAX_USER_ID_BYTES = 255;
+    private static final int MIN_LENGTH = HEADER_LENGTH + BODY_HEADER_LENGTH + TAG_BITS / 8;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec[] keys = new SecretKeySpec[256];
+    private final int currentVersion;
+    private final RoleTable roleTable;
+    private final long ttlSeconds;
+    private final SessionIdGenerator nonces = SessionIdGenerator.shared();
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(TicketSessionSecurityController::newCipher);
+    private final EnforcementMemo<ContextTicket> lastTicket = new EnforcementMemo<>();
+    /** Roles of the ticket decrypted in the current enforcement, by its user. */
+    private final EnforcementMemo<Set<String>> lastRoles = new EnforcementMemo<>();
+
+    /**
+     * @param keys           key ring: version (0-255) to AES key of 16, 24 or 32 bytes
+     * @param currentVersion version used to issue tickets
+     * @param roleTable      table encoding roles as a bitmask
+     * @param ttl            lifetime of issued tickets
+     */
+    public TicketSessionSecurityController(Map<Integer, byte[]> keys, int currentVersion, RoleTable roleTable,
+                                           Duration ttl) {
+        if (keys == null || !keys.containsKey(currentVersion)) {
+            throw new IllegalArgumentException("TicketSessionSecurityController: key ring must contain the current version");
+        }
+        keys.forEach((version, key) -> {
+            if (version < 0 || version > 255) {
+                throw new IllegalArgumentException("TicketSessionSecurityController: key version must be 0-255, got " + version);
+            }
+            if (key == null || (key.length != 16 && key.length != 24 && key.length != 32)) {
+                throw new IllegalArgumentException("TicketSessionSecurityController: key " + version + " must be 16, 24 or 32 bytes");
+            }
+            this.keys[version] = new SecretKeySpec(key, "AES");
+        });
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("TicketSessionSecurityController: ttl must be positive");
+        }
+        this.currentVersion = currentVersion;
+        this.roleTable = roleTable;
+        this.ttlSeconds = Math.max(1, ttl.toSeconds());
+    }
+
+    /** Single key, version 1. */
+    public static TicketSessionSecurityController of(byte[] key, RoleTable roleTable, Duration ttl) {
+        return new TicketSessionSecurityController(Map.of(1, key), 1, roleTable, ttl);
+    }
+
+    /**
+     * Issue a ticket for {@code userId} with {@code roles}, expiring after the configured ttl.
+     *
+     * @throws IllegalArgumentException if the user id is longer than 255 UTF-8 bytes or a role is not in the table
+     */
+    public String issue(String userId, Collection<String> roles) {
+        return issue(userId, roleTable.toMask(roles), System.currentTimeMillis() / 1000 + ttlSeconds);
+    }
+
+    String issue(String userId, long rolesMask, long expiresAtSeconds) {
+        if (userId == null || userId.isBlank()) {
+            throw new IllegalArgumentException("TicketSessionSecurityController: userId must be non-blank");
+        }
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        if (user.length > MAX_USER_ID_BYTES) {
+            throw new IllegalArgumentException("TicketSessionSecurityController: user id longer than "
+                    + MAX_USER_ID_BYTES + " bytes");
+        }
+        byte[] body = new byte[BODY_HEADER_LENGTH + user.length];
+        ContextTicketCodec.putInt(body, 0, (int) expiresAtSeconds);
+        ContextTicketCodec.putLong(body, 4, rolesMask);
+        body[12] = (byte) user.length;
+        System.arraycopy(user, 0, body, BODY_HEADER_LENGTH, user.length);
+
+        byte[] buf = new byte[HEADER_LENGTH + body.length + TAG_BITS / 8];
+        buf[0] = (byte) currentVersion;
+        SessionId nonce = nonces.next();
+        ContextTicketCodec.putLong(buf, 1, nonce.hi());
+        ContextTicketCodec.putInt(buf, 9, (int) nonce.lo());
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, keys[currentVersion], new GCMParameterSpec(TAG_BITS, buf, 1, NONCE_LENGTH));
+            cipher.updateAAD(buf, 0, 1);
+            cipher.doFinal(body, 0, body.length, buf, HEADER_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("TicketSessionSecurityController: encryption failed", e);
+        }
+        return ENCODER.encodeToString(buf);
+    }
+
+    /**
+     * Decrypt a ticket. Expired tickets are returned; check {@link ContextTicket#isExpired(long)}.
+     *
+     * @return ticket content, or null if malformed, tampered with or encrypted with an unknown key
+     */
+    public ContextTicket parse(String ticket) {
+        if (ticket == null || ticket.isEmpty()) {
+            return null;
+        }
+        return lastTicket.get(ticket, this::decrypt);
+    }
+
+    @Override
+    public boolean isSessionExist(String ticket) {
+        return parse(ticket) != null;
+    }
+
+    @Override
+    public boolean isSessionExpired(String ticket) {
+        ContextTicket parsed = parse(ticket);
+        return parsed == null || parsed.isExpired(System.currentTimeMillis());
+    }
+
+    @Override
+    public String getUserIdBySessionId(String ticket) {
+        ContextTicket parsed = parse(ticket);
+        return parsed != null ? parsed.userId() : null;
+    }
+
+    /** Any user named by an authentic ticket exists; there is no user store. */
+    @Override
+    public boolean isUserExist(String userId) {
+        return userId != null && !userId.isBlank();
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        return List.copyOf(getUserRolesSet(userId));
+    }
+
+    /** Roles of the ticket decrypted for {@code userId} earlier in the current enforcement. */
+    @Override
+    public Set<String> getUserRolesSet(String userId) {
+        return userId != null ? lastRoles.get(userId, id -> Set.of()) : Set.of();
+    }
+
+    private ContextTicket decrypt(String ticket) {
+        byte[] buf;
+        try {
+            buf = DECODER.decode(ticket);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (buf.length < MIN_LENGTH || keys[buf[0] & 0xFF] == null) {
+            return null;
+        }
+        byte[] body = new byte[buf.length - HEADER_LENGTH - TAG_BITS / 8];
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, keys[buf[0] & 0xFF], new GCMParameterSpec(TAG_BITS, buf, 1, NONCE_LENGTH));
+            cipher.updateAAD(buf, 0, 1);
+            cipher.doFinal(buf, HEADER_LENGTH, buf.length - HEADER_LENGTH, body, 0);
+        } catch (AEADBadTagException e) {
+            return null;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("TicketSessionSecurityController: decryption failed", e);
+        }
+        int userLength = body[12] & 0xFF;
+        if (body.length != BODY_HEADER_LENGTH + userLength) {
+            return null;
+        }
+        long expiresAtSeconds = ContextTicketCodec.getInt(body, 0) & 0xFFFFFFFFL;
+        long rolesMask = ContextTicketCodec.getLong(body, 4);
+        String userId = new String(body, BODY_HEADER_LENGTH, userLength, StandardCharsets.UTF_8);
+        ContextTicket content = new ContextTicket(userId, roleTable.toRoles(rolesMask), expiresAtSeconds * 1000L);
+        lastRoles.put(userId, content.roles());
+        return content;
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("TicketSessionSecurityController: " + TRANSFORMATION + " unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.posadskiy.restsecurity.context.SecurityContext;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextTicketCodecTest {
+
+    private static final String SECRET = "context-ticket-secret-at-least-32-bytes";
+    private static final RoleTable ROLES = RoleTable.of("USER", "ADMIN", "EDITOR");
+
+    private final ContextTicketCodec codec = new ContextTicketCodec(SECRET, ROLES, Duration.ofMinutes(1));
+
+    @Test
+    void issueAndParse_roundTripsUserAndRoles() {
+        long before = System.currentTimeMillis();
+        String ticket = codec.issue(new SecurityContext("jwt", "user-1", Set.of("USER", "EDITOR")));
+
+        ContextTicket parsed = codec.parse(ticket);
+
+        assertNotNull(parsed);
+        assertEquals("user-1", parsed.userId());
+        assertEquals(Set.of("USER", "EDITOR"), parsed.roles());
+        assertFalse(parsed.isExpired(System.currentTimeMillis()));
+        assertTrue(parsed.expiresAtMillis() >= before + 58_000);
+        assertSame(ROLES, codec.roleTable());
+    }
+
+    @Test
+    void ticket_isCompact() {
+        String ticket = codec.issue(new SecurityContext("jwt", "user-1", Set.of("USER")));
+        // 14 header bytes + 6 user id bytes + 16 MAC bytes
+        assertEquals(36, Base64.getUrlDecoder().decode(ticket).length);
+    }
+
+    @Test
+    void parse_tamperedOrForeignTicket_returnsNull() {
+        String ticket = codec.issue(new SecurityContext("jwt", "user-1", Set.of("USER")));
+        byte[] raw = Base64.getUrlDecoder().decode(ticket);
+        raw[12] ^= 0b10; // grant ADMIN
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        ContextTicketCodec other = new ContextTicketCodec("another-secret-at-least-32-bytes-long", ROLES, Duration.ofMinutes(1));
+
+        assertNull(codec.parse(tampered));
+        assertNull(other.parse(ticket));
+    }
+
+    @Test
+    void parse_malformedInput_returnsNull() {
+        assertNull(codec.parse(null));
+        assertNull(codec.parse(""));
+        assertNull(codec.parse("!!!"));
+        assertNull(codec.parse("AAAA"));
+        String ticket = codec.issue(new SecurityContext("jwt", "user-1", Set.of("USER")));
+        byte[] raw = Base64.getUrlDecoder().decode(ticket);
+        raw[0] = 9;
+        assertNull(codec.parse(Base64.getUrlEncoder().withoutPadding().encodeToString(raw)));
+        assertNull(codec.parse(ticket.substring(0, ticket.length() - 2)));
+    }
+
+    @Test
+    void parse_expiredTicket_isReturnedAsExpired() {
+        String ticket = codec.issue("user-1", 1L, System.currentTimeMillis() / 1000 - 5);
+        ContextTicket parsed = codec.parse(ticket);
+        assertNotNull(parsed);
+        assertTrue(parsed.isExpired(System.currentTimeMillis()));
+    }
+
+    @Test
+    void issue_invalidInput_throws() {
+        assertThrows(IllegalArgumentException.class, () ->
+                codec.issue(new SecurityContext("jwt", "user-1", Set.of("OWNER"))));
+        assertThrows(IllegalArgumentException.class, () ->
+                codec.issue(new SecurityContext("jwt", "u".repeat(256), Set.of("USER"))));
+        assertThrows(IllegalArgumentException.class, () ->
+                new ContextTicketCodec((String) null, ROLES, Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () ->
+                new ContextTicketCodec(SECRET, ROLES, Duration.ZERO));
+    }
+}
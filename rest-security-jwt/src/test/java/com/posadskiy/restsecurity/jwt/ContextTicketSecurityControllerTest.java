@@ -0,0 +1,174 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.posadskiy.restsecurity.context.SecurityContext;
+import com.posadskiy.restsecurity.context.SecurityContextHolder;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.enforcer.SecurityEnforcer;
+import com.posadskiy.restsecurity.exception.PermissionIsAbsentException;
+import com.posadskiy.restsecurity.exception.SessionDoesNotExistException;
+import com.posadskiy.restsecurity.exception.SessionExpiredException;
+import com.posadskiy.restsecurity.rest.SecuredRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextTicketSecurityControllerTest {
+
+    private static final ContextTicketCodec CODEC = new ContextTicketCodec(
+            "context-ticket-secret-at-least-32-bytes", RoleTable.of("USER", "ADMIN"), Duration.ofMinutes(1));
+
+    private final ContextTicketSecurityController controller = new ContextTicketSecurityController(CODEC);
+    private final SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void enforce_validTicket_resolvesUserAndRoles() {
+        String ticket = CODEC.issue(new SecurityContext("jwt", "alice", Set.of("USER")));
+
+        SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest(ticket), "USER");
+
+        assertEquals("alice", ctx.userId());
+        assertEquals(Set.of("USER"), ctx.roles());
+        assertThrows(PermissionIsAbsentException.class, () ->
+                enforcer.validateAndBuildContext(new SecuredRequest(ticket), "EDITOR"));
+    }
+
+    @Test
+    void enforce_forgedOrExpiredTicket_throws() {
+        String expired = CODEC.issue("alice", 1L, System.currentTimeMillis() / 1000 - 1);
+
+        assertThrows(SessionDoesNotExistException.class, () ->
+                enforcer.validateAndBuildContext(new SecuredRequest("forged"), "USER"));
+        assertThrows(SessionExpiredException.class, () ->
+                enforcer.validateAndBuildContext(new SecuredRequest(expired), "USER"));
+    }
+
+    @Test
+    void controllerMethods_invalidInput() {
+        assertFalse(controller.isSessionExist(null));
+        assertTrue(controller.isSessionExpired("forged"));
+        assertNull(controller.getUserIdBySessionId("forged"));
+        assertFalse(controller.isUserExist(null));
+        assertFalse(controller.isUserExist(" "));
+        assertEquals(List.of(), controller.getUserRoles("nobody"));
+    }
+
+    @Test
+    void getUserRoles_afterUserLookup_returnsTicketRoles() {
+        String ticket = CODEC.issue(new SecurityContext("jwt", "root", Set.of("ADMIN")));
+        EnforcementMemo.begin();
+        try {
+            assertEquals("root", controller.getUserIdBySessionId(ticket));
+            assertEquals(List.of("ADMIN"), controller.getUserRoles("root"));
+            assertEquals(Set.of(), controller.getUserRolesSet(null));
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    @Test
+    void laterEnforcement_onAPooledThread_doesNotSeeThePreviousTicketsRoles() {
+        String admin = CODEC.issue(new SecurityContext("jwt", "root", Set.of("ADMIN")));
+        enforcer.validateAndBuildContext(new SecuredRequest(admin), "ADMIN");
+
+        assertEquals(Set.of(), controller.getUserRolesSet("root"));
+        EnforcementMemo.begin();
+        try {
+            assertEquals(Set.of(), controller.getUserRolesSet("root"));
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    @Test
+    void interleavedEnforcements_onTwoThreads_keepTheirOwnRoles() throws Exception {
+        String admin = CODEC.issue(new SecurityContext("jwt", "root", Set.of("ADMIN")));
+        String user = CODEC.issue(new SecurityContext("jwt", "alice", Set.of("USER")));
+        EnforcementMemo.begin();
+        try {
+            assertEquals("root", controller.getUserIdBySessionId(admin));
+
+            // Another request runs its whole enforcement between this thread's user and roles lookups.
+            Thread other = new Thread(() -> enforcer.validateAndBuildContext(new SecuredRequest(user), "USER"));
+            other.start();
+            other.join();
+
+            assertEquals(Set.of("ADMIN"), controller.getUserRolesSet("root"));
+            assertEquals(Set.of("ADMIN"), controller.getUserRolesSet("root"), "reading does not consume the roles");
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    @Test
+    void concurrentEnforcements_ofDifferentUsers_keepTheirOwnRoles() throws Exception {
+        String admin = CODEC.issue(new SecurityContext("jwt", "root", Set.of("ADMIN")));
+        String user = CODEC.issue(new SecurityContext("jwt", "alice", Set.of("USER")));
+        String otherUser = CODEC.issue(new SecurityContext("jwt", "alice", Set.of("USER", "ADMIN")));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (Object[] run : List.of(new Object[]{admin, "root", Set.of("ADMIN")},
+                new Object[]{user, "alice", Set.of("USER")},
+                new Object[]{otherUser, "alice", Set.of("USER", "ADMIN")})) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 2_000; i++) {
+                        SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest((String) run[0]), "USER");
+                        assertEquals(run[1], ctx.userId());
+                        assertEquals(run[2], ctx.roles());
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+    }
+
+    @Test
+    void propagator_attachesVerifiableTicket() {
+        ContextTicketPropagator propagator = new ContextTicketPropagator(CODEC);
+        SecurityContextHolder.setContext(new SecurityContext("jwt", "bob", Set.of("USER", "ADMIN")));
+
+        HttpRequest request = propagator.attachCurrent(HttpRequest.newBuilder(URI.create("http://localhost/orders"))).build();
+
+        String ticket = request.headers().firstValue(ContextTicketPropagator.HEADER).orElseThrow();
+        ContextTicket parsed = CODEC.parse(ticket);
+        assertEquals("bob", parsed.userId());
+        assertEquals(Set.of("USER", "ADMIN"), parsed.roles());
+    }
+
+    @Test
+    void propagator_customHeaderAndMissingContext() {
+        ContextTicketPropagator propagator = new ContextTicketPropagator(CODEC, "X-Ctx");
+        HttpRequest request = propagator.attach(HttpRequest.newBuilder(URI.create("http://localhost/")),
+                new SecurityContext("jwt", "bob", Set.of())).build();
+
+        assertTrue(request.headers().firstValue("X-Ctx").isPresent());
+        assertThrows(IllegalStateException.class, () ->
+                propagator.attachCurrent(HttpRequest.newBuilder(URI.create("http://localhost/"))));
+    }
+}
@@ -0,0 +1,308 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.posadskiy.restsecurity.context.SecurityContext;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.enforcer.SecurityEnforcer;
+import com.posadskiy.restsecurity.exception.UserDoesNotExistException;
+import com.posadskiy.restsecurity.rest.SecuredRequest;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs against a local stand-in introspection endpoint.
+ */
+class IntrospectionSecurityControllerTest {
+
+    private HttpServer server;
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicReference<String> lastAuthorization = new AtomicReference<>();
+    private volatile CountDownLatch gate;
+    private URI endpoint;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/introspect", exchange -> {
+            calls.incrementAndGet();
+            lastAuthorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            String form = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String token = URLDecoder.decode(form.replaceAll("^token=([^&]*).*$", "$1"), StandardCharsets.UTF_8);
+            CountDownLatch latch = gate;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            String body = responses.getOrDefault(token, "{\"active\":false}");
+            int status = body.equals("500") ? 500 : 200;
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        endpoint = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/introspect");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static String active(String sub, String roles, long expSeconds) {
+        return "{\"active\":true,\"sub\":\"" + sub + "\",\"roles\":" + roles + ",\"exp\":" + expSeconds + "}";
+    }
+
+    private static long inOneHour() {
+        return System.currentTimeMillis() / 1000 + 3600;
+    }
+
+    @Test
+    void activeToken_enforcesAndIsCachedUntilExp() {
+        responses.put("tok-1", active("alice", "[\"USER\",\"EDITOR\"]", inOneHour()));
+        IntrospectionSecurityController controller =
+                new IntrospectionSecurityController(IntrospectionConfig.of(endpoint, "rs", "s3cr3t:!"));
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+
+        SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest("tok-1"), "EDITOR");
+        enforcer.validateAndBuildContext(new SecuredRequest("tok-1"), "USER");
+
+        assertEquals("alice", ctx.userId());
+        assertEquals(Set.of("USER", "EDITOR"), ctx.roles());
+        assertEquals(1, calls.get());
+        assertEquals(1, controller.cacheSize());
+        assertEquals("Basic cnM6czNjcjN0JTNBJTIx", lastAuthorization.get());
+    }
+
+    @Test
+    void inactiveToken_isCachedBriefly() throws InterruptedException {
+        IntrospectionConfig config = new IntrospectionConfig(endpoint, null, null, null, null,
+                null, Duration.ofMillis(100), null, 0);
+        IntrospectionSecurityController controller = new IntrospectionSecurityController(config);
+
+        assertFalse(controller.isSessionExist("revoked"));
+        assertTrue(controller.isSessionExpired("revoked"));
+        assertNull(controller.getUserIdBySessionId("revoked"));
+        assertEquals(1, calls.get());
+        assertNull(lastAuthorization.get());
+
+        Thread.sleep(150);
+        assertFalse(controller.isSessionExist("revoked"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void expiredActiveToken_isNotCachedAndReportedExpired() {
+        responses.put("old", active("bob", "\"USER ADMIN\"", System.currentTimeMillis() / 1000 - 10));
+        IntrospectionSecurityController controller =
+                new IntrospectionSecurityController(IntrospectionConfig.of(endpoint, "rs", "x"));
+
+        assertTrue(controller.isSessionExist("old"));
+        assertTrue(controller.isSessionExpired("old"));
+        assertEquals(2, calls.get());
+        EnforcementMemo.begin();
+        try {
+            assertEquals("bob", controller.getUserIdBySessionId("old"));
+            assertEquals(List.of("USER", "ADMIN"), controller.getUserRoles("bob"));
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    @Test
+    void activeTokenWithoutUser_isRejected() {
+        responses.put("anonymous", "{\"active\":true,\"roles\":[\"ADMIN\"],\"exp\":" + inOneHour() + "}");
+        IntrospectionSecurityController controller =
+                new IntrospectionSecurityController(IntrospectionConfig.of(endpoint, "rs", "x"));
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+
+        assertThrows(UserDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest("anonymous"), "ADMIN"));
+        EnforcementMemo.begin();
+        try {
+            assertNull(controller.getUserIdBySessionId("anonymous"));
+            assertTrue(controller.getUserRoles(null).isEmpty());
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    @Test
+    void laterEnforcement_onAPooledThread_doesNotSeeTheEarlierTokensRoles() {
+        responses.put("admin-tok", active("root", "[\"ADMIN\"]", inOneHour()));
+        IntrospectionSecurityController controller =
+                new IntrospectionSecurityController(IntrospectionConfig.of(endpoint, "rs", "x"));
+        new SecurityEnforcer(controller, controller).validateAndBuildContext(new SecuredRequest("admin-tok"), "ADMIN");
+
+        EnforcementMemo.begin();
+        try {
+            assertTrue(controller.getUserRoles("root").isEmpty());
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    @Test
+    void concurrentLookups_ofSameToken_areCoalesced() throws Exception {
+        responses.put("hot", active("carol", "[\"USER\"]", inOneHour()));
+        IntrospectionSecurityController controller =
+                new IntrospectionSecurityController(IntrospectionConfig.of(endpoint, "rs", "x"));
+        gate = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(pool.submit(() -> controller.isSessionExist("hot")));
+        }
+        Thread.sleep(200);
+        gate.countDown();
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void interleavedEnforcements_onTwoThreads_keepTheirOwnRoles() throws Exception {
+        responses.put("admin-tok", active("root", "[\"ADMIN\"]", inOneHour()));
+        responses.put("user-tok", active("alice", "[\"USER\"]", inOneHour()));
+        IntrospectionSecurityController controller =
+                new IntrospectionSecurityController(IntrospectionConfig.of(endpoint, "rs", "x"));
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+        EnforcementMemo.begin();
+        try {
+            assertEquals("root", controller.getUserIdBySessionId("admin-tok"));
+
+            // Another request runs its whole enforcement between this thread's user and roles lookups.
+            Thread other = new Thread(() -> enforcer.validateAndBuildContext(new SecuredRequest("user-tok"), "USER"));
+            other.start();
+            other.join();
+
+            assertEquals(List.of("ADMIN"), controller.getUserRoles("root"));
+            assertEquals(List.of("ADMIN"), controller.getUserRoles("root"), "reading does not consume the roles");
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    @Test
+    void concurrentEnforcements_ofDifferentTokens_keepTheirOwnRoles() throws Exception {
+        responses.put("admin-tok", active("root", "[\"ADMIN\"]", inOneHour()));
+        responses.put("alice-1", active("alice", "[\"USER\"]", inOneHour()));
+        responses.put("alice-2", active("alice", "[\"USER\",\"EDITOR\"]", inOneHour()));
+        IntrospectionSecurityController controller =
+                new IntrospectionSecurityController(IntrospectionConfig.of(endpoint, "rs", "x"));
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+        Map<String, Set<String>> expected = Map.of("admin-tok", Set.of("ADMIN"), "alice-1", Set.of("USER"),
+                "alice-2", Set.of("USER", "EDITOR"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 6; t++) {
+            String token = List.copyOf(expected.keySet()).get(t % 3);
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest(token), "USER");
+                    assertEquals(expected.get(token), ctx.roles());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void endpointError_isTreatedAsInactiveAndNotCached() {
+        responses.put("flaky", "500");
+        IntrospectionSecurityController controller =
+                new IntrospectionSecurityController(IntrospectionConfig.of(endpoint, "rs", "x"));
+
+        assertFalse(controller.isSessionExist("flaky"));
+        assertFalse(controller.isSessionExist("flaky"));
+        assertEquals(2, calls.get());
+        assertEquals(0, controller.cacheSize());
+    }
+
+    @Test
+    void unreachableEndpoint_isTreatedAsInactive() {
+        server.stop(0);
+        IntrospectionConfig config = new IntrospectionConfig(endpoint, "rs", "x", null, null,
+                null, null, Duration.ofMillis(500), 0);
+        IntrospectionSecurityController controller = new IntrospectionSecurityController(config);
+
+        assertFalse(controller.isSessionExist("any"));
+    }
+
+    @Test
+    void blankTokenAndUnknownUser_shortCircuit() {
+        IntrospectionSecurityController controller =
+                new IntrospectionSecurityController(IntrospectionConfig.of(endpoint, "rs", "x"));
+
+        assertFalse(controller.isSessionExist(null));
+        assertFalse(controller.isSessionExist(" "));
+        assertFalse(controller.isUserExist(null));
+        assertTrue(controller.isUserExist("u"));
+        assertTrue(controller.getUserRoles("nobody").isEmpty());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void cacheSize_isBounded() {
+        for (int i = 0; i < 30; i++) {
+            responses.put("t" + i, active("u" + i, "[\"USER\"]", inOneHour()));
+        }
+        IntrospectionConfig config = new IntrospectionConfig(endpoint, "rs", "x", null, null,
+                null, null, null, 10);
+        IntrospectionSecurityController controller = new IntrospectionSecurityController(config);
+
+        for (int i = 0; i < 30; i++) {
+            assertTrue(controller.isSessionExist("t" + i));
+        }
+        assertTrue(controller.cacheSize() <= 10);
+    }
+
+    @Test
+    void config_defaultsAndValidation() {
+        IntrospectionConfig config = IntrospectionConfig.of(endpoint, "rs", "x");
+        assertEquals("roles", config.rolesClaim());
+        assertEquals("sub", config.userIdClaim());
+        assertEquals(Duration.ofMinutes(5), config.maxPositiveTtl());
+        assertEquals(Duration.ofSeconds(10), config.negativeTtl());
+        assertEquals(100_000, config.maxCacheEntries());
+        assertThrows(IllegalArgumentException.class, () -> IntrospectionConfig.of(null, "rs", "x"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.posadskiy.restsecurity.jwt;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JtiReplayGuardTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void firstUse_thenReplay_returnsFalse() {
+        JtiReplayGuard guard = new JtiReplayGuard(Duration.ofMinutes(1));
+        assertTrue(guard.firstUse("a", NOW + 30_000, NOW));
+        assertFalse(guard.firstUse("a", NOW + 30_000, NOW + 10));
+        assertTrue(guard.firstUse("b", NOW + 30_000, NOW));
+        assertEquals(2, guard.size());
+    }
+
+    @Test
+    void firstUse_untrackableTokens_rejected() {
+        JtiReplayGuard guard = new JtiReplayGuard(Duration.ofMinutes(1));
+        assertFalse(guard.firstUse(null, NOW + 30_000, NOW));
+        assertFalse(guard.firstUse("expired", NOW - 1, NOW));
+        assertFalse(guard.firstUse("too-far", NOW + 120_000, NOW));
+    }
+
+    @Test
+    void agedBuckets_areDroppedWhole() {
+        JtiReplayGuard guard = new JtiReplayGuard(Duration.ofSeconds(16));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(guard.firstUse("early-" + i, NOW + 2_000, NOW));
+        }
+        assertEquals(100, guard.size());
+
+        long later = NOW + 10_000;
+        assertTrue(guard.firstUse("late", later + 5_000, later));
+        assertEquals(1, guard.size());
+    }
+
+    @Test
+    void slotReusedByLaterRange_rejectsStaleExpiry() {
+        JtiReplayGuard guard = new JtiReplayGuard(Duration.ofSeconds(16));
+        long later = NOW + 100_000;
+        assertTrue(guard.firstUse("late", later + 1_000, later));
+        // Same ring slot, earlier range; only reachable with a skewed clock.
+        long staleExpiry = later + 1_000 - 18_000;
+        assertFalse(guard.firstUse("stale", staleExpiry, staleExpiry - 5_000));
+    }
+
+    @Test
+    void concurrentInserts_eachJtiAcceptedExactlyOnce() throws InterruptedException {
+        JtiReplayGuard guard = new JtiReplayGuard(Duration.ofMinutes(5));
+        long now = System.currentTimeMillis();
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (guard.firstUse("jti-" + i, now + 60_000 + (i % 1000) * 100L, now)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(10_000, accepted.get());
+        assertEquals(10_000, guard.size());
+    }
+}
@@ -2,6 +2,8 @@ package com.posadskiy.restsecurity.jwt;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class JwtConfigTest {
@@ -48,4 +50,21 @@ class JwtConfigTest {
         JwtConfig config = new JwtConfig("secret", "roles", "  ", false);
         assertEquals("sub", config.userIdClaim());
     }
+
+    @Test
+    void withReplayProtection_setsWindowAndKeepsOtherFields() {
+        JwtConfig config = JwtConfig.withSecret("my-secret").withReplayProtection(Duration.ofMinutes(5));
+        assertTrue(config.replayProtection());
+        assertEquals(Duration.ofMinutes(5), config.replayWindow());
+        assertEquals("my-secret", config.secret());
+        assertFalse(JwtConfig.withSecret("my-secret").replayProtection());
+    }
+
+    @Test
+    void constructor_nonPositiveReplayWindow_throws() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new JwtConfig("secret", "roles", "sub", false, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () ->
+                new JwtConfig("secret", "roles", "sub", false, Duration.ofSeconds(-1)));
+    }
 }
@@ -0,0 +1,125 @@
+package com.posadskiy.restsecurity.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtIssuerTest {
+
+    private static final String SECRET = "test-secret-key-at-least-256-bits-long-for-hs256";
+
+    @Test
+    void issuedToken_isAcceptedByJwtSecurityController() {
+        JwtConfig config = JwtConfig.withSecret(SECRET);
+        JwtIssuer issuer = new JwtIssuer(config);
+        JwtSecurityController controller = new JwtSecurityController(config);
+
+        String token = issuer.issue("user123", List.of("USER", "EDITOR"), Duration.ofHours(1));
+
+        assertTrue(controller.isSessionExist(token));
+        assertFalse(controller.isSessionExpired(token));
+        assertEquals("user123", controller.getUserIdBySessionId(token));
+        assertEquals(List.of("USER", "EDITOR"), controller.getUserRoles("user123"));
+    }
+
+    @Test
+    void issuedToken_matchesJjwtParsing() {
+        JwtIssuer issuer = new JwtIssuer(JwtConfig.withSecret(SECRET));
+        long before = System.currentTimeMillis() / 1000;
+
+        String token = issuer.issue("user\"\\\n-ü-😀", Set.of("ADMIN"), Duration.ofMinutes(10), "jti-42");
+
+        Claims claims = Jwts.parser()
+                .verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+        assertEquals("user\"\\\n-ü-😀", claims.getSubject());
+        assertEquals(List.of("ADMIN"), claims.get("roles"));
+        assertEquals("jti-42", claims.getId());
+        long iat = claims.getIssuedAt().getTime() / 1000;
+        assertTrue(iat >= before);
+        assertEquals(iat + 600, claims.getExpiration().getTime() / 1000);
+    }
+
+    @Test
+    void algorithm_followsKeyLength() {
+        String hs384 = "x".repeat(48);
+        String hs512 = "x".repeat(64);
+        for (String secret : List.of(SECRET, hs384, hs512)) {
+            JwtConfig config = JwtConfig.withSecret(secret);
+            String token = new JwtIssuer(config).issue("u", List.of("USER"), Duration.ofMinutes(1));
+            assertTrue(new JwtSecurityController(config).isSessionExist(token), secret.length() + " byte secret");
+        }
+        String header = new String(java.util.Base64.getUrlDecoder().decode(
+                new JwtIssuer(JwtConfig.withSecret(hs512)).issue("u", List.of(), Duration.ofMinutes(1)).split("\\.")[0]),
+                StandardCharsets.UTF_8);
+        assertEquals("{\"alg\":\"HS512\",\"typ\":\"JWT\"}", header);
+    }
+
+    @Test
+    void customClaimNames_areUsed() {
+        JwtConfig config = new JwtConfig(SECRET, "authorities", "uid", false);
+        String token = new JwtIssuer(config).issue("uid-99", List.of("EDITOR"), Duration.ofMinutes(1));
+
+        JwtSecurityController controller = new JwtSecurityController(config);
+        assertEquals("uid-99", controller.getUserIdBySessionId(token));
+        assertEquals(List.of("EDITOR"), controller.getUserRoles("uid-99"));
+    }
+
+    @Test
+    void jti_worksWithReplayProtection() {
+        JwtConfig config = JwtConfig.withSecret(SECRET).withReplayProtection(Duration.ofMinutes(5));
+        String token = new JwtIssuer(config).issue("u", null, Duration.ofMinutes(1), "once");
+
+        JwtSecurityController controller = new JwtSecurityController(config);
+        assertTrue(controller.isSessionExist(token));
+        assertFalse(controller.isSessionExist(token));
+    }
+
+    @Test
+    void invalidInput_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new JwtIssuer(JwtConfig.withSecret("too-short")));
+        assertThrows(IllegalArgumentException.class, () -> new JwtIssuer(JwtConfig.withSecretTrustGateway(null)));
+        JwtIssuer issuer = new JwtIssuer(JwtConfig.withSecret(SECRET));
+        assertThrows(IllegalArgumentException.class, () -> issuer.issue(null, List.of(), Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void concurrentIssuance_producesValidDistinctTokens() throws Exception {
+        JwtConfig config = JwtConfig.withSecret(SECRET);
+        JwtIssuer issuer = new JwtIssuer(config);
+        JwtSecurityController controller = new JwtSecurityController(config);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<String>> tokens = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String user = "user-" + i + "-" + "x".repeat(i);
+            List<String> roles = i % 2 == 0 ? List.of("USER") : new ArrayList<>(List.of("USER", "ADMIN"));
+            tokens.add(pool.submit(() -> issuer.issue(user, roles, Duration.ofMinutes(1))));
+        }
+        List<String> issued = new ArrayList<>();
+        for (Future<String> token : tokens) {
+            issued.add(token.get());
+        }
+        pool.shutdown();
+
+        List<JwtVerification> results = controller.verifyAll(issued);
+        for (int i = 0; i < results.size(); i++) {
+            assertTrue(results.get(i).active());
+            assertEquals("user-" + i + "-" + "x".repeat(i), results.get(i).userId());
+            assertEquals(i % 2 == 0 ? List.of("USER") : List.of("USER", "ADMIN"), results.get(i).roles());
+        }
+    }
+}
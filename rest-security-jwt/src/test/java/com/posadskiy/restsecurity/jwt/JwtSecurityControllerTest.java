@@ -1,13 +1,23 @@
 package com.posadskiy.restsecurity.jwt;
 
+import com.posadskiy.restsecurity.coalesce.CoalescingSecurityController;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.junit.jupiter.api.Test;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -200,4 +210,195 @@ class JwtSecurityControllerTest {
         JwtSecurityController controller = new JwtSecurityController(JwtConfig.withSecret(SECRET));
         assertNull(controller.getUserIdBySessionId("bad.token.here"));
     }
+
+    @Test
+    void replayProtection_secondUseOfSameJti_isRejected() {
+        String token = Jwts.builder()
+                .subject("user123")
+                .id("jti-1")
+                .claim("roles", List.of("USER"))
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(KEY)
+                .compact();
+        JwtSecurityController controller = new JwtSecurityController(
+                JwtConfig.withSecret(SECRET).withReplayProtection(Duration.ofMinutes(5)));
+
+        assertTrue(controller.isSessionExist(token));
+        assertFalse(controller.isSessionExpired(token));
+        assertEquals("user123", controller.getUserIdBySessionId(token));
+        assertFalse(controller.isSessionExist(token));
+    }
+
+    @Test
+    void replayProtection_behindCoalescing_admitsOneOfConcurrentPresentations() throws Exception {
+        String token = Jwts.builder()
+                .subject("user123")
+                .id("jti-coalesced")
+                .claim("roles", List.of("USER"))
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(KEY)
+                .compact();
+        JwtSecurityController jwt = new JwtSecurityController(
+                JwtConfig.withSecret(SECRET).withReplayProtection(Duration.ofMinutes(5)));
+        CoalescingSecurityController coalescing = new CoalescingSecurityController(jwt, jwt, Duration.ofSeconds(5));
+        assertTrue(jwt.isSessionCheckConsuming());
+        assertFalse(new JwtSecurityController(JwtConfig.withSecret(SECRET)).isSessionCheckConsuming());
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> presentations = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            presentations.add(pool.submit(() -> {
+                start.await();
+                return coalescing.isSessionExist(token);
+            }));
+        }
+        start.countDown();
+        int admitted = 0;
+        for (Future<Boolean> presentation : presentations) {
+            admitted += presentation.get(5, TimeUnit.SECONDS) ? 1 : 0;
+        }
+        pool.shutdown();
+
+        assertEquals(1, admitted);
+        assertEquals(0, coalescing.sharedCalls());
+    }
+
+    @Test
+    void replayProtection_tokenWithoutJtiOrBeyondWindow_isRejected() {
+        JwtSecurityController controller = new JwtSecurityController(
+                JwtConfig.withSecret(SECRET).withReplayProtection(Duration.ofMinutes(5)));
+        String noJti = Jwts.builder()
+                .subject("user123")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(KEY)
+                .compact();
+        String longLived = Jwts.builder()
+                .subject("user123")
+                .id("jti-long")
+                .expiration(new Date(System.currentTimeMillis() + 3600_000))
+                .signWith(KEY)
+                .compact();
+        String noExp = Jwts.builder()
+                .subject("user123")
+                .id("jti-no-exp")
+                .signWith(KEY)
+                .compact();
+
+        assertFalse(controller.isSessionExist(noJti));
+        assertFalse(controller.isSessionExist(longLived));
+        assertFalse(controller.isSessionExist(noExp));
+    }
+
+    @Test
+    void replayProtection_expiredToken_existsButIsExpired() {
+        String token = Jwts.builder()
+                .subject("user123")
+                .id("jti-expired")
+                .expiration(new Date(System.currentTimeMillis() - 1000))
+                .signWith(KEY)
+                .compact();
+        JwtSecurityController controller = new JwtSecurityController(
+                JwtConfig.withSecret(SECRET).withReplayProtection(Duration.ofMinutes(5)));
+
+        assertTrue(controller.isSessionExist(token));
+        assertTrue(controller.isSessionExpired(token));
+    }
+
+    @Test
+    void replayProtection_trustGateway_usesJtiFromPayload() {
+        String token = Jwts.builder()
+                .subject("user456")
+                .id("jti-gw")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(KEY)
+                .compact();
+        JwtSecurityController controller = new JwtSecurityController(
+                JwtConfig.withSecretTrustGateway("x").withReplayProtection(Duration.ofMinutes(5)));
+
+        assertTrue(controller.isSessionExist(token));
+        assertFalse(controller.isSessionExist(token));
+    }
+
+    @Test
+    void verifyAll_returnsResultsInInputOrder() {
+        String alice = token("alice", List.of("USER"), 3600_000);
+        String expired = token("bob", List.of("USER"), -1000);
+        JwtSecurityController controller = new JwtSecurityController(JwtConfig.withSecret(SECRET));
+
+        List<JwtVerification> results = controller.verifyAll(Arrays.asList(alice, "bad.token.here", expired, null));
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).active());
+        assertEquals("alice", results.get(0).userId());
+        assertEquals(List.of("USER"), results.get(0).roles());
+        assertFalse(results.get(1).valid());
+        assertTrue(results.get(1).roles().isEmpty());
+        assertTrue(results.get(2).valid());
+        assertTrue(results.get(2).expired());
+        assertFalse(results.get(2).active());
+        assertFalse(results.get(3).valid());
+    }
+
+    @Test
+    void verifyAll_largeBatchOnCallerExecutor_deduplicatesIdenticalTokens() {
+        List<String> distinct = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            distinct.add(token("user-" + i, List.of("USER"), 3600_000));
+        }
+        List<String> batch = new ArrayList<>();
+        for (int round = 0; round < 4; round++) {
+            batch.addAll(distinct);
+        }
+        AtomicInteger tasks = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            JwtSecurityController controller = new JwtSecurityController(JwtConfig.withSecret(SECRET));
+            List<JwtVerification> results = controller.verifyAll(batch, command -> {
+                tasks.incrementAndGet();
+                pool.execute(command);
+            });
+
+            assertEquals(200, results.size());
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(batch.get(i), results.get(i).token());
+                assertEquals("user-" + (i % 50), results.get(i).userId());
+                assertTrue(results.get(i).active());
+            }
+            assertSame(results.get(0), results.get(50));
+            assertTrue(tasks.get() > 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void verifyAll_emptyBatch_returnsEmptyList() {
+        JwtSecurityController controller = new JwtSecurityController(JwtConfig.withSecret(SECRET));
+        assertTrue(controller.verifyAll(List.of()).isEmpty());
+    }
+
+    @Test
+    void verifyAll_doesNotConsumeJti() {
+        String token = Jwts.builder()
+                .subject("user123")
+                .id("jti-batch")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(KEY)
+                .compact();
+        JwtSecurityController controller = new JwtSecurityController(
+                JwtConfig.withSecret(SECRET).withReplayProtection(Duration.ofMinutes(5)));
+
+        assertTrue(controller.verifyAll(List.of(token, token)).get(1).active());
+        assertTrue(controller.isSessionExist(token));
+    }
+
+    private static String token(String subject, List<String> roles, long ttlMillis) {
+        return Jwts.builder()
+                .subject(subject)
+                .claim("roles", roles)
+                .expiration(new Date(System.currentTimeMillis() + ttlMillis))
+                .signWith(KEY)
+                .compact();
+    }
 }
@@ -0,0 +1,55 @@
+package com.posadskiy.restsecurity.jwt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoleTableTest {
+
+    private final RoleTable table = RoleTable.of("USER", "ADMIN", "EDITOR");
+
+    @Test
+    void toMask_andBack_roundTrips() {
+        long mask = table.toMask(Set.of("USER", "EDITOR"));
+        assertEquals(0b101L, mask);
+        assertEquals(Set.of("USER", "EDITOR"), table.toRoles(mask));
+        assertEquals(Set.of(), table.toRoles(0L));
+    }
+
+    @Test
+    void toRoles_returnsSharedInstancePerMask() {
+        assertSame(table.toRoles(0b11L), table.toRoles(0b11L));
+        assertSame(table.toRoles(0b11L), table.toRoles(0b11L | 1L << 40));
+    }
+
+    @Test
+    void toMask_unknownRole_throws() {
+        assertThrows(IllegalArgumentException.class, () -> table.toMask(Set.of("OWNER")));
+    }
+
+    @Test
+    void constructor_rejectsDuplicatesAndOversizedTables() {
+        assertThrows(IllegalArgumentException.class, () -> RoleTable.of("USER", "USER"));
+        List<String> tooMany = new ArrayList<>();
+        for (int i = 0; i <= RoleTable.MAX_ROLES; i++) {
+            tooMany.add("R" + i);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new RoleTable(tooMany));
+    }
+
+    @Test
+    void fullTable_usesAllBits() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < RoleTable.MAX_ROLES; i++) {
+            names.add("R" + i);
+        }
+        RoleTable full = new RoleTable(names);
+        assertEquals(Long.MIN_VALUE, full.toMask(Set.of("R63")));
+        assertEquals(Set.of("R63"), full.toRoles(Long.MIN_VALUE));
+        assertEquals(names, full.roles());
+    }
+}
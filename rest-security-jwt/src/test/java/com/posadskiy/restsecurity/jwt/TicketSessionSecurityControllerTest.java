@@ -0,0 +1,165 @@
+package com.posadskiy.restsecurity.jwt;
+
+import com.posadskiy.restsecurity.context.SecurityContext;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.enforcer.SecurityEnforcer;
+import com.posadskiy.restsecurity.exception.PermissionIsAbsentException;
+import com.posadskiy.restsecurity.exception.SessionDoesNotExistException;
+import com.posadskiy.restsecurity.exception.SessionExpiredException;
+import com.posadskiy.restsecurity.rest.SecuredRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TicketSessionSecurityControllerTest {
+
+    private static final RoleTable ROLES = RoleTable.of("USER", "ADMIN", "AUDITOR");
+    private static final byte[] KEY = key('k');
+    private static final byte[] NEW_KEY = key('n');
+
+    private final TicketSessionSecurityController tickets =
+            TicketSessionSecurityController.of(KEY, ROLES, Duration.ofMinutes(5));
+    private final SecurityEnforcer enforcer = new SecurityEnforcer(tickets, tickets);
+
+    private static byte[] key(char fill) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) fill);
+        return key;
+    }
+
+    @Test
+    void enforce_validTicket_resolvesUserAndRoles() {
+        String ticket = tickets.issue("alice", List.of("USER", "AUDITOR"));
+
+        SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest(ticket), "AUDITOR");
+
+        assertEquals("alice", ctx.userId());
+        assertEquals(Set.of("USER", "AUDITOR"), ctx.roles());
+        assertThrows(PermissionIsAbsentException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(ticket), "ADMIN"));
+    }
+
+    @Test
+    void ticket_hidesClaims() {
+        String ticket = tickets.issue("alice-with-a-readable-name", List.of("USER"));
+
+        String raw = new String(Base64.getUrlDecoder().decode(ticket), StandardCharsets.ISO_8859_1);
+
+        assertFalse(raw.contains("alice"));
+        assertNotEquals(ticket, tickets.issue("alice-with-a-readable-name", List.of("USER")), "random nonce");
+    }
+
+    @Test
+    void tamperedOrForeignTicket_doesNotExist() {
+        String ticket = tickets.issue("alice", List.of("USER"));
+        byte[] raw = Base64.getUrlDecoder().decode(ticket);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+        for (int i = 0; i < raw.length; i++) {
+            byte[] tampered = raw.clone();
+            tampered[i] ^= 1;
+            assertFalse(tickets.isSessionExist(encoder.encodeToString(tampered)), "byte " + i);
+        }
+        String foreign = TicketSessionSecurityController.of(NEW_KEY, ROLES, Duration.ofMinutes(5))
+                .issue("alice", List.of("ADMIN"));
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(foreign), "USER"));
+        assertNull(tickets.parse("not base64 !"));
+        assertNull(tickets.parse("AAAA"));
+        assertNull(tickets.parse(""));
+        assertNull(tickets.getUserIdBySessionId(null));
+        assertTrue(tickets.isSessionExpired("AAAA"));
+    }
+
+    @Test
+    void expiredTicket_isExpired() {
+        String ticket = tickets.issue("alice", ROLES.toMask(List.of("USER")), System.currentTimeMillis() / 1000 - 1);
+
+        assertTrue(tickets.isSessionExist(ticket));
+        assertThrows(SessionExpiredException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(ticket), "USER"));
+    }
+
+    @Test
+    void keyRotation_acceptsOldTickets() {
+        String old = tickets.issue("alice", List.of("USER"));
+        TicketSessionSecurityController rotated =
+                new TicketSessionSecurityController(Map.of(1, KEY, 2, NEW_KEY), 2, ROLES, Duration.ofMinutes(5));
+        String fresh = rotated.issue("bob", List.of("ADMIN"));
+
+        assertEquals("alice", rotated.getUserIdBySessionId(old));
+        assertEquals("bob", rotated.getUserIdBySessionId(fresh));
+        assertNull(tickets.parse(fresh), "version 2 unknown to the old ring");
+        assertNull(new TicketSessionSecurityController(Map.of(2, NEW_KEY), 2, ROLES, Duration.ofMinutes(5)).parse(old));
+    }
+
+    @Test
+    void userLookups() {
+        String ticket = tickets.issue("alice", List.of("USER"));
+        EnforcementMemo.begin();
+        try {
+            assertEquals("alice", tickets.getUserIdBySessionId(ticket));
+
+            assertTrue(tickets.isUserExist("alice"));
+            assertFalse(tickets.isUserExist(" "));
+            assertEquals(List.of("USER"), tickets.getUserRoles("alice"));
+            assertEquals(Set.of(), tickets.getUserRolesSet("bob"));
+            assertEquals(Set.of(), tickets.getUserRolesSet(null));
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    @Test
+    void laterEnforcement_doesNotSeeTheRolesOfAnEarlierTicket() {
+        String admin = tickets.issue("root", List.of("ADMIN"));
+        enforcer.validateAndBuildContext(new SecuredRequest(admin), "ADMIN");
+
+        assertEquals(Set.of(), tickets.getUserRolesSet("root"), "outside an enforcement");
+        EnforcementMemo.begin();
+        try {
+            assertEquals(Set.of(), tickets.getUserRolesSet("root"));
+        } finally {
+            EnforcementMemo.end();
+        }
+    }
+
+    @Test
+    void validation() {
+        assertThrows(IllegalArgumentException.class, () -> TicketSessionSecurityController.of(new byte[10], ROLES, Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> TicketSessionSecurityController.of(KEY, ROLES, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new TicketSessionSecurityController(Map.of(1, KEY), 2, ROLES, Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> new TicketSessionSecurityController(Map.of(300, KEY), 300, ROLES, Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> tickets.issue("x".repeat(256), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> tickets.issue(" ", List.of()));
+        assertThrows(IllegalArgumentException.class, () -> tickets.issue("alice", List.of("OWNER")));
+    }
+
+    /** Run with {@code -Dsession.benchmark=true}. */
+    @Test
+    @EnabledIfSystemProperty(named = "session.benchmark", matches = "true")
+    void benchmark_enforcement() {
+        String[] issued = new String[1024];
+        for (int i = 0; i < issued.length; i++) {
+            issued[i] = tickets.issue("user-" + i, List.of("USER"));
+        }
+        int rounds = 500_000;
+        for (int warmUp = 0; warmUp < 2; warmUp++) {
+            long began = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                enforcer.validateAndBuildContext(new SecuredRequest(issued[i & 1023]), "USER");
+            }
+            System.out.printf("TicketSessionSecurityController enforcement: %.0f ns%n",
+                    (System.nanoTime() - began) / (double) rounds);
+        }
+    }
+}
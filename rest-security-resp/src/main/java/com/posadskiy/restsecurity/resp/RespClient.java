@@ -0,0 +1,390 @@
+package com.posadskiy.restsecurity.resp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Small non-blocking RESP3 client for {@link RespSecurityController}.
+ *
+ * <p>A fixed number of connections is shared by all callers and serviced by one I/O thread on a
+ * {@link Selector}. Commands from concurrent callers are queued per connection and written together with
+ * one gathering write, so they are pipelined automatically; replies are matched to callers in order.
+ * Reply handlers run on the I/O thread before any later frame from the same connection is processed,
+ * which lets callers update caches in the same order as client-tracking invalidations arrive.
+ *
+ * <p>Each connection starts with {@code HELLO 3} (with {@code AUTH} when configured) and, when tracking
+ * prefixes are given, {@code CLIENT TRACKING ON BCAST}. A failed connection fails its pending commands,
+ * reports "invalidate everything" and is replaced on the next command. Requires a RESP3 server (Redis 6+).
+ */
+final class RespClient implements AutoCloseable {
+
+    private static final int READ_BUFFER = 16 * 1024;
+    private static final int MAX_GATHER = 256;
+
+    /** Receives invalidated keys on the I/O thread; {@code null} means every key. */
+    @FunctionalInterface
+    interface InvalidationListener {
+        void invalidated(List<String> keys);
+    }
+
+    private final RespConfig config;
+    private final List<String> trackingPrefixes;
+    private final InvalidationListener listener;
+    private final InetSocketAddress address;
+    private final Selector selector;
+    private final Thread ioThread;
+    private final AtomicReferenceArray<Connection> connections;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Queue<Connection> registrations = new ConcurrentLinkedQueue<>();
+    /** Connections registered with the selector; I/O thread only. */
+    private final Set<Connection> active = new HashSet<>();
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+    private volatile boolean closed;
+
+    RespClient(RespConfig config, List<String> trackingPrefixes, InvalidationListener listener) {
+        this.config = config;
+        this.trackingPrefixes = List.copyOf(trackingPrefixes);
+        this.listener = listener;
+        this.address = new InetSocketAddress(config.host(), config.port());
+        this.connections = new AtomicReferenceArray<>(config.connections());
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.ioThread = new Thread(this::run, "rest-security-resp-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    /**
+     * Send one command.
+     *
+     * @param handler maps the reply on the I/O thread; its exceptions fail the returned future
+     */
+    <T> CompletableFuture<T> send(Function<Object, T> handler, String... command) {
+        return send(handler, List.<String[]>of(command));
+    }
+
+    /**
+     * Send commands back to back on one connection (e.g. a {@code MULTI ... EXEC} block).
+     *
+     * @param handler maps the reply of the last command; earlier replies are discarded
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> send(Function<Object, T> handler, List<String[]> commands) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("RespClient: closed"));
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        List<Pending> pendings = new ArrayList<>(commands.size());
+        List<byte[]> frames = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            boolean last = i == commands.size() - 1;
+            pendings.add(last ? new Pending((Function<Object, Object>) handler, future, false) : Pending.DISCARD);
+            frames.add(RespCodec.encode(commands.get(i)));
+        }
+        Connection connection;
+        try {
+            connection = connection();
+        } catch (UncheckedIOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (!connection.enqueue(pendings, frames)) {
+            return CompletableFuture.failedFuture(new IOException("RespClient: connection lost"));
+        }
+        wakeup();
+        return (CompletableFuture<T>) future;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            ioThread.join(config.timeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Connection connection() {
+        int slot = Math.floorMod(next.getAndIncrement(), connections.length());
+        Connection connection = connections.get(slot);
+        if (connection != null) {
+            return connection;
+        }
+        synchronized (connections) {
+            connection = connections.get(slot);
+            if (connection == null) {
+                connection = new Connection(slot);
+                connections.set(slot, connection);
+                registrations.add(connection);
+            }
+        }
+        return connection;
+    }
+
+    private void wakeup() {
+        if (wakeupRequested.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select(100);
+            } catch (IOException e) {
+                break;
+            }
+            // Reset before draining queues so a command enqueued after the drain always wakes us again.
+            wakeupRequested.set(false);
+            Connection added;
+            while ((added = registrations.poll()) != null) {
+                register(added);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                try {
+                    if (key.isValid() && key.isConnectable() && connection.channel.finishConnect()) {
+                        connection.connected = true;
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(connection);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    fail(connection, e);
+                }
+            }
+            long now = System.nanoTime();
+            for (Connection connection : new ArrayList<>(active)) {
+                try {
+                    if (connection.connected) {
+                        flush(connection);
+                    } else if (now - connection.connectDeadline > 0) {
+                        fail(connection, new IOException("RespClient: connect to " + address + " timed out"));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    fail(connection, e);
+                }
+            }
+        }
+        for (Connection connection : new ArrayList<>(active)) {
+            fail(connection, new IOException("RespClient: closed"));
+        }
+        Connection pending;
+        while ((pending = registrations.poll()) != null) {
+            fail(pending, new IOException("RespClient: closed"));
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // Nothing left to release.
+        }
+    }
+
+    private void register(Connection connection) {
+        try {
+            connection.key = connection.channel.register(selector,
+                    connection.connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, connection);
+            active.add(connection);
+        } catch (IOException e) {
+            fail(connection, e);
+        }
+    }
+
+    private void flush(Connection connection) throws IOException {
+        while (true) {
+            byte[] frame;
+            while (connection.writing.size() < MAX_GATHER && (frame = connection.outbound.poll()) != null) {
+                connection.writing.add(ByteBuffer.wrap(frame));
+            }
+            if (connection.writing.isEmpty()) {
+                interest(connection, SelectionKey.OP_READ);
+                return;
+            }
+            connection.channel.write(connection.writing.toArray(new ByteBuffer[0]));
+            while (!connection.writing.isEmpty() && !connection.writing.peek().hasRemaining()) {
+                connection.writing.poll();
+            }
+            if (!connection.writing.isEmpty()) {
+                interest(connection, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+    }
+
+    private static void interest(Connection connection, int ops) {
+        if (connection.key.interestOps() != ops) {
+            connection.key.interestOps(ops);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        int read;
+        while ((read = connection.channel.read(connection.in)) > 0) {
+            connection.in.flip();
+            drain(connection);
+            connection.in.compact();
+            if (!connection.in.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(connection.in.capacity() * 2);
+                connection.in.flip();
+                grown.put(connection.in);
+                connection.in = grown;
+            }
+        }
+        if (read < 0) {
+            throw new EOFException("RespClient: connection closed by server");
+        }
+    }
+
+    private void drain(Connection connection) throws IOException {
+        while (true) {
+            Object value = RespCodec.decode(connection.in);
+            if (value == RespCodec.INCOMPLETE) {
+                return;
+            }
+            if (value instanceof RespCodec.Push push) {
+                if ("invalidate".equals(push.kind()) && push.values().size() > 1) {
+                    listener.invalidated(keys(push.values().get(1)));
+                }
+                continue;
+            }
+            Pending pending = connection.pending.poll();
+            if (pending == null) {
+                throw new IOException("RespClient: reply without a pending command");
+            }
+            if (pending.handshake && value instanceof RespCodec.Error error) {
+                throw new IOException("RespClient: handshake failed: " + error.message());
+            }
+            if (pending.future != null) {
+                try {
+                    pending.future.complete(pending.handler.apply(value));
+                } catch (RuntimeException e) {
+                    pending.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private static List<String> keys(Object keys) {
+        if (!(keys instanceof List<?> list)) {
+            return null;
+        }
+        List<String> out = new ArrayList<>(list.size());
+        for (Object key : list) {
+            out.add(String.valueOf(key));
+        }
+        return out;
+    }
+
+    private void fail(Connection connection, Exception cause) {
+        synchronized (connection) {
+            connection.failed = true;
+        }
+        active.remove(connection);
+        connections.compareAndSet(connection.slot, connection, null);
+        if (connection.key != null) {
+            connection.key.cancel();
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+            // Already failing.
+        }
+        Pending pending;
+        while ((pending = connection.pending.poll()) != null) {
+            if (pending.future != null) {
+                pending.future.completeExceptionally(cause);
+            }
+        }
+        listener.invalidated(null);
+    }
+
+    /** A command awaiting its reply. */
+    private record Pending(Function<Object, Object> handler, CompletableFuture<Object> future, boolean handshake) {
+        static final Pending DISCARD = new Pending(null, null, false);
+        static final Pending HANDSHAKE = new Pending(null, null, true);
+    }
+
+    private final class Connection {
+        final int slot;
+        final SocketChannel channel;
+        final long connectDeadline;
+        final Queue<byte[]> outbound = new ConcurrentLinkedQueue<>();
+        final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+        /** Frames being written; I/O thread only. */
+        final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+        /** Read buffer in fill mode; I/O thread only. */
+        ByteBuffer in = ByteBuffer.allocate(READ_BUFFER);
+        SelectionKey key;
+        volatile boolean connected;
+        /** Guarded by {@code this}: once set, nothing more is enqueued. */
+        boolean failed;
+
+        Connection(int slot) {
+            this.slot = slot;
+            this.connectDeadline = System.nanoTime() + config.timeout().toNanos();
+            try {
+                this.channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                this.connected = channel.connect(address);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<String> hello = new ArrayList<>(List.of("HELLO", "3"));
+            if (config.password() != null) {
+                hello.addAll(List.of("AUTH", config.username() != null ? config.username() : "default", config.password()));
+            }
+            List<byte[]> frames = new ArrayList<>();
+            frames.add(RespCodec.encode(hello.toArray(new String[0])));
+            if (!trackingPrefixes.isEmpty()) {
+                List<String> tracking = new ArrayList<>(List.of("CLIENT", "TRACKING", "ON", "BCAST"));
+                for (String prefix : trackingPrefixes) {
+                    tracking.add("PREFIX");
+                    tracking.add(prefix);
+                }
+                frames.add(RespCodec.encode(tracking.toArray(new String[0])));
+            }
+            for (int i = 0; i < frames.size(); i++) {
+                pending.add(Pending.HANDSHAKE);
+            }
+            outbound.addAll(frames);
+        }
+
+        synchronized boolean enqueue(List<Pending> pendings, List<byte[]> frames) {
+            if (failed) {
+                return false;
+            }
+            pending.addAll(pendings);
+            outbound.addAll(frames);
+            return true;
+        }
+    }
+}
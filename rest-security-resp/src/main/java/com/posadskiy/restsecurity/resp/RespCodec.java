@@ -0,0 +1,197 @@
+package com.posadskiy.restsecurity.resp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RESP encoding of commands and incremental decoding of RESP2/RESP3 replies.
+ *
+ * <p>Decoded values: simple, bulk and verbatim strings as {@link String}; integers as {@link Long};
+ * nulls as {@code null}; arrays and sets as {@link List}; maps as {@link Map}; booleans and doubles
+ * boxed; big numbers as {@link String}; errors as {@link Error}; out-of-band pushes as {@link Push}.
+ * Attributes are skipped.
+ */
+final class RespCodec {
+
+    /** Returned by {@link #decode(ByteBuffer)} when the buffer does not yet hold a whole value. */
+    static final Object INCOMPLETE = new Object();
+
+    /** Error reply ({@code -} or {@code !}). */
+    record Error(String message) {
+        boolean isNoScript() {
+            return message.startsWith("NOSCRIPT");
+        }
+    }
+
+    /** Out-of-band push message ({@code >}), e.g. a client-tracking invalidation. */
+    record Push(List<Object> values) {
+        String kind() {
+            return !values.isEmpty() && values.get(0) instanceof String s ? s : "";
+        }
+    }
+
+    private RespCodec() {
+    }
+
+    /** Encode a command as a RESP array of bulk strings. */
+    static byte[] encode(String... args) {
+        byte[][] encoded = new byte[args.length][];
+        int size = 1 + digits(args.length) + 2;
+        for (int i = 0; i < args.length; i++) {
+            encoded[i] = args[i].getBytes(StandardCharsets.UTF_8);
+            size += 1 + digits(encoded[i].length) + 2 + encoded[i].length + 2;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put((byte) '*');
+        putNumber(out, args.length);
+        for (byte[] arg : encoded) {
+            out.put((byte) '$');
+            putNumber(out, arg.length);
+            out.put(arg).put((byte) '\r').put((byte) '\n');
+        }
+        return out.array();
+    }
+
+    /**
+     * Decode one value starting at the buffer's position. On success the position is moved past it;
+     * when the value is incomplete the position is left unchanged and {@link #INCOMPLETE} is returned.
+     *
+     * @throws IllegalStateException on malformed input
+     */
+    static Object decode(ByteBuffer in) {
+        int start = in.position();
+        Object value = value(in);
+        if (value == INCOMPLETE) {
+            in.position(start);
+        }
+        return value;
+    }
+
+    private static Object value(ByteBuffer in) {
+        if (!in.hasRemaining()) {
+            return INCOMPLETE;
+        }
+        byte type = in.get();
+        switch (type) {
+            case '+', '(' -> {
+                return line(in);
+            }
+            case '-' -> {
+                Object line = line(in);
+                return line == INCOMPLETE ? INCOMPLETE : new Error((String) line);
+            }
+            case ':' -> {
+                Object line = line(in);
+                return line == INCOMPLETE ? INCOMPLETE : Long.valueOf((String) line);
+            }
+            case ',' -> {
+                Object line = line(in);
+                return line == INCOMPLETE ? INCOMPLETE : Double.valueOf(((String) line).replace("inf", "Infinity"));
+            }
+            case '#' -> {
+                Object line = line(in);
+                return line == INCOMPLETE ? INCOMPLETE : "t".equals(line);
+            }
+            case '_' -> {
+                return line(in) == INCOMPLETE ? INCOMPLETE : null;
+            }
+            case '$', '!', '=' -> {
+                Object blob = blob(in);
+                if (blob == INCOMPLETE || blob == null) {
+                    return blob;
+                }
+                if (type == '!') {
+                    return new Error((String) blob);
+                }
+                return type == '=' ? ((String) blob).substring(4) : blob;
+            }
+            case '*', '~', '>' -> {
+                Object count = count(in);
+                if (count == INCOMPLETE || count == null) {
+                    return count;
+                }
+                List<Object> values = new ArrayList<>((int) count);
+                for (int i = 0; i < (int) count; i++) {
+                    Object element = value(in);
+                    if (element == INCOMPLETE) {
+                        return INCOMPLETE;
+                    }
+                    values.add(element);
+                }
+                return type == '>' ? new Push(values) : values;
+            }
+            case '%', '|' -> {
+                Object count = count(in);
+                if (count == INCOMPLETE || count == null) {
+                    return count;
+                }
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < (int) count; i++) {
+                    Object key = value(in);
+                    if (key == INCOMPLETE) {
+                        return INCOMPLETE;
+                    }
+                    Object val = value(in);
+                    if (val == INCOMPLETE) {
+                        return INCOMPLETE;
+                    }
+                    map.put(key, val);
+                }
+                return type == '|' ? value(in) : map;
+            }
+            default -> throw new IllegalStateException("RespCodec: unexpected type byte " + (char) type);
+        }
+    }
+
+    /** Element count, {@code null} for a RESP2 null array, or {@link #INCOMPLETE}. */
+    private static Object count(ByteBuffer in) {
+        Object line = line(in);
+        if (line == INCOMPLETE) {
+            return INCOMPLETE;
+        }
+        int count = Integer.parseInt((String) line);
+        return count < 0 ? null : count;
+    }
+
+    private static Object blob(ByteBuffer in) {
+        Object count = count(in);
+        if (count == INCOMPLETE || count == null) {
+            return count;
+        }
+        int length = (int) count;
+        if (in.remaining() < length + 2) {
+            return INCOMPLETE;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length + 2);
+        return value;
+    }
+
+    private static Object line(ByteBuffer in) {
+        int start = in.position();
+        for (int i = start; i < in.limit() - 1; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n') {
+                String line = new String(in.array(), in.arrayOffset() + start, i - start, StandardCharsets.UTF_8);
+                in.position(i + 2);
+                return line;
+            }
+        }
+        return INCOMPLETE;
+    }
+
+    private static void putNumber(ByteBuffer out, int value) {
+        String digits = Integer.toString(value);
+        for (int i = 0; i < digits.length(); i++) {
+            out.put((byte) digits.charAt(i));
+        }
+        out.put((byte) '\r').put((byte) '\n');
+    }
+
+    private static int digits(int value) {
+        return Integer.toString(value).length();
+    }
+}
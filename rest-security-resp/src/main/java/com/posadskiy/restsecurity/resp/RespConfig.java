@@ -0,0 +1,94 @@
+package com.posadskiy.restsecurity.resp;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link RespSecurityController}.
+ *
+ * @param host                 server host
+ * @param port                 server port
+ * @param username             ACL user for {@code HELLO ... AUTH}; null for {@code default}
+ * @param password             password; null for no authentication
+ * @param keyPrefix            prefix of every key; sessions are {@code <prefix>session:<id>} and users
+ *                             {@code <prefix>user:<id>}. Default {@code "rs:"}
+ * @param connections          shared, pipelined connections. Default 2
+ * @param timeout              connect and reply timeout. Default 2 seconds
+ * @param nearCache            cache lookups locally, invalidated through RESP3 client tracking. Default on
+ * @param maxNearCacheEntries  bound on cached sessions and users (each). Default 100,000
+ * @param nearCacheTtl         upper bound on how long an entry is cached, as a backstop for missed
+ *                             invalidations. Default 1 minute
+ * @param sessionTtl           lifetime of sessions created by {@link RespSecurityController#createSession}.
+ *                             Default 30 minutes
+ */
+public record RespConfig(
+        String host,
+        int port,
+        String username,
+        String password,
+        String keyPrefix,
+        int connections,
+        Duration timeout,
+        boolean nearCache,
+        int maxNearCacheEntries,
+        Duration nearCacheTtl,
+        Duration sessionTtl
+) {
+
+    public RespConfig {
+        if (host == null || host.isBlank()) {
+            throw new IllegalArgumentException("RespConfig: host is required");
+        }
+        if (port <= 0 || port > 65535) {
+            throw new IllegalArgumentException("RespConfig: port must be between 1 and 65535");
+        }
+        keyPrefix = keyPrefix != null ? keyPrefix : "rs:";
+        connections = connections > 0 ? connections : 2;
+        timeout = positiveOr(timeout, Duration.ofSeconds(2));
+        maxNearCacheEntries = maxNearCacheEntries > 0 ? maxNearCacheEntries : 100_000;
+        nearCacheTtl = positiveOr(nearCacheTtl, Duration.ofMinutes(1));
+        sessionTtl = positiveOr(sessionTtl, Duration.ofMinutes(30));
+    }
+
+    /**
+     * Defaults for everything but the address, with the near cache on.
+     */
+    public static RespConfig of(String host, int port) {
+        return new RespConfig(host, port, null, null, null, 0, null, true, 0, null, null);
+    }
+
+    /** Copy authenticating as {@code username} (null for {@code default}) with {@code password}. */
+    public RespConfig withCredentials(String username, String password) {
+        return new RespConfig(host, port, username, password, keyPrefix, connections, timeout, nearCache,
+                maxNearCacheEntries, nearCacheTtl, sessionTtl);
+    }
+
+    /** Copy with the near cache on or off. */
+    public RespConfig withNearCache(boolean nearCache) {
+        return new RespConfig(host, port, username, password, keyPrefix, connections, timeout, nearCache,
+                maxNearCacheEntries, nearCacheTtl, sessionTtl);
+    }
+
+    /** Copy using {@code connections} shared connections. */
+    public RespConfig withConnections(int connections) {
+        return new RespConfig(host, port, username, password, keyPrefix, connections, timeout, nearCache,
+                maxNearCacheEntries, nearCacheTtl, sessionTtl);
+    }
+
+    /** Copy creating sessions with lifetime {@code sessionTtl}. */
+    public RespConfig withSessionTtl(Duration sessionTtl) {
+        return new RespConfig(host, port, username, password, keyPrefix, connections, timeout, nearCache,
+                maxNearCacheEntries, nearCacheTtl, sessionTtl);
+    }
+
+    String sessionKeyPrefix() {
+        return keyPrefix + "session:";
+    }
+
+    String userKeyPrefix() {
+        return keyPrefix + "user:";
+    }
+
+    private static Duration positiveOr(Duration value, Duration fallback) {
+        return value != null && !value.isNegative() && !value.isZero() ? value : fallback;
+    }
+}
@@ -0,0 +1,416 @@
+package com.posadskiy.restsecurity.resp;
+
+import com.posadskiy.restsecurity.controller.BatchSessionSecurityController;
+import com.posadskiy.restsecurity.controller.BatchUserSecurityController;
+import com.posadskiy.restsecurity.controller.EnforcementMemo;
+import com.posadskiy.restsecurity.controller.SessionLookup;
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import com.posadskiy.restsecurity.id.SessionIdGenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements both {@link SessionSecurityController} and {@link UserSecurityController} on a Redis-protocol
+ * (RESP3) server such as Redis 6+ or Valkey.
+ *
+ * <p>Key layout: a session is a string {@code <prefix>session:<id>} holding the user id, with the session
+ * expiry as the key's TTL; a user is a set {@code <prefix>user:<id>} of role names (a user exists while it
+ * has roles). One Lua script returns user id, remaining TTL and roles, so an enforcement costs a single
+ * round trip. For {@code BatchingSecurityController}, many sessions are read with one {@code MGET} and many
+ * users with one {@code MULTI} block. The script reads the user key by name, so it needs a standalone server
+ * or a cluster where both keys hash to the same slot.
+ *
+ * <p>With {@link RespConfig#nearCache()} lookups are cached locally and invalidated through RESP3
+ * client tracking in broadcast mode; positive and negative results are cached, since creating a key
+ * invalidates it too. Without it, a lookup is still reused by the calls of the same enforcement on the
+ * same thread ({@link EnforcementMemo}). Server errors and timeouts are not cached and fail closed.
+ */
+public final class RespSecurityController implements BatchSessionSecurityController, BatchUserSecurityController,
+        AutoCloseable {
+
+    static final String LOOKUP_SCRIPT = """
+            local user = redis.call('GET', KEYS[1])
+            if not user then return false end
+            return {user, redis.call('PTTL', KEYS[1]), redis.call('SMEMBERS', ARGV[1] .. user)}
+            """;
+    static final String LOOKUP_SCRIPT_SHA = sha1(LOOKUP_SCRIPT);
+
+    private static final Lookup RETRY_WITH_EVAL = new Lookup(null, null, -1, List.of());
+
+    private final RespConfig config;
+    private final RespClient client;
+    private final String sessionPrefix;
+    private final String userPrefix;
+    private final Map<String, CachedSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, CachedRoles> users = new ConcurrentHashMap<>();
+    private final EnforcementMemo<Lookup> lastSession = new EnforcementMemo<>();
+    private final EnforcementMemo<List<String>> lastUser = new EnforcementMemo<>();
+    private final SessionIdGenerator idGenerator = SessionIdGenerator.shared();
+
+    public RespSecurityController(RespConfig config) {
+        this.config = config;
+        this.sessionPrefix = config.sessionKeyPrefix();
+        this.userPrefix = config.userKeyPrefix();
+        this.client = new RespClient(config,
+                config.nearCache() ? List.of(sessionPrefix, userPrefix) : List.of(), this::invalidated);
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        Lookup lookup = lookup(sessionId);
+        return lookup.userId != null && lookup.expiresAtMillis > System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        return !isSessionExist(sessionId);
+    }
+
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        Lookup lookup = lookup(sessionId);
+        return lookup.expiresAtMillis > System.currentTimeMillis() ? lookup.userId : null;
+    }
+
+    /** True if the user has at least one role. */
+    @Override
+    public boolean isUserExist(String userId) {
+        return !roles(userId).isEmpty();
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        return roles(userId);
+    }
+
+    /**
+     * Create a session for {@code userId} that expires after {@link RespConfig#sessionTtl()}.
+     *
+     * @return new session id (22 base64url characters)
+     * @throws IllegalStateException if the server did not store it
+     */
+    public String createSession(String userId) {
+        if (userId == null || userId.isBlank()) {
+            throw new IllegalArgumentException("RespSecurityController: userId must be non-blank");
+        }
+        String sessionId = idGenerator.nextString();
+        Object stored = await(client.send(reply -> reply, "SET", sessionPrefix + sessionId, userId,
+                "PX", Long.toString(config.sessionTtl().toMillis())));
+        if (!"OK".equals(stored)) {
+            throw new IllegalStateException("RespSecurityController: session was not stored: " + stored);
+        }
+        return sessionId;
+    }
+
+    /**
+     * Delete a session.
+     *
+     * @return true if it existed
+     * @throws IllegalStateException if the server did not answer
+     */
+    public boolean revoke(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return false;
+        }
+        Object deleted = await(client.send(reply -> reply, "DEL", sessionPrefix + sessionId));
+        if (!(deleted instanceof Long count)) {
+            throw new IllegalStateException("RespSecurityController: revoke failed: " + deleted);
+        }
+        forgetSession(sessionId);
+        return count > 0;
+    }
+
+    /**
+     * Replace the roles of {@code userId} atomically; an empty collection removes the user.
+     *
+     * @throws IllegalStateException if the server did not apply it
+     */
+    public void setUserRoles(String userId, Collection<String> roles) {
+        if (userId == null || userId.isBlank()) {
+            throw new IllegalArgumentException("RespSecurityController: userId must be non-blank");
+        }
+        String key = userPrefix + userId;
+        List<String[]> commands = new ArrayList<>(4);
+        commands.add(new String[]{"MULTI"});
+        commands.add(new String[]{"DEL", key});
+        if (!roles.isEmpty()) {
+            List<String> sadd = new ArrayList<>(roles.size() + 2);
+            sadd.add("SADD");
+            sadd.add(key);
+            sadd.addAll(roles);
+            commands.add(sadd.toArray(new String[0]));
+        }
+        commands.add(new String[]{"EXEC"});
+        Object result = await(client.send(reply -> reply, commands));
+        if (!(result instanceof List<?>)) {
+            throw new IllegalStateException("RespSecurityController: role update failed: " + result);
+        }
+        users.remove(userId);
+        lastUser.clear();
+    }
+
+    /**
+     * Sessions by id with one {@code MGET}. A session key expires with its session, so every session found
+     * is live. Reads the server even with the near cache on; if it does not answer, no session is returned.
+     */
+    @Override
+    public Map<String, SessionLookup> lookupSessions(Set<String> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return Map.of();
+        }
+        List<String> ids = List.copyOf(sessionIds);
+        String[] mget = new String[ids.size() + 1];
+        mget[0] = "MGET";
+        for (int i = 0; i < ids.size(); i++) {
+            mget[i + 1] = sessionPrefix + ids.get(i);
+        }
+        Map<String, SessionLookup> found = await(client.send(reply -> {
+            List<?> users = replies(reply);
+            Map<String, SessionLookup> sessions = new HashMap<>();
+            for (int i = 0; i < Math.min(users.size(), ids.size()); i++) {
+                if (users.get(i) != null) {
+                    sessions.put(ids.get(i), new SessionLookup(users.get(i).toString(), false));
+                }
+            }
+            return sessions;
+        }, mget));
+        return found != null ? found : Map.of();
+    }
+
+    /**
+     * Roles by user id with one {@code SMEMBERS} per user, sent together in a {@code MULTI ... EXEC} block.
+     * Reads the server even with the near cache on; if it does not answer, no user is returned.
+     */
+    @Override
+    public Map<String, Set<String>> getUsersRoles(Set<String> userIds) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+        List<String> ids = List.copyOf(userIds);
+        List<String[]> commands = new ArrayList<>(ids.size() + 2);
+        commands.add(new String[]{"MULTI"});
+        for (String userId : ids) {
+            commands.add(new String[]{"SMEMBERS", userPrefix + userId});
+        }
+        commands.add(new String[]{"EXEC"});
+        Map<String, Set<String>> found = await(client.send(reply -> {
+            List<?> members = replies(reply);
+            Map<String, Set<String>> users = new HashMap<>();
+            for (int i = 0; i < Math.min(members.size(), ids.size()); i++) {
+                List<String> roles = strings(members.get(i));
+                if (!roles.isEmpty()) {
+                    users.put(ids.get(i), Set.copyOf(roles));
+                }
+            }
+            return users;
+        }, commands));
+        return found != null ? found : Map.of();
+    }
+
+    /** Number of sessions (including known-absent ids) in the near cache. */
+    public int nearCacheSize() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    private Lookup lookup(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return Lookup.absent(sessionId);
+        }
+        Lookup lookup = lastSession.get(sessionId, this::fetch);
+        return lookup != null ? lookup : Lookup.absent(sessionId);
+    }
+
+    /** @return the lookup, or null if the server did not answer */
+    private Lookup fetch(String sessionId) {
+        CachedSession cached = sessions.get(sessionId);
+        if (cached != null && cached.validUntilMillis > System.currentTimeMillis()) {
+            // Its roles may predate a role change; the roles lookup goes through the users cache instead.
+            return cached.lookup;
+        }
+        String key = sessionPrefix + sessionId;
+        Lookup lookup = await(client.send(reply -> onLookup(sessionId, reply),
+                "EVALSHA", LOOKUP_SCRIPT_SHA, "1", key, userPrefix));
+        if (lookup == RETRY_WITH_EVAL) {
+            lookup = await(client.send(reply -> onLookup(sessionId, reply),
+                    "EVAL", LOOKUP_SCRIPT, "1", key, userPrefix));
+        }
+        if (lookup == RETRY_WITH_EVAL || lookup == null) {
+            return null;
+        }
+        if (lookup.userId != null) {
+            lastUser.put(lookup.userId, lookup.roles);
+        }
+        return lookup;
+    }
+
+    private List<String> roles(String userId) {
+        if (userId == null || userId.isBlank()) {
+            return List.of();
+        }
+        List<String> roles = lastUser.get(userId, this::fetchRoles);
+        return roles != null ? roles : List.of();
+    }
+
+    /** @return the roles, or null if the server did not answer */
+    private List<String> fetchRoles(String userId) {
+        CachedRoles cached = users.get(userId);
+        if (cached != null && cached.validUntilMillis > System.currentTimeMillis()) {
+            return cached.roles;
+        }
+        return await(client.send(reply -> onRoles(userId, reply), "SMEMBERS", userPrefix + userId));
+    }
+
+    /** Runs on the I/O thread, ahead of any invalidation that follows the reply. */
+    private Lookup onLookup(String sessionId, Object reply) {
+        if (reply instanceof RespCodec.Error error) {
+            if (error.isNoScript()) {
+                return RETRY_WITH_EVAL;
+            }
+            throw new IllegalStateException("RespSecurityController: " + error.message());
+        }
+        long now = System.currentTimeMillis();
+        Lookup lookup;
+        if (reply instanceof List<?> values && values.size() == 3 && values.get(1) instanceof Long ttl) {
+            String userId = String.valueOf(values.get(0));
+            List<String> roles = strings(values.get(2));
+            lookup = new Lookup(sessionId, userId, ttl >= 0 ? now + ttl : Long.MAX_VALUE, roles);
+            if (config.nearCache()) {
+                cacheRoles(userId, roles, now);
+            }
+        } else {
+            lookup = new Lookup(sessionId, null, -1, List.of());
+        }
+        if (config.nearCache()) {
+            if (sessions.size() >= config.maxNearCacheEntries()) {
+                evict(sessions, now);
+            }
+            long validUntil = now + config.nearCacheTtl().toMillis();
+            sessions.put(sessionId, new CachedSession(lookup,
+                    lookup.userId != null ? Math.min(lookup.expiresAtMillis, validUntil) : validUntil));
+        }
+        return lookup;
+    }
+
+    /** Runs on the I/O thread, ahead of any invalidation that follows the reply. */
+    private List<String> onRoles(String userId, Object reply) {
+        if (reply instanceof RespCodec.Error error) {
+            throw new IllegalStateException("RespSecurityController: " + error.message());
+        }
+        List<String> roles = strings(reply);
+        if (config.nearCache()) {
+            cacheRoles(userId, roles, System.currentTimeMillis());
+        }
+        return roles;
+    }
+
+    private void cacheRoles(String userId, List<String> roles, long now) {
+        if (users.size() >= config.maxNearCacheEntries()) {
+            evict(users, now);
+        }
+        users.put(userId, new CachedRoles(roles, now + config.nearCacheTtl().toMillis()));
+    }
+
+    /** Client-tracking invalidation, on the I/O thread; {@code null} keys means everything. */
+    private void invalidated(List<String> keys) {
+        if (keys == null) {
+            sessions.clear();
+            users.clear();
+            return;
+        }
+        for (String key : keys) {
+            if (key.startsWith(sessionPrefix)) {
+                sessions.remove(key.substring(sessionPrefix.length()));
+            } else if (key.startsWith(userPrefix)) {
+                users.remove(key.substring(userPrefix.length()));
+            }
+        }
+    }
+
+    private void forgetSession(String sessionId) {
+        sessions.remove(sessionId);
+        lastSession.clear();
+    }
+
+    private <T> T await(CompletableFuture<T> reply) {
+        try {
+            return reply.get(config.timeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Drop expired entries; if the cache is still full, drop an arbitrary tenth of it. */
+    private void evict(Map<String, ? extends Expiring> cache, long now) {
+        cache.values().removeIf(entry -> entry.validUntilMillis() <= now);
+        int excess = cache.size() - config.maxNearCacheEntries() + Math.max(1, config.maxNearCacheEntries() / 10);
+        Iterator<String> keys = cache.keySet().iterator();
+        while (excess-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static List<?> replies(Object reply) {
+        if (reply instanceof RespCodec.Error error) {
+            throw new IllegalStateException("RespSecurityController: " + error.message());
+        }
+        return reply instanceof List<?> list ? list : List.of();
+    }
+
+    private static List<String> strings(Object reply) {
+        if (!(reply instanceof List<?> list)) {
+            return List.of();
+        }
+        List<String> out = new ArrayList<>(list.size());
+        for (Object value : list) {
+            if (value != null) {
+                out.add(value.toString());
+            }
+        }
+        return List.copyOf(out);
+    }
+
+    private static String sha1(String script) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Lookup(String sessionId, String userId, long expiresAtMillis, List<String> roles) {
+        static Lookup absent(String sessionId) {
+            return new Lookup(sessionId, null, -1, List.of());
+        }
+    }
+
+    private interface Expiring {
+        long validUntilMillis();
+    }
+
+    private record CachedSession(Lookup lookup, long validUntilMillis) implements Expiring {}
+
+    private record CachedRoles(List<String> roles, long validUntilMillis) implements Expiring {}
+}
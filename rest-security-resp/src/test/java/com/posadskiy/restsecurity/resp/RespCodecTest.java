@@ -0,0 +1,78 @@
+package com.posadskiy.restsecurity.resp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RespCodecTest {
+
+    private static Object decode(String resp) {
+        ByteBuffer in = ByteBuffer.wrap(resp.getBytes(StandardCharsets.UTF_8));
+        Object value = RespCodec.decode(in);
+        assertFalse(in.hasRemaining(), "trailing bytes");
+        return value;
+    }
+
+    @Test
+    void encode_writesArrayOfBulkStrings() {
+        assertEquals("*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$4\r\nvälue\r\n".replace("$4", "$6"),
+                new String(RespCodec.encode("SET", "k", "välue"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decode_scalars() {
+        assertEquals("OK", decode("+OK\r\n"));
+        assertEquals(new RespCodec.Error("ERR boom"), decode("-ERR boom\r\n"));
+        assertEquals(42L, decode(":42\r\n"));
+        assertEquals("héllo", decode("$6\r\nhéllo\r\n"));
+        assertNull(decode("$-1\r\n"));
+        assertNull(decode("*-1\r\n"));
+        assertNull(decode("_\r\n"));
+        assertEquals(true, decode("#t\r\n"));
+        assertEquals(false, decode("#f\r\n"));
+        assertEquals(1.5, decode(",1.5\r\n"));
+        assertEquals(Double.POSITIVE_INFINITY, decode(",inf\r\n"));
+        assertEquals("12345678901234567890", decode("(12345678901234567890\r\n"));
+        assertEquals(new RespCodec.Error("SYNTAX x"), decode("!8\r\nSYNTAX x\r\n"));
+        assertEquals("Some string", decode("=15\r\ntxt:Some string\r\n"));
+    }
+
+    @Test
+    void decode_aggregates() {
+        assertEquals(List.of("a", 1L, List.of()), decode("*3\r\n$1\r\na\r\n:1\r\n*0\r\n"));
+        assertEquals(List.of("x", "y"), decode("~2\r\n+x\r\n+y\r\n"));
+        assertEquals(Map.of("proto", 3L), decode("%1\r\n$5\r\nproto\r\n:3\r\n"));
+        assertEquals("value", decode("|1\r\n+ttl\r\n:3600\r\n+value\r\n"));
+
+        Object push = decode(">2\r\n$10\r\ninvalidate\r\n*1\r\n$3\r\nkey\r\n");
+        RespCodec.Push p = assertInstanceOf(RespCodec.Push.class, push);
+        assertEquals("invalidate", p.kind());
+        assertEquals(List.of("key"), p.values().get(1));
+        assertEquals("", new RespCodec.Push(List.of()).kind());
+        assertTrue(new RespCodec.Error("NOSCRIPT no").isNoScript());
+    }
+
+    @Test
+    void decode_incompleteInput_leavesPositionUnchanged() {
+        String full = "*2\r\n$5\r\nhello\r\n%1\r\n+k\r\n+v\r\n";
+        for (int cut = 0; cut < full.length(); cut++) {
+            ByteBuffer in = ByteBuffer.wrap(full.substring(0, cut).getBytes(StandardCharsets.UTF_8));
+            assertSame(RespCodec.INCOMPLETE, RespCodec.decode(in), "cut at " + cut);
+            assertEquals(0, in.position());
+        }
+        ByteBuffer two = ByteBuffer.wrap("+a\r\n+b\r\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("a", RespCodec.decode(two));
+        assertEquals("b", RespCodec.decode(two));
+        assertSame(RespCodec.INCOMPLETE, RespCodec.decode(two));
+    }
+
+    @Test
+    void decode_rejectsUnknownType() {
+        assertThrows(IllegalStateException.class, () -> decode("?x\r\n"));
+    }
+}
@@ -0,0 +1,326 @@
+package com.posadskiy.restsecurity.resp;
+
+import com.posadskiy.restsecurity.coalesce.BatchConfig;
+import com.posadskiy.restsecurity.coalesce.BatchingSecurityController;
+import com.posadskiy.restsecurity.context.SecurityContext;
+import com.posadskiy.restsecurity.controller.SessionLookup;
+import com.posadskiy.restsecurity.enforcer.SecurityEnforcer;
+import com.posadskiy.restsecurity.exception.PermissionIsAbsentException;
+import com.posadskiy.restsecurity.exception.SessionDoesNotExistException;
+import com.posadskiy.restsecurity.rest.SecuredRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RespSecurityControllerTest {
+
+    private RespStandInServer server;
+    private RespSecurityController controller;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new RespStandInServer();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (controller != null) {
+            controller.close();
+        }
+        server.close();
+    }
+
+    private RespConfig config() {
+        return RespConfig.of("127.0.0.1", server.port());
+    }
+
+    private void givenSession(String sessionId, String userId, String... roles) {
+        server.set("rs:session:" + sessionId, userId);
+        server.sadd("rs:user:" + userId, roles);
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void enforcement_costsOneRoundTrip_andThenNoneWithNearCache() {
+        givenSession("s1", "alice", "USER");
+        givenSession("s2", "bob", "ADMIN");
+        controller = new RespSecurityController(config());
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+
+        SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest("s1"), "USER");
+        assertEquals("alice", ctx.userId());
+        assertEquals(Set.of("USER"), ctx.roles());
+        assertEquals(1, server.count("EVALSHA"));
+        assertEquals(1, server.count("EVAL"), "script loaded after NOSCRIPT");
+
+        int before = server.dataCommands();
+        enforcer.validateAndBuildContext(new SecuredRequest("s2"), "USER");
+        assertEquals(before + 1, server.dataCommands(), "one round trip per enforcement");
+
+        before = server.dataCommands();
+        for (int i = 0; i < 10; i++) {
+            enforcer.validateAndBuildContext(new SecuredRequest("s1"), "USER");
+        }
+        assertEquals(before, server.dataCommands(), "served from the near cache");
+        assertEquals(2, controller.nearCacheSize());
+    }
+
+    @Test
+    void nearCache_isInvalidatedByOtherClients() throws InterruptedException {
+        givenSession("s1", "alice", "USER");
+        controller = new RespSecurityController(config());
+        assertTrue(controller.isSessionExist("s1"));
+        assertFalse(controller.isSessionExist("s-new"));
+        assertEquals(List.of("USER"), controller.getUserRoles("alice"));
+
+        server.delete("rs:session:s1");
+        server.sadd("rs:user:alice", "ADMIN");
+        server.set("rs:session:s-new", "alice");
+
+        eventually(() -> !controller.isSessionExist("s1"));
+        eventually(() -> controller.getUserRoles("alice").contains("ADMIN"));
+        eventually(() -> controller.isSessionExist("s-new"));
+    }
+
+    @Test
+    void revokedRole_isEnforced_whileTheSessionStaysNearCached() throws InterruptedException {
+        givenSession("s1", "alice", "USER", "EDITOR");
+        controller = new RespSecurityController(config());
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+        enforcer.validateAndBuildContext(new SecuredRequest("s1"), "EDITOR");
+
+        server.delete("rs:user:alice");
+        server.sadd("rs:user:alice", "USER");
+        eventually(() -> controller.getUserRoles("alice").equals(List.of("USER")));
+
+        assertThrows(PermissionIsAbsentException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest("s1"), "EDITOR"));
+        assertEquals(Set.of("USER"), enforcer.validateAndBuildContext(new SecuredRequest("s1"), "USER").roles());
+        assertEquals(1, controller.nearCacheSize());
+    }
+
+    @Test
+    void withoutNearCache_oneEnforcementStillCostsOneRoundTrip() {
+        givenSession("s1", "alice", "USER");
+        controller = new RespSecurityController(config().withNearCache(false));
+        SecurityEnforcer enforcer = new SecurityEnforcer(controller, controller);
+
+        enforcer.validateAndBuildContext(new SecuredRequest("s1"), "USER");
+        int before = server.dataCommands();
+        enforcer.validateAndBuildContext(new SecuredRequest("s1"), "USER");
+        assertEquals(before + 1, server.dataCommands());
+        assertEquals(0, server.count("CLIENT"));
+        assertEquals(0, controller.nearCacheSize());
+
+        server.delete("rs:session:s1");
+        assertThrows(SessionDoesNotExistException.class, () ->
+                enforcer.validateAndBuildContext(new SecuredRequest("s1"), "USER"));
+    }
+
+    @Test
+    void batchLookups_readManyKeysInOneRoundTrip() {
+        givenSession("s1", "alice", "USER");
+        givenSession("s2", "bob", "ADMIN", "USER");
+        server.set("rs:session:s3", "ghost");
+        controller = new RespSecurityController(config());
+
+        Map<String, SessionLookup> sessions = controller.lookupSessions(Set.of("s1", "s2", "s3", "missing"));
+        Map<String, Set<String>> users = controller.getUsersRoles(Set.of("alice", "bob", "ghost"));
+
+        assertEquals(Map.of("s1", new SessionLookup("alice", false), "s2", new SessionLookup("bob", false),
+                "s3", new SessionLookup("ghost", false)), sessions);
+        assertEquals(Map.of("alice", Set.of("USER"), "bob", Set.of("ADMIN", "USER")), users);
+        assertEquals(1, server.count("MGET"));
+        assertEquals(1, server.count("MULTI"));
+        assertEquals(1, server.count("EXEC"));
+        assertEquals(0, server.count("GET") + server.count("EVALSHA") + server.count("EVAL"));
+        assertEquals(Map.of(), controller.lookupSessions(Set.of()));
+        assertEquals(Map.of(), controller.getUsersRoles(Set.of()));
+    }
+
+    @Test
+    void behindBatching_enforcesWithBatchedLookups() {
+        givenSession("s1", "alice", "USER");
+        controller = new RespSecurityController(config().withNearCache(false));
+        BatchingSecurityController batching = new BatchingSecurityController(controller, controller,
+                BatchConfig.defaults());
+        SecurityEnforcer enforcer = new SecurityEnforcer(batching, batching);
+
+        assertEquals(Set.of("USER"), enforcer.validateAndBuildContext(new SecuredRequest("s1"), "USER").roles());
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest("s2"), "USER"));
+        assertEquals(2, server.count("MGET"));
+        assertEquals(0, server.count("EVALSHA"));
+    }
+
+    @Test
+    void writes_createRevokeAndSetRoles() throws InterruptedException {
+        controller = new RespSecurityController(config().withSessionTtl(Duration.ofMinutes(5)));
+        controller.setUserRoles("alice", List.of("USER", "AUDITOR"));
+        String sessionId = controller.createSession("alice");
+
+        assertEquals(22, sessionId.length());
+        assertTrue(controller.isSessionExist(sessionId));
+        assertFalse(controller.isSessionExpired(sessionId));
+        assertEquals("alice", controller.getUserIdBySessionId(sessionId));
+        assertTrue(controller.isUserExist("alice"));
+        assertEquals(Set.of("USER", "AUDITOR"), Set.copyOf(controller.getUserRoles("alice")));
+
+        controller.setUserRoles("alice", List.of());
+        assertFalse(controller.isUserExist("alice"));
+        assertTrue(controller.revoke(sessionId));
+        assertFalse(controller.revoke(sessionId));
+        assertFalse(controller.revoke(null));
+        assertFalse(controller.isSessionExist(sessionId));
+        assertTrue(controller.isSessionExpired(sessionId));
+        assertNull(controller.getUserIdBySessionId(sessionId));
+        assertThrows(IllegalArgumentException.class, () -> controller.createSession(" "));
+        assertThrows(IllegalArgumentException.class, () -> controller.setUserRoles(null, List.of()));
+    }
+
+    @Test
+    void sessionTtl_isHonoured() throws InterruptedException {
+        controller = new RespSecurityController(config().withSessionTtl(Duration.ofMillis(200)));
+        controller.setUserRoles("alice", List.of("USER"));
+        String sessionId = controller.createSession("alice");
+        assertTrue(controller.isSessionExist(sessionId));
+
+        Thread.sleep(300);
+        assertFalse(controller.isSessionExist(sessionId));
+        assertNull(controller.getUserIdBySessionId(sessionId));
+    }
+
+    @Test
+    void concurrentLookups_arePipelinedOnSharedConnections() throws Exception {
+        int lookups = 32;
+        for (int i = 0; i < lookups; i++) {
+            givenSession("s" + i, "user" + i, "USER");
+        }
+        controller = new RespSecurityController(config().withConnections(1));
+        controller.isSessionExist("warm-up");
+        server.delayReplies(50);
+
+        ExecutorService pool = Executors.newFixedThreadPool(lookups);
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < lookups; i++) {
+            String sessionId = "s" + i;
+            tasks.add(() -> controller.getUserIdBySessionId(sessionId));
+        }
+        long start = System.nanoTime();
+        List<Future<String>> results = pool.invokeAll(tasks);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        pool.shutdown();
+
+        for (int i = 0; i < lookups; i++) {
+            assertEquals("user" + i, results.get(i).get());
+        }
+        assertEquals(1, server.connections());
+        assertTrue(elapsedMillis < lookups * 50 / 2, "took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void droppedConnection_flushesCacheAndReconnects() throws Exception {
+        givenSession("s1", "alice", "USER");
+        controller = new RespSecurityController(config().withConnections(1));
+        assertTrue(controller.isSessionExist("s1"));
+        assertEquals(1, controller.nearCacheSize());
+
+        server.dropConnections();
+        eventually(() -> controller.nearCacheSize() == 0);
+        eventually(() -> controller.isSessionExist("s1"));
+        assertEquals(2, server.connections());
+    }
+
+    @Test
+    void authentication_usesHello() {
+        server.requirePassword("secret");
+        givenSession("s1", "alice", "USER");
+
+        controller = new RespSecurityController(config().withCredentials(null, "secret"));
+        assertTrue(controller.isSessionExist("s1"));
+        controller.close();
+
+        controller = new RespSecurityController(config().withCredentials("default", "wrong"));
+        assertFalse(controller.isSessionExist("s1"));
+        assertThrows(IllegalStateException.class, () -> controller.createSession("alice"));
+    }
+
+    @Test
+    void failures_failClosed() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        controller = new RespSecurityController(RespConfig.of("127.0.0.1", closedPort));
+        assertFalse(controller.isSessionExist("s1"));
+        assertTrue(controller.isSessionExpired("s1"));
+        assertNull(controller.getUserIdBySessionId("s1"));
+        assertFalse(controller.isUserExist("alice"));
+        assertEquals(List.of(), controller.getUserRoles("alice"));
+        assertThrows(IllegalStateException.class, () -> controller.revoke("s1"));
+        assertThrows(IllegalStateException.class, () -> controller.setUserRoles("alice", List.of("USER")));
+        assertEquals(Map.of(), controller.lookupSessions(Set.of("s1")));
+        assertEquals(Map.of(), controller.getUsersRoles(Set.of("alice")));
+        assertFalse(controller.isSessionExist(null));
+        assertFalse(controller.isUserExist(" "));
+
+        controller.close();
+        assertFalse(controller.isSessionExist("s1"));
+    }
+
+    @Test
+    void rejectedTracking_failsHandshake() {
+        server.rejectTracking();
+        givenSession("s1", "alice", "USER");
+        controller = new RespSecurityController(config());
+        assertFalse(controller.isSessionExist("s1"));
+    }
+
+    @Test
+    void config_defaultsAndValidation() {
+        RespConfig config = RespConfig.of("localhost", 6379);
+        assertEquals("rs:", config.keyPrefix());
+        assertEquals(2, config.connections());
+        assertEquals(Duration.ofSeconds(2), config.timeout());
+        assertTrue(config.nearCache());
+        assertEquals(100_000, config.maxNearCacheEntries());
+        assertEquals(Duration.ofMinutes(1), config.nearCacheTtl());
+        assertEquals(Duration.ofMinutes(30), config.sessionTtl());
+        assertEquals("rs:session:", config.sessionKeyPrefix());
+        assertThrows(IllegalArgumentException.class, () -> RespConfig.of(" ", 6379));
+        assertThrows(IllegalArgumentException.class, () -> RespConfig.of("localhost", 0));
+        assertThrows(IllegalArgumentException.class, () -> RespConfig.of("localhost", 70000));
+    }
+
+    @Test
+    void nearCache_isBounded() {
+        controller = new RespSecurityController(new RespConfig("127.0.0.1", server.port(), null, null, null,
+                1, null, true, 10, null, null));
+        for (int i = 0; i < 50; i++) {
+            controller.isSessionExist("unknown-" + i);
+        }
+        assertTrue(controller.nearCacheSize() <= 10);
+    }
+}
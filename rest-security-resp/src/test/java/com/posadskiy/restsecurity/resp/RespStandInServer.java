@@ -0,0 +1,366 @@
+package com.posadskiy.restsecurity.resp;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for a RESP3 server: the handful of commands {@link RespSecurityController} uses,
+ * broadcast client tracking, and the lookup script (recognised by its SHA and text, then emulated).
+ */
+final class RespStandInServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Object> data = new HashMap<>();
+    private final Map<String, Long> expiries = new HashMap<>();
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final Map<String, AtomicInteger> commandCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private volatile boolean scriptLoaded;
+    private volatile String password;
+    private volatile long replyDelayMillis;
+    private volatile boolean rejectTracking;
+
+    RespStandInServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "resp-stand-in-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    int count(String command) {
+        AtomicInteger count = commandCounts.get(command);
+        return count != null ? count.get() : 0;
+    }
+
+    /** Commands received so far, excluding the connection handshake. */
+    int dataCommands() {
+        return commandCounts.entrySet().stream()
+                .filter(e -> !e.getKey().equals("HELLO") && !e.getKey().equals("CLIENT"))
+                .mapToInt(e -> e.getValue().get())
+                .sum();
+    }
+
+    int connections() {
+        return connectionCount.get();
+    }
+
+    void requirePassword(String password) {
+        this.password = password;
+    }
+
+    void rejectTracking() {
+        this.rejectTracking = true;
+    }
+
+    /** Wait this long before answering each batch of commands read from a socket. */
+    void delayReplies(long millis) {
+        this.replyDelayMillis = millis;
+    }
+
+    void dropConnections() throws IOException {
+        for (Client client : clients) {
+            client.socket.close();
+        }
+    }
+
+    /** Write as another client would, triggering invalidations. */
+    synchronized void set(String key, String value) {
+        data.put(key, value);
+        expiries.remove(key);
+        touched(key);
+    }
+
+    synchronized void delete(String key) {
+        if (data.remove(key) != null) {
+            touched(key);
+        }
+    }
+
+    synchronized void sadd(String key, String... members) {
+        @SuppressWarnings("unchecked")
+        Set<String> set = (Set<String>) data.computeIfAbsent(key, k -> new LinkedHashSet<>());
+        set.addAll(List.of(members));
+        touched(key);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionCount.incrementAndGet();
+                Client client = new Client(socket);
+                clients.add(client);
+                Thread thread = new Thread(() -> client.serve(), "resp-stand-in-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void touched(String key) {
+        for (Client client : clients) {
+            if (client.tracking && client.prefixes.stream().anyMatch(key::startsWith)) {
+                client.push(">2\r\n$10\r\ninvalidate\r\n*1\r\n" + bulk(key));
+            }
+        }
+    }
+
+    private synchronized String execute(Client client, List<String> cmd) {
+        String name = cmd.get(0).toUpperCase();
+        commandCounts.computeIfAbsent(name, k -> new AtomicInteger()).incrementAndGet();
+        if (client.queued != null && !name.equals("EXEC")) {
+            client.queued.add(cmd);
+            return "+QUEUED\r\n";
+        }
+        switch (name) {
+            case "HELLO" -> {
+                if (password != null && (cmd.size() < 5 || !password.equals(cmd.get(4)))) {
+                    return "-WRONGPASS invalid username-password pair\r\n";
+                }
+                client.authenticated = true;
+                return "%1\r\n$5\r\nproto\r\n:3\r\n";
+            }
+            case "CLIENT" -> {
+                if (rejectTracking) {
+                    return "-ERR tracking disabled\r\n";
+                }
+                client.tracking = true;
+                for (int i = 4; i + 1 < cmd.size(); i += 2) {
+                    client.prefixes.add(cmd.get(i + 1));
+                }
+                return "+OK\r\n";
+            }
+            default -> {
+                if (password != null && !client.authenticated) {
+                    return "-NOAUTH Authentication required.\r\n";
+                }
+            }
+        }
+        switch (name) {
+            case "MULTI" -> {
+                client.queued = new ArrayList<>();
+                return "+OK\r\n";
+            }
+            case "EXEC" -> {
+                List<List<String>> queued = client.queued;
+                client.queued = null;
+                StringBuilder out = new StringBuilder("*").append(queued.size()).append("\r\n");
+                for (List<String> q : queued) {
+                    out.append(execute(client, q));
+                }
+                return out.toString();
+            }
+            case "SET" -> {
+                data.put(cmd.get(1), cmd.get(2));
+                if (cmd.size() > 4 && cmd.get(3).equalsIgnoreCase("PX")) {
+                    expiries.put(cmd.get(1), System.currentTimeMillis() + Long.parseLong(cmd.get(4)));
+                } else {
+                    expiries.remove(cmd.get(1));
+                }
+                touched(cmd.get(1));
+                return "+OK\r\n";
+            }
+            case "GET" -> {
+                Object value = live(cmd.get(1));
+                return value instanceof String s ? bulk(s) : "_\r\n";
+            }
+            case "MGET" -> {
+                StringBuilder out = new StringBuilder("*").append(cmd.size() - 1).append("\r\n");
+                for (String key : cmd.subList(1, cmd.size())) {
+                    out.append(live(key) instanceof String value ? bulk(value) : "_\r\n");
+                }
+                return out.toString();
+            }
+            case "DEL" -> {
+                int removed = 0;
+                for (String key : cmd.subList(1, cmd.size())) {
+                    if (live(key) != null) {
+                        data.remove(key);
+                        touched(key);
+                        removed++;
+                    }
+                }
+                return ":" + removed + "\r\n";
+            }
+            case "SADD" -> {
+                @SuppressWarnings("unchecked")
+                Set<String> set = (Set<String>) data.computeIfAbsent(cmd.get(1), k -> new LinkedHashSet<>());
+                int added = 0;
+                for (String member : cmd.subList(2, cmd.size())) {
+                    if (set.add(member)) {
+                        added++;
+                    }
+                }
+                touched(cmd.get(1));
+                return ":" + added + "\r\n";
+            }
+            case "SMEMBERS" -> {
+                return members(cmd.get(1));
+            }
+            case "EVALSHA" -> {
+                if (!scriptLoaded || !RespSecurityController.LOOKUP_SCRIPT_SHA.equals(cmd.get(1))) {
+                    return "-NOSCRIPT No matching script. Please use EVAL.\r\n";
+                }
+                return lookupScript(cmd.get(3), cmd.get(4));
+            }
+            case "EVAL" -> {
+                if (!RespSecurityController.LOOKUP_SCRIPT.equals(cmd.get(1))) {
+                    return "-ERR unknown script\r\n";
+                }
+                scriptLoaded = true;
+                return lookupScript(cmd.get(3), cmd.get(4));
+            }
+            case "PING" -> {
+                return "+PONG\r\n";
+            }
+            default -> {
+                return "-ERR unknown command '" + name + "'\r\n";
+            }
+        }
+    }
+
+    private String lookupScript(String sessionKey, String userPrefix) {
+        Object user = live(sessionKey);
+        if (!(user instanceof String userId)) {
+            return "_\r\n";
+        }
+        Long expiresAt = expiries.get(sessionKey);
+        long ttl = expiresAt == null ? -1 : expiresAt - System.currentTimeMillis();
+        return "*3\r\n" + bulk(userId) + ":" + ttl + "\r\n" + members(userPrefix + userId);
+    }
+
+    private String members(String key) {
+        Object value = live(key);
+        if (!(value instanceof Set<?> set)) {
+            return "~0\r\n";
+        }
+        StringBuilder out = new StringBuilder("~").append(set.size()).append("\r\n");
+        for (Object member : set) {
+            out.append(bulk((String) member));
+        }
+        return out.toString();
+    }
+
+    private Object live(String key) {
+        Long expiresAt = expiries.get(key);
+        if (expiresAt != null && expiresAt <= System.currentTimeMillis()) {
+            data.remove(key);
+            expiries.remove(key);
+            touched(key);
+        }
+        Object value = data.get(key);
+        return value instanceof Set<?> set && set.isEmpty() ? null : value;
+    }
+
+    private static String bulk(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return "$" + bytes.length + "\r\n" + value + "\r\n";
+    }
+
+    private final class Client {
+        final Socket socket;
+        final List<String> prefixes = new CopyOnWriteArrayList<>();
+        volatile boolean tracking;
+        boolean authenticated;
+        List<List<String>> queued;
+        private OutputStream out;
+
+        Client(Socket socket) {
+            this.socket = socket;
+        }
+
+        void serve() {
+            try (Socket s = socket) {
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                out = s.getOutputStream();
+                while (true) {
+                    List<String> command = readCommand(in);
+                    if (command == null) {
+                        return;
+                    }
+                    if (replyDelayMillis > 0 && in.available() == 0) {
+                        Thread.sleep(replyDelayMillis);
+                    }
+                    // Reply under the server lock, so invalidations caused by later writes follow it on the wire.
+                    synchronized (RespStandInServer.this) {
+                        String reply = execute(this, command);
+                        synchronized (this) {
+                            out.write(reply.getBytes(StandardCharsets.UTF_8));
+                            out.flush();
+                        }
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // Connection closed.
+            } finally {
+                clients.remove(this);
+            }
+        }
+
+        synchronized void push(String frame) {
+            try {
+                if (out != null) {
+                    out.write(frame.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+                // Client gone.
+            }
+        }
+
+        private List<String> readCommand(InputStream in) throws IOException {
+            String header = line(in);
+            if (header == null) {
+                return null;
+            }
+            int count = Integer.parseInt(header.substring(1));
+            List<String> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = Integer.parseInt(line(in).substring(1));
+                byte[] bytes = in.readNBytes(length + 2);
+                args.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+            return args;
+        }
+
+        private String line(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\r') {
+                    in.read();
+                    return line.toString();
+                }
+                line.append((char) c);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.posadskiy.restsecurity.session;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.id.SessionId;
+import com.posadskiy.restsecurity.id.SessionIdGenerator;
+import com.posadskiy.restsecurity.id.SignedSessionIds;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory {@link SessionSecurityController} for production use.
+ *
+ * <ul>
+ *   <li>Sharded open-addressing tables keyed by 128-bit ids stored as two {@code long}s; no object per session.</li>
+ *   <li>Expiry driven by a hierarchical timing wheel per shard, advanced by one background thread that also
+ *       maintains a coarse clock, so lookups never read the system clock.</li>
+ *   <li>Optional sliding expiration.</li>
+ *   <li>Per-user index: {@link #revokeAllForUser(String)} is O(sessions of that user).</li>
+ *   <li>Optional {@link SignedSessionIds}: {@link #createSession(String, SignedSessionIds, Duration)} hands out
+ *       signed ids, and every lookup accepts them, keyed by their random part.</li>
+ *   <li>Bounded by session count or estimated bytes; when full, expired sessions are purged and then the
+ *       session closest to expiry is evicted.</li>
+ * </ul>
+ * Expiry precision is one {@link SessionStoreConfig#tick()}. Close the store to stop its thread.
+ */
+public final class InMemorySessionStore implements SessionSecurityController, AutoCloseable {
+
+    /**
+     * Estimated heap per session (table slots at typical load, wheel entry, user index entry),
+     * used to translate {@link SessionStoreConfig#maxBytes()} into a session bound. Verified by test.
+     */
+    public static final long ESTIMATED_BYTES_PER_SESSION = 160;
+
+    private final SessionStoreConfig config;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final SessionShard[] shards;
+    private final int shardMask;
+    private final Map<String, UserSessions> sessionsByUser = new ConcurrentHashMap<>();
+    private final SessionIdGenerator idGenerator = SessionIdGenerator.shared();
+    private final ScheduledExecutorService ticker;
+    private volatile long now;
+
+    public InMemorySessionStore(SessionStoreConfig config) {
+        this(config, System::currentTimeMillis, true);
+    }
+
+    /** For tests: an explicit clock and, when {@code startTicker} is false, manual {@link #tick()}. */
+    InMemorySessionStore(SessionStoreConfig config, LongSupplier clock, boolean startTicker) {
+        this.config = config;
+        this.ttlMillis = config.ttl().toMillis();
+        this.clock = clock;
+        this.now = clock.getAsLong();
+        int maxSessions = config.effectiveMaxSessions();
+        int perShard = Math.max(1, (int) Math.ceil((double) maxSessions / config.shards()));
+        this.shards = new SessionShard[config.shards()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new SessionShard(perShard, config.tick().toMillis(), now);
+        }
+        this.shardMask = shards.length - 1;
+        if (startTicker) {
+            this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "rest-security-session-ticker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long tickMillis = config.tick().toMillis();
+            ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.ticker = null;
+        }
+    }
+
+    public SessionStoreConfig config() {
+        return config;
+    }
+
+    /**
+     * Create a session for {@code userId}.
+     *
+     * @return new session id (22 base64url characters)
+     */
+    public String createSession(String userId) {
+        if (userId == null || userId.isBlank()) {
+            throw new IllegalArgumentException("InMemorySessionStore: userId must be non-blank");
+        }
+        SessionId id = idGenerator.next();
+        long hi = id.hi();
+        long lo = id.lo();
+        long createdAt = now;
+        List<List<SessionShard.Removed>> evicted = new ArrayList<>(1);
+        sessionsByUser.compute(userId, (key, sessions) -> {
+            UserSessions target = sessions != null ? sessions : new UserSessions(key);
+            target.add(hi, lo);
+            evicted.add(shard(hi).insert(hi, lo, target.userId, createdAt + ttlMillis, createdAt));
+            return target;
+        });
+        unindex(evicted.get(0));
+        return SessionId.encode(hi, lo);
+    }
+
+    /**
+     * Create a session for {@code userId} under a signed id, for use with {@code ids} as the enforcer's
+     * prefilter. The id expires {@code maxLifetime} from now; the store's own ttl still applies.
+     *
+     * @return new session id ({@value SignedSessionIds#ENCODED_LENGTH} base64url characters)
+     */
+    public String createSession(String userId, SignedSessionIds ids, Duration maxLifetime) {
+        return ids.issue(SessionId.parse(createSession(userId)), maxLifetime);
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        sessionId = storeId(sessionId);
+        return SessionId.isValid(sessionId)
+                && shard(SessionId.hi(sessionId)).expiresAt(SessionId.hi(sessionId), SessionId.lo(sessionId)) >= 0;
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        sessionId = storeId(sessionId);
+        if (!SessionId.isValid(sessionId)) {
+            return true;
+        }
+        long hi = SessionId.hi(sessionId);
+        return shard(hi).expiresAt(hi, SessionId.lo(sessionId)) <= now;
+    }
+
+    /**
+     * User of a live session. With sliding expiration this also extends the session.
+     */
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        sessionId = storeId(sessionId);
+        if (!SessionId.isValid(sessionId)) {
+            return null;
+        }
+        long hi = SessionId.hi(sessionId);
+        long lo = SessionId.lo(sessionId);
+        long current = now;
+        SessionShard shard = shard(hi);
+        String userId = shard.userId(hi, lo, current);
+        if (userId != null && config.sliding()) {
+            shard.slide(hi, lo, current, current + ttlMillis);
+        }
+        return userId;
+    }
+
+    /**
+     * Revoke one session.
+     *
+     * @return true if the session existed
+     */
+    public boolean revoke(String sessionId) {
+        sessionId = storeId(sessionId);
+        if (!SessionId.isValid(sessionId)) {
+            return false;
+        }
+        long hi = SessionId.hi(sessionId);
+        long lo = SessionId.lo(sessionId);
+        String userId = shard(hi).remove(hi, lo);
+        if (userId == null) {
+            return false;
+        }
+        sessionsByUser.computeIfPresent(userId, (key, sessions) -> {
+            sessions.remove(hi, lo);
+            return sessions.isEmpty() ? null : sessions;
+        });
+        return true;
+    }
+
+    /**
+     * Revoke every session of {@code userId}.
+     *
+     * @return number of sessions revoked
+     */
+    public int revokeAllForUser(String userId) {
+        if (userId == null) {
+            return 0;
+        }
+        int[] revoked = new int[1];
+        sessionsByUser.computeIfPresent(userId, (key, sessions) -> {
+            for (int i = 0; i < sessions.ids.size(); i++) {
+                if (shard(sessions.ids.hi(i)).remove(sessions.ids.hi(i), sessions.ids.lo(i)) != null) {
+                    revoked[0]++;
+                }
+            }
+            return null;
+        });
+        return revoked[0];
+    }
+
+    /**
+     * Ids of the live and not-yet-purged sessions of {@code userId}. Sessions created under a signed id are
+     * listed by their 22-character store key, which {@link #revoke} accepts too.
+     */
+    public List<String> sessionsOf(String userId) {
+        List<String> ids = new ArrayList<>();
+        if (userId != null) {
+            sessionsByUser.computeIfPresent(userId, (key, sessions) -> {
+                for (int i = 0; i < sessions.ids.size(); i++) {
+                    ids.add(SessionId.encode(sessions.ids.hi(i), sessions.ids.lo(i)));
+                }
+                return sessions;
+            });
+        }
+        return ids;
+    }
+
+    /** Number of stored sessions, including expired ones not yet purged. */
+    public int size() {
+        int size = 0;
+        for (SessionShard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Refresh the coarse clock and expire due sessions. Runs on the ticker thread.
+     */
+    void tick() {
+        long current = clock.getAsLong();
+        now = current;
+        for (SessionShard shard : shards) {
+            unindex(shard.expire(current));
+        }
+    }
+
+    int scheduled() {
+        int scheduled = 0;
+        for (SessionShard shard : shards) {
+            scheduled += shard.scheduled();
+        }
+        return scheduled;
+    }
+
+    @Override
+    public void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /** The store key of a signed id, else {@code sessionId} unchanged. */
+    private static String storeId(String sessionId) {
+        if (sessionId == null || sessionId.length() != SignedSessionIds.ENCODED_LENGTH) {
+            return sessionId;
+        }
+        SessionId key = SignedSessionIds.storeKey(sessionId);
+        return key != null ? key.encoded() : sessionId;
+    }
+
+    private SessionShard shard(long hi) {
+        return shards[(int) (hi ^ hi >>> 32) & shardMask];
+    }
+
+    private void unindex(List<SessionShard.Removed> removed) {
+        for (SessionShard.Removed r : removed) {
+            sessionsByUser.computeIfPresent(r.userId(), (key, sessions) -> {
+                sessions.remove(r.hi(), r.lo());
+                return sessions.isEmpty() ? null : sessions;
+            });
+        }
+    }
+
+    /** Sessions of one user. Mutated only inside {@code sessionsByUser} compute calls, which serialize per user. */
+    private static final class UserSessions {
+        /** The canonical user id instance, shared by every shard entry of this user. */
+        final String userId;
+        final LongPairList ids = new LongPairList(1);
+
+        UserSessions(String userId) {
+            this.userId = userId;
+        }
+
+        void add(long hi, long lo) {
+            ids.add(hi, lo);
+        }
+
+        void remove(long hi, long lo) {
+            ids.remove(hi, lo);
+        }
+
+        boolean isEmpty() {
+            return ids.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.posadskiy.restsecurity.session;
+
+/**
+ * Growable list of {@code (hi, lo)} pairs in one {@code long[]}: 16 bytes per entry, no per-entry objects.
+ * Not thread-safe.
+ */
+final class LongPairList {
+
+    private long[] data;
+    private int size;
+
+    LongPairList(int initialPairs) {
+        this.data = new long[Math.max(1, initialPairs) * 2];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long hi(int index) {
+        return data[index * 2];
+    }
+
+    long lo(int index) {
+        return data[index * 2 + 1];
+    }
+
+    void add(long hi, long lo) {
+        if (size * 2 == data.length) {
+            long[] grown = new long[data.length * 2];
+            System.arraycopy(data, 0, grown, 0, data.length);
+            data = grown;
+        }
+        data[size * 2] = hi;
+        data[size * 2 + 1] = lo;
+        size++;
+    }
+
+    /** Remove one occurrence by swapping in the last pair. O(size). */
+    boolean remove(long hi, long lo) {
+        for (int i = 0; i < size; i++) {
+            if (data[i * 2] == hi && data[i * 2 + 1] == lo) {
+                removeAt(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Remove the pair at {@code index} by swapping in the last pair. */
+    void removeAt(int index) {
+        size--;
+        data[index * 2] = data[size * 2];
+        data[index * 2 + 1] = data[size * 2 + 1];
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,380 @@
+package com.posadskiy.restsecurity.session;
+
+import com.posadskiy.restsecurity.controller.SessionSecurityController;
+import com.posadskiy.restsecurity.id.SessionId;
+import com.posadskiy.restsecurity.id.SessionIdGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link SessionSecurityController} whose sessions survive restarts. They are kept off-heap in a
+ * memory-mapped file of fixed-size slots with open addressing.
+ *
+ * <ul>
+ *   <li>Opening a file maps it and reads a 64-byte header; nothing is deserialized, so a million-session
+ *       file reopens in milliseconds and its entries never touch the Java heap.</li>
+ *   <li>Every change is first appended to a small write-ahead log ({@code <name>.wal}) and then applied to
+ *       the mapping. After a crash, the log is replayed on open. Checkpoints flush the mapping and empty
+ *       the log.</li>
+ *   <li>Sliding extensions are written to the mapping but not logged. After a power loss a session may
+ *       fall back to an earlier expiry, never a later one.</li>
+ *   <li>Deletes leave tombstones. Once they exceed a quarter of the slots, the live entries are copied to a
+ *       fresh file that atomically replaces the old one.</li>
+ *   <li>The first time the store is full, one scan puts every session key on a {@link TimingWheel} (16 bytes
+ *       of heap per session). From then on, making room for a new session purges and evicts through the
+ *       wheel instead of scanning the file.</li>
+ * </ul>
+ * Reads are optimistic and lock-free unless they race a write; writes are serialized. Only one store may
+ * have a file open at a time. Close the store to mark the file clean.
+ */
+public final class MappedSessionStore implements SessionSecurityController, AutoCloseable {
+
+    private static final long SLIDE_GRANULARITY_MILLIS = 1_000;
+    private static final long EXPIRY_TICK_MILLIS = 1_000;
+
+    private final MappedSessionStoreConfig config;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Path walPath;
+    private final Path compactPath;
+    private final SessionWal wal;
+    private final StampedLock lock = new StampedLock();
+    private final SessionIdGenerator idGenerator = SessionIdGenerator.shared();
+    private volatile MappedSlotTable table;
+    private volatile boolean closed;
+    /** Expiry order of the sessions, built when the store is first full; guarded by the write lock. */
+    private TimingWheel expiries;
+
+    /**
+     * Open the store at {@link MappedSessionStoreConfig#path()}, creating the file if missing.
+     *
+     * @throws IllegalStateException if the file exists but is not a session store file
+     * @throws UncheckedIOException  on I/O failure
+     */
+    public MappedSessionStore(MappedSessionStoreConfig config) {
+        this(config, System::currentTimeMillis);
+    }
+
+    /** For tests: an explicit clock. */
+    MappedSessionStore(MappedSessionStoreConfig config, LongSupplier clock) {
+        this.config = config;
+        this.ttlMillis = config.ttl().toMillis();
+        this.clock = clock;
+        Path path = config.path();
+        this.walPath = path.resolveSibling(path.getFileName() + ".wal");
+        this.compactPath = path.resolveSibling(path.getFileName() + ".compact");
+        this.table = MappedSlotTable.open(path, config.maxSessions(), config.maxUserIdBytes());
+        this.wal = new SessionWal(walPath, table.maxUserIdBytes(), config.syncWrites());
+        int replayed = wal.replay(this::redo);
+        if (replayed > 0) {
+            checkpoint();
+        }
+    }
+
+    public MappedSessionStoreConfig config() {
+        return config;
+    }
+
+    /**
+     * Create a session for {@code userId}.
+     *
+     * @return new session id (22 base64url characters)
+     * @throws IllegalArgumentException if the user id is blank or longer than the slot allows
+     */
+    public String createSession(String userId) {
+        if (userId == null || userId.isBlank()) {
+            throw new IllegalArgumentException("MappedSessionStore: userId must be non-blank");
+        }
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        SessionId id = idGenerator.next();
+        long stamp = lock.writeLock();
+        try {
+            MappedSlotTable t = writable();
+            if (user.length > t.maxUserIdBytes()) {
+                throw new IllegalArgumentException("MappedSessionStore: userId exceeds " + t.maxUserIdBytes() + " bytes");
+            }
+            long now = clock.getAsLong();
+            if (t.live() >= t.maxSessions()) {
+                makeRoom(t, now);
+            }
+            wal.append(SessionWal.PUT, id.hi(), id.lo(), now + ttlMillis, user);
+            t.put(id.hi(), id.lo(), now + ttlMillis, user);
+            if (expiries != null) {
+                expiries.schedule(id.hi(), id.lo(), expiryTick(now + ttlMillis));
+            }
+            maintain(now);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return id.encoded();
+    }
+
+    @Override
+    public boolean isSessionExist(String sessionId) {
+        return SessionId.isValid(sessionId) && expiresAt(SessionId.hi(sessionId), SessionId.lo(sessionId)) >= 0;
+    }
+
+    @Override
+    public boolean isSessionExpired(String sessionId) {
+        return !SessionId.isValid(sessionId)
+                || expiresAt(SessionId.hi(sessionId), SessionId.lo(sessionId)) <= clock.getAsLong();
+    }
+
+    /**
+     * User of a live session. With sliding expiration this also extends the session.
+     */
+    @Override
+    public String getUserIdBySessionId(String sessionId) {
+        if (!SessionId.isValid(sessionId)) {
+            return null;
+        }
+        long hi = SessionId.hi(sessionId);
+        long lo = SessionId.lo(sessionId);
+        long now = clock.getAsLong();
+        byte[] user = null;
+        long expiresAt = -1;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            MappedSlotTable t = table;
+            int slot = t.find(hi, lo);
+            if (slot >= 0) {
+                expiresAt = t.expiresAt(slot);
+                user = expiresAt > now ? t.user(slot) : null;
+            }
+        }
+        if (stamp == 0 || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                MappedSlotTable t = table;
+                int slot = t.find(hi, lo);
+                expiresAt = slot >= 0 ? t.expiresAt(slot) : -1;
+                user = slot >= 0 && expiresAt > now ? t.user(slot) : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (user == null) {
+            return null;
+        }
+        if (config.sliding() && now + ttlMillis - expiresAt >= SLIDE_GRANULARITY_MILLIS) {
+            slide(hi, lo, now, now + ttlMillis);
+        }
+        return new String(user, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Revoke one session.
+     *
+     * @return true if the session existed
+     */
+    public boolean revoke(String sessionId) {
+        if (!SessionId.isValid(sessionId)) {
+            return false;
+        }
+        long hi = SessionId.hi(sessionId);
+        long lo = SessionId.lo(sessionId);
+        long stamp = lock.writeLock();
+        try {
+            MappedSlotTable t = writable();
+            int slot = t.find(hi, lo);
+            if (slot < 0) {
+                return false;
+            }
+            wal.append(SessionWal.REMOVE, hi, lo, 0, null);
+            t.removeAt(slot);
+            maintain(clock.getAsLong());
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Delete every expired session. Expired sessions are otherwise only purged when the store is full
+     * or compacted.
+     *
+     * @return number of sessions purged
+     */
+    public int purgeExpired() {
+        long stamp = lock.writeLock();
+        try {
+            long now = clock.getAsLong();
+            int purged = writable().removeExpired(now);
+            maintain(now);
+            return purged;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Number of stored sessions, including expired ones not yet purged. */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return table.live();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Flush the mapped file to disk and empty the write-ahead log. Runs automatically every
+     * {@link MappedSessionStoreConfig#checkpointInterval()} log records and on close.
+     */
+    public void checkpoint() {
+        long stamp = lock.writeLock();
+        try {
+            writable().force();
+            wal.reset();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Checkpoint, record the counts in the header and mark the file clean. */
+    @Override
+    public void close() {
+        long stamp = lock.writeLock();
+        try {
+            if (closed) {
+                return;
+            }
+            table.force();
+            wal.reset();
+            table.closeClean();
+            wal.close();
+            closed = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** True if the last open found the file not closed cleanly and recovered it. */
+    boolean recovered() {
+        return table.recovered();
+    }
+
+    int tombstones() {
+        return table.tombstones();
+    }
+
+    int capacity() {
+        return table.capacity();
+    }
+
+    private long expiresAt(long hi, long lo) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            MappedSlotTable t = table;
+            int slot = t.find(hi, lo);
+            long expiresAt = slot >= 0 ? t.expiresAt(slot) : -1L;
+            if (lock.validate(stamp)) {
+                return expiresAt;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            MappedSlotTable t = table;
+            int slot = t.find(hi, lo);
+            return slot >= 0 ? t.expiresAt(slot) : -1L;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void slide(long hi, long lo, long now, long newExpiresAt) {
+        long stamp = lock.writeLock();
+        try {
+            if (closed) {
+                return;
+            }
+            MappedSlotTable t = table;
+            int slot = t.find(hi, lo);
+            if (slot >= 0 && t.expiresAt(slot) > now && t.expiresAt(slot) < newExpiresAt) {
+                t.setExpiresAt(slot, newExpiresAt);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Purge expired entries; if there are none, evict the entry closest to expiry. */
+    private void makeRoom(MappedSlotTable t, long now) {
+        if (expiries == null) {
+            expiries = new TimingWheel(now / EXPIRY_TICK_MILLIS);
+            t.forEachLive((hi, lo, expiresAt) -> expiries.schedule(hi, lo, expiryTick(expiresAt)));
+        }
+        TimingWheel.ExpiryLookup lookup = (hi, lo) -> {
+            int slot = t.find(hi, lo);
+            return slot >= 0 ? expiryTick(t.expiresAt(slot)) : -1L;
+        };
+        int before = t.live();
+        expiries.advance(now / EXPIRY_TICK_MILLIS, lookup, (hi, lo) -> t.removeAt(t.find(hi, lo)));
+        if (t.live() < before) {
+            return;
+        }
+        expiries.evictEarliest(lookup, (hi, lo) -> {
+            wal.append(SessionWal.REMOVE, hi, lo, 0, null);
+            t.removeAt(t.find(hi, lo));
+        });
+    }
+
+    /** Rounded up, so the wheel never purges a session before it has expired. */
+    private static long expiryTick(long expiresAt) {
+        return (expiresAt + EXPIRY_TICK_MILLIS - 1) / EXPIRY_TICK_MILLIS;
+    }
+
+    /** After a write: compact when tombstones pile up, checkpoint when the log is long. */
+    private void maintain(long now) {
+        MappedSlotTable t = table;
+        if (t.tombstones() > t.capacity() / 4) {
+            compact(t, now);
+        } else if (wal.records() >= config.checkpointInterval()) {
+            t.force();
+            wal.reset();
+        }
+    }
+
+    /**
+     * Replace the file with a copy holding only live entries. The copy is complete and flushed before it is
+     * moved over the original, so a crash leaves either the old file with its log or the new one.
+     */
+    private void compact(MappedSlotTable t, long now) {
+        MappedSlotTable copy = t.compactTo(compactPath, now);
+        try {
+            Files.move(compactPath, config.path(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            copy.close();
+            throw new UncheckedIOException(e);
+        }
+        table = copy;
+        t.close();
+        wal.reset();
+    }
+
+    private void redo(byte op, long hi, long lo, long expiresAt, byte[] user) {
+        MappedSlotTable t = table;
+        if (op == SessionWal.PUT) {
+            t.put(hi, lo, expiresAt, user);
+        } else if (op == SessionWal.REMOVE) {
+            int slot = t.find(hi, lo);
+            if (slot >= 0) {
+                t.removeAt(slot);
+            }
+        }
+    }
+
+    private MappedSlotTable writable() {
+        if (closed) {
+            throw new IllegalStateException("MappedSessionStore: store is closed");
+        }
+        return table;
+    }
+}
@@ -0,0 +1,68 @@
+package com.posadskiy.restsecurity.session;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration for {@link MappedSessionStore}.
+ *
+ * @param path               data file; the write-ahead log is kept next to it as {@code <name>.wal}
+ * @param ttl                session lifetime (from creation, or from last use when {@code sliding})
+ * @param sliding            if true, each successful user lookup extends the session to {@code now + ttl}
+ * @param maxSessions        upper bound on stored sessions; sizes the file. Default 1,000,000
+ * @param maxUserIdBytes     longest user id accepted, in UTF-8 bytes; sizes each slot. Default 64
+ * @param syncWrites         if true, every log append is forced to disk (survives power loss, not just
+ *                           process crashes) at the cost of one fsync per write
+ * @param checkpointInterval log records between checkpoints, which flush the file and truncate the log.
+ *                           Default 65,536
+ */
+public record MappedSessionStoreConfig(
+        Path path,
+        Duration ttl,
+        boolean sliding,
+        int maxSessions,
+        int maxUserIdBytes,
+        boolean syncWrites,
+        int checkpointInterval
+) {
+
+    /** Largest user id a slot can hold; the length is stored in two bytes. */
+    public static final int MAX_USER_ID_BYTES = 1024;
+
+    public MappedSessionStoreConfig {
+        if (path == null) {
+            throw new IllegalArgumentException("MappedSessionStoreConfig: path is required");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("MappedSessionStoreConfig: ttl must be positive");
+        }
+        maxSessions = maxSessions > 0 ? maxSessions : 1_000_000;
+        maxUserIdBytes = maxUserIdBytes > 0 ? maxUserIdBytes : 64;
+        if (maxUserIdBytes > MAX_USER_ID_BYTES) {
+            throw new IllegalArgumentException("MappedSessionStoreConfig: maxUserIdBytes must be at most " + MAX_USER_ID_BYTES);
+        }
+        checkpointInterval = checkpointInterval > 0 ? checkpointInterval : 1 << 16;
+    }
+
+    /**
+     * Fixed (non-sliding) expiry with default bounds, unsynced log writes and default checkpointing.
+     */
+    public static MappedSessionStoreConfig of(Path path, Duration ttl) {
+        return new MappedSessionStoreConfig(path, ttl, false, 0, 0, false, 0);
+    }
+
+    /** Copy with sliding expiration on or off. */
+    public MappedSessionStoreConfig withSliding(boolean sliding) {
+        return new MappedSessionStoreConfig(path, ttl, sliding, maxSessions, maxUserIdBytes, syncWrites, checkpointInterval);
+    }
+
+    /** Copy bounded to {@code maxSessions} sessions. Only applies when the file is created. */
+    public MappedSessionStoreConfig withMaxSessions(int maxSessions) {
+        return new MappedSessionStoreConfig(path, ttl, sliding, maxSessions, maxUserIdBytes, syncWrites, checkpointInterval);
+    }
+
+    /** Copy with every log append forced to disk. */
+    public MappedSessionStoreConfig withSyncWrites(boolean syncWrites) {
+        return new MappedSessionStoreConfig(path, ttl, sliding, maxSessions, maxUserIdBytes, syncWrites, checkpointInterval);
+    }
+}
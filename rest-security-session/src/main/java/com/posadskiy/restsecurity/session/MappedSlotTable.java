@@ -0,0 +1,320 @@
+package com.posadskiy.restsecurity.session;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Open-addressing (linear probing) table of fixed-size slots in a memory-mapped file, used by
+ * {@link MappedSessionStore}. Nothing is read into the heap on open: lookups probe the mapping directly.
+ *
+ * <p>Header (64 bytes): {@code magic | version | slotSize | capacity | maxSessions | clean | live | tombstones}.
+ * Slot: {@code state (int) | userLen (short) | pad | hi | lo | expiresAt | user bytes}. A slot's state is
+ * written last on insert and is the only field written on delete (which leaves a tombstone), so every
+ * change lands with a single aligned write. Not thread-safe; the store guards it with a lock.
+ */
+final class MappedSlotTable implements AutoCloseable {
+
+    static final int EMPTY = 0;
+    static final int LIVE = 1;
+    static final int DELETED = 2;
+
+    private static final long MAGIC = 0x5253_5345_5353_0001L;
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+    private static final int SLOT_FIXED = 32;
+
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 8;
+    private static final int H_SLOT_SIZE = 12;
+    private static final int H_CAPACITY = 16;
+    private static final int H_MAX_SESSIONS = 20;
+    private static final int H_CLEAN = 24;
+    private static final int H_LIVE = 28;
+    private static final int H_TOMBSTONES = 32;
+
+    private static final int S_STATE = 0;
+    private static final int S_USER_LEN = 4;
+    private static final int S_HI = 8;
+    private static final int S_LO = 16;
+    private static final int S_EXPIRES_AT = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotSize;
+    private final int capacity;
+    private final int mask;
+    private final int maxSessions;
+    private final boolean recovered;
+    private int live;
+    private int tombstones;
+
+    private MappedSlotTable(FileChannel channel, MappedByteBuffer buffer, boolean recovered) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slotSize = buffer.getInt(H_SLOT_SIZE);
+        this.capacity = buffer.getInt(H_CAPACITY);
+        this.mask = capacity - 1;
+        this.maxSessions = buffer.getInt(H_MAX_SESSIONS);
+        this.recovered = recovered;
+        if (recovered) {
+            countSlots();
+        } else {
+            this.live = buffer.getInt(H_LIVE);
+            this.tombstones = buffer.getInt(H_TOMBSTONES);
+        }
+        buffer.putInt(H_CLEAN, 0);
+        buffer.force(0, HEADER);
+    }
+
+    /**
+     * Map an existing file, or create one sized for {@code maxSessions} user ids of up to
+     * {@code maxUserIdBytes}. An existing file keeps the geometry it was created with.
+     */
+    static MappedSlotTable open(Path path, int maxSessions, int maxUserIdBytes) {
+        try {
+            if (Files.exists(path) && Files.size(path) > 0) {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER, channel.size()));
+                if (channel.size() < HEADER || header.getLong(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != VERSION) {
+                    channel.close();
+                    throw new IllegalStateException("MappedSessionStore: " + path + " is not a session store file");
+                }
+                long expected = HEADER + (long) header.getInt(H_CAPACITY) * header.getInt(H_SLOT_SIZE);
+                if (channel.size() != expected) {
+                    channel.close();
+                    throw new IllegalStateException("MappedSessionStore: " + path + " is truncated");
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, expected);
+                return new MappedSlotTable(channel, buffer, buffer.getInt(H_CLEAN) != 1);
+            }
+            return create(path, maxSessions, maxUserIdBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MappedSlotTable create(Path path, int maxSessions, int maxUserIdBytes) throws IOException {
+        int slotSize = (SLOT_FIXED + maxUserIdBytes + 7) & ~7;
+        long wanted = Math.max(16, (long) maxSessions * 4 / 3 + 1);
+        long capacity = Long.highestOneBit(wanted - 1) << 1;
+        long size = HEADER + capacity * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("MappedSessionStore: maxSessions " + maxSessions
+                    + " with maxUserIdBytes " + maxUserIdBytes + " needs a file over 2 GiB");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putLong(H_MAGIC, MAGIC);
+        buffer.putInt(H_VERSION, VERSION);
+        buffer.putInt(H_SLOT_SIZE, slotSize);
+        buffer.putInt(H_CAPACITY, (int) capacity);
+        buffer.putInt(H_MAX_SESSIONS, maxSessions);
+        buffer.putInt(H_CLEAN, 1);
+        return new MappedSlotTable(channel, buffer, false);
+    }
+
+    /** True if the file was not closed cleanly and its counts were rebuilt by scanning. */
+    boolean recovered() {
+        return recovered;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int maxSessions() {
+        return maxSessions;
+    }
+
+    int maxUserIdBytes() {
+        return slotSize - SLOT_FIXED;
+    }
+
+    int live() {
+        return live;
+    }
+
+    int tombstones() {
+        return tombstones;
+    }
+
+    /** Slot index of a live entry, or {@code -1}. */
+    int find(long hi, long lo) {
+        int i = home(lo);
+        for (int probes = 0; probes < capacity; probes++) {
+            long at = offset(i);
+            int state = buffer.getInt((int) at + S_STATE);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == LIVE && buffer.getLong((int) at + S_LO) == lo && buffer.getLong((int) at + S_HI) == hi) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    long expiresAt(int slot) {
+        return buffer.getLong((int) offset(slot) + S_EXPIRES_AT);
+    }
+
+    void setExpiresAt(int slot, long expiresAt) {
+        buffer.putLong((int) offset(slot) + S_EXPIRES_AT, expiresAt);
+    }
+
+    long hi(int slot) {
+        return buffer.getLong((int) offset(slot) + S_HI);
+    }
+
+    long lo(int slot) {
+        return buffer.getLong((int) offset(slot) + S_LO);
+    }
+
+    byte[] user(int slot) {
+        int at = (int) offset(slot);
+        int length = Math.min(buffer.getShort(at + S_USER_LEN) & 0xFFFF, slotSize - SLOT_FIXED);
+        byte[] user = new byte[length];
+        buffer.get(at + SLOT_FIXED, user);
+        return user;
+    }
+
+    /** Insert or overwrite; reuses the first tombstone on the probe path. */
+    void put(long hi, long lo, long expiresAt, byte[] user) {
+        int existing = find(hi, lo);
+        if (existing >= 0) {
+            write(existing, hi, lo, expiresAt, user);
+            return;
+        }
+        int i = home(lo);
+        for (int probes = 0; probes < capacity; probes++) {
+            int state = buffer.getInt((int) offset(i) + S_STATE);
+            if (state != LIVE) {
+                if (state == DELETED) {
+                    tombstones--;
+                }
+                write(i, hi, lo, expiresAt, user);
+                live++;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        throw new IllegalStateException("MappedSessionStore: table is full");
+    }
+
+    void removeAt(int slot) {
+        buffer.putInt((int) offset(slot) + S_STATE, DELETED);
+        live--;
+        tombstones++;
+    }
+
+    /** Delete every entry that expired at or before {@code nowMillis}. */
+    int removeExpired(long nowMillis) {
+        int removed = 0;
+        for (int i = 0; i < capacity; i++) {
+            long at = offset(i);
+            if (buffer.getInt((int) at + S_STATE) == LIVE && buffer.getLong((int) at + S_EXPIRES_AT) <= nowMillis) {
+                removeAt(i);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /** Hand every live entry's key and expiry to {@code visitor}. */
+    void forEachLive(EntryVisitor visitor) {
+        for (int i = 0; i < capacity; i++) {
+            long at = offset(i);
+            if (buffer.getInt((int) at + S_STATE) == LIVE) {
+                visitor.visit(buffer.getLong((int) at + S_HI), buffer.getLong((int) at + S_LO),
+                        buffer.getLong((int) at + S_EXPIRES_AT));
+            }
+        }
+    }
+
+    interface EntryVisitor {
+        void visit(long hi, long lo, long expiresAt);
+    }
+
+    /**
+     * Copy the entries unexpired at {@code nowMillis} into a fresh file at {@code target}, leaving the
+     * tombstones and expired entries behind. The copy is flushed and marked dirty, like an open table.
+     */
+    MappedSlotTable compactTo(Path target, long nowMillis) {
+        try {
+            Files.deleteIfExists(target);
+            MappedSlotTable copy = create(target, maxSessions, maxUserIdBytes());
+            for (int i = 0; i < capacity; i++) {
+                long at = offset(i);
+                if (buffer.getInt((int) at + S_STATE) == LIVE && buffer.getLong((int) at + S_EXPIRES_AT) > nowMillis) {
+                    copy.put(hi(i), lo(i), expiresAt(i), user(i));
+                }
+            }
+            copy.buffer.force();
+            return copy;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Flush all slot writes to disk. */
+    void force() {
+        buffer.force();
+    }
+
+    /** Record the counts, mark the file clean and flush it. The table must not be used afterwards. */
+    void closeClean() {
+        buffer.putInt(H_LIVE, live);
+        buffer.putInt(H_TOMBSTONES, tombstones);
+        buffer.force();
+        buffer.putInt(H_CLEAN, 1);
+        buffer.force(0, HEADER);
+        close();
+    }
+
+    /** Release the channel; the mapping stays valid until it is garbage collected. */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void countSlots() {
+        for (int i = 0; i < capacity; i++) {
+            int state = buffer.getInt((int) offset(i) + S_STATE);
+            if (state == LIVE) {
+                live++;
+            } else if (state == DELETED) {
+                tombstones++;
+            }
+        }
+    }
+
+    private void write(int slot, long hi, long lo, long expiresAt, byte[] user) {
+        int at = (int) offset(slot);
+        buffer.putLong(at + S_HI, hi);
+        buffer.putLong(at + S_LO, lo);
+        buffer.putLong(at + S_EXPIRES_AT, expiresAt);
+        buffer.putShort(at + S_USER_LEN, (short) user.length);
+        buffer.put(at + SLOT_FIXED, user);
+        buffer.putInt(at + S_STATE, LIVE);
+    }
+
+    private long offset(int slot) {
+        return HEADER + (long) slot * slotSize;
+    }
+
+    private int home(long lo) {
+        long h = lo * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) & mask;
+    }
+}
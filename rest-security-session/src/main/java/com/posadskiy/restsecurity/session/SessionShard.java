@@ -0,0 +1,283 @@
+package com.posadskiy.restsecurity.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * One shard of {@link InMemorySessionStore}: an open-addressing (linear probing) table of
+ * {@code (hi, lo) -> (userId, expiresAt)} in parallel arrays, plus the shard's timing wheel.
+ * Reads are optimistic and lock-free unless they race a write; writes take the shard's write lock.
+ */
+final class SessionShard {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private final int maxSize;
+    private final long tickMillis;
+    private final TimingWheel wheel;
+    private volatile Table table;
+
+    /** Keys removed by expiry or eviction; the store updates its user index after the shard lock is released. */
+    record Removed(long hi, long lo, String userId) {}
+
+    SessionShard(int maxSize, long tickMillis, long nowMillis) {
+        this.maxSize = maxSize;
+        this.tickMillis = tickMillis;
+        this.wheel = new TimingWheel(nowMillis / tickMillis);
+        this.table = new Table(MIN_CAPACITY);
+    }
+
+    /** Expiry in epoch millis, or {@code -1} if absent. */
+    long expiresAt(long hi, long lo) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Table t = table;
+            int i = t.find(hi, lo);
+            long expiresAt = i >= 0 ? t.expiresAt[i] : -1L;
+            if (lock.validate(stamp)) {
+                return expiresAt;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Table t = table;
+            int i = t.find(hi, lo);
+            return i >= 0 ? t.expiresAt[i] : -1L;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** User id of a live (unexpired) session, or null. */
+    String userId(long hi, long lo, long nowMillis) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Table t = table;
+            int i = t.find(hi, lo);
+            String userId = i >= 0 && t.expiresAt[i] > nowMillis ? t.userIds[i] : null;
+            if (lock.validate(stamp)) {
+                return userId;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Table t = table;
+            int i = t.find(hi, lo);
+            return i >= 0 && t.expiresAt[i] > nowMillis ? t.userIds[i] : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Extend a live session to {@code newExpiresAt}. Skipped when the stored expiry is already within
+     * one tick of it, so a hot session is written at most once per tick.
+     */
+    void slide(long hi, long lo, long nowMillis, long newExpiresAt) {
+        long current = expiresAt(hi, lo);
+        if (current <= nowMillis || newExpiresAt - current < tickMillis) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int i = t.find(hi, lo);
+            if (i >= 0 && t.expiresAt[i] > nowMillis && t.expiresAt[i] < newExpiresAt) {
+                t.expiresAt[i] = newExpiresAt;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Insert a session. When the shard is at its bound, expired entries are purged first and then the
+     * entry closest to expiry is evicted; both are found through the timing wheel, not by scanning the table.
+     *
+     * @return entries removed to make room (empty in the common case)
+     */
+    List<Removed> insert(long hi, long lo, String userId, long expiresAt, long nowMillis) {
+        List<Removed> removed = List.of();
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            if (t.size >= maxSize) {
+                removed = makeRoom(t, nowMillis);
+            }
+            if (t.size + 1 > t.capacity() * 3 / 4) {
+                t = t.resized(t.capacity() * 2);
+                table = t;
+            }
+            t.put(hi, lo, userId, expiresAt);
+            wheel.schedule(hi, lo, expiresAt / tickMillis);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return removed;
+    }
+
+    /** @return user id of the removed session, or null if absent */
+    String remove(long hi, long lo) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int i = t.find(hi, lo);
+            if (i < 0) {
+                return null;
+            }
+            String userId = t.userIds[i];
+            t.removeAt(i);
+            return userId;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Advance the wheel to {@code nowMillis} and remove sessions that expired. */
+    List<Removed> expire(long nowMillis) {
+        long stamp = lock.writeLock();
+        try {
+            return expireLocked(table, nowMillis);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        return table.size;
+    }
+
+    int capacity() {
+        return table.capacity();
+    }
+
+    int scheduled() {
+        long stamp = lock.readLock();
+        try {
+            return wheel.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Purge what has expired; if nothing had, evict the session the wheel has due soonest. */
+    private List<Removed> makeRoom(Table t, long nowMillis) {
+        List<Removed> removed = expireLocked(t, nowMillis);
+        if (removed.isEmpty()) {
+            wheel.evictEarliest(expiryTicks(t), removal(t, removed));
+        }
+        return removed;
+    }
+
+    private List<Removed> expireLocked(Table t, long nowMillis) {
+        List<Removed> removed = new ArrayList<>();
+        wheel.advance(nowMillis / tickMillis, expiryTicks(t), removal(t, removed));
+        return removed;
+    }
+
+    private TimingWheel.ExpiryLookup expiryTicks(Table t) {
+        return (hi, lo) -> {
+            int i = t.find(hi, lo);
+            return i >= 0 ? t.expiresAt[i] / tickMillis : -1L;
+        };
+    }
+
+    private static TimingWheel.ExpiryHandler removal(Table t, List<Removed> removed) {
+        return (hi, lo) -> {
+            int i = t.find(hi, lo);
+            removed.add(new Removed(hi, lo, t.userIds[i]));
+            t.removeAt(i);
+        };
+    }
+
+    /** Parallel arrays; a slot is empty when its user id is null. Swapped as a whole on resize. */
+    private static final class Table {
+        final long[] his;
+        final long[] los;
+        final long[] expiresAt;
+        final String[] userIds;
+        final int mask;
+        int size;
+
+        Table(int capacity) {
+            his = new long[capacity];
+            los = new long[capacity];
+            expiresAt = new long[capacity];
+            userIds = new String[capacity];
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return userIds.length;
+        }
+
+        int home(long lo) {
+            // Ids are random; mix anyway so crafted lookups cannot pile onto one probe chain.
+            long h = lo * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ h >>> 32) & mask;
+        }
+
+        int find(long hi, long lo) {
+            int i = home(lo);
+            while (userIds[i] != null) {
+                if (his[i] == hi && los[i] == lo) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        void put(long hi, long lo, String userId, long expiry) {
+            int i = home(lo);
+            while (userIds[i] != null) {
+                if (his[i] == hi && los[i] == lo) {
+                    userIds[i] = userId;
+                    expiresAt[i] = expiry;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            his[i] = hi;
+            los[i] = lo;
+            expiresAt[i] = expiry;
+            userIds[i] = userId;
+            size++;
+        }
+
+        /** Backward-shift deletion: keeps probe chains intact without tombstones. */
+        void removeAt(int i) {
+            int hole = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (userIds[j] == null) {
+                    break;
+                }
+                int home = home(los[j]);
+                boolean movable = hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+                if (movable) {
+                    his[hole] = his[j];
+                    los[hole] = los[j];
+                    expiresAt[hole] = expiresAt[j];
+                    userIds[hole] = userIds[j];
+                    hole = j;
+                }
+            }
+            userIds[hole] = null;
+            size--;
+        }
+
+        Table resized(int capacity) {
+            Table grown = new Table(capacity);
+            for (int i = 0; i < userIds.length; i++) {
+                if (userIds[i] != null) {
+                    grown.put(his[i], los[i], userIds[i], expiresAt[i]);
+                }
+            }
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.posadskiy.restsecurity.session;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link InMemorySessionStore}.
+ *
+ * @param ttl          session lifetime (from creation, or from last use when {@code sliding})
+ * @param sliding      if true, each successful user lookup extends the session to {@code now + ttl}
+ * @param shards       number of shards (rounded up to a power of two); default twice the CPU count
+ * @param maxSessions  upper bound on stored sessions; default unbounded
+ * @param maxBytes     upper bound on estimated store memory in bytes; 0 for no bound
+ * @param tick         clock and expiry granularity; default 1 second
+ */
+public record SessionStoreConfig(
+        Duration ttl,
+        boolean sliding,
+        int shards,
+        int maxSessions,
+        long maxBytes,
+        Duration tick
+) {
+
+    public SessionStoreConfig {
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("SessionStoreConfig: ttl must be positive");
+        }
+        shards = Integer.highestOneBit(Math.max(1, Math.min(1 << 16,
+                shards > 0 ? shards : Runtime.getRuntime().availableProcessors() * 2) * 2 - 1));
+        maxSessions = maxSessions > 0 ? maxSessions : Integer.MAX_VALUE;
+        maxBytes = Math.max(0, maxBytes);
+        tick = tick != null && !tick.isNegative() && !tick.isZero() ? tick : Duration.ofSeconds(1);
+    }
+
+    /**
+     * Fixed (non-sliding) expiry with default shards, bounds and tick.
+     */
+    public static SessionStoreConfig withTtl(Duration ttl) {
+        return new SessionStoreConfig(ttl, false, 0, 0, 0, null);
+    }
+
+    /** Copy with sliding expiration on or off. */
+    public SessionStoreConfig withSliding(boolean sliding) {
+        return new SessionStoreConfig(ttl, sliding, shards, maxSessions, maxBytes, tick);
+    }
+
+    /** Copy bounded to {@code maxSessions} sessions. */
+    public SessionStoreConfig withMaxSessions(int maxSessions) {
+        return new SessionStoreConfig(ttl, sliding, shards, maxSessions, maxBytes, tick);
+    }
+
+    /** Copy bounded to roughly {@code maxBytes} of heap. */
+    public SessionStoreConfig withMaxBytes(long maxBytes) {
+        return new SessionStoreConfig(ttl, sliding, shards, maxSessions, maxBytes, tick);
+    }
+
+    /**
+     * Effective session bound: the smaller of {@link #maxSessions()} and {@link #maxBytes()} divided by
+     * {@link InMemorySessionStore#ESTIMATED_BYTES_PER_SESSION}.
+     */
+    public int effectiveMaxSessions() {
+        if (maxBytes == 0) {
+            return maxSessions;
+        }
+        return (int) Math.max(1, Math.min(maxSessions, maxBytes / InMemorySessionStore.ESTIMATED_BYTES_PER_SESSION));
+    }
+}
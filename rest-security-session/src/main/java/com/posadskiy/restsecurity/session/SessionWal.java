@@ -0,0 +1,147 @@
+package com.posadskiy.restsecurity.session;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log of {@link MappedSessionStore}. Each change is appended here before it is applied to the
+ * mapped file, so a change torn by a crash is redone on the next open. Records are
+ * {@code length | crc32c | op | hi | lo | expiresAt | userLen | user}; replay stops at the first record
+ * that is short or fails its checksum. Not thread-safe; the store calls it under its write lock.
+ */
+final class SessionWal implements AutoCloseable {
+
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+
+    private static final int PREFIX = 8;
+    private static final int FIXED_BODY = 1 + 8 + 8 + 8 + 2;
+
+    /** Receives replayed records in log order. */
+    @FunctionalInterface
+    interface Replayer {
+        void apply(byte op, long hi, long lo, long expiresAt, byte[] user);
+    }
+
+    private final FileChannel channel;
+    private final boolean sync;
+    private final ByteBuffer record;
+    private final CRC32C crc = new CRC32C();
+    private int records;
+
+    SessionWal(Path path, int maxUserIdBytes, boolean sync) {
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.sync = sync;
+        this.record = ByteBuffer.allocateDirect(PREFIX + FIXED_BODY + maxUserIdBytes);
+    }
+
+    void append(byte op, long hi, long lo, long expiresAt, byte[] user) {
+        int userLen = user != null ? user.length : 0;
+        record.clear();
+        record.position(PREFIX);
+        record.put(op).putLong(hi).putLong(lo).putLong(expiresAt).putShort((short) userLen);
+        if (userLen > 0) {
+            record.put(user);
+        }
+        int end = record.position();
+        crc.reset();
+        crc.update(record.slice(PREFIX, end - PREFIX));
+        record.putInt(0, end - PREFIX).putInt(4, (int) crc.getValue());
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        records++;
+    }
+
+    /**
+     * Replay valid records from the start of the log and cut off anything after the last valid one.
+     *
+     * @return number of records replayed
+     */
+    int replay(Replayer replayer) {
+        try {
+            long size = channel.size();
+            ByteBuffer in = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+            channel.read(in, 0);
+            in.flip();
+            int count = 0;
+            while (in.remaining() >= PREFIX) {
+                int start = in.position();
+                int length = in.getInt();
+                int expected = in.getInt();
+                if (length < FIXED_BODY || length > in.remaining()) {
+                    in.position(start);
+                    break;
+                }
+                crc.reset();
+                crc.update(in.slice(in.position(), length));
+                if ((int) crc.getValue() != expected) {
+                    in.position(start);
+                    break;
+                }
+                byte op = in.get();
+                long hi = in.getLong();
+                long lo = in.getLong();
+                long expiresAt = in.getLong();
+                int userLen = in.getShort() & 0xFFFF;
+                if (userLen != length - FIXED_BODY) {
+                    in.position(start);
+                    break;
+                }
+                byte[] user = new byte[userLen];
+                in.get(user);
+                replayer.apply(op, hi, lo, expiresAt, user);
+                count++;
+            }
+            channel.truncate(in.position());
+            channel.position(in.position());
+            records = count;
+            return count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Records appended since the last {@link #reset()}. */
+    int records() {
+        return records;
+    }
+
+    /** Empty the log; called once its records are durable in the data file. */
+    void reset() {
+        try {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        records = 0;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.posadskiy.restsecurity.session;
+
+/**
+ * Hierarchical timing wheel of {@code (hi, lo)} session keys: four levels of 64 slots, level {@code k}
+ * slots spanning {@code 64^k} ticks. Scheduling and firing are O(1) per entry; entries due further out
+ * than the top level are clamped and re-examined when their slot comes round.
+ *
+ * <p>The wheel stores only keys. When a slot fires or cascades, the owner reports each key's current expiry
+ * tick, so sessions that slid forward or were removed need no wheel maintenance. Not thread-safe.
+ */
+final class TimingWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+    /** Callback resolving a key's current expiry tick; returns {@code -1} when the key no longer exists. */
+    interface ExpiryLookup {
+        long expiryTick(long hi, long lo);
+    }
+
+    /** Callback for keys whose expiry tick has been reached. */
+    interface ExpiryHandler {
+        void expired(long hi, long lo);
+    }
+
+    private final LongPairList[][] slots = new LongPairList[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long startTick) {
+        this.currentTick = startTick;
+    }
+
+    long currentTick() {
+        return currentTick;
+    }
+
+    /** Scheduled entries, including ones whose session is gone but whose slot has not fired yet. */
+    int size() {
+        return size;
+    }
+
+    /** Schedule a key to fire at {@code tick}; past ticks fire on the next advance. */
+    void schedule(long hi, long lo, long tick) {
+        place(hi, lo, Math.max(tick, currentTick + 1));
+    }
+
+    /**
+     * Advance to {@code toTick}, cascading higher levels and firing due level-0 slots.
+     */
+    void advance(long toTick, ExpiryLookup lookup, ExpiryHandler handler) {
+        while (currentTick < toTick) {
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) ((currentTick >>> (BITS * level)) & MASK), lookup);
+                }
+            }
+            LongPairList due = slots[0][(int) (currentTick & MASK)];
+            if (due == null || due.isEmpty()) {
+                continue;
+            }
+            int count = due.size();
+            size -= count;
+            for (int i = 0; i < count; i++) {
+                long hi = due.hi(i);
+                long lo = due.lo(i);
+                long expiry = lookup.expiryTick(hi, lo);
+                if (expiry < 0) {
+                    continue;
+                }
+                if (expiry <= currentTick) {
+                    handler.expired(hi, lo);
+                } else {
+                    place(hi, lo, expiry);
+                }
+            }
+            // Entries rescheduled above land in other slots (their expiry is in the future), so clearing is safe.
+            due.clear();
+        }
+    }
+
+    /**
+     * Remove the key due soonest and hand it to {@code handler}, for making room under a size bound. Slots are
+     * visited in firing order, level by level, and a level is left once its slots start after the best key
+     * found; only the first occupied slot of a level is read. Keys that no longer exist are dropped on the way.
+     *
+     * @return false if no key is scheduled
+     */
+    boolean evictEarliest(ExpiryLookup lookup, ExpiryHandler handler) {
+        long best = Long.MAX_VALUE;
+        LongPairList bestList = null;
+        long bestHi = 0;
+        long bestLo = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * level;
+            long base = currentTick >>> shift;
+            for (int j = 1; j <= SLOTS; j++) {
+                // Every key in this slot is due at or after its first tick.
+                long start = (base + j) << shift;
+                if (start > best) {
+                    break;
+                }
+                LongPairList list = slots[level][(int) ((base + j) & MASK)];
+                if (list == null) {
+                    continue;
+                }
+                for (int i = list.size() - 1; i >= 0; i--) {
+                    long expiry = lookup.expiryTick(list.hi(i), list.lo(i));
+                    if (expiry < 0) {
+                        list.removeAt(i);
+                        size--;
+                    } else if (expiry < best) {
+                        best = expiry;
+                        bestList = list;
+                        bestHi = list.hi(i);
+                        bestLo = list.lo(i);
+                        if (expiry <= start) {
+                            break;
+                        }
+                    }
+                }
+                if (!list.isEmpty()) {
+                    break;
+                }
+            }
+        }
+        if (bestList == null) {
+            return false;
+        }
+        bestList.remove(bestHi, bestLo);
+        size--;
+        handler.expired(bestHi, bestLo);
+        return true;
+    }
+
+    private void cascade(int level, int slot, ExpiryLookup lookup) {
+        LongPairList entries = slots[level][slot];
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        slots[level][slot] = null;
+        size -= entries.size();
+        for (int i = 0; i < entries.size(); i++) {
+            long hi = entries.hi(i);
+            long lo = entries.lo(i);
+            long expiry = lookup.expiryTick(hi, lo);
+            if (expiry >= 0) {
+                place(hi, lo, Math.max(expiry, currentTick));
+            }
+        }
+    }
+
+    private void place(long hi, long lo, long tick) {
+        long delta = Math.min(tick - currentTick, MAX_DELTA);
+        long target = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((target >>> (BITS * level)) & MASK);
+        LongPairList list = slots[level][slot];
+        if (list == null) {
+            list = new LongPairList(8);
+            slots[level][slot] = list;
+        }
+        list.add(hi, lo);
+        size++;
+    }
+}
@@ -0,0 +1,324 @@
+package com.posadskiy.restsecurity.session;
+
+import com.posadskiy.restsecurity.context.SecurityContext;
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+import com.posadskiy.restsecurity.enforcer.SecurityEnforcer;
+import com.posadskiy.restsecurity.exception.SessionDoesNotExistException;
+import com.posadskiy.restsecurity.exception.SessionExpiredException;
+import com.posadskiy.restsecurity.id.SessionId;
+import com.posadskiy.restsecurity.id.SignedSessionIds;
+import com.posadskiy.restsecurity.rest.SecuredRequest;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemorySessionStoreTest {
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+
+    private InMemorySessionStore store(SessionStoreConfig config) {
+        return new InMemorySessionStore(config, clock::get, false);
+    }
+
+    private void advance(Duration duration) {
+        clock.addAndGet(duration.toMillis());
+    }
+
+    @Test
+    void createdSession_isLiveAndResolvesUser() {
+        InMemorySessionStore store = store(SessionStoreConfig.withTtl(Duration.ofMinutes(30)));
+
+        String id = store.createSession("alice");
+
+        assertEquals(22, id.length());
+        assertTrue(store.isSessionExist(id));
+        assertFalse(store.isSessionExpired(id));
+        assertEquals("alice", store.getUserIdBySessionId(id));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void malformedAndUnknownIds_areRejectedWithoutError() {
+        InMemorySessionStore store = store(SessionStoreConfig.withTtl(Duration.ofMinutes(30)));
+        String id = store.createSession("alice");
+        String unknown = (id.charAt(21) == 'A' ? id.substring(0, 21) + "B" : id.substring(0, 21) + "A");
+
+        for (String bad : new String[]{null, "", "short", "Z".repeat(22), "A".repeat(21) + "!", "A".repeat(21) + "é", unknown}) {
+            assertFalse(store.isSessionExist(bad), bad);
+            assertTrue(store.isSessionExpired(bad), bad);
+            assertNull(store.getUserIdBySessionId(bad), bad);
+            assertFalse(store.revoke(bad), bad);
+        }
+    }
+
+    @Test
+    void sessions_expireAfterTtl_andArePurgedByTheWheel() {
+        InMemorySessionStore store = store(SessionStoreConfig.withTtl(Duration.ofSeconds(90)));
+        String id = store.createSession("alice");
+
+        advance(Duration.ofSeconds(60));
+        store.tick();
+        assertFalse(store.isSessionExpired(id));
+
+        advance(Duration.ofSeconds(31));
+        store.tick();
+        assertFalse(store.isSessionExist(id));
+        assertTrue(store.isSessionExpired(id));
+        assertNull(store.getUserIdBySessionId(id));
+        assertEquals(0, store.size());
+        assertTrue(store.sessionsOf("alice").isEmpty());
+    }
+
+    @Test
+    void slidingSessions_stayAliveWhileUsed() {
+        InMemorySessionStore store = store(SessionStoreConfig.withTtl(Duration.ofSeconds(60)).withSliding(true));
+        String used = store.createSession("alice");
+        String idle = store.createSession("bob");
+
+        for (int i = 0; i < 5; i++) {
+            advance(Duration.ofSeconds(40));
+            store.tick();
+            assertEquals("alice", store.getUserIdBySessionId(used));
+        }
+
+        assertTrue(store.isSessionExpired(idle));
+        assertFalse(store.isSessionExist(idle));
+        advance(Duration.ofSeconds(61));
+        store.tick();
+        assertFalse(store.isSessionExist(used));
+    }
+
+    @Test
+    void revoke_andRevokeAllForUser() {
+        InMemorySessionStore store = store(SessionStoreConfig.withTtl(Duration.ofMinutes(30)));
+        String a1 = store.createSession("alice");
+        String a2 = store.createSession("alice");
+        String a3 = store.createSession("alice");
+        String b1 = store.createSession("bob");
+
+        assertEquals(Set.of(a1, a2, a3), new HashSet<>(store.sessionsOf("alice")));
+        assertTrue(store.revoke(a1));
+        assertFalse(store.revoke(a1));
+        assertEquals(2, store.revokeAllForUser("alice"));
+        assertEquals(0, store.revokeAllForUser("alice"));
+        assertEquals(0, store.revokeAllForUser(null));
+
+        assertFalse(store.isSessionExist(a2));
+        assertFalse(store.isSessionExist(a3));
+        assertTrue(store.isSessionExist(b1));
+        assertEquals(1, store.size());
+        assertTrue(store.sessionsOf(null).isEmpty());
+    }
+
+    @Test
+    void bound_evictsExpiredFirst_thenClosestToExpiry() {
+        SessionStoreConfig config = new SessionStoreConfig(Duration.ofMinutes(10), false, 1, 3, 0, null);
+        InMemorySessionStore store = store(config);
+        String first = store.createSession("u1");
+        advance(Duration.ofSeconds(1));
+        store.tick();
+        String second = store.createSession("u2");
+        String third = store.createSession("u3");
+
+        String fourth = store.createSession("u4");
+
+        assertEquals(3, store.size());
+        assertFalse(store.isSessionExist(first));
+        assertTrue(store.isSessionExist(second));
+        assertTrue(store.isSessionExist(third));
+        assertTrue(store.isSessionExist(fourth));
+        assertTrue(store.sessionsOf("u1").isEmpty());
+    }
+
+    @Test
+    void maxBytes_limitsSessionCount() {
+        SessionStoreConfig config = SessionStoreConfig.withTtl(Duration.ofMinutes(10))
+                .withMaxBytes(InMemorySessionStore.ESTIMATED_BYTES_PER_SESSION * 1000);
+        assertEquals(1000, config.effectiveMaxSessions());
+        InMemorySessionStore store = store(config);
+
+        for (int i = 0; i < 5000; i++) {
+            store.createSession("user-" + i);
+        }
+
+        assertTrue(store.size() <= 1000 + config.shards(), "size " + store.size());
+    }
+
+    @Test
+    void worksWithSecurityEnforcer() {
+        InMemorySessionStore store = store(SessionStoreConfig.withTtl(Duration.ofMinutes(30)));
+        UserSecurityController users = new UserSecurityController() {
+            @Override
+            public boolean isUserExist(String userId) {
+                return true;
+            }
+
+            @Override
+            public List<String> getUserRoles(String userId) {
+                return List.of("USER");
+            }
+        };
+        SecurityEnforcer enforcer = new SecurityEnforcer(store, users);
+        String id = store.createSession("alice");
+
+        SecurityContext ctx = enforcer.validateAndBuildContext(new SecuredRequest(id), "USER");
+        assertEquals("alice", ctx.userId());
+        store.revoke(id);
+        assertThrows(SessionDoesNotExistException.class, () ->
+                enforcer.validateAndBuildContext(new SecuredRequest(id), "USER"));
+    }
+
+    @Test
+    void signedIds_withThePrefilter_endToEnd() {
+        InMemorySessionStore store = store(SessionStoreConfig.withTtl(Duration.ofMinutes(30)));
+        SecurityEnforcer enforcer = new SecurityEnforcer(store, new UserSecurityController() {
+            @Override
+            public boolean isUserExist(String userId) {
+                return true;
+            }
+
+            @Override
+            public List<String> getUserRoles(String userId) {
+                return List.of("USER");
+            }
+        });
+        SignedSessionIds ids = SignedSessionIds.of("0123456789abcdef0123456789abcdef".getBytes());
+        enforcer.setSessionIdPrefilter(ids);
+
+        String id = store.createSession("alice", ids, Duration.ofHours(8));
+
+        assertEquals(SignedSessionIds.ENCODED_LENGTH, id.length());
+        assertEquals("alice", enforcer.validateAndBuildContext(new SecuredRequest(id), "USER").userId());
+        SessionId key = SignedSessionIds.storeKey(id);
+        assertEquals(List.of(key.encoded()), store.sessionsOf("alice"));
+
+        String tampered = id.substring(0, 39) + (id.charAt(39) == 'A' ? 'B' : 'A');
+        String otherKey = SignedSessionIds.of("another-key-another-key-another-".getBytes()).issue(key, Duration.ofHours(8));
+        String expired = ids.issue(key, Duration.ofSeconds(-10));
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(tampered), "USER"));
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(otherKey), "USER"));
+        assertThrows(SessionExpiredException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(expired), "USER"));
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(store.createSession("bob")), "USER"),
+                "unsigned ids do not pass the prefilter");
+
+        assertTrue(store.revoke(id));
+        assertFalse(store.isSessionExist(id));
+        assertThrows(SessionDoesNotExistException.class,
+                () -> enforcer.validateAndBuildContext(new SecuredRequest(id), "USER"));
+        assertFalse(store.isSessionExist("!".repeat(SignedSessionIds.ENCODED_LENGTH)));
+    }
+
+    @Test
+    void concurrentCreateLookupAndRevoke_stayConsistent() throws InterruptedException {
+        InMemorySessionStore store = store(SessionStoreConfig.withTtl(Duration.ofMinutes(30)));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<String> failures = java.util.Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            pool.execute(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    String user = "user-" + thread + "-" + (i % 50);
+                    String id = store.createSession(user);
+                    if (!user.equals(store.getUserIdBySessionId(id))) {
+                        failures.add(id);
+                    }
+                    if (i % 3 == 0 && !store.revoke(id)) {
+                        failures.add(id);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertTrue(failures.isEmpty(), failures.toString());
+        assertEquals(8 * (5_000 - 1_667), store.size());
+        int indexed = 0;
+        for (int t = 0; t < 8; t++) {
+            for (int u = 0; u < 50; u++) {
+                indexed += store.sessionsOf("user-" + t + "-" + u).size();
+            }
+        }
+        assertEquals(store.size(), indexed);
+    }
+
+    @Test
+    void backgroundTicker_expiresSessions() throws InterruptedException {
+        SessionStoreConfig config = new SessionStoreConfig(Duration.ofMillis(100), false, 2, 0, 0, Duration.ofMillis(20));
+        try (InMemorySessionStore store = new InMemorySessionStore(config)) {
+            String id = store.createSession("alice");
+            assertTrue(store.isSessionExist(id));
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (store.isSessionExist(id) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertFalse(store.isSessionExist(id));
+            assertSame(config, store.config());
+        }
+    }
+
+    @Test
+    void config_defaultsAndValidation() {
+        SessionStoreConfig config = new SessionStoreConfig(Duration.ofMinutes(1), false, 5, 0, -1, null);
+        assertEquals(8, config.shards());
+        assertEquals(Integer.MAX_VALUE, config.maxSessions());
+        assertEquals(Integer.MAX_VALUE, config.effectiveMaxSessions());
+        assertEquals(0, config.maxBytes());
+        assertEquals(Duration.ofSeconds(1), config.tick());
+        assertEquals(42, config.withMaxSessions(42).effectiveMaxSessions());
+        assertTrue(config.withSliding(true).sliding());
+        assertThrows(IllegalArgumentException.class, () -> SessionStoreConfig.withTtl(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> SessionStoreConfig.withTtl(null));
+        assertThrows(IllegalArgumentException.class, () ->
+                store(SessionStoreConfig.withTtl(Duration.ofMinutes(1))).createSession(" "));
+    }
+
+    /**
+     * Measures retained heap per session with many users and checks it against
+     * {@link InMemorySessionStore#ESTIMATED_BYTES_PER_SESSION}.
+     */
+    @Test
+    void perSessionFootprint_isWithinEstimate() {
+        int sessions = 200_000;
+        List<String> users = new ArrayList<>();
+        for (int i = 0; i < sessions / 4; i++) {
+            users.add("user-" + i);
+        }
+        long before = usedHeapAfterGc();
+        InMemorySessionStore store = store(SessionStoreConfig.withTtl(Duration.ofHours(1)));
+        for (int i = 0; i < sessions; i++) {
+            store.createSession(users.get(i % users.size()));
+        }
+        long after = usedHeapAfterGc();
+
+        long perSession = (after - before) / sessions;
+        assertEquals(sessions, store.size());
+        assertEquals(sessions, store.scheduled());
+        assertTrue(perSession <= InMemorySessionStore.ESTIMATED_BYTES_PER_SESSION,
+                "measured " + perSession + " bytes per session");
+    }
+
+    private static long usedHeapAfterGc() {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
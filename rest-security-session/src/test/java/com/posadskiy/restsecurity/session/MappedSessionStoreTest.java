@@ -0,0 +1,307 @@
+package com.posadskiy.restsecurity.session;
+
+import com.posadskiy.restsecurity.id.SessionId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedSessionStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+
+    private MappedSessionStoreConfig config() {
+        return MappedSessionStoreConfig.of(dir.resolve("sessions.dat"), Duration.ofMinutes(30)).withMaxSessions(1000);
+    }
+
+    private MappedSessionStore open(MappedSessionStoreConfig config) {
+        return new MappedSessionStore(config, clock::get);
+    }
+
+    @Test
+    void createdSession_isLiveAndResolvesUser() {
+        try (MappedSessionStore store = open(config())) {
+            String id = store.createSession("alice");
+
+            assertTrue(store.isSessionExist(id));
+            assertFalse(store.isSessionExpired(id));
+            assertEquals("alice", store.getUserIdBySessionId(id));
+            assertEquals(1, store.size());
+            assertEquals("ünïcødé", store.getUserIdBySessionId(store.createSession("ünïcødé")));
+        }
+    }
+
+    @Test
+    void malformedAndUnknownIds_areRejected() {
+        try (MappedSessionStore store = open(config())) {
+            store.createSession("alice");
+            String unknown = SessionId.encode(1, 2);
+            for (String bad : new String[]{null, "", "short", "!".repeat(22), unknown}) {
+                assertFalse(store.isSessionExist(bad), bad);
+                assertTrue(store.isSessionExpired(bad), bad);
+                assertNull(store.getUserIdBySessionId(bad), bad);
+                assertFalse(store.revoke(bad), bad);
+            }
+        }
+    }
+
+    @Test
+    void sessionsExpire_andSlidingExtendsThem() {
+        try (MappedSessionStore store = open(config().withSliding(true))) {
+            String used = store.createSession("alice");
+            String idle = store.createSession("bob");
+
+            for (int i = 0; i < 4; i++) {
+                clock.addAndGet(Duration.ofMinutes(20).toMillis());
+                assertEquals("alice", store.getUserIdBySessionId(used));
+            }
+
+            assertTrue(store.isSessionExist(idle));
+            assertTrue(store.isSessionExpired(idle));
+            assertNull(store.getUserIdBySessionId(idle));
+            assertEquals(1, store.purgeExpired());
+            assertFalse(store.isSessionExist(idle));
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    void reopen_keepsSessions() {
+        List<String> ids = new ArrayList<>();
+        try (MappedSessionStore store = open(config())) {
+            for (int i = 0; i < 100; i++) {
+                ids.add(store.createSession("user-" + i));
+            }
+            store.revoke(ids.get(0));
+        }
+
+        try (MappedSessionStore store = open(config())) {
+            assertFalse(store.recovered());
+            assertEquals(99, store.size());
+            assertFalse(store.isSessionExist(ids.get(0)));
+            for (int i = 1; i < 100; i++) {
+                assertEquals("user-" + i, store.getUserIdBySessionId(ids.get(i)));
+            }
+        }
+    }
+
+    @Test
+    void crash_isRecoveredFromLog_whenSlotWritesWereLost() throws IOException {
+        Path data = config().path();
+        List<String> ids = new ArrayList<>();
+        MappedSessionStore crashed = open(config());
+        for (int i = 0; i < 50; i++) {
+            ids.add(crashed.createSession("user-" + i));
+        }
+        crashed.revoke(ids.get(0));
+        // Simulate a power loss that kept the log but none of the slot writes.
+        long size = Files.size(data);
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate((int) (size - 64)), 64);
+        }
+        // And a torn last log record.
+        Files.write(data.resolveSibling("sessions.dat.wal"), new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        try (MappedSessionStore store = open(config())) {
+            assertTrue(store.recovered());
+            assertEquals(49, store.size());
+            assertNull(store.getUserIdBySessionId(ids.get(0)));
+            for (int i = 1; i < 50; i++) {
+                assertEquals("user-" + i, store.getUserIdBySessionId(ids.get(i)));
+            }
+            assertEquals(0, Files.size(data.resolveSibling("sessions.dat.wal")));
+        }
+    }
+
+    @Test
+    void crashWithoutLostWrites_recountsSlots() {
+        MappedSessionStore crashed = open(config().withSyncWrites(true));
+        String id = crashed.createSession("alice");
+        crashed.checkpoint();
+
+        try (MappedSessionStore store = open(config())) {
+            assertTrue(store.recovered());
+            assertEquals(1, store.size());
+            assertEquals("alice", store.getUserIdBySessionId(id));
+        }
+    }
+
+    @Test
+    void fullStore_purgesExpiredFirst_thenEvictsClosestToExpiry() {
+        MappedSessionStoreConfig config = config().withMaxSessions(3);
+        try (MappedSessionStore store = open(config)) {
+            String first = store.createSession("u1");
+            clock.addAndGet(1_000);
+            String second = store.createSession("u2");
+            String third = store.createSession("u3");
+
+            String fourth = store.createSession("u4");
+            assertEquals(3, store.size());
+            assertFalse(store.isSessionExist(first));
+            assertTrue(store.isSessionExist(second) && store.isSessionExist(third) && store.isSessionExist(fourth));
+
+            clock.addAndGet(Duration.ofHours(1).toMillis());
+            store.createSession("u5");
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    void fullStore_evictsInExpiryOrder_afterSlidesAndReopen() {
+        MappedSessionStoreConfig config = config().withMaxSessions(4).withSliding(true);
+        List<String> ids = new ArrayList<>();
+        try (MappedSessionStore store = open(config)) {
+            for (int i = 0; i < 4; i++) {
+                ids.add(store.createSession("u" + i));
+                clock.addAndGet(1_000);
+            }
+            clock.addAndGet(1_000);
+            assertEquals("u0", store.getUserIdBySessionId(ids.get(0)), "slides u0 past the others");
+
+            store.createSession("u4");
+            store.createSession("u5");
+
+            assertEquals(4, store.size());
+            assertTrue(store.isSessionExist(ids.get(0)));
+            assertFalse(store.isSessionExist(ids.get(1)));
+            assertFalse(store.isSessionExist(ids.get(2)));
+            assertTrue(store.isSessionExist(ids.get(3)));
+        }
+        try (MappedSessionStore store = open(config)) {
+            store.createSession("u6");
+
+            assertEquals(4, store.size());
+            assertFalse(store.isSessionExist(ids.get(3)), "the reopened store orders the file's sessions again");
+            assertTrue(store.isSessionExist(ids.get(0)));
+        }
+    }
+
+    @Test
+    void manyRevocations_triggerCompaction() {
+        try (MappedSessionStore store = open(config())) {
+            String kept = store.createSession("kept");
+            for (int i = 0; i < 2_000; i++) {
+                store.revoke(store.createSession("user-" + i));
+            }
+            assertTrue(store.tombstones() <= store.capacity() / 4);
+            assertEquals(1, store.size());
+            assertEquals("kept", store.getUserIdBySessionId(kept));
+            assertFalse(Files.exists(dir.resolve("sessions.dat.compact")));
+        }
+        try (MappedSessionStore store = open(config())) {
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    void automaticCheckpoint_truncatesLog() throws IOException {
+        MappedSessionStoreConfig config = new MappedSessionStoreConfig(dir.resolve("sessions.dat"),
+                Duration.ofMinutes(30), false, 100, 16, false, 10);
+        try (MappedSessionStore store = open(config)) {
+            for (int i = 0; i < 25; i++) {
+                store.createSession("u" + i);
+            }
+            assertEquals(5 * (8 + 27 + 3), Files.size(dir.resolve("sessions.dat.wal")));
+        }
+    }
+
+    @Test
+    void concurrentReadersAndWriters_stayConsistent() throws InterruptedException {
+        try (MappedSessionStore store = open(config().withMaxSessions(100_000))) {
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            AtomicInteger failures = new AtomicInteger();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                pool.execute(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        String user = "user-" + thread + "-" + i;
+                        String id = store.createSession(user);
+                        if (!user.equals(store.getUserIdBySessionId(id))) {
+                            failures.incrementAndGet();
+                        }
+                        if (i % 2 == 0 && !store.revoke(id)) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+            assertEquals(0, failures.get());
+            assertEquals(8_000, store.size());
+        }
+    }
+
+    @Test
+    void invalidInputAndFiles_areRejected() throws IOException {
+        MappedSessionStoreConfig config = new MappedSessionStoreConfig(dir.resolve("sessions.dat"),
+                Duration.ofMinutes(1), false, 10, 8, false, 0);
+        try (MappedSessionStore store = open(config)) {
+            assertThrows(IllegalArgumentException.class, () -> store.createSession("123456789"));
+            assertThrows(IllegalArgumentException.class, () -> store.createSession(" "));
+            store.close();
+            assertThrows(IllegalStateException.class, () -> store.createSession("x"));
+        }
+
+        Path bogus = dir.resolve("bogus.dat");
+        Files.write(bogus, new byte[128]);
+        assertThrows(IllegalStateException.class, () -> open(MappedSessionStoreConfig.of(bogus, Duration.ofMinutes(1))));
+        assertThrows(IllegalArgumentException.class, () -> MappedSessionStoreConfig.of(null, Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> MappedSessionStoreConfig.of(bogus, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () ->
+                new MappedSessionStoreConfig(bogus, Duration.ofMinutes(1), false, 0, 4096, false, 0));
+        assertThrows(IllegalArgumentException.class, () ->
+                open(new MappedSessionStoreConfig(dir.resolve("huge.dat"), Duration.ofMinutes(1), false,
+                        Integer.MAX_VALUE, 0, false, 0)));
+    }
+
+    @Test
+    void reopen_isIndependentOfSessionCount() {
+        reopenMillion(100_000, 2_000);
+    }
+
+    /** Run with {@code -Dsession.benchmark=true}. */
+    @Test
+    @EnabledIfSystemProperty(named = "session.benchmark", matches = "true")
+    void reopen_millionSessions() {
+        reopenMillion(1_000_000, 200);
+    }
+
+    private void reopenMillion(int sessions, long maxOpenMillis) {
+        MappedSessionStoreConfig config = config().withMaxSessions(sessions);
+        String probe;
+        try (MappedSessionStore store = open(config)) {
+            probe = store.createSession("probe");
+            for (int i = 1; i < sessions; i++) {
+                store.createSession("user-" + i);
+            }
+        }
+
+        long start = System.nanoTime();
+        try (MappedSessionStore store = open(config)) {
+            long openMillis = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(sessions, store.size());
+            assertEquals("probe", store.getUserIdBySessionId(probe));
+            assertTrue(openMillis < maxOpenMillis, "reopen took " + openMillis + " ms");
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.posadskiy.restsecurity.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private final Map<Long, Long> expiries = new HashMap<>();
+    private final List<long[]> fired = new ArrayList<>();
+
+    private void advance(TimingWheel wheel, long toTick) {
+        while (wheel.currentTick() < toTick) {
+            long tick = wheel.currentTick() + 1;
+            wheel.advance(tick,
+                    (hi, lo) -> expiries.getOrDefault(lo, -1L),
+                    (hi, lo) -> {
+                        fired.add(new long[]{lo, tick});
+                        expiries.remove(lo);
+                    });
+        }
+    }
+
+    @Test
+    void entriesFireAtTheirTick_acrossAllLevels() {
+        TimingWheel wheel = new TimingWheel(1_000);
+        long[] deltas = {1, 5, 63, 64, 65, 200, 4095, 4096, 5000, 262_143, 262_144, 300_000};
+        for (long delta : deltas) {
+            expiries.put(delta, 1_000 + delta);
+            wheel.schedule(0, delta, 1_000 + delta);
+        }
+        assertEquals(deltas.length, wheel.size());
+
+        advance(wheel, 1_000 + 300_000);
+
+        assertEquals(deltas.length, fired.size());
+        for (long[] f : fired) {
+            assertEquals(1_000 + f[0], f[1], "entry " + f[0]);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void slidEntries_areRescheduled_andRemovedEntriesSkipped() {
+        TimingWheel wheel = new TimingWheel(0);
+        expiries.put(1L, 10L);
+        expiries.put(2L, 10L);
+        wheel.schedule(0, 1, 10);
+        wheel.schedule(0, 2, 10);
+        expiries.put(1L, 100L);
+        expiries.remove(2L);
+
+        advance(wheel, 99);
+        assertTrue(fired.isEmpty());
+        advance(wheel, 100);
+        assertEquals(1, fired.size());
+        assertEquals(100, fired.get(0)[1]);
+    }
+
+    @Test
+    void pastTicks_fireOnNextAdvance_andFarTicksAreClamped() {
+        TimingWheel wheel = new TimingWheel(500);
+        expiries.put(1L, 10L);
+        wheel.schedule(0, 1, 10);
+        long far = 500 + (1L << 24) + 10;
+        expiries.put(2L, far);
+        wheel.schedule(0, 2, far);
+
+        advance(wheel, 501);
+        assertEquals(1, fired.size());
+        assertEquals(1, wheel.size());
+
+        wheel.advance(far, (hi, lo) -> expiries.getOrDefault(lo, -1L), (hi, lo) -> fired.add(new long[]{lo, 0}));
+        assertEquals(2, fired.size());
+    }
+
+    @Test
+    void evictEarliest_takesKeysInExpiryOrder_acrossLevels() {
+        TimingWheel wheel = new TimingWheel(0);
+        long[] ticks = {5000, 64, 3, 300_000, 200, 40};
+        for (long tick : ticks) {
+            expiries.put(tick, tick);
+            wheel.schedule(0, tick, tick);
+        }
+        advance(wheel, 2);
+        // Placed on level 0 now, but due after the level-1 key at 64.
+        expiries.put(123L, 123L);
+        wheel.schedule(0, 123, 123);
+        // Removed and slid keys are judged by their current expiry.
+        expiries.remove(40L);
+        expiries.put(200L, 7000L);
+
+        List<Long> evicted = new ArrayList<>();
+        while (wheel.evictEarliest((hi, lo) -> expiries.getOrDefault(lo, -1L), (hi, lo) -> {
+            evicted.add(lo);
+            expiries.remove(lo);
+        })) {
+            assertTrue(evicted.size() <= ticks.length, "every key is taken once");
+        }
+
+        assertEquals(List.of(3L, 64L, 123L, 5000L, 200L, 300_000L), evicted);
+        assertEquals(0, wheel.size());
+        assertFalse(wheel.evictEarliest((hi, lo) -> -1L, (hi, lo) -> fail("empty wheel")));
+    }
+}
@@ -7,6 +7,7 @@ import com.posadskiy.restsecurity.context.SecurityContext;
 import com.posadskiy.restsecurity.context.SecurityContextHolder;
 import com.posadskiy.restsecurity.enforcer.SecurityEnforcer;
 import com.posadskiy.restsecurity.exception.RestSecurityException;
+import com.posadskiy.restsecurity.id.SessionIdPrefilter;
 import com.posadskiy.restsecurity.rest.SecuredRequestContext;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,6 +43,11 @@ public class SecurityAnnotationBeanPostProcessor implements BeanPostProcessor {
         this.enforcer.setAuditListener(auditListener);
     }
 
+    @Autowired(required = false)
+    public void setSessionIdPrefilter(SessionIdPrefilter sessionIdPrefilter) {
+        this.enforcer.setSessionIdPrefilter(sessionIdPrefilter);
+    }
+
     @Override
     public Object postProcessBeforeInitialization(@NonNull Object bean, @NonNull String beanName) throws BeansException {
         Class<?> beanClass = bean.getClass();
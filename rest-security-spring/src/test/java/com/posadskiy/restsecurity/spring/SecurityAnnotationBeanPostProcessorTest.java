@@ -14,6 +14,7 @@ import com.posadskiy.restsecurity.controller.SessionSecurityController;
 import com.posadskiy.restsecurity.controller.UserSecurityController;
 import com.posadskiy.restsecurity.exception.RestSecurityException;
 import com.posadskiy.restsecurity.exception.*;
+import com.posadskiy.restsecurity.id.SessionIdVerdict;
 import com.posadskiy.restsecurity.rest.SecuredRequest;
 import com.posadskiy.restsecurity.rest.SecuredRequestContext;
 import org.junit.jupiter.api.AfterEach;
@@ -319,6 +320,17 @@ class SecurityAnnotationBeanPostProcessorTest {
         assertNotNull(failEx.get());
     }
 
+    @Test
+    void postProcess_withSessionIdPrefilter_rejectsBeforeStoreLookup() {
+        postProcessor.setSessionIdPrefilter(sessionId -> SessionIdVerdict.FORGED);
+
+        var bean = postProcessBean(new TestClassWithSecurityAnnotationImpl(), "b");
+        SecuredRequestContext request = new SecuredRequest(SESSION_ID);
+
+        assertThrows(SessionDoesNotExistException.class, () -> bean.testMethod(request));
+        verifyNoInteractions(sessionController);
+    }
+
     private TestClassWithSecurityAnnotation postProcessBean(TestClassWithSecurityAnnotationImpl impl, String name) {
         Object before = postProcessor.postProcessBeforeInitialization(impl, name);
         Object after = postProcessor.postProcessAfterInitialization(before, name);
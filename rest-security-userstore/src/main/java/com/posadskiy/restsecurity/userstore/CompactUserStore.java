@@ -0,0 +1,407 @@
+package com.posadskiy.restsecurity.userstore;
+
+import com.posadskiy.restsecurity.controller.UserSecurityController;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * {@link UserSecurityController} for many users with numeric ids and few distinct roles, kept compact in memory.
+ *
+ * <ul>
+ *   <li>Users live in an open-addressing table of {@code long} ids and {@code int} role-set ids: 12 bytes per
+ *       slot, 16 to 32 bytes per user, against well over 100 for a {@code Map<String, List<String>>}.</li>
+ *   <li>Each distinct combination of roles is stored once, as a bitmask with one shared immutable set; every
+ *       user with those roles gets that same instance from {@link #getUserRolesSet}. At most 64 role names.</li>
+ *   <li>Snapshots are read by streaming, from CSV ({@link #readCsv}) or from the binary format written by
+ *       {@link #writeBinary} ({@link #readBinary}); neither holds the file in memory.</li>
+ * </ul>
+ * Reads are optimistic and lock-free unless they race a write; writes are serialized. User ids given as strings
+ * must be decimal longs; any other id, and {@link Long#MIN_VALUE}, is an unknown user.
+ *
+ * <pre>
+ * CompactUserStore users = CompactUserStore.readCsv(Path.of("users.csv"));   // 42,USER;ADMIN
+ * SecurityEnforcer enforcer = new SecurityEnforcer(sessions, users);
+ * </pre>
+ */
+public final class CompactUserStore implements UserSecurityController {
+
+    private static final int MAGIC = 0x52535553;
+    private static final byte VERSION = 1;
+    /** Distinct role columns remembered while reading CSV; most files repeat a handful. */
+    private static final int CSV_MEMO = 1024;
+    /**
+     * Most users and role sets a snapshot header can reserve room for before any is read; larger snapshots
+     * grow as they are read, so a damaged header cannot allocate more than the file holds.
+     */
+    private static final int MAX_PRESIZED_USERS = 1 << 20;
+    private static final int MAX_PRESIZED_ROLE_SETS = 1 << 10;
+
+    private final StampedLock lock = new StampedLock();
+    private final RoleMasks masks = new RoleMasks();
+    private volatile LongIntMap users;
+
+    public CompactUserStore() {
+        this(0);
+    }
+
+    /** @param expectedUsers users to make room for up front, so loading does not resize the table */
+    public CompactUserStore(int expectedUsers) {
+        this.users = new LongIntMap(expectedUsers);
+    }
+
+    /**
+     * Read a CSV snapshot: one {@code userId,ROLE;ROLE} line per user. The roles column may be empty or missing;
+     * blank lines and lines starting with {@code #} are skipped. A later line for the same user replaces it.
+     *
+     * @throws IllegalArgumentException naming the line, if one is malformed
+     * @throws UncheckedIOException     on I/O failure
+     */
+    public static CompactUserStore readCsv(Path file) {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return readCsv(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Read a CSV snapshot from {@code in}, see {@link #readCsv(Path)}. Does not close {@code in}. */
+    public static CompactUserStore readCsv(Reader in) {
+        CompactUserStore store = new CompactUserStore();
+        BufferedReader lines = in instanceof BufferedReader buffered ? buffered : new BufferedReader(in);
+        Map<String, Integer> seenColumns = new HashMap<>();
+        int lineNumber = 0;
+        try {
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                String column = comma < 0 ? "" : line.substring(comma + 1);
+                long userId = parseUserId((comma < 0 ? line : line.substring(0, comma)).strip());
+                if (userId == Long.MIN_VALUE) {
+                    throw new IllegalArgumentException("CompactUserStore: line " + lineNumber + ": bad user id");
+                }
+                Integer maskId = seenColumns.get(column);
+                if (maskId == null) {
+                    maskId = store.masks.intern(splitRoles(column, lineNumber));
+                    if (seenColumns.size() == CSV_MEMO) {
+                        seenColumns.clear();
+                    }
+                    seenColumns.put(column, maskId);
+                }
+                store.putMask(userId, maskId);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return store;
+    }
+
+    /**
+     * Read a snapshot written by {@link #writeBinary}.
+     *
+     * @throws IllegalStateException if the file is not a user store snapshot, is truncated or fails its checksum
+     * @throws UncheckedIOException  on I/O failure
+     */
+    public static CompactUserStore readBinary(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            return readBinary(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Read a snapshot written by {@link #writeBinary} from {@code in}. Does not close {@code in}. */
+    public static CompactUserStore readBinary(InputStream in) {
+        BufferedInputStream buffered = new BufferedInputStream(in, 64 * 1024);
+        CheckedInputStream checked = new CheckedInputStream(buffered, new CRC32C());
+        DataInputStream data = new DataInputStream(checked);
+        try {
+            if (data.readInt() != MAGIC || data.readByte() != VERSION) {
+                throw new IllegalStateException("CompactUserStore: not a user store snapshot");
+            }
+            int userCount = data.readInt();
+            if (userCount < 0) {
+                throw new IllegalStateException("CompactUserStore: corrupt snapshot");
+            }
+            CompactUserStore store = new CompactUserStore(Math.min(userCount, MAX_PRESIZED_USERS));
+            int roleCount = data.readUnsignedByte();
+            for (int i = 0; i < roleCount; i++) {
+                store.masks.bit(data.readUTF());
+            }
+            int maskCount = data.readInt();
+            if (maskCount < 0 || roleCount < Integer.SIZE - 1 && maskCount > 1 << roleCount) {
+                throw new IllegalStateException("CompactUserStore: corrupt snapshot");
+            }
+            int[] maskIds = new int[Math.min(maskCount, MAX_PRESIZED_ROLE_SETS)];
+            for (int i = 0; i < maskCount; i++) {
+                if (i == maskIds.length) {
+                    maskIds = Arrays.copyOf(maskIds, (int) Math.min(maskCount, 2L * i));
+                }
+                maskIds[i] = store.masks.intern(data.readLong());
+            }
+            for (int i = 0; i < userCount; i++) {
+                long userId = data.readLong();
+                int maskIndex = data.readInt();
+                if (maskIndex < 0 || maskIndex >= maskCount || userId == Long.MIN_VALUE) {
+                    throw new IllegalStateException("CompactUserStore: corrupt snapshot");
+                }
+                store.putMask(userId, maskIds[maskIndex]);
+            }
+            int computed = (int) checked.getChecksum().getValue();
+            if (new DataInputStream(buffered).readInt() != computed) {
+                throw new IllegalStateException("CompactUserStore: snapshot checksum mismatch");
+            }
+            return store;
+        } catch (EOFException e) {
+            throw new IllegalStateException("CompactUserStore: snapshot is truncated", e);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("CompactUserStore: corrupt snapshot", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write a binary snapshot to a temporary file and move it over {@code file} atomically.
+     *
+     * @throws UncheckedIOException on I/O failure
+     */
+    public void writeBinary(Path file) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                writeBinary(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Write a binary snapshot to {@code out}. Does not close {@code out}. Writes wait until it is done. */
+    public void writeBinary(OutputStream out) {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32C());
+        DataOutputStream data = new DataOutputStream(checked);
+        long stamp = lock.readLock();
+        try {
+            LongIntMap table = users;
+            data.writeInt(MAGIC);
+            data.writeByte(VERSION);
+            data.writeInt(table.size());
+            List<String> roles = masks.roleNames();
+            data.writeByte(roles.size());
+            for (String role : roles) {
+                data.writeUTF(role);
+            }
+            data.writeInt(masks.size());
+            for (int id = 0; id < masks.size(); id++) {
+                data.writeLong(masks.get(id).mask());
+            }
+            table.forEach((userId, maskId) -> {
+                data.writeLong(userId);
+                data.writeInt(maskId);
+            });
+            data.flush();
+            new DataOutputStream(buffered).writeInt((int) checked.getChecksum().getValue());
+            buffered.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Add {@code userId} with {@code roles}, or replace its roles.
+     *
+     * @throws IllegalArgumentException if the id is {@link Long#MIN_VALUE}, a role is blank, or the store would
+     *                                  know more than 64 distinct roles
+     */
+    public void put(long userId, Collection<String> roles) {
+        if (userId == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("CompactUserStore: Long.MIN_VALUE is not a user id");
+        }
+        long stamp = lock.writeLock();
+        try {
+            putLocked(userId, masks.intern(roles));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** @return true if {@code userId} was stored */
+    public boolean remove(long userId) {
+        long stamp = lock.writeLock();
+        try {
+            return users.remove(userId) >= 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean isUserExist(long userId) {
+        return roles(userId) != null;
+    }
+
+    /** @return the shared set of the user's roles; empty if the user is unknown */
+    public Set<String> getUserRolesSet(long userId) {
+        RoleMasks.Interned roles = roles(userId);
+        return roles != null ? roles.set() : Set.of();
+    }
+
+    @Override
+    public boolean isUserExist(String userId) {
+        return isUserExist(parseUserId(userId));
+    }
+
+    @Override
+    public List<String> getUserRoles(String userId) {
+        RoleMasks.Interned roles = roles(parseUserId(userId));
+        return roles != null ? roles.list() : List.of();
+    }
+
+    @Override
+    public Set<String> getUserRolesSet(String userId) {
+        return getUserRolesSet(parseUserId(userId));
+    }
+
+    /** Users stored. */
+    public int size() {
+        return users.size();
+    }
+
+    /** Distinct role sets seen so far, including ones no user holds any more. */
+    public int distinctRoleSets() {
+        long stamp = lock.readLock();
+        try {
+            return masks.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Role names seen so far. */
+    public List<String> roleNames() {
+        long stamp = lock.readLock();
+        try {
+            return masks.roleNames();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int capacity() {
+        return users.capacity();
+    }
+
+    /**
+     * Parse a decimal long without allocating.
+     *
+     * @return the id, or {@link Long#MIN_VALUE} if {@code userId} is not a decimal long
+     */
+    static long parseUserId(String userId) {
+        if (userId == null || userId.isEmpty() || userId.length() > 20) {
+            return Long.MIN_VALUE;
+        }
+        boolean negative = userId.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        if (start == userId.length()) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (int i = start; i < userId.length(); i++) {
+            int digit = userId.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private RoleMasks.Interned roles(long userId) {
+        if (userId == Long.MIN_VALUE) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int maskId = users.get(userId);
+            RoleMasks.Interned roles = maskId >= 0 ? masks.get(maskId) : null;
+            if (lock.validate(stamp)) {
+                return roles;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            int maskId = users.get(userId);
+            return maskId >= 0 ? masks.get(maskId) : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void putMask(long userId, int maskId) {
+        long stamp = lock.writeLock();
+        try {
+            putLocked(userId, maskId);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void putLocked(long userId, int maskId) {
+        LongIntMap table = users;
+        if (table.isFull() && table.get(userId) < 0) {
+            table = table.resized();
+            users = table;
+        }
+        table.put(userId, maskId);
+    }
+
+    private static List<String> splitRoles(String column, int lineNumber) {
+        List<String> roles = new ArrayList<>();
+        int start = 0;
+        while (start <= column.length()) {
+            int end = column.indexOf(';', start);
+            if (end < 0) {
+                end = column.length();
+            }
+            String role = column.substring(start, end).strip();
+            if (!role.isEmpty()) {
+                roles.add(role);
+            } else if (end < column.length() || start > 0) {
+                throw new IllegalArgumentException("CompactUserStore: line " + lineNumber + ": empty role");
+            }
+            start = end + 1;
+        }
+        return roles;
+    }
+}
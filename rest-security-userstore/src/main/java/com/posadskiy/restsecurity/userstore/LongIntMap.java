@@ -0,0 +1,149 @@
+package com.posadskiy.restsecurity.userstore;
+
+import java.io.IOException;
+
+/**
+ * Open-addressing hash map from {@code long} to a non-negative {@code int}: two flat arrays with linear probing,
+ * 12 bytes per slot and no per-entry objects. The arrays never change size; {@link #resized()} copies into a
+ * larger map, so a reader holding one map always sees arrays of matching length. Not thread-safe.
+ */
+final class LongIntMap {
+
+    static final int MAX_CAPACITY = 1 << 30;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private final long[] keys;
+    /** Value plus one; 0 marks an empty slot, so every key, 0 included, can be stored. */
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    /** Receives entries, see {@link #forEach}. */
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(long key, int value) throws IOException;
+    }
+
+    /** @param expected entries to hold before the first {@link #resized()} */
+    LongIntMap(int expected) {
+        long wanted = Math.max(16, (long) Math.ceil(Math.max(0, expected) / LOAD_FACTOR));
+        if (wanted > MAX_CAPACITY) {
+            throw new IllegalArgumentException("CompactUserStore: at most " + (long) (MAX_CAPACITY * LOAD_FACTOR) + " entries");
+        }
+        int capacity = Integer.highestOneBit((int) wanted - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /** @return the value of {@code key}, or -1 if absent */
+    int get(long key) {
+        int slot = (int) mix(key) & mask;
+        while (true) {
+            int stored = values[slot];
+            if (stored == 0) {
+                return -1;
+            }
+            if (keys[slot] == key) {
+                return stored - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Map {@code key} to {@code value}. Call {@link #isFull()} first.
+     *
+     * @return the previous value, or -1 if the key is new
+     */
+    int put(long key, int value) {
+        int slot = (int) mix(key) & mask;
+        while (true) {
+            int stored = values[slot];
+            if (stored == 0) {
+                keys[slot] = key;
+                values[slot] = value + 1;
+                size++;
+                return -1;
+            }
+            if (keys[slot] == key) {
+                values[slot] = value + 1;
+                return stored - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Remove {@code key}, shifting back the entries probed past it so no tombstone is left.
+     *
+     * @return the removed value, or -1 if absent
+     */
+    int remove(long key) {
+        int slot = (int) mix(key) & mask;
+        while (values[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int removed = values[slot] - 1;
+        if (removed < 0) {
+            return -1;
+        }
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (values[next] != 0) {
+            int home = (int) mix(keys[next]) & mask;
+            // Move the entry into the hole unless its home lies cyclically in (hole, next].
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = 0;
+        size--;
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    /** True when one more new key would exceed the load factor. */
+    boolean isFull() {
+        return size + 1 > keys.length * LOAD_FACTOR;
+    }
+
+    /** Copy with twice the capacity. */
+    LongIntMap resized() {
+        if (keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("CompactUserStore: table is full");
+        }
+        LongIntMap grown = new LongIntMap((int) (keys.length * 2 * LOAD_FACTOR));
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != 0) {
+                grown.put(keys[slot], values[slot] - 1);
+            }
+        }
+        return grown;
+    }
+
+    void forEach(EntryVisitor visitor) throws IOException {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != 0) {
+                visitor.visit(keys[slot], values[slot] - 1);
+            }
+        }
+    }
+
+    /** SplitMix64 finalizer: sequential ids spread over the whole table. */
+    static long mix(long key) {
+        long h = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,99 @@
+package com.posadskiy.restsecurity.userstore;
+
+import com.posadskiy.restsecurity.context.RoleSets;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interns role names to bits and role sets to small ids. Each distinct set of roles is stored once, as a
+ * {@code long} mask with one canonical immutable {@link Set}, from {@link RoleSets}, and {@link List}; users hold
+ * only the id. At most {@value #MAX_ROLES} distinct role names. Ids are never reused. Writes are not thread-safe;
+ * reads of an id already handed out are.
+ */
+final class RoleMasks {
+
+    static final int MAX_ROLES = 64;
+
+    /** Roles of one interned mask. */
+    record Interned(long mask, Set<String> set, List<String> list) {}
+
+    private final Map<String, Integer> bits = new HashMap<>();
+    private final String[] names = new String[MAX_ROLES];
+    private final Map<Long, Integer> ids = new HashMap<>();
+    private volatile Interned[] interned = new Interned[8];
+    private int count;
+
+    /**
+     * @return the id of the set of {@code roles}, interning it if new
+     * @throws IllegalArgumentException if a role is blank or more than {@value #MAX_ROLES} roles would be known
+     */
+    int intern(Collection<String> roles) {
+        long mask = 0;
+        for (String role : roles) {
+            mask |= 1L << bit(role);
+        }
+        return intern(mask);
+    }
+
+    /** @return the id of {@code mask}, interning it if new; its bits must be known roles */
+    int intern(long mask) {
+        Integer id = ids.get(mask);
+        if (id != null) {
+            return id;
+        }
+        if (count == interned.length) {
+            interned = Arrays.copyOf(interned, count * 2);
+        }
+        String[] roles = new String[Long.bitCount(mask)];
+        int next = 0;
+        for (long rest = mask; rest != 0; rest &= rest - 1) {
+            String name = names[Long.numberOfTrailingZeros(rest)];
+            if (name == null) {
+                throw new IllegalArgumentException("CompactUserStore: unknown role bit " + Long.numberOfTrailingZeros(rest));
+            }
+            roles[next++] = name;
+        }
+        interned[count] = new Interned(mask, RoleSets.intern(Arrays.asList(roles)), List.of(roles));
+        ids.put(mask, count);
+        return count++;
+    }
+
+    /** Register {@code role}; returns its bit. */
+    int bit(String role) {
+        if (role == null || role.isBlank()) {
+            throw new IllegalArgumentException("CompactUserStore: role must be non-blank");
+        }
+        Integer bit = bits.get(role);
+        if (bit != null) {
+            return bit;
+        }
+        if (bits.size() == MAX_ROLES) {
+            throw new IllegalArgumentException("CompactUserStore: at most " + MAX_ROLES + " distinct roles");
+        }
+        int assigned = bits.size();
+        names[assigned] = role;
+        bits.put(role, assigned);
+        return assigned;
+    }
+
+    /** @return the interned set of {@code id}, or null if {@code id} is not one */
+    Interned get(int id) {
+        Interned[] current = interned;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    /** Known role names in bit order. */
+    List<String> roleNames() {
+        return List.of(Arrays.copyOf(names, bits.size()));
+    }
+
+    /** Distinct role sets interned so far. */
+    int size() {
+        return count;
+    }
+}
@@ -0,0 +1,300 @@
+package com.posadskiy.restsecurity.userstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactUserStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void lookups_returnOneSharedSetPerRoleCombination() {
+        CompactUserStore store = new CompactUserStore();
+        store.put(1, List.of("USER", "ADMIN"));
+        store.put(2, Set.of("ADMIN", "USER"));
+        store.put(3, List.of());
+
+        assertTrue(store.isUserExist("1"));
+        assertTrue(store.isUserExist(3));
+        assertFalse(store.isUserExist("4"));
+        assertEquals(Set.of("USER", "ADMIN"), store.getUserRolesSet("1"));
+        assertSame(store.getUserRolesSet("1"), store.getUserRolesSet(2));
+        assertSame(store.getUserRoles("1"), store.getUserRoles("2"));
+        assertEquals(List.of("USER", "ADMIN"), store.getUserRoles("1"));
+        assertEquals(Set.of(), store.getUserRolesSet("3"));
+        assertEquals(List.of(), store.getUserRoles("4"));
+        assertEquals(Set.of(), store.getUserRolesSet(4));
+        assertEquals(3, store.size());
+        assertEquals(2, store.distinctRoleSets());
+        assertEquals(List.of("USER", "ADMIN"), store.roleNames());
+
+        store.put(1, List.of("USER"));
+        assertEquals(Set.of("USER"), store.getUserRolesSet("1"));
+        assertTrue(store.remove(1));
+        assertFalse(store.remove(1));
+        assertFalse(store.isUserExist("1"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void stringIds_mustBeDecimalLongs() {
+        CompactUserStore store = new CompactUserStore();
+        store.put(-7, List.of("USER"));
+        store.put(Long.MAX_VALUE, List.of("USER"));
+
+        assertTrue(store.isUserExist("-7"));
+        assertTrue(store.isUserExist(String.valueOf(Long.MAX_VALUE)));
+        assertFalse(store.isUserExist("9223372036854775808"));
+        assertFalse(store.isUserExist("alice"));
+        assertFalse(store.isUserExist("-"));
+        assertFalse(store.isUserExist("1 "));
+        assertFalse(store.isUserExist(""));
+        assertFalse(store.isUserExist((String) null));
+        assertFalse(store.isUserExist("123456789012345678901"));
+        assertEquals(Long.MIN_VALUE, CompactUserStore.parseUserId("12a"));
+        assertEquals(42, CompactUserStore.parseUserId("42"));
+        assertFalse(store.isUserExist(Long.MIN_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> store.put(Long.MIN_VALUE, List.of()));
+        assertThrows(IllegalArgumentException.class, () -> store.put(1, List.of(" ")));
+    }
+
+    @Test
+    void table_growsAsUsersAreAdded() {
+        CompactUserStore store = new CompactUserStore();
+        for (long id = 0; id < 10_000; id++) {
+            store.put(id, id % 2 == 0 ? List.of("USER") : List.of("USER", "EDITOR"));
+        }
+
+        assertEquals(10_000, store.size());
+        assertEquals(16_384, store.capacity());
+        for (long id = 0; id < 10_000; id++) {
+            assertEquals(id % 2 == 0 ? 1 : 2, store.getUserRolesSet(id).size());
+        }
+    }
+
+    @Test
+    void csv_isReadByStreaming() {
+        String csv = """
+                # userId,roles
+                1,USER;ADMIN
+                2, ADMIN ; USER
+                3,
+                4
+
+                5,USER
+                5,EDITOR
+                """;
+
+        CompactUserStore store = CompactUserStore.readCsv(new StringReader(csv));
+
+        assertEquals(5, store.size());
+        assertSame(store.getUserRolesSet("1"), store.getUserRolesSet("2"));
+        assertEquals(Set.of(), store.getUserRolesSet("3"));
+        assertTrue(store.isUserExist("4"));
+        assertEquals(Set.of("EDITOR"), store.getUserRolesSet("5"));
+
+        IllegalArgumentException badId = assertThrows(IllegalArgumentException.class,
+                () -> CompactUserStore.readCsv(new StringReader("1,USER\nbob,USER\n")));
+        assertTrue(badId.getMessage().contains("line 2"));
+        assertThrows(IllegalArgumentException.class,
+                () -> CompactUserStore.readCsv(new StringReader("1,USER;;ADMIN\n")));
+    }
+
+    @Test
+    void csvFile_andMissingFile() throws IOException {
+        Path file = dir.resolve("users.csv");
+        Files.writeString(file, "10,USER\n11,USER;ADMIN\n");
+
+        assertEquals(2, CompactUserStore.readCsv(file).size());
+        assertThrows(UncheckedIOException.class, () -> CompactUserStore.readCsv(dir.resolve("missing.csv")));
+        assertThrows(UncheckedIOException.class, () -> CompactUserStore.readBinary(dir.resolve("missing.bin")));
+    }
+
+    @Test
+    void binarySnapshot_roundTrips() {
+        CompactUserStore store = new CompactUserStore();
+        for (long id = 0; id < 1_000; id++) {
+            store.put(id * 31, List.of("R" + id % 5, "USER"));
+        }
+        store.put(5, List.of("ADMIN"));
+        store.remove(5);
+        Path file = dir.resolve("users.bin");
+
+        store.writeBinary(file);
+        CompactUserStore restored = CompactUserStore.readBinary(file);
+
+        assertEquals(1_000, restored.size());
+        assertEquals(2_048, restored.capacity(), "sized from the header, no resize while loading");
+        for (long id = 0; id < 1_000; id++) {
+            assertEquals(store.getUserRolesSet(id * 31), restored.getUserRolesSet(id * 31));
+        }
+        assertFalse(restored.isUserExist(5));
+        assertEquals(store.roleNames(), restored.roleNames());
+        assertFalse(Files.exists(dir.resolve("users.bin.tmp")));
+    }
+
+    @Test
+    void damagedSnapshots_areRejected() {
+        CompactUserStore store = new CompactUserStore();
+        store.put(1, List.of("USER"));
+        store.put(2, List.of("ADMIN"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.writeBinary(out);
+        byte[] bytes = out.toByteArray();
+
+        byte[] flipped = bytes.clone();
+        flipped[bytes.length - 10] ^= 1;
+        byte[] badMask = bytes.clone();
+        badMask[bytes.length - 5] = 9;
+        byte[] wrongMagic = bytes.clone();
+        wrongMagic[0] = 0;
+
+        assertEquals(2, CompactUserStore.readBinary(new ByteArrayInputStream(bytes)).size());
+        assertThrows(IllegalStateException.class, () -> read(flipped));
+        assertThrows(IllegalStateException.class, () -> read(badMask));
+        assertThrows(IllegalStateException.class, () -> read(wrongMagic));
+        assertThrows(IllegalStateException.class, () -> read(Arrays.copyOf(bytes, bytes.length - 3)));
+        byte[] unknownBit = bytes.clone();
+        // First mask follows the header (4 + 1 + 4), the role count and two short-prefixed names.
+        unknownBit[9 + 1 + 2 + 4 + 2 + 5 + 4] = 0x40;
+        assertThrows(IllegalStateException.class, () -> read(unknownBit));
+        byte[] negativeCount = bytes.clone();
+        negativeCount[5] = (byte) 0x80;
+        assertThrows(IllegalStateException.class, () -> read(negativeCount));
+    }
+
+    @Test
+    void forgedCounts_areRejectedWithoutReservingRoomForThem() {
+        CompactUserStore store = new CompactUserStore();
+        store.put(1, List.of("USER"));
+        store.put(2, List.of("ADMIN"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.writeBinary(out);
+        byte[] bytes = out.toByteArray();
+        // The role set count follows the header (4 + 1 + 4), the role count and two short-prefixed names.
+        int maskCountAt = 9 + 1 + 2 + 4 + 2 + 5;
+
+        byte[] manyUsers = bytes.clone();
+        ByteBuffer.wrap(manyUsers).putInt(5, 500_000_000);
+        byte[] manyMasks = bytes.clone();
+        ByteBuffer.wrap(manyMasks).putInt(maskCountAt, Integer.MAX_VALUE);
+        byte[] moreMasksThanRoles = bytes.clone();
+        ByteBuffer.wrap(moreMasksThanRoles).putInt(maskCountAt, 5);
+
+        assertThrows(IllegalStateException.class, () -> read(manyUsers), "truncated, not out of memory");
+        assertThrows(IllegalStateException.class, () -> read(manyMasks));
+        assertThrows(IllegalStateException.class, () -> read(moreMasksThanRoles), "two roles make four role sets");
+    }
+
+    @Test
+    void snapshot_withMoreRoleSetsThanPresized_growsWhileReading() {
+        CompactUserStore store = new CompactUserStore();
+        for (long id = 0; id < 2_000; id++) {
+            List<String> roles = new ArrayList<>();
+            for (int bit = 0; bit < 11; bit++) {
+                if ((id >> bit & 1) != 0) {
+                    roles.add("R" + bit);
+                }
+            }
+            store.put(id, roles);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.writeBinary(out);
+
+        CompactUserStore restored = read(out.toByteArray());
+
+        assertEquals(2_000, restored.distinctRoleSets());
+        assertEquals(Set.of("R0", "R10"), restored.getUserRolesSet(1_025));
+    }
+
+    @Test
+    void unwritableTarget_throws() throws IOException {
+        Path blocker = dir.resolve("file");
+        Files.writeString(blocker, "x");
+
+        assertThrows(UncheckedIOException.class, () -> new CompactUserStore().writeBinary(blocker.resolve("users.bin")));
+    }
+
+    @Test
+    void reads_stayConsistentWhileUsersAreWritten() throws InterruptedException {
+        CompactUserStore store = new CompactUserStore();
+        store.put(0, List.of("USER"));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                if (!store.getUserRolesSet(0).equals(Set.of("USER"))) {
+                    failure.set("user 0 lost its roles");
+                }
+            }
+        });
+        reader.start();
+        for (long id = 1; id < 50_000; id++) {
+            store.put(id, List.of("USER", "R" + id % 7));
+            if (id % 3 == 0) {
+                store.remove(id - 1);
+            }
+        }
+        running.set(false);
+        reader.join();
+
+        assertNull(failure.get());
+    }
+
+    private static CompactUserStore read(byte[] bytes) {
+        return CompactUserStore.readBinary(new ByteArrayInputStream(bytes));
+    }
+
+    /** Run with {@code -Dsession.benchmark=true}: heap per user and lookup cost for a million users. */
+    @Test
+    @EnabledIfSystemProperty(named = "session.benchmark", matches = "true")
+    void benchmark_millionUsers() {
+        int users = 1_000_000;
+        List<List<String>> combinations = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            combinations.add(List.of("USER", "R" + i % 20, "G" + i / 20));
+        }
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        CompactUserStore store = new CompactUserStore(users);
+        for (long id = 0; id < users; id++) {
+            store.put(id, combinations.get((int) (id % combinations.size())));
+        }
+        System.gc();
+        long heap = runtime.totalMemory() - runtime.freeMemory() - before;
+        String[] ids = new String[4096];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = String.valueOf(i * 241L);
+        }
+        for (int round = 0; round < 2; round++) {
+            long hits = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < 10_000_000; i++) {
+                hits += store.getUserRolesSet(ids[i & 4095]).size();
+            }
+            long took = System.nanoTime() - start;
+            System.out.printf("%d users: %d bytes/user, %.1f ns/lookup (%d)%n", users, heap / users,
+                    took / 10_000_000.0, hits);
+        }
+    }
+}
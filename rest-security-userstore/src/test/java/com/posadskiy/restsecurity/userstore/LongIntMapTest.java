@@ -0,0 +1,75 @@
+package com.posadskiy.restsecurity.userstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntMapTest {
+
+    @Test
+    void putGetRemove() {
+        LongIntMap map = new LongIntMap(4);
+
+        assertEquals(-1, map.put(0, 7));
+        assertEquals(-1, map.put(-5, 0));
+        assertEquals(7, map.put(0, 8));
+        assertEquals(8, map.get(0));
+        assertEquals(0, map.get(-5));
+        assertEquals(-1, map.get(1));
+        assertEquals(2, map.size());
+
+        assertEquals(8, map.remove(0));
+        assertEquals(-1, map.remove(0));
+        assertEquals(-1, map.get(0));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void matchesAHashMap_underRandomChurn() {
+        LongIntMap map = new LongIntMap(0);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.containsKey(key) ? expected.remove(key) : -1, map.remove(key));
+            } else {
+                if (map.isFull() && map.get(key) < 0) {
+                    map = map.resized();
+                }
+                int value = random.nextInt(100);
+                Integer previous = expected.put(key, value);
+                assertEquals(previous != null ? previous : -1, map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 5_000; key++) {
+            assertEquals(expected.getOrDefault(key, -1), map.get(key));
+        }
+        Map<Long, Integer> visited = new HashMap<>();
+        LongIntMap finalMap = map;
+        assertDoesNotThrow(() -> finalMap.forEach(visited::put));
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void sizing_keepsTheLoadFactor() {
+        LongIntMap map = new LongIntMap(1_000);
+        assertEquals(2048, map.capacity());
+        for (int i = 0; i < 1_536; i++) {
+            map.put(i, i);
+        }
+        assertTrue(map.isFull());
+        LongIntMap grown = map.resized();
+        assertEquals(4096, grown.capacity());
+        assertEquals(1_536, grown.size());
+        assertEquals(1_000, grown.get(1_000));
+        assertEquals(16, new LongIntMap(0).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new LongIntMap(Integer.MAX_VALUE));
+    }
+}
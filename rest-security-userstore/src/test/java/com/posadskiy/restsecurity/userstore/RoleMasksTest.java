@@ -0,0 +1,63 @@
+package com.posadskiy.restsecurity.userstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoleMasksTest {
+
+    @Test
+    void equalRoleSets_shareOneId_andOneSet() {
+        RoleMasks masks = new RoleMasks();
+
+        int a = masks.intern(List.of("USER", "ADMIN"));
+        int b = masks.intern(List.of("ADMIN", "USER", "USER"));
+        int c = masks.intern(List.of("USER"));
+        int none = masks.intern(List.of());
+
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+        assertEquals(3, masks.size());
+        assertSame(masks.get(a).set(), masks.get(b).set());
+        assertEquals(Set.of("USER", "ADMIN"), masks.get(a).set());
+        assertEquals(List.of("USER", "ADMIN"), masks.get(a).list());
+        assertEquals(Set.of(), masks.get(none).set());
+        assertEquals(0b11, masks.get(a).mask());
+        assertEquals(a, masks.intern(0b11));
+        assertEquals(List.of("USER", "ADMIN"), masks.roleNames());
+        assertNull(masks.get(-1));
+        assertNull(masks.get(99));
+    }
+
+    @Test
+    void manyMasks_growTheTable() {
+        RoleMasks masks = new RoleMasks();
+        for (int i = 0; i < 10; i++) {
+            masks.bit("R" + i);
+        }
+        for (long mask = 0; mask < 1024; mask++) {
+            assertEquals(mask, masks.intern(mask));
+        }
+        assertEquals(Long.bitCount(1023), masks.get(1023).set().size());
+    }
+
+    @Test
+    void limitsAndValidation() {
+        RoleMasks masks = new RoleMasks();
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < RoleMasks.MAX_ROLES; i++) {
+            roles.add("R" + i);
+        }
+        int all = masks.intern(roles);
+        assertEquals(-1L, masks.get(all).mask());
+
+        assertThrows(IllegalArgumentException.class, () -> masks.intern(List.of("ONE_TOO_MANY")));
+        assertThrows(IllegalArgumentException.class, () -> masks.bit(" "));
+        assertThrows(IllegalArgumentException.class, () -> masks.bit(null));
+        assertThrows(IllegalArgumentException.class, () -> new RoleMasks().intern(0b100));
+    }
+}